@@ -32,7 +32,7 @@ import java.io.Serializable
 import org.droidmate.deviceInterface.guimodel.WidgetData
 
 
-open class DeviceResponse private constructor(val windowHierarchyDump: String,
+open class DeviceResponse internal constructor(val windowHierarchyDump: String,
                                               val topNodePackageName: String,
                                               val widgets: List<WidgetData>,
                                               val launchableMainActivityName: String,
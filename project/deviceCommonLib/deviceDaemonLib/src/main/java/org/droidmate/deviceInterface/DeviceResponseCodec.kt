@@ -0,0 +1,291 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.deviceInterface
+
+import org.droidmate.deviceInterface.WidgetFlags.ENABLED
+import org.droidmate.deviceInterface.WidgetFlags.EDITABLE
+import org.droidmate.deviceInterface.WidgetFlags.PASSWORD
+import org.droidmate.deviceInterface.WidgetFlags.CLICKABLE
+import org.droidmate.deviceInterface.WidgetFlags.LONG_CLICKABLE
+import org.droidmate.deviceInterface.WidgetFlags.SCROLLABLE
+import org.droidmate.deviceInterface.WidgetFlags.HAS_CHECKED
+import org.droidmate.deviceInterface.WidgetFlags.CHECKED
+import org.droidmate.deviceInterface.WidgetFlags.HAS_FOCUSED
+import org.droidmate.deviceInterface.WidgetFlags.FOCUSED
+import org.droidmate.deviceInterface.WidgetFlags.SELECTED
+import org.droidmate.deviceInterface.WidgetFlags.LEAF
+import org.droidmate.deviceInterface.WidgetFlags.VISIBLE
+import org.droidmate.deviceInterface.WidgetFlags.ACTABLE_DESCENDANT
+import org.droidmate.deviceInterface.WidgetFlags.HAS_COORD
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import java.io.*
+import java.nio.charset.Charset
+import java.util.*
+
+/**
+ * Compact binary encoding of [DeviceResponse] (wire format [WireFormat.BINARY_V1]).
+ *
+ * Layout: `[version:byte][string table][body length:varint][body]`, where all strings of the body (package and class names,
+ * resource ids, texts, ...) are references into the string table, such that each distinct string is transferred only once.
+ * Non-negative numbers are varint encoded, coordinates which may be negative are zig-zag encoded and the hashes are written as
+ * plain ints since they are uniformly distributed anyway. The screenshot is appended as raw length-prefixed byte array.
+ */
+object DeviceResponseCodec {
+	const val VERSION: Int = 1
+
+	private val utf8 = Charset.forName("UTF-8")
+
+	// widget flags
+	private const val HAS_UID = WidgetFlags.FREE
+
+	@JvmStatic
+	@Throws(IOException::class)
+	fun encode(response: DeviceResponse): ByteArray = ByteArrayOutputStream().also { encode(response, DataOutputStream(it)) }.toByteArray()
+
+	@JvmStatic
+	@Throws(IOException::class)
+	fun encode(response: DeviceResponse, output: DataOutputStream) {
+		val strings = StringTable()
+		val bodyBytes = ByteArrayOutputStream(64 + response.widgets.size * 48 + response.screenshot.size)
+		val body = DataOutputStream(bodyBytes)
+
+		with(response) {
+			body.writeString(windowHierarchyDump)
+			body.writeVarInt(strings.idOf(topNodePackageName))
+			body.writeVarInt(strings.idOf(launchableMainActivityName))
+			body.writeVarInt(strings.idOf(androidLauncherPackageName))
+			body.writeVarInt(strings.idOf(androidPackageName))
+			body.writeVarInt(deviceDisplayWidth)
+			body.writeVarInt(deviceDisplayHeight)
+			body.writeVarInt(screenshotWidth)
+			body.writeVarInt(screenshotHeight)
+			body.writeVarInt(appSize.first)
+			body.writeVarInt(appSize.second)
+			body.writeVarInt(statusBarSize)
+
+			body.writeVarInt(widgets.size)
+			widgets.forEach { body.writeWidget(it, strings) }
+
+			body.writeVarInt(screenshot.size)
+			body.write(screenshot)
+
+			val t = throwable
+			if (t == null) body.writeBoolean(false)
+			else {
+				body.writeBoolean(true)
+				val serialized = ByteArrayOutputStream()
+				SerializationHelper.writeObjectToStream(DataOutputStream(serialized), t)
+				body.writeVarInt(serialized.size())
+				serialized.writeTo(body)
+			}
+		}
+		body.flush()
+
+		output.writeByte(VERSION)
+		strings.writeTo(output)
+		output.writeVarInt(bodyBytes.size())
+		bodyBytes.writeTo(output)
+		output.flush()
+	}
+
+	@JvmStatic
+	@Throws(IOException::class)
+	fun decode(bytes: ByteArray): DeviceResponse = decode(DataInputStream(ByteArrayInputStream(bytes)))
+
+	@JvmStatic
+	@Throws(IOException::class)
+	fun decode(input: DataInputStream): DeviceResponse {
+		val version = input.readUnsignedByte()
+		if (version != VERSION)
+			throw IOException("Unsupported DeviceResponse encoding version $version, expected $VERSION")
+		val strings = Array(input.readVarInt()) { input.readString() }
+		input.readVarInt()  // body length, only needed to skip the response without decoding it
+
+		val dump = input.readString()
+		val topNodePackageName = strings[input.readVarInt()]
+		val launchableMainActivityName = strings[input.readVarInt()]
+		val androidLauncherPackageName = strings[input.readVarInt()]
+		val androidPackageName = strings[input.readVarInt()]
+		val displayWidth = input.readVarInt()
+		val displayHeight = input.readVarInt()
+		val screenshotWidth = input.readVarInt()
+		val screenshotHeight = input.readVarInt()
+		val appSize = Pair(input.readVarInt(), input.readVarInt())
+		val statusBarSize = input.readVarInt()
+
+		val nWidgets = input.readVarInt()
+		val widgets = ArrayList<WidgetData>(nWidgets)
+		repeat(nWidgets) { widgets.add(input.readWidget(strings)) }
+
+		val screenshot = ByteArray(input.readVarInt())
+		input.readFully(screenshot)
+
+		val throwable = if (input.readBoolean()) {
+			val serialized = ByteArray(input.readVarInt())
+			input.readFully(serialized)
+			try {
+				SerializationHelper.readObjectFromStream(DataInputStream(ByteArrayInputStream(serialized))) as Throwable
+			} catch (e: ClassNotFoundException) {
+				throw IOException("Cannot decode the throwable of the device response", e)
+			}
+		} else null
+
+		return DeviceResponse(dump, topNodePackageName, widgets, launchableMainActivityName, androidLauncherPackageName,
+				androidPackageName, displayWidth, displayHeight, screenshot, screenshotWidth, screenshotHeight, appSize, statusBarSize)
+				.apply { this.throwable = throwable }
+	}
+
+	private fun DataOutputStream.writeWidget(w: WidgetData, strings: StringTable) {
+		writeVarInt(strings.idOf(w.text))
+		writeVarInt(strings.idOf(w.contentDesc))
+		writeVarInt(strings.idOf(w.resourceId))
+		writeVarInt(strings.idOf(w.className))
+		writeVarInt(strings.idOf(w.packageName))
+		writeVarInt(strings.idOf(w.xpath))
+
+		val uid = w.uidOverride
+		val coord = w.uncoveredCoord
+		var flags = 0
+		if (w.enabled) flags = flags or ENABLED
+		if (w.editable) flags = flags or EDITABLE
+		if (w.isPassword) flags = flags or PASSWORD
+		if (w.clickable) flags = flags or CLICKABLE
+		if (w.longClickable) flags = flags or LONG_CLICKABLE
+		if (w.scrollable) flags = flags or SCROLLABLE
+		w.checked?.let { flags = flags or HAS_CHECKED or (if (it) CHECKED else 0) }
+		w.focused?.let { flags = flags or HAS_FOCUSED or (if (it) FOCUSED else 0) }
+		if (w.selected) flags = flags or SELECTED
+		if (w.isLeaf) flags = flags or LEAF
+		if (w.visible) flags = flags or VISIBLE
+		if (w.hasActableDescendant) flags = flags or ACTABLE_DESCENDANT
+		if (coord != null) flags = flags or HAS_COORD
+		if (uid != null) flags = flags or HAS_UID
+		writeVarInt(flags)
+
+		writeSignedVarInt(w.boundsX)
+		writeSignedVarInt(w.boundsY)
+		writeSignedVarInt(w.boundsWidth)
+		writeSignedVarInt(w.boundsHeight)
+		writeInt(w.idHash)
+		writeInt(w.parentHash)
+		if (coord != null) {
+			writeSignedVarInt(coord.first)
+			writeSignedVarInt(coord.second)
+		}
+		if (uid != null) {
+			writeLong(uid.mostSignificantBits)
+			writeLong(uid.leastSignificantBits)
+		}
+		writeVarInt(w.childrenXpathHashes.size)
+		w.childrenXpathHashes.forEach { writeInt(it) }
+	}
+
+	private fun DataInputStream.readWidget(strings: Array<String>): WidgetData {
+		val text = strings[readVarInt()]
+		val contentDesc = strings[readVarInt()]
+		val resourceId = strings[readVarInt()]
+		val className = strings[readVarInt()]
+		val packageName = strings[readVarInt()]
+		val xpath = strings[readVarInt()]
+		val flags = readVarInt()
+		val boundsX = readSignedVarInt()
+		val boundsY = readSignedVarInt()
+		val boundsWidth = readSignedVarInt()
+		val boundsHeight = readSignedVarInt()
+		val idHash = readInt()
+		val parentHash = readInt()
+		val coord = if (flags and HAS_COORD != 0) Pair(readSignedVarInt(), readSignedVarInt()) else null
+		val uid = if (flags and HAS_UID != 0) UUID(readLong(), readLong()) else null
+		val children = IntArray(readVarInt()) { readInt() }.asList()
+
+		return WidgetData(text = text, contentDesc = contentDesc, resourceId = resourceId, className = className, packageName = packageName,
+				enabled = flags and ENABLED != 0, editable = flags and EDITABLE != 0, isPassword = flags and PASSWORD != 0,
+				clickable = flags and CLICKABLE != 0, longClickable = flags and LONG_CLICKABLE != 0, scrollable = flags and SCROLLABLE != 0,
+				checked = if (flags and HAS_CHECKED != 0) flags and CHECKED != 0 else null,
+				focused = if (flags and HAS_FOCUSED != 0) flags and FOCUSED != 0 else null,
+				selected = flags and SELECTED != 0,
+				boundsX = boundsX, boundsY = boundsY, boundsWidth = boundsWidth, boundsHeight = boundsHeight,
+				isLeaf = flags and LEAF != 0, visible = flags and VISIBLE != 0, _uid = uid
+		).apply {
+			this.xpath = xpath
+			this.idHash = idHash
+			this.parentHash = parentHash
+			this.uncoveredCoord = coord
+			this.childrenXpathHashes = children
+			this.hasActableDescendant = flags and ACTABLE_DESCENDANT != 0
+		}
+	}
+
+	/** assigns each distinct string an index in order of its first occurrence */
+	private class StringTable {
+		private val ids = HashMap<String, Int>()
+		private val strings = ArrayList<String>()
+
+		fun idOf(s: String): Int = ids[s] ?: strings.size.also { ids[s] = it; strings.add(s) }
+
+		fun writeTo(output: DataOutputStream) {
+			output.writeVarInt(strings.size)
+			strings.forEach { output.writeString(it) }
+		}
+	}
+
+	private fun DataOutputStream.writeString(s: String) {
+		val bytes = s.toByteArray(utf8)
+		writeVarInt(bytes.size)
+		write(bytes)
+	}
+
+	private fun DataInputStream.readString(): String {
+		val bytes = ByteArray(readVarInt())
+		readFully(bytes)
+		return String(bytes, utf8)
+	}
+
+	internal fun DataOutputStream.writeVarInt(value: Int) {
+		var v = value
+		while (v and 0x7F.inv() != 0) {
+			writeByte((v and 0x7F) or 0x80)
+			v = v ushr 7
+		}
+		writeByte(v)
+	}
+
+	internal fun DataInputStream.readVarInt(): Int {
+		var result = 0
+		var shift = 0
+		while (shift < 35) {
+			val b = readUnsignedByte()
+			result = result or ((b and 0x7F) shl shift)
+			if (b and 0x80 == 0) return result
+			shift += 7
+		}
+		throw IOException("Malformed varint")
+	}
+
+	private fun DataOutputStream.writeSignedVarInt(value: Int) = writeVarInt((value shl 1) xor (value shr 31))
+
+	private fun DataInputStream.readSignedVarInt(): Int = readVarInt().let { (it ushr 1) xor -(it and 1) }
+}
@@ -0,0 +1,198 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.deviceInterface
+
+import java.io.*
+
+/**
+ * Framing for long-lived daemon connections and negotiation of the response [WireFormat].
+ *
+ * A session is opened by the client writing [SESSION_MAGIC] and the requested wire format right after connecting, the server
+ * answers with the format it is going to use. Afterwards both sides exchange frames of the form
+ * `[type:int][requestId:long][length:int][payload]` until one of them sends [FRAME_CLOSE] or the socket is closed.
+ * Clients which only want to negotiate the wire format for a single request/response write [FORMAT_MAGIC] instead.
+ * Servers which do not see any magic number fall back to the legacy one-request-per-connection protocol
+ * (the magics are chosen such that they can never be the start of an [ObjectOutputStream] header).
+ */
+object SessionProtocol {
+
+	/** "DMS1", the first bytes of an [ObjectOutputStream] are always 0xACED */
+	const val SESSION_MAGIC: Int = 0x444D5331
+	/** "DMF1", one request and response on this connection, using the negotiated wire format */
+	const val FORMAT_MAGIC: Int = 0x444D4631
+
+	const val FRAME_REQUEST: Int = 1
+	const val FRAME_RESPONSE: Int = 2
+	const val FRAME_PING: Int = 3
+	const val FRAME_PONG: Int = 4
+	const val FRAME_CLOSE: Int = 5
+	/** sent by the client if it cannot apply a [SnapshotDelta], the server answers with the last response as full snapshot */
+	const val FRAME_RESYNC: Int = 6
+
+	/** upper bound for a single payload, protects against reading garbage as frame length */
+	const val MAX_PAYLOAD_SIZE: Int = 256 * 1024 * 1024
+
+	class Frame(val type: Int, val requestId: Long, val payload: ByteArray) {
+		override fun toString(): String = "Frame(type=$type, requestId=$requestId, size=${payload.size})"
+	}
+
+	/** Result of the server side handshake, legacy clients do not send any and get [legacy]. */
+	class Handshake(val isSession: Boolean, val wireFormat: Int) {
+		companion object {
+			@JvmStatic
+			val legacy = Handshake(false, WireFormat.JAVA_SERIALIZATION)
+		}
+	}
+
+	/** Implemented by the daemon (or any stand-in) to answer the requests of one session. */
+	interface RequestHandler {
+		fun onRequest(input: Serializable?, inputReadEx: Exception?): Serializable
+
+		/** the session (and the server socket) are closed after answering a request for which this returns true */
+		fun isStopRequest(input: Serializable?): Boolean
+	}
+
+	/**
+	 * Client side handshake, opens a session if [session] is set or negotiates the wire format of a single request otherwise.
+	 * @return the wire format the server agreed to use
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	fun writeHandshake(output: DataOutputStream, input: DataInputStream, session: Boolean, wireFormat: Int): Int {
+		output.writeInt(if (session) SESSION_MAGIC else FORMAT_MAGIC)
+		output.writeInt(wireFormat)
+		output.flush()
+		val accepted = input.readInt()
+		if (!WireFormat.isSupported(accepted))
+			throw IOException("The server did not answer the handshake (got $accepted), it probably does not support sessions")
+		return accepted
+	}
+
+	/**
+	 * Server side handshake, checks whether the client opened a session or requests a wire format and answers it.
+	 * The [input] has to support mark/reset, if the stream does not start with a magic number it is reset such that the legacy
+	 * protocol can read it from the beginning.
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	fun readHandshake(input: BufferedInputStream, output: DataOutputStream): Handshake {
+		input.mark(4)
+		val header = ByteArray(4)
+		var read = 0
+		while (read < 4) {
+			val n = input.read(header, read, 4 - read)
+			if (n < 0) break
+			read += n
+		}
+		val magic = if (read == 4) DataInputStream(ByteArrayInputStream(header)).readInt() else 0
+		if (magic != SESSION_MAGIC && magic != FORMAT_MAGIC) {
+			input.reset()
+			return Handshake.legacy
+		}
+		val accepted = WireFormat.negotiate(DataInputStream(input).readInt(), magic == SESSION_MAGIC)
+		output.writeInt(accepted)
+		output.flush()
+		return Handshake(magic == SESSION_MAGIC, accepted)
+	}
+
+	@JvmStatic
+	@Throws(IOException::class)
+	fun writeFrame(output: DataOutputStream, type: Int, requestId: Long, payload: ByteArray = ByteArray(0)) {
+		output.writeInt(type)
+		output.writeLong(requestId)
+		output.writeInt(payload.size)
+		output.write(payload)
+		output.flush()
+	}
+
+	@JvmStatic
+	@Throws(IOException::class)
+	fun readFrame(input: DataInputStream): Frame {
+		val type = input.readInt()
+		val requestId = input.readLong()
+		val size = input.readInt()
+		if (size < 0 || size > MAX_PAYLOAD_SIZE)
+			throw IOException("Invalid session frame payload size $size for frame type $type")
+		val payload = ByteArray(size)
+		input.readFully(payload)
+		return Frame(type, requestId, payload)
+	}
+
+	@JvmStatic
+	@Throws(IOException::class)
+	@JvmOverloads
+	fun toPayload(obj: Any, wireFormat: Int = WireFormat.JAVA_SERIALIZATION): ByteArray {
+		val bytes = ByteArrayOutputStream()
+		DataOutputStream(bytes).use { WireFormat.writeResponse(it, obj, wireFormat) }
+		return bytes.toByteArray()
+	}
+
+	@JvmStatic
+	@Throws(IOException::class, ClassNotFoundException::class)
+	@JvmOverloads
+	fun fromPayload(payload: ByteArray, wireFormat: Int = WireFormat.JAVA_SERIALIZATION): Any =
+			WireFormat.readResponse(DataInputStream(ByteArrayInputStream(payload)), wireFormat)
+
+	/**
+	 * Answers frames of one session until the client closes it or a stop request was answered.
+	 * Requests are always Java serialized, responses are encoded in [wireFormat], for [WireFormat.DELTA_V1] the session keeps
+	 * the [SnapshotDelta.Encoder] state.
+	 * @return true if the session was terminated by a stop request, i.e. the server should shut down
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	fun serve(input: DataInputStream, output: DataOutputStream, handler: RequestHandler, wireFormat: Int): Boolean {
+		val deltas = if (wireFormat == WireFormat.DELTA_V1) SnapshotDelta.Encoder() else null
+		while (true) {
+			val frame = try {
+				readFrame(input)
+			} catch (e: EOFException) {
+				return false  // client dropped the connection, it will reconnect if needed
+			}
+			when (frame.type) {
+				FRAME_PING -> writeFrame(output, FRAME_PONG, frame.requestId)
+				FRAME_CLOSE -> return false
+				FRAME_REQUEST -> {
+					var request: Serializable? = null
+					var readEx: Exception? = null
+					try {
+						request = fromPayload(frame.payload) as Serializable
+					} catch (e: ClassNotFoundException) {
+						readEx = e
+					} catch (e: IOException) {
+						readEx = e
+					}
+					val response = handler.onRequest(request, readEx)
+					writeFrame(output, FRAME_RESPONSE, frame.requestId, deltas?.encode(response) ?: toPayload(response, wireFormat))
+					if (handler.isStopRequest(request)) return true
+				}
+				FRAME_RESYNC -> writeFrame(output, FRAME_RESPONSE, frame.requestId,
+						deltas?.encodeFull() ?: throw IOException("Resync requested but the session does not use snapshot deltas"))
+				else -> throw IOException("Unexpected session frame $frame")
+			}
+		}
+	}
+}
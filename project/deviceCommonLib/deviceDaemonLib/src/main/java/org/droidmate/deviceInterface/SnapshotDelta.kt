@@ -0,0 +1,173 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.deviceInterface
+
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import java.io.*
+
+/**
+ * Incremental GUI snapshots for session connections (wire format [WireFormat.DELTA_V1]).
+ *
+ * Most actions only change a small part of the screen, therefore the [Encoder] on the device remembers the last [DeviceResponse]
+ * it sent and only ships the widgets which were added or changed since then, matched via [WidgetData.idHash].
+ * Each payload starts with a kind byte:
+ * - [KIND_FULL] `[snapshotId:long][DeviceResponseCodec encoding]`
+ * - [KIND_DELTA] `[snapshotId:long][baseId:long][screenshot unchanged:boolean][dump unchanged:boolean][node count:varint][node refs:varint*][DeviceResponseCodec encoding]`,
+ *   where the codec encoding only contains the added/changed widgets, and neither the screenshot nor the window hierarchy dump
+ *   if they did not change. The dump cannot be dropped altogether since it is still exposed on the PC
+ *   (e.g. [DeviceResponse.windowHierarchyDump] in error reports), but the daemon currently sends a constant placeholder,
+ *   such that it is practically never part of a delta.
+ *   A node ref is either `baseIndex+1` for an unchanged widget of the base snapshot or `0` for the next widget of the encoded list,
+ *   removed widgets are simply not referenced anymore.
+ * - [KIND_OBJECT] any other response, Java serialized
+ *
+ * The [Decoder] on the PC reconstructs the complete [DeviceResponse], unchanged widgets are the very same [WidgetData] instances
+ * as in the previous response. If a delta does not refer to the snapshot the decoder knows, it returns null and the client has
+ * to request the full snapshot via [SessionProtocol.FRAME_RESYNC].
+ */
+object SnapshotDelta {
+	const val KIND_FULL: Int = 0
+	const val KIND_DELTA: Int = 1
+	const val KIND_OBJECT: Int = 2
+
+	/** true if both nodes have the same properties, including the ones which are not part of the [WidgetData] data class equality */
+	@JvmStatic
+	fun isSameNode(a: WidgetData, b: WidgetData): Boolean = a === b ||
+			(a.idHash == b.idHash && a.parentHash == b.parentHash && a.xpath == b.xpath && a == b && a.uidOverride == b.uidOverride
+					&& a.uncoveredCoord == b.uncoveredCoord && a.hasActableDescendant == b.hasActableDescendant
+					&& a.childrenXpathHashes == b.childrenXpathHashes)
+
+	/** Device side, one instance per session. */
+	class Encoder {
+		private var snapshotId = 0L
+		private var base: DeviceResponse? = null
+		/** idHash -> index in the base widget list, nodes with ambiguous hashes are not contained and always shipped */
+		private var baseIndex: Map<Int, Int> = emptyMap()
+
+		@Throws(IOException::class)
+		fun encode(response: Any): ByteArray {
+			if (response !is DeviceResponse)
+				return payload { it.writeByte(KIND_OBJECT); SerializationHelper.writeObjectToStream(it, response) }
+
+			val previous = base
+			val previousId = snapshotId
+			val previousIndex = baseIndex
+			snapshotId += 1
+			base = response
+			baseIndex = indexOf(response.widgets)
+			return if (previous == null) full(response, snapshotId)
+			else delta(response, snapshotId, previous, previousId, previousIndex)
+		}
+
+		/** the last sent response as full snapshot, used when the client could not apply the last delta */
+		@Throws(IOException::class)
+		fun encodeFull(): ByteArray = full(base ?: throw IOException("There is no snapshot which could be resent"), snapshotId)
+
+		private fun indexOf(widgets: List<WidgetData>): Map<Int, Int> {
+			val index = HashMap<Int, Int>(widgets.size * 2)
+			val ambiguous = HashSet<Int>()
+			widgets.forEachIndexed { i, w -> if (index.put(w.idHash, i) != null) ambiguous.add(w.idHash) }
+			ambiguous.forEach { index.remove(it) }
+			return index
+		}
+
+		private fun full(response: DeviceResponse, id: Long): ByteArray = payload {
+			it.writeByte(KIND_FULL)
+			it.writeLong(id)
+			DeviceResponseCodec.encode(response, it)
+		}
+
+		private fun delta(response: DeviceResponse, id: Long, previous: DeviceResponse, previousId: Long, previousIndex: Map<Int, Int>): ByteArray {
+			val changed = ArrayList<WidgetData>()
+			val refs = IntArray(response.widgets.size)
+			response.widgets.forEachIndexed { i, w ->
+				val idx = previousIndex[w.idHash]
+				if (idx != null && isSameNode(previous.widgets[idx], w)) refs[i] = idx + 1
+				else changed.add(w)
+			}
+			val sameScreenshot = response.screenshot.contentEquals(previous.screenshot)
+			val sameDump = response.windowHierarchyDump == previous.windowHierarchyDump
+
+			return payload { out ->
+				out.writeByte(KIND_DELTA)
+				out.writeLong(id)
+				out.writeLong(previousId)
+				out.writeBoolean(sameScreenshot)
+				out.writeBoolean(sameDump)
+				with(DeviceResponseCodec) {
+					out.writeVarInt(refs.size)
+					refs.forEach { out.writeVarInt(it) }
+				}
+				DeviceResponseCodec.encode(response.copy(changed, if (sameScreenshot) ByteArray(0) else response.screenshot,
+						if (sameDump) "" else response.windowHierarchyDump), out)
+			}
+		}
+	}
+
+	/** PC side, one instance per session connection. */
+	class Decoder {
+		private var snapshotId = -1L
+		private var base: DeviceResponse? = null
+
+		/** @return the decoded response or null if the payload is a delta to an unknown snapshot */
+		@Throws(IOException::class, ClassNotFoundException::class)
+		fun decode(payload: ByteArray): Any? {
+			val input = DataInputStream(ByteArrayInputStream(payload))
+			val kind = input.readUnsignedByte()
+			return when (kind) {
+				KIND_OBJECT -> SerializationHelper.readObjectFromStream(input)
+				KIND_FULL -> {
+					val id = input.readLong()
+					DeviceResponseCodec.decode(input).also { base = it; snapshotId = id }
+				}
+				KIND_DELTA -> {
+					val id = input.readLong()
+					val previous = base
+					if (input.readLong() != snapshotId || previous == null) return null
+					val sameScreenshot = input.readBoolean()
+					val sameDump = input.readBoolean()
+					val refs = with(DeviceResponseCodec) { IntArray(input.readVarInt()) { input.readVarInt() } }
+					val partial = DeviceResponseCodec.decode(input)
+
+					var next = 0
+					val widgets = refs.map { ref -> if (ref == 0) partial.widgets[next++] else previous.widgets[ref - 1] }
+					partial.copy(widgets, if (sameScreenshot) previous.screenshot else partial.screenshot,
+							if (sameDump) previous.windowHierarchyDump else partial.windowHierarchyDump)
+							.also { base = it; snapshotId = id }
+				}
+				else -> throw IOException("Unknown snapshot payload kind $kind")
+			}
+		}
+	}
+
+	private fun DeviceResponse.copy(widgets: List<WidgetData>, screenshot: ByteArray, windowHierarchyDump: String): DeviceResponse =
+			DeviceResponse(windowHierarchyDump, topNodePackageName, widgets, launchableMainActivityName, androidLauncherPackageName,
+					androidPackageName, deviceDisplayWidth, deviceDisplayHeight, screenshot, screenshotWidth, screenshotHeight, appSize,
+					statusBarSize).also { it.throwable = throwable }
+
+	private inline fun payload(write: (DataOutputStream) -> Unit): ByteArray =
+			ByteArrayOutputStream().also { bytes -> DataOutputStream(bytes).let { write(it); it.flush() } }.toByteArray()
+}
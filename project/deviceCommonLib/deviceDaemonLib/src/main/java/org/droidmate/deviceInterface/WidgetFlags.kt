@@ -0,0 +1,50 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.deviceInterface
+
+/**
+ * Bits of the widget properties within the binary encodings of [DeviceResponseCodec] and the model store on the PC,
+ * such that both agree on the same flags. Each encoding may define additional flags starting at [FREE].
+ */
+object WidgetFlags {
+	const val ENABLED: Int = 1
+	const val EDITABLE: Int = 1 shl 1
+	const val PASSWORD: Int = 1 shl 2
+	const val CLICKABLE: Int = 1 shl 3
+	const val LONG_CLICKABLE: Int = 1 shl 4
+	const val SCROLLABLE: Int = 1 shl 5
+	const val HAS_CHECKED: Int = 1 shl 6
+	const val CHECKED: Int = 1 shl 7
+	const val HAS_FOCUSED: Int = 1 shl 8
+	const val FOCUSED: Int = 1 shl 9
+	const val SELECTED: Int = 1 shl 10
+	const val LEAF: Int = 1 shl 11
+	const val VISIBLE: Int = 1 shl 12
+	const val ACTABLE_DESCENDANT: Int = 1 shl 13
+	const val HAS_COORD: Int = 1 shl 14
+	/** the lowest bit which is not used by the shared flags */
+	const val FREE: Int = 1 shl 15
+}
@@ -0,0 +1,78 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.deviceInterface
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/**
+ * Encodings which can be negotiated for the daemon responses (see [SessionProtocol.writeHandshake]).
+ * Requests are always Java serialized, they are small compared to the responses.
+ */
+object WireFormat {
+	/** plain Java serialization via [SerializationHelper], understood by every server */
+	const val JAVA_SERIALIZATION: Int = 0
+	/** [DeviceResponseCodec] for [DeviceResponse]s, anything else is still Java serialized */
+	const val BINARY_V1: Int = 1
+	/**
+	 * [SnapshotDelta] payloads, only the GUI changes since the previous response are shipped.
+	 * Both sides have to remember the previous snapshot, therefore this is only used within sessions, single request
+	 * connections fall back to [BINARY_V1].
+	 */
+	const val DELTA_V1: Int = 2
+
+	@JvmStatic
+	fun isSupported(format: Int): Boolean = format == JAVA_SERIALIZATION || format == BINARY_V1 || format == DELTA_V1
+
+	/** the format the server agrees to use when the client asks for [requested] */
+	@JvmStatic
+	@JvmOverloads
+	fun negotiate(requested: Int, session: Boolean = true): Int = when {
+		!isSupported(requested) -> JAVA_SERIALIZATION
+		requested == DELTA_V1 && !session -> BINARY_V1
+		else -> requested
+	}
+
+	@JvmStatic
+	@Throws(IOException::class)
+	fun writeResponse(output: DataOutputStream, response: Any, format: Int) {
+		if (format != JAVA_SERIALIZATION && response is DeviceResponse) {
+			output.writeBoolean(true)
+			DeviceResponseCodec.encode(response, output)
+		} else {
+			if (format != JAVA_SERIALIZATION) output.writeBoolean(false)
+			SerializationHelper.writeObjectToStream(output, response)
+		}
+		output.flush()
+	}
+
+	@JvmStatic
+	@Throws(IOException::class, ClassNotFoundException::class)
+	fun readResponse(input: DataInputStream, format: Int): Any =
+			if (format != JAVA_SERIALIZATION && input.readBoolean()) DeviceResponseCodec.decode(input)
+			else SerializationHelper.readObjectFromStream(input)
+}
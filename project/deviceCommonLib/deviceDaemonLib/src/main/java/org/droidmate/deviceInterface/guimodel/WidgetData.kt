@@ -43,6 +43,8 @@ data class WidgetData(
 	// quick-fix for compatibility reasons with previous model-dumps
 	private val idString by lazy{ toString().replaceAfter("_uid",")").replace(", _uid","") }
 	val pId: UUID get() = _uid ?: (if(idHash!=0) idString+idHash.toString() else idString).toUUID()
+	/** the explicitly transferred property id (if any), required to encode this instance without losing information */
+	val uidOverride: UUID? get() = _uid
 	var xpath: String = ""
 	var idHash: Int = 0 //FIXME as soon as model loader with compatibility mode is available this will be moved into constructor and 'always' be required by dump
 	/** coordinate where only this element is triggered and no actable child
@@ -23,8 +23,11 @@ import android.os.Build;
 import android.util.Log;
 
 import org.droidmate.deviceInterface.SerializationHelper;
+import org.droidmate.deviceInterface.SessionProtocol;
 import org.droidmate.deviceInterface.UiautomatorDaemonConstants;
+import org.droidmate.deviceInterface.WireFormat;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -121,7 +124,35 @@ public abstract class Uiautomator2DaemonTcpServerBase<ServerInputT extends Seria
 //          output.flush();
 
 					Log.v(tag, "input = new DataInputStream(clientSocket.getInputStream());");
-					DataInputStream input = new DataInputStream(clientSocket.getInputStream());
+					BufferedInputStream bufferedInput = new BufferedInputStream(clientSocket.getInputStream());
+					DataInputStream input = new DataInputStream(bufferedInput);
+
+					// A dropped client must not terminate the server, it reconnects on its next request.
+					SessionProtocol.Handshake handshake;
+					try {
+						handshake = SessionProtocol.readHandshake(bufferedInput, output);
+					} catch (IOException e) {
+						Log.w(tag, "Handshake on " + port + " failed, waiting for the next client", e);
+						closeClient(clientSocket);
+						continue;
+					}
+
+					if (handshake.isSession()) {
+						Log.d(tag, "serving session on " + port + " with wire format " + handshake.getWireFormat());
+						boolean stopRequested = false;
+						try {
+							stopRequested = SessionProtocol.serve(input, output, new SessionRequestHandler(), handshake.getWireFormat());
+							Log.v(tag, "session finished");
+						} catch (IOException e) {
+							Log.w(tag, "Session on " + port + " failed, waiting for the next client", e);
+						} finally {
+							closeClient(clientSocket);
+						}
+
+						if (stopRequested)
+							close();
+						continue;
+					}
 
 					ServerInputT serverInput = null;
 
@@ -144,7 +175,7 @@ public abstract class Uiautomator2DaemonTcpServerBase<ServerInputT extends Seria
 					Log.v(tag, "serverOutput = onServerRequest(serverInput, serverInputReadEx);");
 					serverOutput = onServerRequest(serverInput, serverInputReadEx);
 					Log.v(tag, "output.writeObject(serverOutput);");
-					SerializationHelper.writeObjectToStream(output, serverOutput);
+					WireFormat.writeResponse(output, serverOutput, handshake.getWireFormat());
 					Log.v(tag, "clientSocket.close();");
 					clientSocket.close();
 
@@ -162,6 +193,33 @@ public abstract class Uiautomator2DaemonTcpServerBase<ServerInputT extends Seria
 			}
 		}
 
+		private void closeClient(Socket clientSocket) {
+			try {
+				Log.v(tag, "clientSocket.close();");
+				clientSocket.close();
+			} catch (IOException e) {
+				Log.w(tag, "Failed to close client connection on " + port, e);
+			}
+		}
+
+		private class SessionRequestHandler implements SessionProtocol.RequestHandler {
+
+			@Override
+			public Serializable onRequest(Serializable input, Exception inputReadEx) {
+				@SuppressWarnings("unchecked")
+				ServerInputT serverInput = (ServerInputT) input;
+				return onServerRequest(serverInput, inputReadEx);
+			}
+
+			@Override
+			public boolean isStopRequest(Serializable input) {
+				@SuppressWarnings("unchecked")
+				ServerInputT serverInput = (ServerInputT) input;
+				// null if the request could not be read, e.g. the client closed the connection
+				return serverInput != null && shouldCloseServerSocket(serverInput);
+			}
+		}
+
 		private Exception handleInputReadObjectException(DataInputStream input, Exception e) throws IOException {
 			Exception serverInputReadEx;
 			Log.e(tag, "Exception was thrown while reading input sent to DroidmateServer from " +
@@ -72,6 +72,7 @@ object ExplorationAPI {
 	}
 
 	/****************************** Exploration API methods *****************************/
+	/** @return the exploration data of all apps, the list is empty if `Report.keepExplorationData` was disabled to save memory */
 	@JvmStatic
 	@JvmOverloads
 	fun explore(args: Array<String> = emptyArray(), strategies: List<ISelectableExplorationStrategy>? = null,
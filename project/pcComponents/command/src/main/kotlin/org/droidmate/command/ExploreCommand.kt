@@ -36,6 +36,7 @@ import org.droidmate.configuration.ConfigProperties.Exploration.runOnNotInlined
 import org.droidmate.configuration.ConfigProperties.ModelProperties.path.cleanDirs
 import org.droidmate.configuration.ConfigProperties.Output.reportDir
 import org.droidmate.configuration.ConfigProperties.Report.includePlots
+import org.droidmate.configuration.ConfigProperties.Report.keepExplorationData
 import org.droidmate.configuration.ConfigProperties.Selectors.actionLimit
 import org.droidmate.configuration.ConfigProperties.Selectors
 import org.droidmate.configuration.ConfigProperties.Selectors.playbackModelDir
@@ -75,6 +76,7 @@ import org.droidmate.exploration.strategy.widget.*
 import org.droidmate.logging.Markers
 import org.droidmate.misc.*
 import org.droidmate.report.AggregateStats
+import org.droidmate.report.ReportPipeline
 import org.droidmate.report.Reporter
 import org.droidmate.report.Summary
 import org.droidmate.report.apk.*
@@ -84,7 +86,6 @@ import org.droidmate.exploration.statemodel.EmptyActionResult
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.nio.file.Files
-import java.nio.file.Path
 import java.util.*
 
 open class ExploreCommand constructor(private val cfg: ConfigurationWrapper,
@@ -249,16 +250,6 @@ open class ExploreCommand constructor(private val cfg: ConfigurationWrapper,
 		return explorationData.first
 	}
 
-	private fun writeReports(reportDir: Path, resourceDir: Path, rawData: List<ExplorationContext>) {
-		if (!Files.exists(reportDir))
-			Files.createDirectories(reportDir)
-
-		assert(Files.exists(reportDir)) { "Unable to create report directory ($reportDir)" }
-
-		log.info("Writing reports")
-		reporters.forEach { it.write(reportDir.toAbsolutePath(), resourceDir.toAbsolutePath(), rawData) }
-	}
-
 	fun registerReporter(report: Reporter) {
 		reporters.add(report)
 	}
@@ -312,9 +303,11 @@ open class ExploreCommand constructor(private val cfg: ConfigurationWrapper,
 		val out : MutableList<ExplorationContext> = mutableListOf()
 
 
+		val reports = ReportPipeline(cfg.droidmateOutputReportDirPath.toAbsolutePath(), cfg.resourceDir.toAbsolutePath(), reporters)
+
 		val explorationExceptions: MutableList<ExplorationException> = mutableListOf()
 		try {
-			explorationExceptions += deployExploreSerialize(cfg, apks, out)
+			explorationExceptions += deployExploreSerialize(cfg, apks, reports, out)
 		} catch (deployExploreSerializeThrowable: Throwable) {
 			log.error("!!! Caught ${deployExploreSerializeThrowable.javaClass.simpleName} " +
 					"in execute(configuration, apks)->deployExploreSerialize(${cfg[deviceIndex]}, apks, out). " +
@@ -324,13 +317,14 @@ open class ExploreCommand constructor(private val cfg: ConfigurationWrapper,
 			throw deployExploreSerializeThrowable
 		}
 
-		writeReports(cfg.droidmateOutputReportDirPath, cfg.resourceDir, out)
+		reports.finish()
 
 		return Pair(out, explorationExceptions)
 	}
 
 	private fun deployExploreSerialize(cfg: ConfigurationWrapper,
 	                                   apks: List<Apk>,
+	                                   reports: ReportPipeline,
 	                                   out: MutableList<ExplorationContext>): List<ExplorationException> {
 		return this.deviceDeployer.withSetupDevice(cfg[deviceSerialNumber], cfg[deviceIndex]) { device ->
 
@@ -344,7 +338,7 @@ open class ExploreCommand constructor(private val cfg: ConfigurationWrapper,
 
 					allApksExplorationExceptions +=
 							this.apkDeployer.withDeployedApk(device, apk) { deployedApk ->
-								tryExploreOnDeviceAndSerialize(deployedApk, device, out)
+								tryExploreOnDeviceAndSerialize(deployedApk, device, reports, out)
 							}
 
 					if (allApksExplorationExceptions.any { it.shouldStopFurtherApkExplorations() }) {
@@ -363,12 +357,15 @@ open class ExploreCommand constructor(private val cfg: ConfigurationWrapper,
 
 	@Throws(DeviceException::class)
 	private fun tryExploreOnDeviceAndSerialize(
-			deployedApk: IApk, device: IRobustDevice, out: MutableList<ExplorationContext>) {
+			deployedApk: IApk, device: IRobustDevice, reports: ReportPipeline, out: MutableList<ExplorationContext>) {
 		val fallibleApkOut2 = this.run(deployedApk, device)
 
 		if (fallibleApkOut2.result != null) {
 //      fallibleApkOut2.result!!.serialize(this.storage2) //TODO
-			out.add(fallibleApkOut2.result!!)
+			reports.onAppExplored(fallibleApkOut2.result!!)
+			// otherwise the model of the app can be released, the reports which need all apps at once keep it on their own
+			if (cfg[keepExplorationData])
+				out.add(fallibleApkOut2.result!!)
 		}
 
 		if (fallibleApkOut2.exception != null)
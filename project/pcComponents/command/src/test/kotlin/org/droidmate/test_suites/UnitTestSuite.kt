@@ -26,6 +26,7 @@
 package org.droidmate.test_suites
 
 
+import org.droidmate.LibKotlinTestSuite
 import org.droidmate.report.ReporterTestSuite
 import org.droidmate.android_sdk.AdbWrapperTest
 import org.droidmate.configuration.ConfigurationBuilderTest
@@ -46,6 +47,7 @@ import org.junit.runners.Suite
 		AdbWrapperTest::class,
 		DeviceTest::class,
 		ExplorationTestSuite::class,
+		LibKotlinTestSuite::class,
 		ReporterTestSuite::class)
 class UnitTestSuite
 
@@ -0,0 +1,256 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.apis
+
+import org.droidmate.misc.DroidmateException
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.time.*
+
+/**
+ * <p>
+ * Decoder of the binary API log batches the monitor sends for [org.droidmate.misc.MonitorConstants.srvCmd_get_logs_binary].
+ * Contrary to the text payloads parsed by [ApiLogcatMessage.from], the batch already contains the structured data, the API
+ * signatures and stack traces are only shipped once per batch and referenced by id from the records.
+ *
+ * </p><p>
+ * The batch is decoded straight from the byte array, the only copies made are the strings themselves. Signature parts and
+ * stack traces are shared by all messages referencing them and the text payload of a message is only built on demand.
+ *
+ * </p><p>
+ * See org.droidmate.monitor.MonitorJavaTemplate.BinaryLogWriter for the layout.
+ * !!! DUPLICATION WARNING !!! of the format with org.droidmate.monitor.MonitorJavaTemplate.BinaryLogWriter
+ * </p>
+ */
+object ApiLogBatch {
+	/** "DMA1" */
+	const val MAGIC: Int = 0x444D4131
+
+	class Batch(val pid: String, val droppedLogs: Long, val messages: List<IApiLogcatMessage>)
+
+	private class Signature(val objectClass: String, val methodName: String, val returnClass: String, val paramTypes: List<String>)
+
+	/**
+	 * Logcat message of a decoded record, the payload is only rebuilt from [api] if somebody asks for it,
+	 * e.g. to trace the logs.
+	 */
+	private class DecodedLogcatMessage(override val time: LocalDateTime,
+	                                   override val level: String,
+	                                   override val tag: String,
+	                                   override val pidString: String,
+	                                   private val api: IApi,
+	                                   private var payload: String?) : ITimeFormattedLogcatMessage {
+		companion object {
+			private const val serialVersionUID: Long = 1
+		}
+
+		override val messagePayload: String
+			get() = payload ?: ApiLogcatMessage.toLogcatMessagePayload(api).also { payload = it }
+
+		override val toLogcatMessageString: String
+			get() = TimeFormattedLogcatMessage.from(time, level, tag, pidString, messagePayload).toLogcatMessageString
+
+		override fun toString(): String = TimeFormattedLogcatMessage.from(time, level, tag, pidString, messagePayload).toString()
+	}
+
+	/** Big endian reader over [bytes], strings are their UTF-8 byte length (-1 for null) followed by the bytes. */
+	private class Reader(private val bytes: ByteArray) {
+		var pos = 0
+
+		private fun require(n: Int) {
+			if (n < 0 || pos + n > bytes.size)
+				throw DroidmateException("Truncated API log batch, cannot read $n bytes at $pos of ${bytes.size}")
+		}
+
+		fun int(): Int {
+			require(4)
+			val b = bytes
+			val p = pos
+			pos += 4
+			return (b[p].toInt() and 0xff shl 24) or (b[p + 1].toInt() and 0xff shl 16) or
+					(b[p + 2].toInt() and 0xff shl 8) or (b[p + 3].toInt() and 0xff)
+		}
+
+		fun long(): Long = (int().toLong() shl 32) or (int().toLong() and 0xffffffffL)
+
+		fun stringOrNull(): String? {
+			val length = int()
+			if (length == -1) return null
+			require(length)
+			val s = String(bytes, pos, length, Charsets.UTF_8)
+			pos += length
+			return s
+		}
+
+		fun string(): String = stringOrNull() ?: throw DroidmateException("Unexpected null string in API log batch at $pos")
+	}
+
+	private fun unescape(s: String): String = if (s.indexOf('\\') < 0) s else s.replace("\\'", "'")
+
+	private fun zone(id: String, offsetMillis: Int): ZoneId =
+			try {
+				ZoneId.of(id)
+			} catch (e: DateTimeException) {
+				ZoneOffset.ofTotalSeconds(offsetMillis / 1000)
+			}
+
+	/**
+	 * @param level log level of the created messages, as for the messages read from the text logs
+	 * @param tag log tag of the created messages
+	 * @param timeMapper applied to the device local time of each record, e.g. to sync it with the host time
+	 */
+	@JvmStatic
+	@JvmOverloads
+	fun decode(bytes: ByteArray, level: String, tag: String, timeMapper: (LocalDateTime) -> LocalDateTime = { it }): Batch {
+		val r = Reader(bytes)
+		val magic = r.int()
+		if (magic != MAGIC)
+			throw DroidmateException("Not an API log batch, got magic ${Integer.toHexString(magic)}")
+		val pid = r.string()
+		val zoneId = r.string()
+		val zone = zone(zoneId, r.int())
+		val dropped = r.long()
+
+		val signatures = HashMap<Int, Signature>()
+		repeat(r.int()) {
+			val id = r.int()
+			val objectClass = r.string()
+			val methodName = r.string()
+			val returnClass = r.string()
+			val paramTypes = List(r.int()) { r.string() }
+			signatures[id] = Signature(objectClass, methodName, returnClass, paramTypes)
+		}
+
+		val traces = HashMap<Int, String>()
+		repeat(r.int()) {
+			val id = r.int()
+			traces[id] = r.string()
+		}
+
+		val count = r.int()
+		val messages = ArrayList<IApiLogcatMessage>(count)
+		repeat(count) {
+			val length = r.int()
+			val end = r.pos + length
+			val time = timeMapper(LocalDateTime.ofInstant(Instant.ofEpochMilli(r.long()), zone))
+			val threadId = r.long()
+			val apiId = r.int()
+
+			val message = if (apiId >= 0) {
+				val signature = signatures[apiId] ?: throw DroidmateException("API log batch references unknown api $apiId")
+				val paramValues = List(r.int()) { unescape(r.stringOrNull() ?: "null") }
+				if (paramValues.size != signature.paramTypes.size)
+					throw DroidmateException("API log batch record of ${signature.methodName} has ${paramValues.size} " +
+							"param values but ${signature.paramTypes.size} param types")
+				val traceId = r.int()
+				val stackTrace = if (traceId >= 0)
+					traces[traceId] ?: throw DroidmateException("API log batch references unknown stack trace $traceId")
+				else
+					r.string()
+				val api = Api(signature.objectClass, signature.methodName, signature.returnClass, signature.paramTypes,
+						paramValues, threadId.toString(), stackTrace)
+				ApiLogcatMessage(DecodedLogcatMessage(time, level, tag, pid, api, null), api)
+			} else {
+				// the monitor only had the text payload of this log
+				val payload = r.string()
+				val api = ApiLogcatMessage.from(payload)
+				ApiLogcatMessage(DecodedLogcatMessage(time, level, tag, pid, api, payload), api)
+			}
+			if (r.pos != end)
+				throw DroidmateException("API log batch record has length $length but ${r.pos - end + length} bytes were read")
+			messages.add(message)
+		}
+		return Batch(pid, dropped, messages)
+	}
+
+	/**
+	 * Encodes [logs] given as pairs of epoch millis and api call like the monitor does, used to test the host side
+	 * without a device. The [IApi.threadId]s have to be numbers.
+	 */
+	@JvmStatic
+	@JvmOverloads
+	fun encode(pid: String, logs: List<Pair<Long, IApi>>, zoneId: ZoneId = ZoneOffset.UTC, droppedLogs: Long = 0): ByteArray {
+		val apiIds = LinkedHashMap<List<String>, Int>()
+		val traceIds = LinkedHashMap<String, Int>()
+		logs.forEach { (_, api) ->
+			apiIds.getOrPut(listOf(api.objectClass, api.methodName, api.returnClass) + api.paramTypes) { apiIds.size }
+			traceIds.getOrPut(api.stackTrace) { traceIds.size }
+		}
+
+		val bytes = ByteArrayOutputStream()
+		val out = DataOutputStream(bytes)
+		fun writeString(s: String?) {
+			if (s == null)
+				out.writeInt(-1)
+			else {
+				val b = s.toByteArray(Charsets.UTF_8)
+				out.writeInt(b.size)
+				out.write(b)
+			}
+		}
+
+		out.writeInt(MAGIC)
+		writeString(pid)
+		writeString(zoneId.id)
+		out.writeInt(zoneId.rules.getOffset(Instant.now()).totalSeconds * 1000)
+		out.writeLong(droppedLogs)
+
+		out.writeInt(apiIds.size)
+		apiIds.forEach { (signature, id) ->
+			out.writeInt(id)
+			signature.take(3).forEach { writeString(it) }
+			out.writeInt(signature.size - 3)
+			signature.drop(3).forEach { writeString(it) }
+		}
+		out.writeInt(traceIds.size)
+		traceIds.forEach { (trace, id) ->
+			out.writeInt(id)
+			writeString(trace)
+		}
+
+		out.writeInt(logs.size)
+		val record = ByteArrayOutputStream()
+		val recordOut = DataOutputStream(record)
+		logs.forEach { (epochMillis, api) ->
+			record.reset()
+			recordOut.writeLong(epochMillis)
+			recordOut.writeLong(api.threadId.toLong())
+			recordOut.writeInt(apiIds[listOf(api.objectClass, api.methodName, api.returnClass) + api.paramTypes]!!)
+			recordOut.writeInt(api.paramValues.size)
+			api.paramValues.forEach { value ->
+				val b = value.replace("'", "\\'").toByteArray(Charsets.UTF_8)
+				recordOut.writeInt(b.size)
+				recordOut.write(b)
+			}
+			recordOut.writeInt(traceIds[api.stackTrace]!!)
+			recordOut.flush()
+			out.writeInt(record.size())
+			record.writeTo(out)
+		}
+		out.flush()
+		return bytes.toByteArray()
+	}
+}
@@ -64,6 +64,9 @@ class MonitorConstants {
 		val srvCmd_connCheck = "connCheck"
 		@JvmStatic
 		val srvCmd_get_logs = "getLogs"
+		/** answered with the logs encoded by [org.droidmate.apis.ApiLogBatch] instead of [srvCmd_get_logs]'s string lists */
+		@JvmStatic
+		val srvCmd_get_logs_binary = "getLogsBinary"
 		@JvmStatic
 		val srvCmd_get_time = "getTime"
 		@JvmStatic
@@ -76,5 +79,21 @@ class MonitorConstants {
 		//public static final Locale monitor_time_formatter_locale  = BuildConstants.getLocale();
 		@JvmStatic
 		val monitor_time_formatter_locale: Locale = Locale.US
+
+		/**
+		 * If set, the monitor interns the stack traces of the monitored calls and only serializes each distinct trace once
+		 * per transfer of the logs (and once for logcat), otherwise each call builds its stack trace string directly.
+		 */
+		@JvmStatic
+		val monitor_stacktrace_interning = true
+		/** maximal number of frames recorded per stack trace, counted from the innermost frame, 0 records all frames */
+		@JvmStatic
+		val monitor_stacktrace_max_depth = 0
+		/** the stack trace is only recorded for every n-th monitored call, all other calls log an empty stack trace */
+		@JvmStatic
+		val monitor_stacktrace_sampling_rate = 1
+		/** bound for the number of distinct interned stack traces, further traces are logged as plain strings */
+		@JvmStatic
+		val monitor_stacktrace_max_interned = 4096
 	}
 }
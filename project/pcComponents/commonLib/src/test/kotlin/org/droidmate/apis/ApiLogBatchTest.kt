@@ -0,0 +1,103 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.apis
+
+import org.droidmate.misc.DroidmateException
+import org.junit.FixMethodOrder
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import org.junit.runners.MethodSorters
+import java.time.LocalDateTime
+import java.time.ZoneId
+import java.time.ZoneOffset
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@RunWith(JUnit4::class)
+class ApiLogBatchTest {
+	private val trace = "dalvik.system.VMStack.getThreadStackTrace(Native Method)->" +
+			"org.droidmate.monitor.Monitor.redir_android_webkit_WebView_loadUrl1(Monitor.java:1901)->" +
+			"dalvik.system.NativeStart.main(Native Method)"
+
+	private val apis = listOf(
+			Api("android.webkit.WebView", "loadUrl", "void", listOf("java.lang.String"), listOf("http://droidmate.org"), "1", trace),
+			Api("android.net.ConnectivityManager", "getActiveNetworkInfo", "android.net.NetworkInfo", emptyList(), emptyList(), "12", trace),
+			Api("android.webkit.WebView", "loadUrl", "void", listOf("java.lang.String"), listOf("null"), "1", "other->trace"))
+
+	private fun assertSameApi(actual: IApi, expected: IApi) {
+		assertEquals(expected.objectClass, actual.objectClass)
+		assertEquals(expected.methodName, actual.methodName)
+		assertEquals(expected.returnClass, actual.returnClass)
+		assertEquals(expected.paramTypes, actual.paramTypes)
+		assertEquals(expected.paramValues, actual.paramValues)
+		assertEquals(expected.threadId, actual.threadId)
+		assertEquals(expected.stackTrace, actual.stackTrace)
+	}
+
+	@Test
+	fun `Round-trips structured logs`() {
+		val start = LocalDateTime.of(2018, 7, 1, 12, 30, 15, 123_000_000)
+		val zone = ZoneId.of("Europe/Berlin")
+		val epochMillis = start.atZone(zone).toInstant().toEpochMilli()
+		val logs = apis + Api("android.webkit.WebView", "loadUrl", "void", listOf("java.lang.String"), listOf("javascript:f('\\'')"), "2", trace)
+		val bytes = ApiLogBatch.encode("3993", logs.mapIndexed { i, api -> Pair(epochMillis + i, api as IApi) }, zone, 2)
+
+		val batch = ApiLogBatch.decode(bytes, "I", "tag") { it.plusHours(1) }
+
+		assertEquals("3993", batch.pid)
+		assertEquals(2L, batch.droppedLogs)
+		assertEquals(logs.size, batch.messages.size)
+		batch.messages.forEachIndexed { i, message ->
+			assertSameApi(message, logs[i])
+			assertEquals(start.plusHours(1).plusNanos(i * 1_000_000L), message.time)
+			assertEquals("I", message.level)
+			assertEquals("tag", message.tag)
+			assertEquals("3993", message.pidString)
+		}
+		// the signatures of the messages calling the same api are shared
+		assert(batch.messages[0].paramTypes === batch.messages[2].paramTypes)
+	}
+
+	@Test
+	fun `Decodes the same apis as the text payload parser`() {
+		val bytes = ApiLogBatch.encode("1", apis.map { Pair(0L, it as IApi) }, ZoneOffset.UTC)
+
+		ApiLogBatch.decode(bytes, "I", "tag").messages.forEachIndexed { i, message ->
+			assertSameApi(message, ApiLogcatMessage.from(message.messagePayload))
+			assertSameApi(message, apis[i])
+		}
+	}
+
+	@Test
+	fun `Rejects truncated batches`() {
+		val bytes = ApiLogBatch.encode("1", apis.map { Pair(0L, it as IApi) })
+
+		assertFailsWith(DroidmateException::class) { ApiLogBatch.decode(bytes.copyOf(bytes.size - 3), "I", "tag") }
+		assertFailsWith(DroidmateException::class) { ApiLogBatch.decode(ByteArray(8), "I", "tag") }
+	}
+}
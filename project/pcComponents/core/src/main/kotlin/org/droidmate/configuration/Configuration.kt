@@ -145,6 +145,9 @@ abstract class ConfigProperties {
 		object dump : PropertyGroup() {
 			val sep by stringType
 			val onEachAction by booleanType
+			val queueSize by intType
+			val syncInterval by intType
+			val storeFormat by stringType
 
 			val stateFileExtension by stringType
 
@@ -163,9 +166,16 @@ abstract class ConfigProperties {
 			}
 		}
 
+		object imgId : PropertyGroup() {
+			val engine by stringType
+			val maxDistance by intType
+			val cacheSize by intType
+		}
+
 		object Features : PropertyGroup() {
 			val statementCoverage by booleanType
 			val statementCoverageDir by uriType
+			val eventBusCapacity by intType
 		}
 
 	}
@@ -267,6 +277,7 @@ abstract class ConfigProperties {
 	object Report : PropertyGroup() {
 		val inputDir by uriType
 		val includePlots by booleanType
+		val keepExplorationData by booleanType
 	}
 
 	object UiAutomatorServer : PropertyGroup() {
@@ -275,5 +286,8 @@ abstract class ConfigProperties {
 		val startTimeout by intType
 		val socketTimeout by intType
 		val basePort by intType
+		val useSessionConnection by booleanType
+		val keepAliveInterval by intType
+		val wireFormat by intType
 	}
 }
\ No newline at end of file
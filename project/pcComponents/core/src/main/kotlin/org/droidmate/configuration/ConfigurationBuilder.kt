@@ -74,6 +74,7 @@ import org.droidmate.configuration.ConfigProperties.Output.outputDir
 import org.droidmate.configuration.ConfigProperties.Output.reportDir
 import org.droidmate.configuration.ConfigProperties.Output.screenshotDir
 import org.droidmate.configuration.ConfigProperties.Report.includePlots
+import org.droidmate.configuration.ConfigProperties.Report.keepExplorationData
 import org.droidmate.configuration.ConfigProperties.Report.inputDir
 import org.droidmate.configuration.ConfigProperties.Selectors.actionLimit
 import org.droidmate.configuration.ConfigProperties.Selectors.playbackModelDir
@@ -99,6 +100,9 @@ import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.socketTime
 import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.startTimeout
 import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.waitForInteractableTimeout
 import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.waitForIdleTimeout
+import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.useSessionConnection
+import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.keepAliveInterval
+import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.wireFormat
 import org.droidmate.logging.Markers.Companion.runData
 import org.droidmate.misc.BuildConstants
 import org.slf4j.Logger
@@ -192,12 +196,16 @@ class ConfigurationBuilder : IConfigurationBuilder {
 			// Report
 			CommandLineOption(inputDir, description = "Path to the directory containing report input. The input is to be DroidMate exploration output."),
 			CommandLineOption(includePlots, description = "Include plots on reports (requires gnu plot)."),
+			CommandLineOption(keepExplorationData, description = "Keep the exploration data of all apps until the end of the run, such that it is returned by the exploration API. Disable it to release the data of each app as soon as its reports were written, the API returns an empty list then."),
 			// UiAutomatorServer
 			CommandLineOption(startTimeout, description = "How long DroidMate should wait, in milliseconds, for message on logcat confirming that UiAutomatorDaemonServer has started on android (virtual) device."),
 			CommandLineOption(waitForIdleTimeout, description = "Timeout for a device to be idle an operation."),
 			CommandLineOption(waitForInteractableTimeout, description = "Timeout for a widget to be available after an operation."),
 			CommandLineOption(socketTimeout, description = "Socket timeout to communicate with the UiDaemonServer."),
-			CommandLineOption(basePort, description = "The base port for the communication with the devices. DroidMate communicates over this base port + device index.")
+			CommandLineOption(basePort, description = "The base port for the communication with the devices. DroidMate communicates over this base port + device index."),
+			CommandLineOption(useSessionConnection, description = "Keep one connection to the UiDaemonServer open for all commands instead of connecting once per command."),
+			CommandLineOption(keepAliveInterval, description = "Interval in milliseconds in which an idle UiDaemonServer session connection is checked. Set to 0 to disable."),
+			CommandLineOption(wireFormat, description = "Encoding of the UiDaemonServer responses: 0 = Java serialization, 1 = compact binary format (version 1), 2 = binary format shipping only the GUI changes since the previous response (requires useSessionConnection).")
 			).first, fs)
 
 	@Throws(ConfigurationException::class)
@@ -36,6 +36,9 @@ import org.droidmate.configuration.ConfigProperties.Exploration.apiVersion
 import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.socketTimeout
 import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.waitForInteractableTimeout
 import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.startTimeout
+import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.useSessionConnection
+import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.keepAliveInterval
+import org.droidmate.configuration.ConfigProperties.UiAutomatorServer.wireFormat
 import org.droidmate.configuration.ConfigurationWrapper
 import org.droidmate.device.android_sdk.ApkExplorationException
 import org.droidmate.deviceInterface.DeviceCommand
@@ -110,7 +113,10 @@ class AndroidDevice constructor(private val serialNumber: String,
 			cfg.uiAutomatorPort,
 			cfg[startTimeout],
 			cfg[waitForInteractableTimeout],
-			cfg.monitorPort)
+			cfg.monitorPort,
+			cfg[useSessionConnection],
+			cfg[keepAliveInterval],
+			cfg[wireFormat])
 
 	@Throws(DeviceException::class)
 	override fun pushFile(jar: Path) {
@@ -258,6 +264,20 @@ class AndroidDevice constructor(private val serialNumber: String,
 		}
 	}
 
+	override fun readAndClearMonitorTcpLogBatch(): ByteArray? {
+		log.debug("readAndClearMonitorTcpLogBatch()")
+
+		return try {
+			this.tcpClients.getLogBatch()
+		}
+		catch(e: ApkExplorationException){
+			log.error("Error reading APIs from monitor TCP server. Proceeding with exploration ${e.message}")
+			log.error("Trace: ${e.stackTrace}")
+
+			ByteArray(0)
+		}
+	}
+
 	override fun getCurrentTime(): LocalDateTime {
 		val messages = this.tcpClients.getCurrentTime()
 
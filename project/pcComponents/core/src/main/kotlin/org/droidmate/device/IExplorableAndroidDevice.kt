@@ -51,6 +51,13 @@ interface IExplorableAndroidDevice {
 	@Throws(DeviceException::class)
 	fun readAndClearMonitorTcpMessages(): List<List<String>>
 
+	/**
+	 * Binary counterpart of [readAndClearMonitorTcpMessages], see [org.droidmate.apis.ApiLogBatch].
+	 * @return null if the binary logs are not supported, the logs have to be read with [readAndClearMonitorTcpMessages] then
+	 */
+	@Throws(DeviceException::class)
+	fun readAndClearMonitorTcpLogBatch(): ByteArray? = null
+
 	@Throws(DeviceException::class)
 	fun getCurrentTime(): LocalDateTime
 
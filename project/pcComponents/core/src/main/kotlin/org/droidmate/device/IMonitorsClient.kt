@@ -36,6 +36,13 @@ interface IMonitorsClient {
 	@Throws(DeviceException::class)
 	fun getLogs(): List<List<String>>
 
+	/**
+	 * Same as [getLogs] but the logs are encoded by the monitor as [org.droidmate.apis.ApiLogBatch].
+	 * @return null if the monitor does not support the binary logs, in which case [getLogs] has to be used
+	 */
+	@Throws(DeviceException::class)
+	fun getLogBatch(): ByteArray?
+
 	@Throws(DeviceException::class)
 	fun closeMonitorServers()
 
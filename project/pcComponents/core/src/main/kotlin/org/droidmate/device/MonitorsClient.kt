@@ -28,6 +28,7 @@ import org.droidmate.device.android_sdk.DeviceException
 import org.droidmate.device.android_sdk.IAdbWrapper
 import org.droidmate.misc.MonitorConstants
 import org.slf4j.LoggerFactory
+import java.io.Serializable
 import java.util.LinkedList
 
 class MonitorsClient(socketTimeout: Int,
@@ -41,6 +42,10 @@ class MonitorsClient(socketTimeout: Int,
 
 	// remove this.getPorts from all methods
 	private val monitorTcpClient: ITcpClientBase<String, LinkedList<ArrayList<String>>> = TcpClientBase(socketTimeout)
+	/** the answer of [MonitorConstants.srvCmd_get_logs_binary] is a byte array, monitors not knowing the command answer with a list */
+	private val monitorBinaryTcpClient: ITcpClientBase<String, Serializable> = TcpClientBase(socketTimeout)
+	/** cleared once the monitor turned out to not support the binary logs, afterwards only [getLogs] is used */
+	private var binaryLogsSupported = true
 
 	override fun anyMonitorIsReachable(): Boolean {
 		val out = this.isServerReachable(this.getPort())
@@ -86,6 +91,26 @@ class MonitorsClient(socketTimeout: Int,
 		}
 	}
 
+	override fun getLogBatch(): ByteArray? {
+		if (!binaryLogsSupported)
+			return null
+
+		val out = try {
+			monitorBinaryTcpClient.queryServer(MonitorConstants.srvCmd_get_logs_binary, this.getPort())
+		} catch (ignored: TcpServerUnreachableException) {
+			log.trace("None of the monitor TCP servers were available while obtaining API logs.")
+			return ByteArray(0)
+		}
+
+		return if (out is ByteArray)
+			out
+		else {
+			log.info("The monitor does not support binary API logs, falling back to text logs.")
+			binaryLogsSupported = false
+			null
+		}
+	}
+
 	override fun closeMonitorServers() {
 		try {
 			monitorTcpClient.queryServer(MonitorConstants.srvCmd_close, this.getPort())
@@ -27,6 +27,8 @@ package org.droidmate.device
 
 import org.droidmate.device.android_sdk.DeviceException
 import org.droidmate.deviceInterface.SerializationHelper
+import org.droidmate.deviceInterface.SessionProtocol
+import org.droidmate.deviceInterface.WireFormat
 import java.io.DataInputStream
 import java.io.DataOutputStream
 import java.io.EOFException
@@ -36,8 +38,13 @@ import java.net.Socket
 import java.net.SocketException
 import java.net.SocketTimeoutException
 
+/**
+ * Opens a new connection for each request. If a [wireFormat] other than Java serialization is requested, it is negotiated
+ * with the server before the request is sent.
+ */
 class TcpClientBase<in InputToServerT : Serializable, out OutputFromServerT : Serializable>
-	constructor(private val socketTimeout: Int) : ITcpClientBase<InputToServerT, OutputFromServerT> {
+	@JvmOverloads constructor(private val socketTimeout: Int,
+	                          private val wireFormat: Int = WireFormat.JAVA_SERIALIZATION) : ITcpClientBase<InputToServerT, OutputFromServerT> {
 	/*companion object {
 			private val log = LoggerFactory.getLogger(TcpClientBase::class.java)
 	}*/
@@ -68,9 +75,12 @@ class TcpClientBase<in InputToServerT : Serializable, out OutputFromServerT : Se
 			val outputStream = DataOutputStream(socket.outputStream)
 //        log.trace("got outputStream")
 
+			val responseFormat = if (wireFormat == WireFormat.JAVA_SERIALIZATION) wireFormat
+			else SessionProtocol.writeHandshake(outputStream, inputStream, false, wireFormat)
+
 			SerializationHelper.writeObjectToStream(outputStream, input)
 			outputStream.flush()
-			val output = SerializationHelper.readObjectFromStream(inputStream) as OutputFromServerT
+			val output = WireFormat.readResponse(inputStream, responseFormat) as OutputFromServerT
 
 //      log.trace("socket.close()")
 			socket.close()
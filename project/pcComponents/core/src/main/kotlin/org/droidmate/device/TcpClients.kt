@@ -28,6 +28,7 @@ import org.droidmate.device.android_sdk.DeviceException
 import org.droidmate.device.android_sdk.IAdbWrapper
 import org.droidmate.deviceInterface.DeviceCommand
 import org.droidmate.deviceInterface.DeviceResponse
+import org.droidmate.deviceInterface.WireFormat
 
 class TcpClients constructor(adbWrapper: IAdbWrapper,
                              deviceSerialNumber: String,
@@ -36,7 +37,10 @@ class TcpClients constructor(adbWrapper: IAdbWrapper,
                              uiautomatorDaemonTcpPort: Int,
                              uiautomatorDaemonServerServerStartTimeout: Int,
                              uiautomatorDaemonServerWaitForInteractableTimeout: Int,
-                             portOffset: Int) : ITcpClients {
+                             portOffset: Int,
+                             uiautomatorDaemonUseSession: Boolean = false,
+                             uiautomatorDaemonKeepAliveInterval: Int = 0,
+                             uiautomatorDaemonWireFormat: Int = WireFormat.JAVA_SERIALIZATION) : ITcpClients {
     private val monitorsClient: IMonitorsClient = MonitorsClient(monitorSocketTimeout, deviceSerialNumber, adbWrapper, portOffset)
     private val uiautomatorClient: IUiautomatorDaemonClient = UiautomatorDaemonClient(
             adbWrapper,
@@ -44,7 +48,10 @@ class TcpClients constructor(adbWrapper: IAdbWrapper,
             uiautomatorDaemonTcpPort,
             uiautomatorDaemonSocketTimeout,
             uiautomatorDaemonServerServerStartTimeout,
-            uiautomatorDaemonServerWaitForInteractableTimeout)
+            uiautomatorDaemonServerWaitForInteractableTimeout,
+            uiautomatorDaemonUseSession,
+            uiautomatorDaemonKeepAliveInterval,
+            uiautomatorDaemonWireFormat)
 
 	override fun anyMonitorIsReachable(): Boolean = monitorsClient.anyMonitorIsReachable()
 
@@ -56,6 +63,8 @@ class TcpClients constructor(adbWrapper: IAdbWrapper,
 
 	override fun getLogs(): List<List<String>> = monitorsClient.getLogs()
 
+	override fun getLogBatch(): ByteArray? = monitorsClient.getLogBatch()
+
 	override fun getPort(): Int = monitorsClient.getPort()
 
 	override fun getUiaDaemonThreadIsAlive(): Boolean = uiautomatorClient.getUiaDaemonThreadIsAlive()
@@ -0,0 +1,255 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.device.android_sdk.DeviceException
+import org.droidmate.deviceInterface.SessionProtocol
+import org.droidmate.deviceInterface.SnapshotDelta
+import org.droidmate.deviceInterface.WireFormat
+import org.slf4j.LoggerFactory
+import java.io.*
+import java.net.ConnectException
+import java.net.Socket
+import java.net.SocketException
+import java.net.SocketTimeoutException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Keeps one connection per port open and sends all requests over it as [SessionProtocol] frames, instead of opening a new socket
+ * for each request as [TcpClientBase] does.
+ *
+ * Each request carries a unique id, responses with other ids (i.e. late answers to requests which previously timed out) are discarded.
+ * Before an open connection is reused, it is checked whether the server closed it in the meantime (e.g. the daemon or the port forward
+ * was restarted), in that case the request is sent over a new connection. If the connection is found to be broken before the request
+ * was completely sent, a new connection is established and the request is sent again. Failures while waiting for the response are not retried, since the server may already have executed the
+ * request, instead the connection is dropped and the next request reconnects.
+ * If [keepAliveInterval] is positive, idle connections are pinged such that broken port forwards are detected before the next request.
+ * Responses are encoded in [wireFormat] if the server supports it, see [SessionProtocol.writeHandshake].
+ * For [WireFormat.DELTA_V1] each connection keeps the last GUI snapshot to apply the following deltas to, if a delta does not match it
+ * the full snapshot is requested again.
+ */
+class TcpSessionClient<in InputToServerT : Serializable, out OutputFromServerT : Serializable>
+@JvmOverloads constructor(private val socketTimeout: Int,
+                          private val keepAliveInterval: Int = 0,
+                          private val wireFormat: Int = WireFormat.JAVA_SERIALIZATION) : ITcpClientBase<InputToServerT, OutputFromServerT>, Closeable {
+	companion object {
+		private val log by lazy { LoggerFactory.getLogger(TcpSessionClient::class.java) }
+	}
+
+	private class Connection(val port: Int, val socket: Socket) {
+		private val bufferedInput = BufferedInputStream(socket.inputStream)
+		val input = DataInputStream(bufferedInput)
+		val output = DataOutputStream(BufferedOutputStream(socket.outputStream))
+		@Volatile var lastUsed = System.currentTimeMillis()
+		var wireFormat = WireFormat.JAVA_SERIALIZATION
+		var deltas: SnapshotDelta.Decoder? = null
+
+		fun close() {
+			try {
+				socket.close()
+			} catch (ignored: IOException) {
+			}
+		}
+
+		/**
+		 * Whether the server closed this connection since it was last used, i.e. the next read would hit the end of the stream.
+		 * A write to such a connection usually still succeeds, therefore it has to be detected before the request is sent.
+		 * Bytes which are already available (e.g. a late response) stay buffered for the next read.
+		 */
+		fun isClosedByPeer(socketTimeout: Int): Boolean {
+			if (socket.isClosed) return true
+			return try {
+				socket.soTimeout = 1
+				bufferedInput.mark(1)
+				if (bufferedInput.read() < 0) true
+				else {
+					bufferedInput.reset()
+					false
+				}
+			} catch (e: SocketTimeoutException) {
+				false  // nothing to read, the connection is still open
+			} catch (e: IOException) {
+				true
+			} finally {
+				try {
+					socket.soTimeout = socketTimeout
+				} catch (ignored: IOException) {
+				}
+			}
+		}
+	}
+
+	private val serverAddress = "localhost"
+	private val requestIds = AtomicLong(0)
+	private val lock = Any()
+	private var connection: Connection? = null
+
+	/** started with the first connection and shut down by [close], the client may be reused afterwards (e.g. after a daemon restart) */
+	private var keepAlive: ScheduledExecutorService? = null
+
+	@Suppress("UNCHECKED_CAST")
+	@Throws(TcpServerUnreachableException::class, DeviceException::class)
+	override fun queryServer(input: InputToServerT, port: Int): OutputFromServerT {
+		synchronized(lock) {
+			try {
+				val payload = SessionProtocol.toPayload(input)
+				val requestId = requestIds.incrementAndGet()
+				val con = send(payload, requestId, port)
+
+				return try {
+					decode(con, awaitResponse(con, requestId), requestId) as OutputFromServerT
+				} catch (e: IOException) {
+					drop(con)
+					throw e
+				}
+			} catch (e: EOFException) {
+				throw TcpServerUnreachableException(e)
+			} catch (e: SocketTimeoutException) {
+				throw TcpServerUnreachableException(e)
+			} catch (e: SocketException) {
+				throw TcpServerUnreachableException(e)
+			} catch (e: TcpServerUnreachableException) {
+				throw e
+			} catch (t: Throwable) {
+				throw DeviceException("TcpSessionClient has thrown a ${t.javaClass.simpleName} while querying server. " +
+						"Requesting to stop further apk explorations.", t, true)
+			}
+		}
+	}
+
+	/** writes the request, reconnecting once if the current connection turns out to be broken */
+	private fun send(payload: ByteArray, requestId: Long, port: Int): Connection {
+		val con = getConnection(port)
+		return try {
+			SessionProtocol.writeFrame(con.output, SessionProtocol.FRAME_REQUEST, requestId, payload)
+			con
+		} catch (e: IOException) {
+			log.debug("session connection to port $port broken (${e.message}), reconnecting")
+			drop(con)
+			getConnection(port).also { SessionProtocol.writeFrame(it.output, SessionProtocol.FRAME_REQUEST, requestId, payload) }
+		}
+	}
+
+	private fun awaitResponse(con: Connection, requestId: Long): ByteArray {
+		while (true) {
+			val frame = SessionProtocol.readFrame(con.input)
+			when {
+				frame.type == SessionProtocol.FRAME_RESPONSE && frame.requestId == requestId -> {
+					con.lastUsed = System.currentTimeMillis()
+					return frame.payload
+				}
+				frame.type == SessionProtocol.FRAME_RESPONSE ->
+					log.debug("discarding stale response for request ${frame.requestId} while waiting for $requestId")
+				frame.type == SessionProtocol.FRAME_PONG -> Unit
+				else -> throw IOException("Unexpected session frame $frame while waiting for response $requestId")
+			}
+		}
+	}
+
+	private fun decode(con: Connection, payload: ByteArray, requestId: Long): Any {
+		val deltas = con.deltas ?: return SessionProtocol.fromPayload(payload, con.wireFormat)
+		return deltas.decode(payload) ?: run {
+			log.debug("snapshot delta of request $requestId does not match the last received snapshot, requesting the full snapshot")
+			SessionProtocol.writeFrame(con.output, SessionProtocol.FRAME_RESYNC, requestId)
+			deltas.decode(awaitResponse(con, requestId)) ?: throw IOException("The server answered the resync of request $requestId with a delta")
+		}
+	}
+
+	@Throws(TcpServerUnreachableException::class)
+	private fun getConnection(port: Int): Connection {
+		connection?.let {
+			when {
+				it.port != port -> drop(it)
+				!it.isClosedByPeer(socketTimeout) -> return it
+				else -> {
+					log.debug("session connection to port $port was closed by the server, reconnecting")
+					drop(it)
+				}
+			}
+		}
+		try {
+			val socket = Socket(serverAddress, port)
+			assert(socket.isConnected)
+			socket.soTimeout = socketTimeout
+			socket.tcpNoDelay = true
+			socket.keepAlive = true
+			return Connection(port, socket).also {
+				it.wireFormat = SessionProtocol.writeHandshake(it.output, it.input, true, wireFormat)
+				if (it.wireFormat == WireFormat.DELTA_V1) it.deltas = SnapshotDelta.Decoder()
+				connection = it
+				startKeepAlive()
+			}
+		} catch (e: ConnectException) {
+			throw TcpServerUnreachableException(e)
+		}
+	}
+
+	private fun drop(con: Connection) {
+		con.close()
+		if (connection === con) connection = null
+	}
+
+	private fun startKeepAlive() {
+		if (keepAliveInterval <= 0 || keepAlive != null) return
+		keepAlive = Executors.newSingleThreadScheduledExecutor { r -> Thread(r, "tcp-session-keepalive").apply { isDaemon = true } }.also {
+			it.scheduleWithFixedDelay({ ping() }, keepAliveInterval.toLong(), keepAliveInterval.toLong(), TimeUnit.MILLISECONDS)
+		}
+	}
+
+	private fun ping() {
+		synchronized(lock) {
+			val con = connection ?: return
+			if (System.currentTimeMillis() - con.lastUsed < keepAliveInterval) return
+			try {
+				SessionProtocol.writeFrame(con.output, SessionProtocol.FRAME_PING, requestIds.incrementAndGet())
+				val frame = SessionProtocol.readFrame(con.input)
+				if (frame.type != SessionProtocol.FRAME_PONG)
+					throw IOException("Unexpected session frame $frame as keepalive answer")
+				con.lastUsed = System.currentTimeMillis()
+			} catch (e: IOException) {
+				log.debug("keepalive on port ${con.port} failed (${e.message}), dropping the connection")
+				drop(con)
+			}
+		}
+	}
+
+	override fun close() {
+		synchronized(lock) {
+			keepAlive?.shutdownNow()
+			keepAlive = null
+			connection?.let { con ->
+				try {
+					SessionProtocol.writeFrame(con.output, SessionProtocol.FRAME_CLOSE, requestIds.incrementAndGet())
+				} catch (ignored: IOException) {
+				}
+				drop(con)
+			}
+		}
+	}
+}
@@ -30,13 +30,18 @@ import org.droidmate.device.android_sdk.IAdbWrapper
 import org.droidmate.deviceInterface.DeviceCommand
 import org.droidmate.deviceInterface.DeviceResponse
 import org.droidmate.deviceInterface.UiautomatorDaemonConstants
+import org.droidmate.deviceInterface.WireFormat
+import java.io.Closeable
 
 class UiautomatorDaemonClient constructor(private val adbWrapper: IAdbWrapper,
                                           private val deviceSerialNumber: String,
                                           private val port: Int,
                                           socketTimeout: Int,
                                           private val startTimeout: Int,
-                                          private val waitForInteractableTimeout: Int) : IUiautomatorDaemonClient {
+                                          private val waitForInteractableTimeout: Int,
+                                          useSessionConnection: Boolean = false,
+                                          keepAliveInterval: Int = 0,
+                                          wireFormat: Int = WireFormat.JAVA_SERIALIZATION) : IUiautomatorDaemonClient {
 
 	companion object {
 		@JvmStatic
@@ -48,7 +53,10 @@ class UiautomatorDaemonClient constructor(private val adbWrapper: IAdbWrapper,
 		}
 	}
 
-	private val client = TcpClientBase<DeviceCommand, DeviceResponse>(socketTimeout)
+	/** either one socket per command or one long-lived connection for all commands, see [TcpSessionClient] */
+	private val client: ITcpClientBase<DeviceCommand, DeviceResponse> =
+			if (useSessionConnection) TcpSessionClient(socketTimeout, keepAliveInterval, wireFormat)
+			else TcpClientBase(socketTimeout, wireFormat)
 
 	private var uiaDaemonThread: Thread? = null
 
@@ -101,6 +109,7 @@ class UiautomatorDaemonClient constructor(private val adbWrapper: IAdbWrapper,
 	override fun waitForUiaDaemonToClose() {
 		assert(uiaDaemonThread != null)
 		try {
+			(client as? Closeable)?.close()
 			uiaDaemonThread?.join()
 			assert(!this.getUiaDaemonThreadIsAlive())
 		} catch (e: InterruptedException) {
@@ -597,6 +597,16 @@ Logcat reference:
 		this.executeCommand(deviceSerialNumber, "", "Take screenshot step 3: remove screenshot on device.", "shell rm", devicePath)
 	}
 
+	override fun startLogcatStream(deviceSerialNumber: String, vararg logcatParams: String): Process {
+		val cmdLineParams = listOf(cfg.adbCommand, "-s", deviceSerialNumber, "logcat", *logcatParams)
+		try {
+			log.trace("Starting logcat stream: ${cmdLineParams.joinToString(" ")}")
+			return ProcessBuilder(cmdLineParams).redirectErrorStream(true).start()
+		} catch (e: IOException) {
+			throw AdbWrapperException("Starting adb command '${cmdLineParams.joinToString(" ")}' failed", e)
+		}
+	}
+
 	override fun reconnect(deviceSerialNumber: String) {
 		// Sometimes (roughly 50% of cases) instead of "done" it prints out "error: no devices/emulators found"
 		this.executeCommand(deviceSerialNumber, "", "reconnect", "reconnect")
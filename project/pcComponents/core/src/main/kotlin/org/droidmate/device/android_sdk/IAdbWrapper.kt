@@ -79,6 +79,13 @@ interface IAdbWrapper {
 
 	fun readMessagesFromLogcat(deviceSerialNumber: String, messageTag: String): List<String>
 
+	/**
+	 * Starts a long running `adb logcat` with the given [logcatParams], its output (stdout and stderr) can be consumed as stream
+	 * until the process is destroyed by the caller.
+	 */
+	@Throws(AdbWrapperException::class)
+	fun startLogcatStream(deviceSerialNumber: String, vararg logcatParams: String): Process
+
 	@Throws(AdbWrapperException::class)
 	fun listPackages(deviceSerialNumber: String): String
 
@@ -41,6 +41,9 @@ import java.time.format.DateTimeFormatter
 class ApiLogsReader constructor(private val device: IExplorableAndroidDevice) : IApiLogsReader {
 	companion object {
 		private val log by lazy { LoggerFactory.getLogger(ApiLogsReader::class.java) }
+
+		private val monitorTimeFormatter = DateTimeFormatter.ofPattern(MonitorConstants.monitor_time_formatter_pattern,
+				MonitorConstants.monitor_time_formatter_locale)
 	}
 
 	/**
@@ -62,7 +65,8 @@ class ApiLogsReader constructor(private val device: IExplorableAndroidDevice) :
 	override fun getAndClearCurrentApiLogsFromMonitorTcpServer(deviceTimeDiff: IDeviceTimeDiff): List<IApiLogcatMessage> {
 		log.debug("getAndClearCurrentApiLogsFromMonitorTcpServer(deviceTimeDiff)")
 
-		val logs = readApiLogcatMessages { this.getAndClearMessagesFromMonitorTcpServer(deviceTimeDiff) }
+		val logs = readApiLogBatch(deviceTimeDiff)
+				?: readApiLogcatMessages { this.getAndClearMessagesFromMonitorTcpServer(deviceTimeDiff) }
 
 		log.debug("apiLogs# ${logs.size}")
 		return logs
@@ -72,7 +76,8 @@ class ApiLogsReader constructor(private val device: IExplorableAndroidDevice) :
 	private fun readApiLogcatMessages(messagesProvider: () -> List<ITimeFormattedLogcatMessage>): List<IApiLogcatMessage> {
 		val messages = messagesProvider.invoke()
 
-		messages.forEach { monitorLogger.trace(it.toLogcatMessageString) }
+		if (monitorLogger.isTraceEnabled)
+			messages.forEach { monitorLogger.trace(it.toLogcatMessageString) }
 
 		try {
 			val apiLogs = messages.map { ApiLogcatMessage.from(it) }
@@ -85,6 +90,32 @@ class ApiLogsReader constructor(private val device: IExplorableAndroidDevice) :
 		}
 	}
 
+	/**
+	 * Reads the logs in the binary format, which does not require parsing the text payloads.
+	 * @return null if the monitor does not support it
+	 */
+	@Throws(DeviceException::class)
+	private fun readApiLogBatch(deviceTimeDiff: IDeviceTimeDiff): List<IApiLogcatMessage>? {
+		val bytes = device.readAndClearMonitorTcpLogBatch() ?: return null
+		if (bytes.isEmpty())
+			return emptyList()  // monitor not reachable
+
+		try {
+			val level = MonitorConstants.loglevel.toUpperCase()
+			val batch = ApiLogBatch.decode(bytes, level, "[Adapted]" + MonitorConstants.tag_api) { deviceTimeDiff.sync(it) }
+			if (batch.droppedLogs > 0)
+				log.warn("The monitor of process ${batch.pid} dropped ${batch.droppedLogs} API logs, its log buffer was full.")
+
+			if (monitorLogger.isTraceEnabled)
+				batch.messages.forEach { monitorLogger.trace(it.toLogcatMessageString) }
+
+			assert(ApiLogcatMessageListExtensions.sortedByTimePerPID(batch.messages))
+			return batch.messages
+		} catch (e: DroidmateException) {
+			throw DeviceException("Failed to decode the API call logs obtained from the monitor.", e)
+		}
+	}
+
 	@Throws(DeviceException::class)
 	@Deprecated("Method is deprecated. It is recommended to get logs from TCP server")
 	fun getMessagesFromLogcat(deviceTimeDiff: IDeviceTimeDiff): List<ITimeFormattedLogcatMessage> {
@@ -106,9 +137,7 @@ class ApiLogsReader constructor(private val device: IExplorableAndroidDevice) :
 
 			val pid = msg[0]
 
-			val deviceTime = LocalDateTime.parse(msg[1],
-					DateTimeFormatter.ofPattern(MonitorConstants.monitor_time_formatter_pattern,
-							MonitorConstants.monitor_time_formatter_locale))
+			val deviceTime = LocalDateTime.parse(msg[1], monitorTimeFormatter)
 
 			val payload = msg[2]
 
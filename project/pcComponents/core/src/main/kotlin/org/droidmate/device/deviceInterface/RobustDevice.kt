@@ -740,6 +740,17 @@ class RobustDevice : IRobustDevice {
         )
     }
 
+	override fun readAndClearMonitorTcpLogBatch(): ByteArray? {
+        return Utils.retryOnException(
+                { this.device.readAndClearMonitorTcpLogBatch() },
+                {},
+                DeviceException::class,
+                deviceOperationAttempts,
+                deviceOperationDelay,
+                "device.readAndClearMonitorTcpLogBatch()"
+        )
+    }
+
 	override fun getCurrentTime(): LocalDateTime {
         return Utils.retryOnException(
                 { this.device.getCurrentTime() },
@@ -39,6 +39,7 @@ import org.droidmate.exploration.statemodel.*
 import org.droidmate.exploration.statemodel.features.StatementCoverageMF
 import org.droidmate.exploration.statemodel.features.ModelFeature
 import org.droidmate.exploration.statemodel.features.CrashListMF
+import org.droidmate.exploration.statemodel.features.ContextUpdateEvent
 import org.droidmate.exploration.statemodel.features.ImgTraceMF
 import org.droidmate.misc.TimeDiffWithTolerance
 import org.droidmate.misc.TimeProvider
@@ -100,7 +101,10 @@ class ExplorationContext @JvmOverloads constructor(val cfg: ConfigurationWrapper
 	suspend fun getState(sId: ConcreteId) = _model.getState(sId)
 
 	/** filters out all crashing marked widgets from the actionable widgets of the current state **/
-	suspend fun nonCrashingWidgets() = getCurrentState().let{ s-> s.distinctTargets.filterNot { crashlist.isBlacklistedInState(it.uid,s.uid) } }
+	suspend fun nonCrashingWidgets() = getCurrentState().let{ s->
+		crashlist.await()  // once for all widgets instead of waiting for each of them
+		crashlist.read { s.distinctTargets.filterNot { count(it.uid, s.uid) >= 1 } }
+	}
 
 	fun belongsToApp(state: StateData): Boolean {
 		return state.topNodePackageName == apk.packageName
@@ -114,12 +118,13 @@ class ExplorationContext @JvmOverloads constructor(val cfg: ConfigurationWrapper
 
 		assert(action.toString() == result.action.toString()) { "ERROR on ACTION-RESULT construction the wrong action was instantiated ${result.action} instead of $action"}
 		_model.S_updateModel(result, actionTrace)
-		this.also { context -> watcher.forEach { launch(it.context, parent = it.job) { it.onContextUpdate(context) } } }
+		actionTrace.eventBus.publishBlocking(ContextUpdateEvent(this))
 	}
 
 	fun close() {
 		log.info("finishing context updates, dumping data and restarting features")
-		dump()
+		dump(final = true)
+		actionTrace.eventBus.metrics().forEach { log.debug("feature update latency $it") }
 
 		// can use the same auxiliary job as the dump function, as it's already free
 		log.info("preparing features for next app")
@@ -132,10 +137,11 @@ class ExplorationContext @JvmOverloads constructor(val cfg: ConfigurationWrapper
 		}
 	}
 
-	fun dump() {
+	/** @param final the exploration of this context is finished, the model is not going to be updated afterwards */
+	fun dump(final: Boolean = false) {
 		log.info("dump models and watcher")
 		assert(!apk.launchableMainActivityName.isBlank()) { "launchableMainActivityName was ${apk.launchableMainActivityName}" }
-		_model.P_dumpModel(_model.config)
+		_model.P_dumpModel(_model.config, final)
 		this.also { context -> watcher.forEach { launch(CoroutineName("eContext-dump"), parent = ModelFeature.auxiliaryJob) { it.dump(context) } } }
 
 		// wait until all dump's completed
@@ -149,7 +155,7 @@ class ExplorationContext @JvmOverloads constructor(val cfg: ConfigurationWrapper
 	//TODO it may be more performing to have a list of all unexplored widgets and remove the ones chosen as target -> best done as ModelFeature
 	// this could be nicely combined with the highlighting feature of the (numbered) img trace
 	suspend fun areAllWidgetsExplored(): Boolean { // only consider widgets which belong to the app because there are insanely many keyboard/icon widgets available
-		return actionTrace.size>0 && actionTrace.unexplored( _model.getWidgets().filter { it.packageName == apk.packageName && it.canBeActedUpon }).isEmpty()
+		return actionTrace.size>0 && actionTrace.unexplored( _model.getWidgets(apk.packageName, actableOnly = true)).isEmpty()
 	}
 
 	/**
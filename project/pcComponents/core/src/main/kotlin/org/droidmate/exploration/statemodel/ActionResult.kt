@@ -26,9 +26,6 @@
 package org.droidmate.exploration.statemodel
 
 import com.google.common.base.MoreObjects
-import kotlinx.coroutines.experimental.Unconfined
-import kotlinx.coroutines.experimental.async
-import kotlinx.coroutines.experimental.runBlocking
 import org.droidmate.device.android_sdk.DeviceException
 import org.droidmate.debug.debugT
 import org.droidmate.debug.measurePerformance
@@ -39,11 +36,13 @@ import org.droidmate.device.deviceInterface.MissingDeviceLogs
 import org.droidmate.deviceInterface.DeviceResponse
 import org.droidmate.deviceInterface.guimodel.EmptyAction
 import org.droidmate.deviceInterface.guimodel.ExplorationAction
+import org.droidmate.deviceInterface.guimodel.WidgetData
 import java.awt.Rectangle
 import java.io.ByteArrayInputStream
 import java.io.Serializable
 import java.time.LocalDateTime
 import javax.imageio.ImageIO
+import javax.imageio.stream.MemoryCacheImageInputStream
 
 /**
  * Interface for a eContext record which stores the performed action, alongside the GUI state before the action
@@ -96,12 +95,15 @@ open class ActionResult(val action: ExplorationAction,
 				.toString()
 	}
 
-	/** this method should be exclusively used for StateData generation */
-	fun getWidgets(config: ModelConfig): List<Widget> {
+	/** this method should be exclusively used for StateData generation
+	 * @param reusable returns an already existing widget for unchanged nodes of the previous snapshot (if any), see [WidgetCache]
+	 */
+	fun getWidgets(config: ModelConfig, reusable: (WidgetData) -> Widget? = { null }): List<Widget> {
 		val deviceObjects = setOf("//android.widget.FrameLayout[1]", "//android.widget.FrameLayout[1]/android.widget.FrameLayout[1]")
 
-//		val img:BufferedImage? =
-		(if(screenshot.isNotEmpty()) debugT("img file read", { ImageIO.read(ByteArrayInputStream(this.screenshot)) },inMillis = true) else null)
+		// the screenshot is only decoded if there is any widget which cannot be reused
+		// (the explicit memory cache avoids that ImageIO buffers the stream in a temporary file)
+		lazy { if(screenshot.isNotEmpty()) debugT("img file read", { ImageIO.read(MemoryCacheImageInputStream(ByteArrayInputStream(this.screenshot))) },inMillis = true) else null }
 		.let { img ->
 					guiSnapshot.let { g ->
 						debugT(" \n filter device objects",
@@ -109,10 +111,9 @@ open class ActionResult(val action: ExplorationAction,
 						).let {
 							//					debugT(" widgets sequential", { it.map{ Widget.fromWidgetData(it,img,config)}} ,{ timeS += it })
 
-							return debugT("create all widgets unconfined", {
-								// some times much faster then sequential but some timesl a few fousand ns slower but in average seams faster
-								it.map { async(Unconfined) { Widget.fromUiNode(it, img, config) } } // iterates over each WidgetData and creates Widget object collect all these elements as set
-										.map { runBlocking { it.await() } }
+							return debugT("create all widgets", {
+								// crops and hashes the widget images in parallel, the unconfined variant was in fact sequential
+								WidgetPipeline.createWidgets(it, img, config, reusable)
 							}, { timeP += it })
 									.also {
 										if (measurePerformance)
@@ -29,6 +29,7 @@ import kotlinx.coroutines.experimental.*
 import kotlinx.coroutines.experimental.channels.sendBlocking
 import kotlinx.coroutines.experimental.sync.Mutex
 import kotlinx.coroutines.experimental.sync.withLock
+import org.droidmate.configuration.ConfigProperties.ModelProperties.Features.eventBusCapacity
 import org.droidmate.configuration.ConfigProperties.ModelProperties.dump.sep
 import org.droidmate.debug.debugT
 import org.droidmate.device.android_sdk.DeviceException
@@ -37,13 +38,14 @@ import org.droidmate.device.deviceInterface.MissingDeviceLogs
 import org.droidmate.deviceInterface.guimodel.*
 import org.droidmate.exploration.actions.widgetTargets
 import org.droidmate.exploration.statemodel.Trace.Companion.computeData
+import org.droidmate.exploration.statemodel.features.ActionEvent
+import org.droidmate.exploration.statemodel.features.FeatureEventBus
 import org.droidmate.exploration.statemodel.features.ModelFeature
 import java.io.File
 import java.time.LocalDateTime
 import java.time.temporal.ChronoUnit
 import java.util.*
 import kotlin.coroutines.experimental.CoroutineContext
-import kotlin.properties.Delegates
 
 @Suppress("DataClassPrivateConstructor")
 data class ActionData constructor(val actionType: String, val targetWidget: Widget?,
@@ -151,37 +153,35 @@ class Trace(private val watcher: MutableList<ModelFeature> = mutableListOf(), pr
 
 	private val processorJob = Job(parent = modelJob)
 	private val actionProcessorJob = Job(parent = modelJob)
-	private val trace = CollectionActor(LinkedList<ActionData>(),"TraceActor").create(actionProcessorJob)
+	private val trace = CollectionActor(ArrayList<ActionData>(),"TraceActor").create(actionProcessorJob)
 	private val context: CoroutineContext = newCoroutineContext(context = CoroutineName("ActionProcessor"), parent = actionProcessorJob)
 
 	private val targets: MutableList<Widget?> = LinkedList()
 	/** used for special id creation of interacted edit fields, map< iEditId -> (state -> collection<widget> )> */
 	private val editFields: MutableMap<UUID, LinkedList<Pair<StateData, Widget>>> = mutableMapOf()
 
-	/** this property is set in the end of the trace update and notifies all watchers for changes */
-	private val initialState: Triple<StateData, List<Widget>, ExplorationAction> = Triple(StateData.emptyState, emptyList(), EmptyAction)
-	private var newState by Delegates.observable(initialState) { _, (srcState,_), (dstState,targets, explorationAction) ->
-		notifyObserver(srcState, dstState, targets, explorationAction)
-		internalUpdate(srcState = srcState, targets = targets)
-	}
+	/** delivers one [ActionEvent] per trace update to all watchers, [ExplorationContext] publishes its updates here as well */
+	val eventBus = FeatureEventBus(watcher, config[eventBusCapacity])
 
-	/** observable delegates do not support co-routines within the lambda function therefore this method*/
-	private fun notifyObserver(old: StateData, new: StateData, targets: List<Widget>, explorationAction: ExplorationAction) {
-		watcher.forEach {
-			launch(it.context, parent = it.job) { it.onNewInteracted(id, targets, old, new) }
-			val actionIndex = size - 1
-			assert(actionIndex >= 0){"ERROR the action-trace size was not properly updated"}
-			launch(it.context, parent = it.job) { it.onNewInteracted(id, actionIndex, explorationAction, targets, old, new) }
-
-			val action =
-					async(it.context) {
-						getAt(actionIndex)!!
-					}
+	/** this property is set in the end of the trace update, the returned event notifies all watchers for changes */
+	private var newState: Triple<StateData, List<Widget>, ExplorationAction> = Triple(StateData.emptyState, emptyList(), EmptyAction)
 
-			launch(it.context, parent = it.job) {
-				it.onNewAction(id, action, old, new)
-			}
+	private fun setNewState(dstState: StateData, targets: List<Widget>, explorationAction: ExplorationAction): ActionEvent {
+		val srcState = newState.first
+		newState = Triple(dstState, targets, explorationAction)
+		return actionEvent(srcState, dstState, targets, explorationAction).also {
+			internalUpdate(srcState = srcState, targets = targets)
+		}
+	}
+
+	private fun actionEvent(old: StateData, new: StateData, targets: List<Widget>, explorationAction: ExplorationAction): ActionEvent {
+		val actionIndex = size - 1
+		assert(actionIndex >= 0){"ERROR the action-trace size was not properly updated"}
+		// shared by all watchers, it is only computed if one of them awaits the action data
+		val action = async(CoroutineName("ActionData"), start = CoroutineStart.LAZY) {
+			getAt(actionIndex)!!
 		}
+		return ActionEvent(id, actionIndex, explorationAction, targets, old, new, action)
 	}
 
 	/** used to keep track of all widgets interacted with, i.e. the edit fields which require special care in uid computation */
@@ -235,7 +235,7 @@ class Trace(private val watcher: MutableList<ModelFeature> = mutableListOf(), pr
 			launch(context, block = actionProcessor(action, oldState, dstState), parent = processorJob)
 		}
 
-		debugT("set dstState", { this.newState = Triple(dstState, actionTargets, action.action) })
+		debugT("set dstState", { eventBus.publishBlocking(setNewState(dstState, actionTargets, action.action)) })
 	}
 
     fun addWatcher(mf: ModelFeature) = watcher.add(mf)
@@ -248,7 +248,7 @@ class Trace(private val watcher: MutableList<ModelFeature> = mutableListOf(), pr
 		size += 1
 		lastActionType = action.actionType
 		trace.send(Add(action))
-		this.newState = Triple(dstState, widgetTargets, EmptyAction)
+		eventBus.publish(setNewState(dstState, widgetTargets.toList(), EmptyAction))
 	}
 
 	/** this function is used by the ModelLoader which creates ActionData objects from dumped data
@@ -261,9 +261,9 @@ class Trace(private val watcher: MutableList<ModelFeature> = mutableListOf(), pr
 		trace.send(AddAll(actions))
 		if(actions.last().actionType == ActionQueue.name){
 			val queueStart = actions.indexOfLast { it.actionType == ActionQueue.startName }
-			this.newState = Triple(latestState,
-					actions.subList(queueStart,actions.size).mapNotNull { it.targetWidget }, EmptyAction)
-		}else this.newState = Triple(latestState, listOfNotNull(actions.last().targetWidget), EmptyAction)
+			eventBus.publish(setNewState(latestState,
+					actions.subList(queueStart,actions.size).mapNotNull { it.targetWidget }, EmptyAction))
+		}else eventBus.publish(setNewState(latestState, listOfNotNull(actions.last().targetWidget), EmptyAction))
 	}
 
 	val currentState get() = newState.first
@@ -298,6 +298,12 @@ class Trace(private val watcher: MutableList<ModelFeature> = mutableListOf(), pr
 		return trace.getAll()
 	}
 
+	/** @return the actions starting at index [from], used to append only the new actions to the trace file */
+	internal suspend fun P_getActionsFrom(from: Int): List<ActionData> {
+		processorJob.joinChildren() // ensure the last action was already added
+		return trace.get { list -> if (from >= list.size) emptyList() else (list as List<ActionData>).let { it.subList(from, it.size).toList() } }
+	}
+
 	suspend fun last(): ActionData? {
 		processorJob.joinChildren() // ensure the last action was already added
 		return trace.getOrNull { it.lastOrNull() }
@@ -306,15 +312,7 @@ class Trace(private val watcher: MutableList<ModelFeature> = mutableListOf(), pr
 	/** get the element at index [i] if it exists and null otherwise */
 	suspend fun getAt(i:Int): ActionData?{
 		processorJob.joinChildren() // ensure the last action was already added
-		return trace.getOrNull { (it as LinkedList<ActionData>).let{ list ->
-			if(list.indices.contains(i))
-				list[i]
-			else {
-				println("Index: $i \t Size: ${list.size}")
-				throw RuntimeException("Here!!!")
-				// null
-			}
-		} }
+		return trace.getOrNull { (it as List<ActionData>).getOrNull(i) }  // the trace is an ArrayList, i.e. constant time access
 	}
 
 	/** this has to access a co-routine actor prefer using [size] if synchronization is not critical */
@@ -0,0 +1,208 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import java.awt.image.BufferedImage
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import javax.imageio.ImageIO
+
+/**
+ * Decoded screenshot (or widget image) with one packed int per pixel, such that images can be compared by plain array loops
+ * instead of going through the [java.awt.image.Raster] accessors for every sample.
+ * The packing is only meant for comparisons: each int holds up to four 8 bit samples in band order of the source image.
+ */
+class ScreenImage(val width: Int, val height: Int, val pixels: IntArray) {
+	private val scaled: MutableMap<Int, ScreenImage> = ConcurrentHashMap()
+
+	init {
+		require(pixels.size == width * height) { "expected ${width * height} pixels for a ${width}x$height image but got ${pixels.size}" }
+	}
+
+	/**
+	 * Copy with the per sample mean of each [factor] x [factor] block, remaining rows and columns are dropped.
+	 * The result is cached, such that an image compared against several others is only scaled once.
+	 */
+	fun downscaled(factor: Int): ScreenImage {
+		require(factor >= 1) { "the scale factor has to be positive but was $factor" }
+		return if (factor == 1) this else scaled.computeIfAbsent(factor) { scale(it) }
+	}
+
+	private fun scale(factor: Int): ScreenImage {
+		val w = width / factor
+		val h = height / factor
+		val n = factor * factor
+		val out = IntArray(w * h)
+		val sums = IntArray(w * 4)
+		for (y in 0 until h) {
+			Arrays.fill(sums, 0)
+			for (dy in 0 until factor) {
+				var i = (y * factor + dy) * width
+				for (x in 0 until w) {
+					val s = x * 4
+					for (dx in 0 until factor) {
+						val p = pixels[i++]
+						sums[s] += p ushr 24
+						sums[s + 1] += (p ushr 16) and 0xFF
+						sums[s + 2] += (p ushr 8) and 0xFF
+						sums[s + 3] += p and 0xFF
+					}
+				}
+			}
+			for (x in 0 until w) {
+				val s = x * 4
+				out[y * w + x] = ((sums[s] / n) shl 24) or ((sums[s + 1] / n) shl 16) or ((sums[s + 2] / n) shl 8) or (sums[s + 3] / n)
+			}
+		}
+		return ScreenImage(w, h, out)
+	}
+
+	companion object {
+		/** decodes the PNG (or any other ImageIO format) [bytes], null if they cannot be decoded */
+		@JvmStatic
+		fun decode(bytes: ByteArray): ScreenImage? = ImageIO.read(ByteArrayInputStream(bytes))?.let { of(it) }
+
+		@JvmStatic
+		fun read(file: File): ScreenImage? = if (file.exists()) ImageIO.read(file)?.let { of(it) } else null
+
+		/**
+		 * Reads the samples in place for byte interleaved rasters (see [interleavedLayout]), which is what ImageIO produces
+		 * for PNG screenshots and the images of widgets cut from them. Other layouts are converted via [BufferedImage.getRGB].
+		 */
+		@JvmStatic
+		fun of(image: BufferedImage): ScreenImage {
+			val width = image.width
+			val height = image.height
+			val layout = image.interleavedLayout()
+			if (layout == null || layout.bandOffsets.size > 4)
+				return ScreenImage(width, height, image.getRGB(0, 0, width, height, null, 0, width))
+
+			val data = layout.data
+			val bandOffsets = layout.bandOffsets
+			val pixels = IntArray(width * height)
+			var i = 0
+			layout.forEachPixel(width, height) { pixel ->
+				var v = 0
+				for (b in bandOffsets.indices) v = (v shl 8) or (data[pixel + bandOffsets[b]].toInt() and 0xFF)
+				pixels[i++] = v
+			}
+			return ScreenImage(width, height, pixels)
+		}
+	}
+}
+
+/**
+ * Pixel comparison of [ScreenImage]s.
+ * All comparisons can skip the first rows (e.g. the status bar, whose clock changes between any two screenshots) and
+ * optionally work on [ScreenImage.downscaled] copies, which is much cheaper and ignores single pixel differences.
+ *
+ * The similarity differs from the former byte based comparison of the effective actions report: whole pixels are compared
+ * instead of single samples, the skipped rows do not count as equal but are excluded from the number of compared pixels,
+ * and the result is not truncated to an integer percentage.
+ */
+object ImageComparison {
+	/** pixels compared between two checks of the early exit limit, small enough to stop early and large enough to keep the loop tight */
+	private const val chunkSize = 4096
+
+	/**
+	 * Number of pixels in the rows from [fromRow] on which differ between [a] and [b].
+	 * The counting stops as soon as more than [limit] differences are found, the result is then only a lower bound.
+	 */
+	@JvmStatic
+	@JvmOverloads
+	fun differences(a: ScreenImage, b: ScreenImage, fromRow: Int = 0, limit: Int = Int.MAX_VALUE): Int {
+		require(a.width == b.width && a.height == b.height) { "cannot compare a ${a.width}x${a.height} with a ${b.width}x${b.height} image" }
+		val pa = a.pixels
+		val pb = b.pixels
+		val end = pa.size
+		var i = fromRow.coerceIn(0, a.height) * a.width
+		var count = 0
+		while (i < end) {
+			val chunkEnd = Math.min(end, i + chunkSize)
+			count += countDifferent(pa, pb, i, chunkEnd)
+			if (count > limit) return count
+			i = chunkEnd
+		}
+		return count
+	}
+
+	/** branch free such that the JIT can vectorize the loop, `(d or -d) ushr 31` is 1 for any d != 0 */
+	private fun countDifferent(pa: IntArray, pb: IntArray, from: Int, to: Int): Int {
+		var count = 0
+		for (i in from until to) {
+			val d = pa[i] xor pb[i]
+			count += (d or -d) ushr 31
+		}
+		return count
+	}
+
+	/** fraction of equal pixels (within 0..1) from row [fromRow] on, images of different size have similarity 0 */
+	@JvmStatic
+	@JvmOverloads
+	fun similarity(a: ScreenImage, b: ScreenImage, fromRow: Int = 0, scale: Int = 1): Double {
+		if (a.width != b.width || a.height != b.height) return 0.0
+		val sa = a.downscaled(scale)
+		val sb = b.downscaled(scale)
+		val n = comparedPixels(sa, fromRow / scale)
+		return if (n == 0) 1.0 else 1.0 - differences(sa, sb, fromRow / scale).toDouble() / n
+	}
+
+	/** true if at least [minSimilarity] of the compared pixels are equal, the comparison stops as soon as this cannot be reached anymore */
+	@JvmStatic
+	@JvmOverloads
+	fun isSimilar(a: ScreenImage, b: ScreenImage, minSimilarity: Double, fromRow: Int = 0, scale: Int = 1): Boolean {
+		if (a.width != b.width || a.height != b.height) return false
+		val sa = a.downscaled(scale)
+		val sb = b.downscaled(scale)
+		val allowed = Math.floor(comparedPixels(sa, fromRow / scale) * (1.0 - minSimilarity)).toInt()
+		return differences(sa, sb, fromRow / scale, allowed) <= allowed
+	}
+
+	private fun comparedPixels(img: ScreenImage, fromRow: Int): Int = (img.height - fromRow.coerceIn(0, img.height)) * img.width
+}
+
+/**
+ * LRU cache of decoded images by state id, such that comparing one state against several others decodes its screenshot once.
+ * The images are decoded outside of the cache lock, concurrent misses for the same state may therefore decode it twice.
+ */
+class DecodedImageCache @JvmOverloads constructor(private val capacity: Int = 16) {
+	private val images = object : LinkedHashMap<ConcreteId, ScreenImage?>(capacity, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ConcreteId, ScreenImage?>?): Boolean = size > capacity
+	}
+
+	/** the cached image of [id] or the one returned by [load], missing images (null) are cached as well */
+	fun get(id: ConcreteId, load: (ConcreteId) -> ScreenImage?): ScreenImage? {
+		synchronized(images) { if (images.containsKey(id)) return images[id] }
+		return load(id).also { img -> synchronized(images) { images[id] = img } }
+	}
+
+	/** the screenshot dumped for state [id] (see [ModelConfig.statePath]) */
+	fun get(id: ConcreteId, config: ModelConfig): ScreenImage? = get(id) { ScreenImage.read(File(config.statePath(it, fileExtension = ".png"))) }
+
+	fun clear() = synchronized(images) { images.clear() }
+}
@@ -0,0 +1,187 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import org.droidmate.configuration.ConfigProperties.ModelProperties.imgId
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.deviceInterface.guimodel.toUUID
+import java.awt.image.BufferedImage
+import java.util.*
+
+/**
+ * Determines the image id of widgets without any text (see [Widget.computeId]).
+ * The engine is chosen via [imgId.engine], each model gets its own instance (see [ModelConfig.imageIdentity]) since
+ * tolerant engines remember the images they have seen so far.
+ */
+interface ImageIdentity {
+	/** @param image the image of [w], i.e. already cut to the widget bounds */
+	fun idOf(w: WidgetData, image: BufferedImage): UUID = idOf(w, fingerprint(image))
+
+	/** the (expensive) part of [idOf] which only depends on the image itself, it may be computed concurrently */
+	fun fingerprint(image: BufferedImage): Long
+
+	/** the id of the image of [w] with the given [fingerprint] */
+	fun idOf(w: WidgetData, fingerprint: Long): UUID
+
+	/**
+	 * True if the id of an image depends on the images identified before. Concurrently computed ids would then depend on the
+	 * thread timing, therefore such ids have to be assigned in a fixed order (see [WidgetPipeline.createWidgets]).
+	 */
+	val isOrderDependent: Boolean get() = false
+
+	companion object {
+		/** the identity of the raw pixel values, any rendering difference results in a different id */
+		@JvmStatic
+		val exact: ImageIdentity = object : ImageIdentity {
+			override fun fingerprint(image: BufferedImage): Long = image.dataElementsHashCode().toLong()
+
+			override fun idOf(w: WidgetData, fingerprint: Long): UUID = fingerprint.toInt().toUUID()
+		}
+
+		@JvmStatic
+		fun create(config: ModelConfig): ImageIdentity = when (config[imgId.engine]) {
+			"exact" -> exact
+			"dhash" -> PerceptualImageIdentity(config[imgId.maxDistance], config[imgId.cacheSize])
+			else -> throw IllegalArgumentException("Unknown image identity engine ${config[imgId.engine]}, expected 'exact' or 'dhash'")
+		}
+	}
+}
+
+/**
+ * Tolerant image ids based on a 64 bit difference hash (dHash): the image is reduced to 9x8 gray values and each bit encodes
+ * whether the brightness increases between horizontally neighboured cells. Images whose hashes differ in at most [maxDistance]
+ * bits get the same (canonical) id, which is the id of the first such image seen.
+ * Only brightness gradients are compared, i.e. images which differ in their color alone are considered the same.
+ * Since the canonical id depends on the order in which the images are seen, this engine [isOrderDependent].
+ *
+ * The near-duplicate search splits the hashes into `maxDistance+1` bands, by the pigeonhole principle two hashes within the
+ * distance agree on at least one band, therefore only entries sharing a band value have to be compared.
+ * Widgets usually stay at the same position with the same resource id, the last result for each such key is kept in an LRU
+ * cache of [cacheSize] entries, which answers most lookups without searching the index.
+ */
+class PerceptualImageIdentity @JvmOverloads constructor(private val maxDistance: Int = 4, cacheSize: Int = 4096) : ImageIdentity {
+	private class Entry(val hash: Long, val id: UUID)
+
+	private val nBands = maxDistance + 1
+	private val bandBits = 64 / nBands
+	private val bands = Array(nBands) { HashMap<Long, MutableList<Entry>>() }
+	private val lock = Any()
+
+	private val cache = object : LinkedHashMap<String, Entry>(cacheSize, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>?): Boolean = size > cacheSize
+	}
+
+	/** number of distinct canonical ids, i.e. image clusters */
+	var size: Int = 0
+		private set
+
+	init {
+		require(maxDistance in 0..63) { "the hamming distance threshold has to be within 0..63 but was $maxDistance" }
+	}
+
+	override val isOrderDependent: Boolean get() = true
+
+	override fun fingerprint(image: BufferedImage): Long = dHash(image)
+
+	override fun idOf(w: WidgetData, fingerprint: Long): UUID {
+		val hash = fingerprint
+		val key = "${w.resourceId}@${w.boundsX},${w.boundsY},${w.boundsWidth},${w.boundsHeight}"
+		synchronized(lock) {
+			cache[key]?.let { if (distance(it.hash, hash) <= maxDistance) return it.id }
+			return (find(hash) ?: add(hash)).also { cache[key] = it }.id
+		}
+	}
+
+	private fun find(hash: Long): Entry? {
+		var best: Entry? = null
+		var bestDistance = maxDistance + 1
+		for (b in 0 until nBands) {
+			bands[b][band(hash, b)]?.forEach { e ->
+				val d = distance(e.hash, hash)
+				if (d < bestDistance) {
+					best = e
+					bestDistance = d
+				}
+			}
+		}
+		return best
+	}
+
+	private fun add(hash: Long): Entry = Entry(hash, UUID(hash, DHASH_ID)).also { e ->
+		for (b in 0 until nBands) bands[b].getOrPut(band(hash, b)) { LinkedList() }.add(e)
+		size += 1
+	}
+
+	private fun band(hash: Long, b: Int): Long {
+		val bits = if (b == nBands - 1) 64 - b * bandBits else bandBits  // the last band takes the remaining bits
+		val shifted = hash ushr (b * bandBits)
+		return if (bits == 64) shifted else shifted and ((1L shl bits) - 1)
+	}
+
+	companion object {
+		/** distinguishes the perceptual ids from the ones of other engines */
+		private const val DHASH_ID = 0x6448617368L  // "dHash"
+
+		@JvmStatic
+		fun distance(a: Long, b: Long): Int = java.lang.Long.bitCount(a xor b)
+
+		/** up to 4x4 pixels per cell are sampled, which is sufficient to be insensitive to single pixel differences */
+		@JvmStatic
+		fun dHash(image: BufferedImage): Long {
+			val gray = Array(8) { IntArray(9) }
+			for (cy in 0 until 8) for (cx in 0 until 9) gray[cy][cx] = cellBrightness(image, cx, cy)
+			var hash = 0L
+			for (cy in 0 until 8) for (cx in 0 until 8) {
+				hash = hash shl 1
+				if (gray[cy][cx] < gray[cy][cx + 1]) hash = hash or 1L
+			}
+			return hash
+		}
+
+		private fun cellBrightness(image: BufferedImage, cx: Int, cy: Int): Int {
+			val x0 = cx * image.width / 9
+			val x1 = Math.max(x0 + 1, (cx + 1) * image.width / 9)
+			val y0 = cy * image.height / 8
+			val y1 = Math.max(y0 + 1, (cy + 1) * image.height / 8)
+			val stepX = Math.max(1, (x1 - x0) / 4)
+			val stepY = Math.max(1, (y1 - y0) / 4)
+			var sum = 0
+			var n = 0
+			var y = y0
+			while (y < y1 && y < image.height) {
+				var x = x0
+				while (x < x1 && x < image.width) {
+					val rgb = image.getRGB(x, y)
+					sum += (((rgb shr 16) and 0xFF) * 299 + ((rgb shr 8) and 0xFF) * 587 + (rgb and 0xFF) * 114) / 1000
+					n++
+					x += stepX
+				}
+				y += stepY
+			}
+			return if (n == 0) 0 else sum / n
+		}
+	}
+}
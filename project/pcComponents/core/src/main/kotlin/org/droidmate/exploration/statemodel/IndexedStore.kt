@@ -0,0 +1,136 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Append-only collection of unique elements (identified by [keyOf]) with an arbitrary number of secondary indices.
+ *
+ * Writers are serialized, readers never block and never see partially added elements:
+ * each element gets the next position in an array and the store publishes the new size only after the element was added to all
+ * indices. A reader remembers the size it saw first and ignores any position beyond it, therefore all results of one
+ * [snapshot] (or a single lookup) are consistent with each other, even while elements are concurrently added.
+ * Since the model never removes states or widgets there is no need to handle deletions.
+ *
+ * All [index]es have to be created before the first element is added.
+ */
+class IndexedStore<K : Any, T : Any>(private val keyOf: (T) -> K) {
+	/** immutable view on the element array, positions >= [size] may already be in use by the writer */
+	private class Data(val elements: Array<Any?>, val size: Int)
+
+	@Volatile
+	private var data = Data(arrayOfNulls(16), 0)
+	private val positions = ConcurrentHashMap<K, Int>()
+	private val indices = CopyOnWriteArrayList<Index<*>>()
+
+	val size: Int get() = data.size
+
+	/** @return false if an element with the same key was already contained (the store is not modified in that case) */
+	fun add(e: T): Boolean {
+		val key = keyOf(e)  // may trigger expensive (lazy) id computations, therefore done outside of the lock
+		return synchronized(this) { insert(key, e) }
+	}
+
+	/** adds all new [elements] in their order, like [add] their keys are computed before the store is locked */
+	fun addAll(elements: Collection<T>) {
+		val keys = elements.map(keyOf)
+		synchronized(this) { elements.forEachIndexed { i, e -> insert(keys[i], e) } }
+	}
+
+	/** has to be called while holding the lock of this store */
+	private fun insert(key: K, e: T): Boolean {
+		if (positions.containsKey(key)) return false
+		val d = data
+		val elements = if (d.size < d.elements.size) d.elements else d.elements.copyOf(d.elements.size * 2)
+		elements[d.size] = e
+		positions[key] = d.size
+		indices.forEach { it.add(e, d.size) }
+		data = Data(elements, d.size + 1)  // publish
+		return true
+	}
+
+	operator fun get(key: K): T? = data.let { d -> positions[key]?.let { p -> d.elementAt(p) } }
+
+	operator fun contains(key: K): Boolean = get(key) != null
+
+	/** @return a read-only view of all elements which were added until now, it does not change if more elements are added afterwards */
+	fun snapshot(): Set<T> = Snapshot(data)
+
+	/** creates a new secondary index, elements for which [keyOf] returns null are not indexed */
+	fun <I : Any> index(keyOf: (T) -> I?): Index<I> {
+		check(data.size == 0) { "indices have to be created before elements are added to the store" }
+		return Index(keyOf).also { indices.add(it) }
+	}
+
+	@Suppress("UNCHECKED_CAST")
+	private fun Data.elementAt(p: Int): T? = if (p < size) elements[p] as T else null
+
+	inner class Index<I : Any> internal constructor(private val keyOf: (T) -> I?) {
+		private val positions = ConcurrentHashMap<I, Positions>()
+
+		internal fun add(e: T, position: Int) {
+			keyOf(e)?.let { key -> positions.getOrPut(key) { Positions() }.add(position) }
+		}
+
+		/** @return all elements with the given [key] in insertion order */
+		operator fun get(key: I): List<T> {
+			val d = data
+			return positions[key]?.let { p -> p.visible(d.size).map { d.elementAt(it)!! } } ?: emptyList()
+		}
+	}
+
+	/** growing int list for a single writer, readers see a consistent prefix without locking */
+	private class Positions {
+		@Volatile private var values = IntArray(2)
+		@Volatile private var size = 0
+
+		fun add(p: Int) {
+			if (size == values.size) values = values.copyOf(size * 2)
+			values[size] = p
+			size += 1
+		}
+
+		/** positions are added in increasing order, therefore all positions below [limit] form a prefix */
+		fun visible(limit: Int): List<Int> {
+			val n = size
+			val v = values
+			var end = n
+			while (end > 0 && v[end - 1] >= limit) end--
+			return v.asList().subList(0, end)
+		}
+	}
+
+	private inner class Snapshot(private val d: Data) : AbstractSet<T>() {
+		override val size: Int get() = d.size
+
+		@Suppress("UNCHECKED_CAST")
+		override fun iterator(): Iterator<T> = (0 until d.size).asSequence().map { d.elements[it] as T }.iterator()
+
+		override fun contains(element: T): Boolean = positions[keyOf(element)]?.let { p -> d.elementAt(p) == element } ?: false
+	}
+}
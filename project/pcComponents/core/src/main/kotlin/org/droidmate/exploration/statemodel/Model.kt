@@ -26,7 +26,6 @@
 package org.droidmate.exploration.statemodel
 
 import kotlinx.coroutines.experimental.*
-import kotlinx.coroutines.experimental.channels.sendBlocking
 import org.droidmate.configuration.ConfigProperties.ModelProperties
 import org.droidmate.debug.debugT
 import org.droidmate.exploration.statemodel.features.ModelFeature
@@ -37,7 +36,6 @@ import java.nio.file.Files
 import java.nio.file.Paths
 import java.nio.file.StandardOpenOption
 import java.util.*
-import kotlin.collections.HashSet
 import kotlin.system.measureTimeMillis
 
 internal operator fun UUID.plus(uuid: UUID?): UUID {
@@ -63,43 +61,73 @@ class Model private constructor(val config: ModelConfig) {
 		}
 	}
 
-	private val states = CollectionActor(HashSet<StateData>(),"StateActor").create(modelJob)
+	private val states = IndexedStore<ConcreteId, StateData> { it.stateId }
+	private val statesByUid = states.index { it.uid }
 	/** @return a view to the data (suspending function) */
-	suspend fun getStates(): Set<StateData> = states.getAll<StateData,Set<StateData>>()
+	suspend fun getStates(): Set<StateData> = states.snapshot()
 	@Suppress("unused")
 			/** @return a view to the data (blocking function) */
-	fun S_getStates(): Set<StateData> = runBlocking{ states.getAll<StateData,Set<StateData>>() }
+	fun S_getStates(): Set<StateData> = states.snapshot()
 
 	suspend fun addState(s: StateData){
 		nStates +=1
-		states.send(Add(s))
+		states.add(s)
 	}
 
-	suspend fun getState(id: ConcreteId):StateData?{
-//		println("call getStates")
-		val states = getStates()
-//		println("[${Thread.currentThread().name}] retrieved ${states.size} states")
-		return states.find { it.stateId == id }
-	}
+	suspend fun getState(id: ConcreteId):StateData? = states[id]
+
+	/** @return all states with the unique id [uid], i.e. all configurations of this state */
+	fun getStates(uid: UUID): List<StateData> = statesByUid[uid]
 
+	private val widgets = IndexedStore<ConcreteId, Widget> { it.id }
+	private val widgetsByUid = widgets.index { it.uid }
+	private val widgetsByPackage = widgets.index { it.packageName }
+	private val actableWidgetsByPackage = widgets.index { if (it.canBeActedUpon) it.packageName else null }
 
-	private val widgets = CollectionActor(HashSet<Widget>(), "WidgetActor").create(modelJob)
+	/** states whose widgets are not in [widgets] yet, since they were loaded lazily from a [ModelStore] */
+	private val pendingWidgets = LinkedList<StateData>()
+	@Volatile private var hasPendingWidgets = false
+
+	/** add a state without creating its widgets, they are added to the widget store on the first widget query */
+	internal fun addStateLazily(s: StateData) {
+		nStates += 1
+		states.add(s)
+		synchronized(pendingWidgets) {
+			pendingWidgets.add(s)
+			hasPendingWidgets = true
+		}
+	}
 
-	suspend fun getWidgets(): Set<Widget>{
-		return CompletableDeferred<Collection<Widget>>().let{ response ->
-			widgets.send(GetAll(response))
-			response.await() as Set
+	private fun addPendingWidgets() {
+		if (hasPendingWidgets) synchronized(pendingWidgets) {
+			pendingWidgets.forEach { s -> S_addWidgets(s.widgets) }
+			pendingWidgets.clear()
+			hasPendingWidgets = false
 		}
 	}
 
+	suspend fun getWidgets(): Set<Widget> = addPendingWidgets().let { widgets.snapshot() }
+
+	fun getWidget(id: ConcreteId): Widget? = addPendingWidgets().let { widgets[id] }
+
+	/** @return all widgets with the unique id [uid] (i.e. all its property configurations) */
+	fun getWidgets(uid: UUID): List<Widget> = addPendingWidgets().let { widgetsByUid[uid] }
+
+	/** @return all widgets of the given package, if [actableOnly] is set only those which can be acted upon */
+	fun getWidgets(packageName: String, actableOnly: Boolean = false): List<Widget> = addPendingWidgets().let {
+		if (actableOnly) actableWidgetsByPackage[packageName] else widgetsByPackage[packageName]
+	}
+
 	fun S_addWidget(w: Widget) {
 		nWidgets +=1
-		widgets.sendBlocking(Add(w))
+		widgets.add(w)
 	}
 
-	suspend fun addWidgets(w: Collection<Widget>) {
+	suspend fun addWidgets(w: Collection<Widget>) = S_addWidgets(w)
+
+	private fun S_addWidgets(w: Collection<Widget>) {
 		nWidgets += w.size
-		widgets.send(AddAll(w))
+		widgets.addAll(w)
 	}
 
 	@Suppress("unused")
@@ -114,16 +142,31 @@ class Model private constructor(val config: ModelConfig) {
 	suspend inline fun findWidgetOrElse(id: String, widgets: Collection<Widget>? = null, crossinline otherwise: (ConcreteId) -> Widget?): Widget? {
 		return if (id == "null") null
 		else idFromString(id).let {
-			(widgets ?: getWidgets()).let{ widgets -> widgets.find { w -> w.id == it } ?: otherwise(it) }
+			(if (widgets == null) getWidget(it) else widgets.find { w -> w.id == it }) ?: otherwise(it)
 		}
 	}
 
-	fun P_dumpModel(config: ModelConfig) = launch(CoroutineName("Model-dump"),parent = modelDumpJob) {
-		getStates().let{ states ->
+	/** write-behind persistence of states and traces for this model's [config] */
+	private val dumper = ModelDumper(config)
+
+	/** metrics of the write-behind dumper, i.e. its queue depth and dump latencies */
+	internal val dumpMetrics get() = dumper.metrics
+
+	/** appends the new states and actions to the model file on each dump, if the columnar store is configured */
+	private val store by lazy { ModelStore.Appender(config.storeFile) }
+
+	/** @param final the model is not going to be updated or dumped afterwards, i.e. the dumper of the model's own [config] is closed */
+	fun P_dumpModel(config: ModelConfig, final: Boolean = false) = launch(CoroutineName("Model-dump"),parent = modelDumpJob) {
+		if (config === this@Model.config) {  // states which were already dumped are skipped and only new actions are appended to the traces
+			getStates().forEach { dumper.dumpState(it) }
+			paths.forEach { dumper.dumpTrace(it) }
+			if (final) dumper.close() else dumper.sync()
+			if (config.isColumnarStore) store.append(this@Model)
+		} else getStates().let{ states ->
 			println("dump Model with ${states.size}")
 			states.forEach { s -> launch(CoroutineName("state-dump ${s.uid}"),parent = coroutineContext[Job]) { s.dump(config) } }
+			paths.forEach { t -> launch(CoroutineName("trace-dump"),parent = coroutineContext[Job]) { t.dump(config) } }
 		}
-		paths.forEach { t -> launch(CoroutineName("trace-dump"),parent = coroutineContext[Job]) { t.dump(config) } }
 	}
 
 	private var uTime: Long = 0
@@ -138,9 +181,9 @@ class Model private constructor(val config: ModelConfig) {
 				launch { newState.widgets } // initialize the widgets in parallel
 				trace.update(action, newState)
 
-				if (config[ModelProperties.dump.onEachAction]) {
-					launch(CoroutineName("state-dump"),parent = modelDumpJob) { newState.dump(config) }
-					launch(CoroutineName("trace-dump"),parent = modelDumpJob) { trace.dump(config) }
+				if (config[ModelProperties.dump.onEachAction]) {  // suspends only if the dump queue is full
+					dumper.dumpState(newState)
+					dumper.dumpTrace(trace)
 				}
 
 				if (config[ModelProperties.imgDump.states]) launch(CoroutineName("screen-dump"),parent = modelDumpJob) {
@@ -171,14 +214,15 @@ class Model private constructor(val config: ModelConfig) {
 		}
 	}
 
+	/** widgets of the previous state, unchanged GUI nodes reuse them instead of being re-created */
+	private val widgetCache = WidgetCache()
+
 	private fun computeNewState(action: ActionResult, @Suppress("UNUSED_PARAMETER") interactedEF: Map<UUID, List<Pair<StateData, Widget>>>): StateData {
-		debugT("compute Widget set ", { action.getWidgets(config) })  // compute all widgets existing in the current state
+		debugT("compute Widget set ", { action.getWidgets(config, widgetCache.reusableFor(action)) })  // compute all widgets existing in the current state
 				.let { widgets ->
-					widgets.forEach { widget ->  // Initialize the parent ID. It's first necessary to have all widgets  converted before being able to link them.
-						widget.parentId = widgets.firstOrNull {
-							it.idHash == widget.parentHash
-						}?.id
-					}
+					// Initialize the parent ID. It's first necessary to have all widgets  converted before being able to link them.
+					debugT("link parents", { WidgetPipeline.linkParents(widgets, widgetCache::contains) })
+				}.let { widgets ->
 					debugT("compute result State for ${widgets.size}\n", { action.resultState(widgets) }).let { state ->
 						// revise state if it contains previously interacted edit fields
 
@@ -190,6 +234,7 @@ class Model private constructor(val config: ModelConfig) {
 //							else state
 //						})
 //					return s!! //}
+						widgetCache.update(action, state)
 				return state
 					}
 				}
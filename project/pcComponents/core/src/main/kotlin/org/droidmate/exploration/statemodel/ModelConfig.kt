@@ -27,6 +27,7 @@ package org.droidmate.exploration.statemodel
 
 import com.natpryce.konfig.*
 import org.droidmate.configuration.ConfigProperties.ModelProperties.dump.stateFileExtension
+import org.droidmate.configuration.ConfigProperties.ModelProperties.dump.storeFormat
 import org.droidmate.configuration.ConfigProperties.ModelProperties.dump.traceFileExtension
 import org.droidmate.configuration.ConfigProperties.ModelProperties.dump.traceFilePrefix
 import org.droidmate.configuration.ConfigProperties.ModelProperties.path.cleanDirs
@@ -79,10 +80,18 @@ class ModelConfig private constructor(path: Path,
 		return idPath(baseDir, id.toString(), postfix, fileExtension)
 	}
 
+	/** determines the image ids of widgets without text, tolerant engines keep an index of all images of this model */
+	val imageIdentity: ImageIdentity by lazy { ImageIdentity.create(this) }
+
 	val traceFile = { traceId: String -> "$baseDir${File.separator}${config[traceFilePrefix]}$traceId${config[traceFileExtension]}" }
 
+	/** single file containing the whole model, see [ModelStore] */
+	val storeFile: Path = baseDir.resolve(storeFileName)
+	val isColumnarStore: Boolean get() = config[storeFormat] == "columnar"
+
 	companion object {
 		const val defaultWidgetSuffix = "_AllWidgets"
+		const val storeFileName = "model.dmm"
 		private const val nonInteractiveDir = "nonInteractive"
 
 		private val resourceConfig by lazy {
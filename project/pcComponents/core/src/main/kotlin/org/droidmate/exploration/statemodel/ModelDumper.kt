@@ -0,0 +1,252 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import kotlinx.coroutines.experimental.CancellationException
+import kotlinx.coroutines.experimental.CompletableDeferred
+import kotlinx.coroutines.experimental.CoroutineName
+import kotlinx.coroutines.experimental.CoroutineStart
+import kotlinx.coroutines.experimental.channels.Channel
+import kotlinx.coroutines.experimental.channels.ClosedReceiveChannelException
+import kotlinx.coroutines.experimental.launch
+import kotlinx.coroutines.experimental.withTimeoutOrNull
+import org.droidmate.configuration.ConfigProperties.ModelProperties
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Write-behind persistence of the model, the exploration only enqueues what has to be written and a single consumer writes it.
+ * Each state file is written exactly once and each trace file is kept open such that new actions are appended to it instead
+ * of rewriting the whole trace after each action.
+ * The queue is bounded by [capacity], if the disk cannot keep up the exploration is suspended on enqueueing (backpressure).
+ * Written data is handed to the OS as soon as the queue is drained, fsync is batched to at most once per [syncInterval] ms
+ * and on each [sync]. If the process is killed the last trace line may be incomplete, which is ignored on model loading.
+ * A failing task is logged and skipped, if the consumer terminates nevertheless all pending [sync] calls fail instead of waiting
+ * forever. [close] writes the remaining tasks and terminates the consumer, afterwards nothing can be enqueued anymore.
+ */
+internal class ModelDumper(private val config: ModelConfig,
+                           capacity: Int = config[ModelProperties.dump.queueSize],
+                           private val syncInterval: Long = config[ModelProperties.dump.syncInterval].toLong()) {
+
+	private sealed class Task {
+		val enqueued: Long = System.nanoTime()
+
+		class State(val state: StateData) : Task()
+		class Actions(val trace: Trace) : Task()
+		class Sync(val done: CompletableDeferred<Unit>) : Task()
+	}
+
+	private class TraceOutput(file: File, append: Boolean) {
+		private val stream = FileOutputStream(file, append)
+		val writer: BufferedWriter = stream.bufferedWriter()
+
+		fun sync() {
+			writer.flush()
+			stream.fd.sync()
+		}
+
+		fun close() = writer.close()
+	}
+
+	/** snapshot of the dumper statistics, latencies are measured from enqueueing until the data was written */
+	class Metrics(val written: Long, val queueDepth: Int, val maxQueueDepth: Int, val meanLatencyMs: Double,
+	              val maxLatencyMs: Double, val syncs: Long) {
+		override fun toString(): String = "ModelDumper[written=$written, queue=$queueDepth (max $maxQueueDepth), " +
+				"latency mean=${"%.2f".format(meanLatencyMs)}ms max=${"%.2f".format(maxLatencyMs)}ms, fsyncs=$syncs]"
+	}
+
+	private val queue = Channel<Task>(capacity)
+	private val queueDepth = AtomicInteger(0)
+	private val maxQueueDepth = AtomicInteger(0)
+	/** states which were enqueued or written, each state file is only written once.
+	 * A state is removed again if its write failed or was dropped, such that the next [dumpState] retries it. */
+	private val dumpedStates: MutableSet<ConcreteId> = ConcurrentHashMap.newKeySet()
+
+	// the following are only accessed by the consumer
+	private val traces = HashMap<UUID, TraceOutput>()
+	/** number of actions already written for each trace file created by this dumper */
+	private val appended = HashMap<UUID, Int>()
+	private val unsyncedStateFiles = LinkedList<String>()
+	private var lastSync = System.nanoTime()
+	/** something was written since the last fsync */
+	private var dirty = false
+	@Volatile private var written = 0L
+	@Volatile private var latencySum = 0L
+	@Volatile private var maxLatency = 0L
+	@Volatile private var syncs = 0L
+
+	private val consumer = launch(CoroutineName("model-dumper"), start = CoroutineStart.LAZY) { process() }
+
+	val metrics: Metrics
+		get() = Metrics(written, queueDepth.get(), maxQueueDepth.get(),
+				if (written == 0L) 0.0 else latencySum.toDouble() / written / 1e6, maxLatency / 1e6, syncs)
+
+	/** enqueue [state] to be written, if it was not already (successfully), suspends while the queue is full */
+	suspend fun dumpState(state: StateData) {
+		if (dumpedStates.add(state.stateId)) enqueue(Task.State(state))
+	}
+
+	/** enqueue appending all actions of [trace] which were not written yet, suspends while the queue is full */
+	suspend fun dumpTrace(trace: Trace) = enqueue(Task.Actions(trace))
+
+	/** wait until everything enqueued before was written and synced to disk, afterwards all trace files are closed
+	 * (they are reopened in append mode if the trace continues) */
+	suspend fun sync() {
+		val done = CompletableDeferred<Unit>()
+		enqueue(Task.Sync(done))
+		done.await()
+		logger.debug("$metrics")
+	}
+
+	/** write everything enqueued before, close all files and terminate the consumer */
+	suspend fun close() {
+		queue.close()
+		if (consumer.isActive) consumer.join() else consumer.cancel()  // the consumer was never started if nothing was enqueued
+		logger.debug("closed $metrics")
+	}
+
+	private suspend fun enqueue(task: Task) {
+		consumer.start()
+		maxQueueDepth.accumulateAndGet(queueDepth.incrementAndGet(), Math::max)
+		queue.send(task)
+	}
+
+	private suspend fun process() {
+		try {
+			while (true) {
+				val task = queue.poll() ?: run {
+					// the queue is drained: hand the data to the OS and fsync once the interval elapsed or nothing new arrives within it
+					traces.values.forEach { it.writer.flush() }
+					if (!dirty) queue.receive()
+					else withTimeoutOrNull(Math.max(0L, syncInterval - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSync))) { queue.receive() }
+							?: run { syncAll(close = false); queue.receive() }
+				}
+				queueDepth.decrementAndGet()
+				try {
+					when (task) {
+						is Task.State -> writeState(task.state)
+						is Task.Actions -> appendActions(task.trace)
+						is Task.Sync -> syncAll(close = true)
+					}
+				} catch (e: CancellationException) {
+					throw e
+				} catch (e: Exception) {
+					logger.error("failed to dump $task: ${e.localizedMessage}", e)
+				} finally {
+					if (task is Task.Sync) task.done.complete(Unit)
+				}
+				if (task !is Task.Sync) (System.nanoTime() - task.enqueued).let { latency ->
+					latencySum += latency
+					if (latency > maxLatency) maxLatency = latency
+					written += 1
+				}
+				if (dirty && System.nanoTime() - lastSync > TimeUnit.MILLISECONDS.toNanos(syncInterval)) syncAll(close = false)
+			}
+		} catch (e: ClosedReceiveChannelException) {
+			// regular termination by close(), all tasks were written
+		} finally {
+			syncAll(close = true)
+			failPending()
+		}
+	}
+
+	/** called when the consumer terminated, pending tasks are dropped and waiting [sync] calls fail */
+	private fun failPending() {
+		queue.close()
+		while (true) {
+			val task = queue.poll() ?: break
+			queueDepth.decrementAndGet()
+			if (task is Task.Sync) task.done.completeExceptionally(IllegalStateException("The model dumper terminated before the sync"))
+			else {
+				if (task is Task.State) dumpedStates.remove(task.state.stateId)
+				logger.error("model dumper terminated, dropping $task")
+			}
+		}
+	}
+
+	private fun writeState(state: StateData) {
+		try {
+			state.dump(config)
+		} catch (e: Exception) {
+			dumpedStates.remove(state.stateId)
+			throw e
+		}
+		dirty = true
+		unsyncedStateFiles.add(config.widgetFile(state.stateId, state.isHomeScreen, state.topNodePackageName))
+	}
+
+	private suspend fun appendActions(trace: Trace) {
+		val isNew = !appended.containsKey(trace.id)
+		val from = appended[trace.id] ?: 0
+		val actions = trace.P_getActionsFrom(from)
+		if (actions.isEmpty() && !isNew) return
+
+		val out = traces.getOrPut(trace.id) { TraceOutput(File(config.traceFile(trace.id.toString())), append = !isNew) }
+		if (isNew) {
+			out.writer.write(ActionData.header(config[ModelProperties.dump.sep]))
+			out.writer.newLine()
+		}
+		actions.forEach { action ->
+			out.writer.write(action.actionString())
+			out.writer.newLine()
+		}
+		appended[trace.id] = from + actions.size
+		dirty = true
+	}
+
+	private fun syncAll(close: Boolean) {
+		try {
+			traces.values.forEach {
+				it.sync()
+				if (close) it.close()
+			}
+			unsyncedStateFiles.forEach { file -> FileChannel.open(Paths.get(file), StandardOpenOption.WRITE).use { it.force(true) } }
+		} catch (e: IOException) {
+			logger.error("failed to sync the model files: ${e.localizedMessage}", e)
+		} finally {
+			if (close) traces.clear()
+			unsyncedStateFiles.clear()
+			lastSync = System.nanoTime()
+			dirty = false
+			syncs += 1
+		}
+	}
+
+	companion object {
+		private val logger: Logger by lazy { LoggerFactory.getLogger(ModelDumper::class.java) }
+	}
+}
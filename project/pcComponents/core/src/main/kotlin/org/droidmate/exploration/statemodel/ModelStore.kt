@@ -0,0 +1,531 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import kotlinx.coroutines.experimental.runBlocking
+import kotlinx.coroutines.experimental.sync.Mutex
+import kotlinx.coroutines.experimental.sync.withLock
+import org.droidmate.configuration.ConfigProperties.ModelProperties
+import org.droidmate.deviceInterface.WidgetFlags
+import org.droidmate.deviceInterface.WidgetFlags.ENABLED
+import org.droidmate.deviceInterface.WidgetFlags.EDITABLE
+import org.droidmate.deviceInterface.WidgetFlags.PASSWORD
+import org.droidmate.deviceInterface.WidgetFlags.CLICKABLE
+import org.droidmate.deviceInterface.WidgetFlags.LONG_CLICKABLE
+import org.droidmate.deviceInterface.WidgetFlags.SCROLLABLE
+import org.droidmate.deviceInterface.WidgetFlags.HAS_CHECKED
+import org.droidmate.deviceInterface.WidgetFlags.CHECKED
+import org.droidmate.deviceInterface.WidgetFlags.HAS_FOCUSED
+import org.droidmate.deviceInterface.WidgetFlags.FOCUSED
+import org.droidmate.deviceInterface.WidgetFlags.SELECTED
+import org.droidmate.deviceInterface.WidgetFlags.LEAF
+import org.droidmate.deviceInterface.WidgetFlags.VISIBLE
+import org.droidmate.deviceInterface.WidgetFlags.ACTABLE_DESCENDANT
+import org.droidmate.deviceInterface.WidgetFlags.HAS_COORD
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.exploration.statemodel.features.ModelFeature
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.nio.channels.Channels
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.time.LocalDateTime
+import java.time.ZoneOffset
+import java.util.*
+
+/**
+ * Single file, columnar model format (alternative to the per-state CSV files, which remain available as export).
+ *
+ * The file is a sequence of segments, each dump appends one segment with the states and actions which were not written before
+ * (see [Appender]), i.e. the dump time only depends on the new data and not on the model size.
+ * Segment layout: `[header][widget table][state table][trace table][action table][string dictionary]`.
+ * Each table stores its columns consecutively, i.e. all values of one column are adjacent and have a fixed width, such that any
+ * cell can be read directly from the memory mapped file. All strings are indices into the dictionary of their segment which is
+ * only decoded on access.
+ * The widgets of a state are consecutive rows of the widget table, the state table stores the first row and the number of widgets.
+ * Widget rows are numbered across all segments, such that actions can refer to the target widget of a state of a previous segment.
+ * The trace table of a segment contains the traces with new actions, the actions of a trace are the ones of all its segments in order.
+ * Loading only creates the [StateData] and [ActionData] objects, the widgets of a state are created when they are first accessed.
+ * The file is limited to 2GB since it is mapped as a single buffer.
+ */
+object ModelStore {
+	private const val MAGIC: Int = 0x444D4D31  // "DMM1"
+	/** version 1 files consist of a single segment (with the reserved header field 0) and can still be read */
+	const val VERSION: Int = 2
+	private const val HEADER_SIZE = 32
+
+	private val utf8 = Charset.forName("UTF-8")
+
+	// widget flags
+	private const val HAS_IMG = WidgetFlags.FREE
+	private const val HAS_PARENT = WidgetFlags.FREE shl 1
+	private const val USED_FOR_STATE_ID = WidgetFlags.FREE shl 2
+	private const val HAS_PID = WidgetFlags.FREE shl 3
+	// state / action flags
+	private const val HOME_SCREEN = 1
+	private const val APP_HAS_STOPPED = 1 shl 1
+	private const val SUCCESSFUL = 1
+
+	/** fixed width columns of a table with [rows] rows, the long columns are followed by the int columns */
+	private class Table(val base: Int, val rows: Int, val nLongs: Int, val nInts: Int) {
+		val size: Int get() = rows * (nLongs * 8 + nInts * 4)
+		val end: Int get() = base + size
+
+		fun long(buffer: ByteBuffer, column: Int, row: Int): Long = buffer.getLong(base + (column * rows + row) * 8)
+		fun int(buffer: ByteBuffer, column: Int, row: Int): Int = buffer.getInt(base + nLongs * rows * 8 + (column * rows + row) * 4)
+	}
+
+	// widget columns
+	private const val W_UID = 0  // msb, lsb
+	private const val W_IMG = 2
+	private const val W_PARENT_UID = 4
+	private const val W_PARENT_CONFIG = 6
+	private const val W_PID = 8
+	private const val W_LONGS = 10
+	private const val W_TEXT = 0
+	private const val W_DESC = 1
+	private const val W_RES_ID = 2
+	private const val W_CLASS = 3
+	private const val W_PACKAGE = 4
+	private const val W_XPATH = 5
+	private const val W_FLAGS = 6
+	private const val W_X = 7
+	private const val W_Y = 8
+	private const val W_WIDTH = 9
+	private const val W_HEIGHT = 10
+	private const val W_ID_HASH = 11
+	private const val W_PARENT_HASH = 12
+	private const val W_COORD_X = 13
+	private const val W_COORD_Y = 14
+	private const val W_INTS = 15
+	// state columns
+	private const val S_UID = 0
+	private const val S_CONFIG = 2
+	private const val S_IEDIT = 4
+	private const val S_LONGS = 6
+	private const val S_PACKAGE = 0
+	private const val S_FLAGS = 1
+	private const val S_FIRST_WIDGET = 2
+	private const val S_WIDGETS = 3
+	private const val S_INTS = 4
+	// trace columns
+	private const val T_ID = 0
+	private const val T_LONGS = 2
+	private const val T_FIRST_ACTION = 0
+	private const val T_ACTIONS = 1
+	private const val T_INTS = 2
+	// action columns
+	private const val A_PREV_UID = 0
+	private const val A_PREV_CONFIG = 2
+	private const val A_RES_UID = 4
+	private const val A_RES_CONFIG = 6
+	private const val A_START = 8
+	private const val A_END = 9
+	private const val A_LONGS = 10
+	private const val A_TYPE = 0
+	private const val A_EXCEPTION = 1
+	private const val A_DATA = 2
+	private const val A_FLAGS = 3
+	private const val A_START_NANO = 4
+	private const val A_END_NANO = 5
+	/** row of the target widget in the widget table or -1 */
+	private const val A_TARGET = 6
+	private const val A_INTS = 7
+
+	private class Layout(base: Int, nWidgets: Int, nStates: Int, nTraces: Int, nActions: Int) {
+		val widgets = Table(base + HEADER_SIZE, nWidgets, W_LONGS, W_INTS)
+		val states = Table(widgets.end, nStates, S_LONGS, S_INTS)
+		val traces = Table(states.end, nTraces, T_LONGS, T_INTS)
+		val actions = Table(traces.end, nActions, A_LONGS, A_INTS)
+		val strings: Int = actions.end
+	}
+
+	/** column values collected before writing, such that each column can be written consecutively */
+	private class Columns(rows: Int, nLongs: Int, nInts: Int) {
+		val longs = Array(nLongs) { LongArray(rows) }
+		val ints = Array(nInts) { IntArray(rows) }
+
+		fun set(column: Int, row: Int, id: UUID?) {
+			longs[column][row] = id?.mostSignificantBits ?: 0
+			longs[column + 1][row] = id?.leastSignificantBits ?: 0
+		}
+
+		fun writeTo(out: DataOutputStream) {
+			longs.forEach { c -> c.forEach { out.writeLong(it) } }
+			ints.forEach { c -> c.forEach { out.writeInt(it) } }
+		}
+	}
+
+	private class StringDictionary {
+		private val ids = HashMap<String, Int>()
+		val strings = ArrayList<String>()
+
+		fun idOf(s: String): Int = ids[s] ?: strings.size.also { ids[s] = it; strings.add(s) }
+	}
+
+	/**
+	 * Write all states and traces of [model] to [file]. The data is written to a temporary file first which replaces [file]
+	 * once it is complete, i.e. a crash while writing never leaves an incomplete model file.
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	suspend fun write(model: Model, file: Path) = Appender(file).append(model)
+
+	/**
+	 * Writes the model to [file], the first [append] replaces any previous file (like [write]) and each further one appends a
+	 * segment with the states and actions which were added to the model since.
+	 * If appending fails the file is truncated to its previous size, if the process is killed while appending, the incomplete
+	 * last segment is ignored by the [Reader].
+	 */
+	class Appender(val file: Path) {
+		private val mutex = Mutex()
+		/** first (global) widget row of each written state */
+		private val firstRow = HashMap<ConcreteId, Int>()
+		/** number of written actions of each trace */
+		private val appended = HashMap<UUID, Int>()
+		private var nWritten = 0
+		/** size of the complete segments in [file] or -1 before the first segment was written */
+		private var length = -1L
+
+		@Throws(IOException::class)
+		suspend fun append(model: Model) = mutex.withLock {
+			val all = model.getStates()
+			val states = all.filter { !firstRow.containsKey(it.stateId) }
+			val traces = model.getPaths().mapNotNull { t ->
+				val written = appended[t.id]
+				t.P_getActionsFrom(written ?: 0).let { if (it.isEmpty() && written != null) null else Pair(t.id, it) }
+			}
+			if (length >= 0 && states.isEmpty() && traces.isEmpty()) return@withLock
+
+			val newRows = HashMap<ConcreteId, Int>()
+			var row = nWritten
+			states.forEach { state ->
+				newRows[state.stateId] = row
+				row += state.widgets.size
+			}
+			val byId = all.associateBy { it.stateId }
+			val dump = { out: OutputStream -> writeSegment(out, states, traces, byId) { id -> firstRow[id] ?: newRows[id] } }
+
+			if (length < 0) {
+				val tmp = file.resolveSibling("${file.fileName}.tmp")
+				Files.newOutputStream(tmp).use(dump)
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+				length = Files.size(file)
+			} else FileChannel.open(file, StandardOpenOption.WRITE).use { channel ->
+				try {
+					channel.position(length)
+					dump(Channels.newOutputStream(channel))
+					length = channel.position()
+				} catch (e: IOException) {
+					channel.truncate(length)
+					throw e
+				}
+			}
+			firstRow.putAll(newRows)
+			traces.forEach { (id, actions) -> appended[id] = (appended[id] ?: 0) + actions.size }
+			nWritten = row
+		}
+
+		/**
+		 * writes a segment with [states] and the [traces] actions to [stream] (without closing it)
+		 * @param rowOf the global first widget row of a state, either already written or part of this segment
+		 */
+		private fun writeSegment(stream: OutputStream, states: List<StateData>, traces: List<Pair<UUID, List<ActionData>>>,
+		                         byId: Map<ConcreteId, StateData>, rowOf: (ConcreteId) -> Int?) {
+			val nWidgets = states.sumBy { it.widgets.size }
+			val nActions = traces.sumBy { it.second.size }
+			val strings = StringDictionary()
+
+			val widgets = Columns(nWidgets, W_LONGS, W_INTS)
+			val stateColumns = Columns(states.size, S_LONGS, S_INTS)
+			var row = 0
+			states.forEachIndexed { s, state ->
+				stateColumns.set(S_UID, s, state.uid)
+				stateColumns.set(S_CONFIG, s, state.configId)
+				stateColumns.set(S_IEDIT, s, state.iEditId)
+				stateColumns.ints[S_PACKAGE][s] = strings.idOf(state.topNodePackageName)
+				stateColumns.ints[S_FLAGS][s] = (if (state.isHomeScreen) HOME_SCREEN else 0) or (if (state.isAppHasStoppedDialogBox) APP_HAS_STOPPED else 0)
+				stateColumns.ints[S_FIRST_WIDGET][s] = nWritten + row
+				stateColumns.ints[S_WIDGETS][s] = state.widgets.size
+				state.widgets.forEach { w -> widgets.setWidget(row++, w, strings) }
+			}
+
+			val traceColumns = Columns(traces.size, T_LONGS, T_INTS)
+			val actions = Columns(nActions, A_LONGS, A_INTS)
+			row = 0
+			traces.forEachIndexed { t, (id, traceActions) ->
+				traceColumns.set(T_ID, t, id)
+				traceColumns.ints[T_FIRST_ACTION][t] = row
+				traceColumns.ints[T_ACTIONS][t] = traceActions.size
+				traceActions.forEach { a ->
+					actions.set(A_PREV_UID, row, a.prevState.first)
+					actions.set(A_PREV_CONFIG, row, a.prevState.second)
+					actions.set(A_RES_UID, row, a.resState.first)
+					actions.set(A_RES_CONFIG, row, a.resState.second)
+					actions.longs[A_START][row] = a.startTimestamp.toEpochSecond(ZoneOffset.UTC)
+					actions.longs[A_END][row] = a.endTimestamp.toEpochSecond(ZoneOffset.UTC)
+					actions.ints[A_START_NANO][row] = a.startTimestamp.nano
+					actions.ints[A_END_NANO][row] = a.endTimestamp.nano
+					actions.ints[A_TYPE][row] = strings.idOf(a.actionType)
+					actions.ints[A_EXCEPTION][row] = strings.idOf(a.exception)
+					actions.ints[A_DATA][row] = strings.idOf(a.data)
+					actions.ints[A_FLAGS][row] = if (a.successful) SUCCESSFUL else 0
+					actions.ints[A_TARGET][row] = a.targetWidget?.let { target ->
+						byId[a.prevState]?.let { src ->
+							src.widgets.indexOf(target).let { i -> if (i < 0) null else rowOf(src.stateId)?.plus(i) }
+						}
+					} ?: -1
+					row += 1
+				}
+			}
+
+			val out = DataOutputStream(BufferedOutputStream(stream, 1 shl 16))
+			out.writeInt(MAGIC)
+			out.writeInt(VERSION)
+			out.writeInt(strings.strings.size)
+			out.writeInt(nWidgets)
+			out.writeInt(states.size)
+			out.writeInt(traces.size)
+			out.writeInt(nActions)
+			out.writeInt(nWritten)  // first widget row of this segment
+			widgets.writeTo(out)
+			stateColumns.writeTo(out)
+			traceColumns.writeTo(out)
+			actions.writeTo(out)
+
+			val encoded = strings.strings.map { it.toByteArray(utf8) }
+			var offset = 0
+			out.writeInt(offset)
+			encoded.forEach { offset += it.size; out.writeInt(offset) }
+			encoded.forEach { out.write(it) }
+			out.flush()
+		}
+	}
+
+	private fun Columns.setWidget(row: Int, w: Widget, strings: StringDictionary) {
+		set(W_UID, row, w.uid)
+		set(W_IMG, row, w.imgId)
+		set(W_PARENT_UID, row, w.parentId?.first)
+		set(W_PARENT_CONFIG, row, w.parentId?.second)
+		set(W_PID, row, w.properties.uidOverride)
+		ints[W_TEXT][row] = strings.idOf(w.text)
+		ints[W_DESC][row] = strings.idOf(w.contentDesc)
+		ints[W_RES_ID][row] = strings.idOf(w.resourceId)
+		ints[W_CLASS][row] = strings.idOf(w.className)
+		ints[W_PACKAGE][row] = strings.idOf(w.packageName)
+		ints[W_XPATH][row] = strings.idOf(w.xpath)
+		ints[W_X][row] = w.bounds.x
+		ints[W_Y][row] = w.bounds.y
+		ints[W_WIDTH][row] = w.bounds.width
+		ints[W_HEIGHT][row] = w.bounds.height
+		ints[W_ID_HASH][row] = w.idHash
+		ints[W_PARENT_HASH][row] = w.parentHash
+		w.uncoveredCoord?.let { (x, y) ->
+			ints[W_COORD_X][row] = x
+			ints[W_COORD_Y][row] = y
+		}
+
+		var flags = 0
+		if (w.enabled) flags = flags or ENABLED
+		if (w.isEdit) flags = flags or EDITABLE
+		if (w.isPassword) flags = flags or PASSWORD
+		if (w.clickable) flags = flags or CLICKABLE
+		if (w.longClickable) flags = flags or LONG_CLICKABLE
+		if (w.scrollable) flags = flags or SCROLLABLE
+		w.checked?.let { flags = flags or HAS_CHECKED or (if (it) CHECKED else 0) }
+		w.focused?.let { flags = flags or HAS_FOCUSED or (if (it) FOCUSED else 0) }
+		if (w.selected) flags = flags or SELECTED
+		if (w.isLeaf) flags = flags or LEAF
+		if (w.visible) flags = flags or VISIBLE
+		if (w.hasActableDescendant) flags = flags or ACTABLE_DESCENDANT
+		if (w.uncoveredCoord != null) flags = flags or HAS_COORD
+		if (w.imgId != null) flags = flags or HAS_IMG
+		if (w.parentId != null) flags = flags or HAS_PARENT
+		if (w.usedForStateId) flags = flags or USED_FOR_STATE_ID
+		if (w.properties.uidOverride != null) flags = flags or HAS_PID
+		ints[W_FLAGS][row] = flags
+	}
+
+	/** memory mapped (read-only) view of a model file, all accessors can be used concurrently */
+	class Reader @Throws(IOException::class) constructor(val file: Path) {
+		private val buffer: ByteBuffer = FileChannel.open(file, StandardOpenOption.READ).use { it.map(FileChannel.MapMode.READ_ONLY, 0, it.size()) }
+
+		private inner class Segment(base: Int, val firstWidget: Int, val firstState: Int) {
+			val layout = Layout(base, buffer.getInt(base + 12), buffer.getInt(base + 16), buffer.getInt(base + 20), buffer.getInt(base + 24))
+			val nStrings: Int = buffer.getInt(base + 8)
+			/** strings are decoded on first access, concurrent decoding of the same string is harmless */
+			val strings: Array<String?> = arrayOfNulls(nStrings)
+			/** the offsets of the string dictionary are read as soon as the segment is known to be complete */
+			val end: Long get() = layout.strings + (nStrings + 1) * 4L + buffer.getInt(layout.strings + nStrings * 4)
+		}
+
+		private val segments: List<Segment>
+
+		init {
+			val size = buffer.limit()
+			val found = ArrayList<Segment>()
+			var base = 0
+			var nWidgets = 0
+			var nStates = 0
+			while (base + HEADER_SIZE <= size) {
+				if (buffer.getInt(base) != MAGIC) throw IOException("$file is not a model file")
+				val version = buffer.getInt(base + 4)
+				if (version != VERSION && version != 1) throw IOException("Unsupported model file version $version, expected $VERSION")
+				val segment = Segment(base, nWidgets, nStates)
+				// the process may have been killed while appending the last segment, which is ignored then
+				if (segment.layout.strings + (segment.nStrings + 1) * 4L > size || segment.end > size) break
+				found.add(segment)
+				nWidgets += segment.layout.widgets.rows
+				nStates += segment.layout.states.rows
+				base = segment.end.toInt()
+			}
+			if (found.isEmpty()) throw IOException("$file is not a model file")
+			segments = found
+		}
+
+		val nWidgets: Int get() = segments.last().let { it.firstWidget + it.layout.widgets.rows }
+		val nStates: Int get() = segments.last().let { it.firstState + it.layout.states.rows }
+		/** the ids of all traces, in the order of their first actions */
+		val traceIds: List<UUID> by lazy { segments.flatMap { seg -> List(seg.layout.traces.rows) { seg.traceId(it) } }.distinct() }
+
+		private fun Segment.string(i: Int): String = strings[i] ?: run {
+			val start = buffer.getInt(layout.strings + i * 4)
+			val end = buffer.getInt(layout.strings + (i + 1) * 4)
+			val bytes = ByteArray(end - start)
+			(buffer.duplicate().position(layout.strings + (nStrings + 1) * 4 + start) as ByteBuffer).get(bytes)
+			String(bytes, utf8).also { strings[i] = it }
+		}
+
+		private fun Table.uuid(column: Int, row: Int): UUID = UUID(long(buffer, column, row), long(buffer, column + 1, row))
+
+		private fun Segment.traceId(t: Int): UUID = layout.traces.uuid(T_ID, t)
+
+		/** the last segment whose first element (according to [first]) is at most [index] */
+		private inline fun segmentOf(index: Int, first: (Segment) -> Int): Segment {
+			var low = 0
+			var high = segments.size - 1
+			while (low < high) {
+				val mid = (low + high + 1) ushr 1
+				if (first(segments[mid]) <= index) low = mid else high = mid - 1
+			}
+			return segments[low]
+		}
+
+		/** the widget with the (global) widget [row] */
+		fun widget(row: Int): Widget = segmentOf(row) { it.firstWidget }.createWidget(row)
+
+		private fun Segment.createWidget(globalRow: Int): Widget = with(layout.widgets) {
+			val row = globalRow - firstWidget
+			val flags = int(buffer, W_FLAGS, row)
+			fun isSet(flag: Int) = flags and flag != 0
+			val data = WidgetData(text = string(int(buffer, W_TEXT, row)), contentDesc = string(int(buffer, W_DESC, row)),
+					resourceId = string(int(buffer, W_RES_ID, row)), className = string(int(buffer, W_CLASS, row)),
+					packageName = string(int(buffer, W_PACKAGE, row)),
+					enabled = isSet(ENABLED), editable = isSet(EDITABLE), isPassword = isSet(PASSWORD), clickable = isSet(CLICKABLE),
+					longClickable = isSet(LONG_CLICKABLE), scrollable = isSet(SCROLLABLE),
+					checked = if (isSet(HAS_CHECKED)) isSet(CHECKED) else null, focused = if (isSet(HAS_FOCUSED)) isSet(FOCUSED) else null,
+					selected = isSet(SELECTED), boundsX = int(buffer, W_X, row), boundsY = int(buffer, W_Y, row),
+					boundsWidth = int(buffer, W_WIDTH, row), boundsHeight = int(buffer, W_HEIGHT, row), isLeaf = isSet(LEAF),
+					visible = isSet(VISIBLE), _uid = if (isSet(HAS_PID)) uuid(W_PID, row) else null
+			).apply {
+				xpath = string(int(buffer, W_XPATH, row))
+				idHash = int(buffer, W_ID_HASH, row)
+				parentHash = int(buffer, W_PARENT_HASH, row)
+				hasActableDescendant = isSet(ACTABLE_DESCENDANT)
+				if (isSet(HAS_COORD)) uncoveredCoord = Pair(int(buffer, W_COORD_X, row), int(buffer, W_COORD_Y, row))
+			}
+			Widget(data, lazyOf(Pair(uuid(W_UID, row), if (isSet(HAS_IMG)) uuid(W_IMG, row) else null))).apply {
+				if (isSet(HAS_PARENT)) parentId = ConcreteId(uuid(W_PARENT_UID, row), uuid(W_PARENT_CONFIG, row))
+				usedForStateId = isSet(USED_FOR_STATE_ID)
+			}
+		}
+
+		/** the state with (global) index [index], its widgets are created on first access */
+		fun state(index: Int): StateData = segmentOf(index) { it.firstState }.let { seg ->
+			with(seg.layout.states) {
+				val s = index - seg.firstState
+				val first = int(buffer, S_FIRST_WIDGET, s)
+				val count = int(buffer, S_WIDGETS, s)
+				val flags = int(buffer, S_FLAGS, s)
+				StateData(lazy { List(count) { widget(first + it) } }, seg.string(int(buffer, S_PACKAGE, s)),
+						flags and HOME_SCREEN != 0, flags and APP_HAS_STOPPED != 0,
+						Triple(uuid(S_UID, s), uuid(S_CONFIG, s), uuid(S_IEDIT, s)))
+			}
+		}
+
+		/** the actions of the trace with [id] from all segments, the target widgets are created from their widget rows */
+		fun actions(id: UUID, sep: String): List<ActionData> = segments.flatMap { seg ->
+			(0 until seg.layout.traces.rows).filter { seg.traceId(it) == id }.flatMap { t -> seg.actions(t, sep) }
+		}
+
+		private fun Segment.actions(t: Int, sep: String): List<ActionData> = with(layout.actions) {
+			val first = layout.traces.int(buffer, T_FIRST_ACTION, t)
+			List(layout.traces.int(buffer, T_ACTIONS, t)) { i ->
+				val row = first + i
+				val target = int(buffer, A_TARGET, row)
+				ActionData(actionType = string(int(buffer, A_TYPE, row)), targetWidget = if (target < 0) null else widget(target),
+						startTimestamp = LocalDateTime.ofEpochSecond(long(buffer, A_START, row), int(buffer, A_START_NANO, row), ZoneOffset.UTC),
+						endTimestamp = LocalDateTime.ofEpochSecond(long(buffer, A_END, row), int(buffer, A_END_NANO, row), ZoneOffset.UTC),
+						successful = int(buffer, A_FLAGS, row) and SUCCESSFUL != 0, exception = string(int(buffer, A_EXCEPTION, row)),
+						resState = ConcreteId(uuid(A_RES_UID, row), uuid(A_RES_CONFIG, row)), sep = sep, data = string(int(buffer, A_DATA, row))
+				).apply { prevState = ConcreteId(uuid(A_PREV_UID, row), uuid(A_PREV_CONFIG, row)) }
+			}
+		}
+	}
+
+	/**
+	 * Create a model from the model file of [config] (see [ModelConfig.storeFile]).
+	 * States are registered with their stored ids, their widgets are only read from the file when they are accessed.
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	fun load(config: ModelConfig, watcher: LinkedList<ModelFeature> = LinkedList()): Model {
+		val reader = Reader(config.storeFile)
+		val model = Model.emptyModel(config)
+		val states = HashMap<ConcreteId, StateData>(reader.nStates * 2)
+		StateData.emptyState.let { states[it.stateId] = it }
+		repeat(reader.nStates) { s -> reader.state(s).let { state -> if (states.putIfAbsent(state.stateId, state) == null) model.addStateLazily(state) } }
+
+		runBlocking {
+			reader.traceIds.forEach { id ->
+				val actions = reader.actions(id, config[ModelProperties.dump.sep])
+				val trace = model.initNewTrace(watcher, id)
+				if (actions.isEmpty()) return@forEach
+				fun resState(a: ActionData) = states[a.resState] ?: throw IOException("state ${a.resState.dumpString()} is missing in ${config.storeFile}")
+				if (watcher.isEmpty()) trace.updateAll(actions, resState(actions.last()))
+				else actions.forEach { trace.update(it, resState(it)) }
+			}
+		}
+		return model
+	}
+}
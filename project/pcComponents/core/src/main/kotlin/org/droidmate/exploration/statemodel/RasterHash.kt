@@ -0,0 +1,87 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+@file:JvmName("RasterHash")
+
+package org.droidmate.exploration.statemodel
+
+import java.awt.image.BufferedImage
+import java.awt.image.ComponentSampleModel
+import java.awt.image.DataBufferByte
+
+/**
+ * Location of the samples of a byte interleaved raster within its (possibly shared) data buffer, such that the pixels
+ * can be read in place instead of through the [java.awt.image.Raster] accessors.
+ * Sub-images share the raster of the screenshot, therefore this is the common case for widget images.
+ */
+internal class InterleavedLayout(val data: ByteArray, val bandOffsets: IntArray, val pixelStride: Int, val scanlineStride: Int,
+                                 private val origin: Int) {
+	/** index of the first sample of row [y] in [data] */
+	fun rowStart(y: Int): Int = origin + y * scanlineStride
+
+	/** calls [action] with the index of the first sample of each pixel, row by row */
+	inline fun forEachPixel(width: Int, height: Int, action: (Int) -> Unit) {
+		for (y in 0 until height) {
+			var pixel = rowStart(y)
+			for (x in 0 until width) {
+				action(pixel)
+				pixel += pixelStride
+			}
+		}
+	}
+}
+
+/**
+ * The in place layout of this image or null if its raster is not byte interleaved in a single bank
+ * (which ImageIO does not produce for PNG screenshots).
+ */
+internal fun BufferedImage.interleavedLayout(): InterleavedLayout? {
+	val r = raster
+	val sm = r.sampleModel
+	val db = r.dataBuffer
+	if (sm !is ComponentSampleModel || db !is DataBufferByte || db.numBanks != 1 || sm.bankIndices.any { it != 0 })
+		return null
+	// the raster of a sub-image is translated relative to the sample model of the shared data buffer
+	val origin = db.offset - r.sampleModelTranslateY * sm.scanlineStride - r.sampleModelTranslateX * sm.pixelStride
+	return InterleavedLayout(db.data, sm.bandOffsets, sm.pixelStride, sm.scanlineStride, origin)
+}
+
+/**
+ * Computes the same value as `(raster.getDataElements(0, 0, width, height, null) as ByteArray).contentHashCode()`,
+ * but reads the pixels in place (see [interleavedLayout]) instead of copying them into a new array first.
+ * Images with any other raster layout fall back to the copying variant.
+ */
+internal fun BufferedImage.dataElementsHashCode(): Int {
+	val layout = interleavedLayout()
+			?: return (raster.getDataElements(0, 0, width, height, null) as ByteArray).contentHashCode()
+
+	val data = layout.data
+	val bandOffsets = layout.bandOffsets
+	var hash = 1  // same accumulation as java.util.Arrays.hashCode(byte[])
+	layout.forEachPixel(width, height) { pixel ->
+		for (b in bandOffsets.indices) hash = 31 * hash + data[pixel + bandOffsets[b]]
+	}
+	return hash
+}
@@ -42,7 +42,16 @@ class StateData (private val _widgets: Lazy<Collection<Widget>>,
 	constructor(widgets: Collection<Widget>, homeScreen:Boolean, topPackage: String) : this(lazyOf(widgets),
 			topNodePackageName = topPackage, isHomeScreen=homeScreen)
 
-	val widgets by lazy { _widgets.value.sortedBy { it.id.dumpString() } 	}
+	/** state with already known (uid, configId, iEditId), e.g. from a [ModelStore], the widgets are not needed to compute them */
+	internal constructor(widgets: Lazy<Collection<Widget>>, topNodePackageName: String, isHomeScreen: Boolean,
+	                     isAppHasStoppedDialogBox: Boolean, ids: Triple<UUID, UUID, UUID>)
+			: this(widgets, topNodePackageName, isHomeScreen, isAppHasStoppedDialogBox) {
+		knownIds = ids
+	}
+
+	private var knownIds: Triple<UUID, UUID, UUID>? = null
+
+	val widgets by lazy { _widgets.value.sortedWith(idOrder) }
 	var appArea: Rectangle = Rectangle()
 
 	private val resIdRuntimePermissionDialog = "com.android.packageinstaller:id/dialog_container"
@@ -50,13 +59,11 @@ class StateData (private val _widgets: Lazy<Collection<Widget>>,
 		widgets.any { // identify if we have a permission request
 			it.resourceId == resIdRuntimePermissionDialog  ||
 					// handle cases for apps who 'customize' this request and use own resourceIds e.g. Home-Depot
-			when(it.text.toUpperCase()) {
-						"ALLOW", "DENY", "DON'T ALLOW" -> true
-						else -> false
-			}
+			it.text.equals("ALLOW", ignoreCase = true) || it.text.equals("DENY", ignoreCase = true)
+					|| it.text.equals("DON'T ALLOW", ignoreCase = true)
 		}
 		// check that we have a ok or allow button
-		&& widgets.any{it.text.toUpperCase().let{ wText -> wText == "ALLOW" || wText == "OK" } }
+		&& widgets.any{ it.text.equals("ALLOW", ignoreCase = true) || it.text.equals("OK", ignoreCase = true) }
 	}
 
 //  constructor(widgets: Collection<Widget>, topNodePackageName:String, androidLauncherPackageName:String,
@@ -69,12 +76,24 @@ class StateData (private val _widgets: Lazy<Collection<Widget>>,
 //      isSelectAHomeAppDialogBox,isUseLauncherAsHomeDialogBox)
 
 	// ignore nonInteractive parent views from ID computations to better re-identify state unique ids but consider them for the configIds
-	private val lazyIds: Lazy<ConcreteId> =
+	// all ids are computed in one pass, since [UUID.plus] only sums up the most significant bits of the added ids we can
+	// accumulate these as primitive longs instead of creating an intermediate UUID for each widget
+	private val lazyIds: Lazy<Triple<UUID, UUID, UUID>> =
 			lazy {
-				widgets.fold(Pair(emptyUUID, emptyUUID)) { (id, configId), widget ->  // e.g. keyboard elements have a different package-name and are therefore ignored for uid computation
+				knownIds?.let { return@lazy it }
+				var id = 0L
+				var configId = 0L
+				var iEdit = 0L
+				widgets.forEach { widget ->  // e.g. keyboard elements have a different package-name and are therefore ignored for uid computation
+					val uidBits = widget.uid.mostSignificantBits
+					if (isRelevantForId(widget)) {
+						id += uidBits
+						if (widget.isEdit) iEdit += uidBits
+					}
 					// however different selectable auto-completion proposes are only 'rendered' such that we have to include the img id to ensure different state configuration id's if these are different
-					Pair(addRelevantId(id, widget), configId + widget.uid + widget.id.second)
+					configId += uidBits + widget.id.second.mostSignificantBits
 				}
+				Triple(emptyUUID.plusBits(id), emptyUUID.plusBits(configId), emptyUUID.plusBits(iEdit))
 			}
 
 	val uid: UUID by lazy { lazyIds.value.first }
@@ -83,10 +102,7 @@ class StateData (private val _widgets: Lazy<Collection<Widget>>,
 		ConcreteId(uid, configId)
 	}
 	/** id computed like uid while ignoring all edit fields */
-	val iEditId: UUID by lazy {
-		//lazyIds.value.third
-		widgets.fold(emptyUUID) { iEdit, widget -> addRelevantNonEdit(iEdit, widget) }
-	}
+	val iEditId: UUID by lazy { lazyIds.value.third }
 
 	val actionableWidgets by lazy { widgets.filter { it.canBeActedUpon } }
 	val distinctTargets by lazy { actionableWidgets.filter { it.isLeaf || it.uncoveredCoord!=null }}
@@ -99,7 +115,6 @@ class StateData (private val _widgets: Lazy<Collection<Widget>>,
 	/** this function is used to add any widget.uid if it fulfills specific criteria (i.e. it belongs to the app, can be acted upon, has text content or it is a leaf) */
 	private fun addRelevantId(id: UUID, w: Widget): UUID = if (isRelevantForId(w)){ id + w.uid } else id
 
-	private fun addRelevantNonEdit(id: UUID, w: Widget): UUID = if (w.isEdit) addRelevantId(id, w) else id
 
 	/** determine which UID this state would have, if it ignores [widgets] for the id computation
 	 * this is used to identify consequent states where interacted edit fields are to be ignored
@@ -134,6 +149,22 @@ class StateData (private val _widgets: Lazy<Collection<Widget>>,
 		@JvmStatic
 		fun fromFile(widgets: Collection<Widget>, homeScreen:Boolean, topPackage: String): StateData = StateData(widgets,homeScreen = homeScreen,topPackage = topPackage)
 
+		/** orders widgets like their [ConcreteId.dumpString] without creating the strings, the fixed-width hex representation
+		 * of an UUID sorts like its bits compared as unsigned numbers */
+		private val idOrder = Comparator<Widget> { a, b ->
+			a.id.let { (aUid, aConfig) ->
+				b.id.let { (bUid, bConfig) ->
+					compareBits(aUid, bUid).let { if (it != 0) it else compareBits(aConfig, bConfig) }
+				}
+			}
+		}
+
+		private fun compareBits(a: UUID, b: UUID): Int = java.lang.Long.compareUnsigned(a.mostSignificantBits, b.mostSignificantBits)
+				.let { if (it != 0) it else java.lang.Long.compareUnsigned(a.leastSignificantBits, b.leastSignificantBits) }
+
+		/** equivalent to repeatedly applying [UUID.plus] with ids whose most significant bits sum up to [bits] */
+		private fun UUID.plusBits(bits: Long): UUID = UUID(mostSignificantBits + bits, leastSignificantBits + bits)
+
 		/** dummy element if a state has to be given but no widget data is available */
 		@JvmStatic
 		val emptyState: StateData by lazy { StateData(lazy{ emptyList<Widget>() }) }
@@ -97,7 +97,7 @@ data class Widget(val properties: WidgetData, val uidImgId: Lazy<Pair<UUID, UUID
 
 	val isEdit: Boolean get() = properties.editable
 
-	fun hasContent(): Boolean = (text + contentDesc).isNotBlank()
+	fun hasContent(): Boolean = text.isNotBlank() || contentDesc.isNotBlank()
 
 	var usedForStateId = false
 
@@ -182,12 +182,13 @@ data class Widget(val properties: WidgetData, val uidImgId: Lazy<Pair<UUID, UUID
 		}
 
 		/** compute the pair of (widget.uid,widget.imgId), if [isCut] is true we assume the screenImage already matches the widget.bounds
+		 * the imgId is determined by [imgIdentity]
 		 * @return a tuple of (uid, imgId: UUID?) if imgId != null we have an image which we can not reliably identify without
 		 * considering the img.
 		 * In this case the imgId should be added to the widgets configuration Id to ensure proper distinguation
 		 */
 		@JvmStatic
-		fun computeId(w: WidgetData, screenImg: BufferedImage? = null, isCut: Boolean = false): Pair<UUID,UUID?> =
+		fun computeId(w: WidgetData, screenImg: BufferedImage? = null, isCut: Boolean = false, imgIdentity: ImageIdentity = ImageIdentity.exact): Pair<UUID,UUID?> =
 				w.content().trim().let { visibleText ->
 					when {
 						w.editable -> when {
@@ -203,8 +204,8 @@ data class Widget(val properties: WidgetData, val uidImgId: Lazy<Pair<UUID, UUID
 						else -> screenImg?.let {  // we have an Widget without any visible text
 							val imgId = when {
 								!w.visible || w.editable || w.checked != null -> null  // edit-fields would often have a cursor if focused which should only reflect in the propertyId but not in the unique-id
-								isCut -> idOfImgCut(screenImg)
-								else -> idOfImgCut(it.getSubImage(w.boundsRect))
+								isCut -> imgIdentity.idOf(w, screenImg)
+								else -> imgIdentity.idOf(w, it.getSubImage(w.boundsRect))
 							}
 							if(w.resourceId.isNotBlank()) Pair(w.resourceId.toUUID(),imgId)
 							else Pair(w.idHash.toUUID(),imgId)
@@ -213,20 +214,15 @@ data class Widget(val properties: WidgetData, val uidImgId: Lazy<Pair<UUID, UUID
 				}
 
 
-		@JvmStatic
-		private fun idOfImgCut(image: BufferedImage): UUID =
-				(image.raster.getDataElements(0, 0, image.width, image.height, null) as ByteArray)
-//						.let { UUID.nameUUIDFromBytes(it) }
-						.contentHashCode().toUUID()
-
-		fun fromUiNode(w: WidgetData, screenImg: BufferedImage?, config: ModelConfig): Widget {
+		/** @param computeNow if set the ids are computed on the calling thread, otherwise they are computed lazily (in the background) */
+		fun fromUiNode(w: WidgetData, screenImg: BufferedImage?, config: ModelConfig, computeNow: Boolean = false,
+		               imgIdentity: ImageIdentity = config.imageIdentity): Widget {
 			val widgetImg = if(w.visible && w.boundsWidth>0 && w.boundsHeight>0) screenImg?.getSubImage(w.boundsRect) else null
 			widgetImg.let { wImg ->
-				lazy {
-					computeId(w, wImg, true)
-				}
+				(if (computeNow) lazyOf(computeId(w, wImg, true, imgIdentity)) else lazy {
+					computeId(w, wImg, true, imgIdentity)
+				}.also { launch { it.value } })  // issue initialization in parallel
 						.let { widgetIdPair ->  // (uid,imgId)
-							launch { widgetIdPair.value }  // issue initialization in parallel
 							// print the screen img if there is one and it is configured to be printed
 							if (wImg != null && config[ModelProperties.imgDump.widgets] && (!config[ModelProperties.imgDump.widget.onlyWhenNoText] ||
 											(config[ModelProperties.imgDump.widget.onlyWhenNoText] && w.content() == "" ) ) &&
@@ -0,0 +1,69 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import org.droidmate.deviceInterface.SnapshotDelta
+import org.droidmate.deviceInterface.guimodel.WidgetData
+
+/**
+ * Remembers the widgets of the last computed state, such that GUI nodes which did not change since the previous snapshot
+ * can reuse their [Widget] (and thereby the already computed ids) instead of re-creating it.
+ * With the delta wire format unchanged nodes are even the identical [WidgetData] instances, otherwise they are compared via
+ * [SnapshotDelta.isSameNode].
+ *
+ * A widget is only reused if its id cannot differ in the new state, i.e. if its id is not derived from the screenshot or the
+ * screenshot did not change, and if the state properties which [StateData.isRelevantForId] depends on are the same.
+ */
+internal class WidgetCache {
+	private var widgets: Map<Int, Widget> = emptyMap()
+	private var screenshot = ByteArray(0)
+	private var topNodePackageName = ""
+	private var isHomeScreen = false
+
+	/** @return a lookup for reusable widgets of the new snapshot in [action] */
+	fun reusableFor(action: ActionResult): (WidgetData) -> Widget? {
+		val g = action.guiSnapshot
+		if (widgets.isEmpty() || g.topNodePackageName != topNodePackageName || g.isHomeScreen != isHomeScreen) return { null }
+		val sameScreen = action.screenshot === screenshot || action.screenshot.contentEquals(screenshot)
+		val previous = widgets
+		return { w ->
+			previous[w.idHash]?.takeIf { p -> SnapshotDelta.isSameNode(p.properties, w) && (sameScreen || p.isImageIndependent) }
+		}
+	}
+
+	/** true if [w] is one of the cached widgets, i.e. it is part of the previous state */
+	fun contains(w: Widget): Boolean = widgets[w.idHash] === w
+
+	fun update(action: ActionResult, state: StateData) {
+		widgets = HashMap<Int, Widget>(state.widgets.size * 2).apply { state.widgets.forEach { putIfAbsent(it.idHash, it) } }
+		screenshot = action.screenshot
+		topNodePackageName = state.topNodePackageName
+		isHomeScreen = state.isHomeScreen
+	}
+
+	/** see [Widget.computeId], the screenshot is only used for non-edit widgets without any text */
+	private val Widget.isImageIndependent: Boolean get() = isEdit || properties.content().isNotBlank()
+}
@@ -0,0 +1,113 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import kotlinx.coroutines.experimental.async
+import kotlinx.coroutines.experimental.newFixedThreadPoolContext
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import java.awt.image.BufferedImage
+import java.util.*
+
+/**
+ * Construction of the widgets of a new state.
+ * The (expensive) id computations, i.e. cropping and hashing the widget images, run in batches on a bounded worker pool
+ * which is not shared with the model features, such that the state is available as soon as possible.
+ */
+internal object WidgetPipeline {
+	private val nThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1)
+	private val pool by lazy { newFixedThreadPoolContext(nThreads, "widget-pipeline") }
+	/** below this number of widgets per worker the coordination costs more than it saves */
+	private const val minBatchSize = 32
+
+	/**
+	 * If the image ids are [ImageIdentity.isOrderDependent], the workers only compute the image fingerprints and the ids are
+	 * assigned afterwards in node order, such that they are the same in every run.
+	 *
+	 * @param img the decoded screenshot, only evaluated if any widget is not [reusable]
+	 * @return one widget per node, with already computed ids
+	 */
+	fun createWidgets(nodes: List<WidgetData>, img: Lazy<BufferedImage?>, config: ModelConfig, reusable: (WidgetData) -> Widget?): List<Widget> {
+		val widgets = arrayOfNulls<Widget>(nodes.size)
+		val todo = ArrayList<Int>(nodes.size)
+		nodes.forEachIndexed { i, w -> reusable(w)?.let { widgets[i] = it } ?: todo.add(i) }
+
+		if (todo.isNotEmpty()) {
+			val screen = img.value
+			val identity = config.imageIdentity
+			val fingerprints = if (identity.isOrderDependent) arrayOfNulls<Long>(nodes.size) else null
+			val create = { i: Int ->
+				val imgIdentity = fingerprints?.let { FingerprintRecorder(identity) { fingerprint -> it[i] = fingerprint } } ?: identity
+				widgets[i] = Widget.fromUiNode(nodes[i], screen, config, computeNow = true, imgIdentity = imgIdentity)
+			}
+			val batchSize = Math.max(minBatchSize, (todo.size + nThreads - 1) / nThreads)
+			if (todo.size <= batchSize) todo.forEach(create)
+			else runBlocking {
+				todo.chunked(batchSize).map { batch -> async(pool) { batch.forEach(create) } }.forEach { it.await() }
+			}
+			fingerprints?.let {
+				todo.forEach { i ->
+					val fingerprint = fingerprints[i] ?: return@forEach
+					val w = widgets[i]!!
+					widgets[i] = Widget(w.properties, lazyOf(Pair(w.uid, identity.idOf(w.properties, fingerprint))))
+				}
+			}
+		}
+		return widgets.map { it!! }
+	}
+
+	/** computes the fingerprints of [engine] without assigning any id, these are assigned in node order by [createWidgets] */
+	private class FingerprintRecorder(private val engine: ImageIdentity, private val record: (Long) -> Unit) : ImageIdentity {
+		override fun fingerprint(image: BufferedImage): Long = engine.fingerprint(image)
+
+		override fun idOf(w: WidgetData, fingerprint: Long): UUID {
+			record(fingerprint)
+			return unassigned
+		}
+
+		companion object {
+			private val unassigned = UUID(0, 0)
+		}
+	}
+
+	/**
+	 * Initializes the parent ids via the device side [Widget.idHash]/[Widget.parentHash] of the nodes.
+	 * Widgets for which [isShared] returns true are part of a previous state as well, if their parent changed they are copied
+	 * instead of being modified.
+	 */
+	fun linkParents(widgets: List<Widget>, isShared: (Widget) -> Boolean): List<Widget> {
+		val byIdHash = HashMap<Int, Widget>(widgets.size * 2)
+		widgets.forEach { byIdHash.putIfAbsent(it.idHash, it) }
+		return widgets.map { widget ->
+			val parentId = byIdHash[widget.parentHash]?.id
+			when {
+				widget.parentId == parentId -> widget
+				isShared(widget) -> Widget(widget.properties, widget.uidImgId).also { it.parentId = parentId }
+				else -> widget.also { it.parentId = parentId }
+			}
+		}
+	}
+}
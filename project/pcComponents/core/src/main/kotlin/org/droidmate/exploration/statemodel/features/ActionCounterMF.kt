@@ -44,24 +44,29 @@ class ActionCounterMF : ModelFeature() {
 		job = Job(parent = (this.job)) // we don't want to wait for other features (or having them wait for us), therefore create our own (child) job
 	}
 
-	override suspend fun onNewInteracted(traceId: UUID, targetWidgets: List<Widget>, prevState: StateData, newState: StateData): Unit =
-			targetWidgets.forEach { target ->
-				prevState.uid.let { sId ->
-					target.let { w -> pCnt.compute(w.packageName) { _, c -> c?.inc() ?: 1 } }
-					sCnt.incCnt(sId)   // the state the very last action acted on
-					// record the respective widget the exploration interacted
-					target.let { wCnt.compute(it.uid) { _, m -> m?.incCnt(sId) ?: mutableMapOf(sId to 1) } }
-				}
-			}
-
-
-	private val sCnt = ConcurrentHashMap<UUID, Int>() // counts how often any state was explored
+	override suspend fun onNewInteracted(traceId: UUID, targetWidgets: List<Widget>, prevState: StateData, newState: StateData) {
+		targetWidgets.forEach { w -> pCnt.compute(w.packageName) { _, c -> c?.inc() ?: 1 } }
+		// record the respective widgets the exploration interacted in the state the very last action acted on,
+		// this is one update of the counter even if there was no target widget
+		cnt.inc(targetWidgets.map { it.uid }, prevState.uid)
+	}
+
 	// records how often a specific widget was selected and from which state-eContext (widget.uid -> Map<state.uid -> numActions>)
-	private val wCnt = ConcurrentHashMap<UUID, MutableMap<UUID, Int>>()
+	private val cnt = WidgetCounter()
 
 	// to prioritize app widgets over reappearing external/keyboard elements we sum non-app interactions by their package name
 	private val pCnt = ConcurrentHashMap<String, Int>()
 
+	/** the number of interactions ([onNewInteracted] calls) which are already contained in the counters */
+	val epoch: Long get() = cnt.epoch
+
+	/** suspends until the first [epoch] interactions are contained in the counters, contrary to `job.joinChildren()` this does not
+	 * wait for updates of interactions which happened afterwards */
+	suspend fun awaitEpoch(epoch: Long) = cnt.awaitEpoch(epoch)
+
+	/** evaluates [body] on the current counter values without waiting for any pending update */
+	fun <T> read(body: WidgetCounter.Counts.() -> T): T = cnt.read(body)
+
 	@Suppress("unused")
 	suspend fun unexplored(s: StateData): Set<Widget> {
 		job.joinChildren()
@@ -72,7 +77,7 @@ class ActionCounterMF : ModelFeature() {
 	@Suppress("unused")
 	suspend fun numStates():Int{
 		job.joinChildren()
-		return sCnt.size
+		return cnt.read { numStates }
 	}
 
 	@Suppress("MemberVisibilityCanBePrivate")
@@ -81,35 +86,31 @@ class ActionCounterMF : ModelFeature() {
 	 *
 	 * @return map of the widget.uid to the number of interactions from state-eContext [s]
 	 */
-	suspend fun numExplored(s: StateData): Map<Widget, Int> {
-		job.joinChildren()
-		return s.actionableWidgets.map {
-			it to it.uid.cntForState(s.uid)//(wCnt[w.uid]?.get(s.uid)?:0)
-		}.toMap()
-	}
+	suspend fun numExplored(s: StateData): Map<Widget, Int> = numExplored(s, s.actionableWidgets)
 
 	/** determine how often any widget was explored in the eContext of the given state [s] for the given subset of widgets [selection]
 	 * @return map of the widget.uid to the number of interactions from state-eContext [s]
 	 */
 	suspend fun numExplored(s: StateData, selection: Collection<Widget>): Map<Widget, Int> {
 		job.joinChildren()
-		return selection.map {
-			it to it.uid.cntForState(s.uid)//(wCnt[w.uid]?.get(s.uid)?:0)
-		}.toMap()
+		return cnt.read {
+			selection.map {
+				it to count(it.uid, s.uid)
+			}.toMap()
+		}
 	}
 
-	private fun UUID.cntForState(sId: UUID): Int = wCnt.getCounter(this, sId)
 	/** @return how often widget.uid was triggered in the given state-eContext **/
 	@Suppress("unused")
 	suspend fun widgetCntForState(wId: UUID, sId: UUID): Int {
 		job.joinChildren()
-		return wId.cntForState(sId)
+		return cnt.count(wId, sId)
 	}
 
 	/** @return how often the widget.uid was triggered other all states **/
 	suspend fun widgetCnt(wId: UUID): Int {
 		job.joinChildren()
-		return wCnt.sumCounter(wId)
+		return cnt.total(wId)
 	}
 
 	fun pkgCount(pkgName: String): Int = pCnt[pkgName]?:0
@@ -40,6 +40,7 @@ import weka.core.Instances
 import weka.core.converters.ConverterUtils
 import java.io.InputStream
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.coroutines.experimental.CoroutineContext
 
 @Suppress("MemberVisibilityCanBePrivate")
@@ -92,51 +93,64 @@ open class EventProbabilityMF(modelName: String,
 		return model
 	}
 
+	/** the parent and children of each widget of one state, built once per state instead of searching them for each widget */
+	protected class WidgetTree(state: StateData) {
+		private val byId = state.widgets.associateBy { it.id }
+		private val children = state.widgets.groupBy { it.parentId }
+
+		fun parent(w: Widget): Widget? = w.parentId?.let { byId[it] }
+		fun children(w: Widget): List<Widget> = children[w.id] ?: emptyList()
+	}
+
+	/** attribute values of the training data (ARFF header), value -> index, for each attribute */
+	private val nominalIndices: List<Map<String, Int>> by lazy {
+		(0 until wekaInstances.numAttributes()).map { attribute ->
+			wekaInstances.attribute(attribute).enumerateValues()?.toList()?.withIndex()?.associate { (i, v) -> v.toString() to i } ?: emptyMap()
+		}
+	}
+	/** probability for each feature vector (see [featureKey]), NaN if the vector could not be classified */
+	private val predictions = ConcurrentHashMap<Long, Double>()
+	/** the feature vector each widget was last classified with */
+	private val widgetFeatures = ConcurrentHashMap<UUID, Long>()
+
 	override suspend fun onNewInteracted(traceId: UUID, targetWidgets: List<Widget>, prevState: StateData, newState: StateData) {
-		wekaInstances.delete()
-
-		val actionableWidgets = newState.actionableWidgets
-		actionableWidgets.forEach { wekaInstances.add(it.toWekaInstance(newState, wekaInstances)) }
-
-		for (i in 0 until wekaInstances.numInstances()) {
-			val instance = wekaInstances.instance(i)
-			try {
-				// Probability of having event
-				val predictionProbability : Double
-
-				val equivWidget = actionableWidgets[i]
-				if (useClassMembershipProbability) {
-					// Get probability distribution of the prediction ( [false, true] )
-					predictionProbability = classifier.distributionForInstance(instance)[1]
-				}
-				else {
-					val classification = classifier.classifyInstance(instance)
-					// Classified as true = 1.0
-					predictionProbability = classification
-				}
-
-				widgetProbability[equivWidget.uid] = predictionProbability
-
-			} catch (e: ArrayIndexOutOfBoundsException) {
-				log.error("Could not classify widget of type ${actionableWidgets[i]}. Ignoring it", e)
-				// do nothing
-			}
+		val tree = WidgetTree(newState)
+		newState.actionableWidgets.forEach { widget ->
+			val values = widget.featureValues(tree)
+			val key = featureKey(values)
+			if (widgetFeatures.put(widget.uid, key) == key) return@forEach  // unchanged features, the probability is already known
+
+			val predictionProbability = predictions.getOrPut(key) { classify(widget, values) }
+			if (predictionProbability.isNaN())
+				widgetProbability.remove(widget.uid)
+			else
+				widgetProbability[widget.uid] = predictionProbability
 		}
 	}
 
-	protected fun Widget.getRefinedType(): String {
-		return if (AbstractStrategy.VALID_WIDGETS.contains(this.className.toLowerCase()))
-			className.toLowerCase()
-		else {
-			//Get last part
-			val parts = className.split("\\.".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
-			var refType = parts[parts.size - 1].toLowerCase()
-			refType = findClosestView(refType)
+	private fun classify(widget: Widget, values: DoubleArray): Double {
+		val instance = DenseInstance(1.0, values).apply { setDataset(wekaInstances) }
+		return try {
+			predict(instance)
+		} catch (e: ArrayIndexOutOfBoundsException) {
+			log.error("Could not classify widget of type $widget. Ignoring it and all widgets with the same features", e)
+			Double.NaN
+		}
+	}
 
-			refType.toLowerCase()
+	/** the probability of [instance] having an event, only called once for each distinct feature vector */
+	protected open fun predict(instance: Instance): Double = synchronized(classifier) {
+		if (useClassMembershipProbability) {
+			// Get probability distribution of the prediction ( [false, true] )
+			classifier.distributionForInstance(instance)[1]
+		} else {
+			// Classified as true = 1.0
+			classifier.classifyInstance(instance)
 		}
 	}
 
+	protected fun Widget.getRefinedType(): String = refinedTypes.computeIfAbsent(className) { refineType(it) }
+
 	protected fun findClosestView(target: String): String {
 		var distance = Integer.MAX_VALUE
 		var closest = ""
@@ -151,12 +165,28 @@ open class EventProbabilityMF(modelName: String,
 		return closest
 	}
 
+	private fun refineType(className: String): String {
+		return if (validWidgets.contains(className.toLowerCase()))
+			className.toLowerCase()
+		else {
+			//Get last part
+			val parts = className.split("\\.".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
+			var refType = parts[parts.size - 1].toLowerCase()
+			refType = findClosestView(refType)
+
+			refType.toLowerCase()
+		}
+	}
+
 	/**
 	 * Get the index of a String value on the original Weka training data (ARFF file)
 	 *
 	 * @return Index of the String in the attribute list or -1 if not found
 	 */
 	protected fun Instances.getNominalIndex(attributeNumber: Int, value: String): Double {
+		if (this === wekaInstances)
+			return (nominalIndices[attributeNumber][value] ?: -1).toDouble()
+
 		return this.attribute(attributeNumber)
 				.enumerateValues()
 				.toList()
@@ -164,24 +194,15 @@ open class EventProbabilityMF(modelName: String,
 				.toDouble()
 	}
 
-	/**
-	 * Converts a widget info given a eContext where the widget is inserted (used to locate parents
-	 * and children) and a [Weka model][model]
-	 *
-	 * @receiver [Widget]
-	 */
-	protected fun Widget.toWekaInstance(state: StateData, model: Instances): Instance {
+	/** the attribute values of this widget, with parent and children taken from [tree] and the nominal indices from [model] */
+	protected fun Widget.featureValues(tree: WidgetTree, model: Instances = wekaInstances): DoubleArray {
 		val attributeValues = DoubleArray(5)
 
 		attributeValues[0] = model.getNominalIndex(0, this.getRefinedType())
 
-		if (this.parentId != null)
-			attributeValues[1] = model.getNominalIndex(1, state.widgets.first { it.id == parentId }.getRefinedType())
-		else
-			attributeValues[1] = model.getNominalIndex(1, "none")
+		attributeValues[1] = model.getNominalIndex(1, tree.parent(this)?.getRefinedType() ?: "none")
 
-		val children = state.widgets
-				.filter { p -> p.parentId == this.id }
+		val children = tree.children(this)
 
 		if (children.isNotEmpty())
 			attributeValues[2] = model.getNominalIndex(2, children.first().getRefinedType())
@@ -195,10 +216,19 @@ open class EventProbabilityMF(modelName: String,
 
 		attributeValues[4] = model.getNominalIndex(4, "false")
 
-		return DenseInstance(1.0, attributeValues)
+		return attributeValues
 	}
 
-	protected val widgetProbability = mutableMapOf<UUID, Double>() // probability of each widget having an event
+	/**
+	 * Converts a widget info given a eContext where the widget is inserted (used to locate parents
+	 * and children) and a [Weka model][model]
+	 *
+	 * @receiver [Widget]
+	 */
+	protected fun Widget.toWekaInstance(state: StateData, model: Instances): Instance =
+			DenseInstance(1.0, featureValues(WidgetTree(state), model)).apply { setDataset(model) }
+
+	protected val widgetProbability: MutableMap<UUID, Double> = ConcurrentHashMap() // probability of each widget having an event
 
 	open fun getProbabilities(state: StateData): Map<Widget, Double> {
 		return state.actionableWidgets
@@ -215,4 +245,14 @@ open class EventProbabilityMF(modelName: String,
 	override fun hashCode(): Int {
 		return this.classifier.hashCode() * this.useClassMembershipProbability.hashCode()
 	}
-}
\ No newline at end of file
+
+	companion object {
+		private val validWidgets: Set<String> by lazy { AbstractStrategy.VALID_WIDGETS.toHashSet() }
+		/** class name -> refined type, the refinement is independent of the model and therefore shared by all instances */
+		private val refinedTypes = ConcurrentHashMap<String, String>()
+
+		/** packs the first four (nominal) attribute values into one key, the class attribute is always "false" */
+		private fun featureKey(values: DoubleArray): Long =
+				(0 until 4).fold(0L) { key, i -> (key shl 16) or ((values[i].toLong() + 1) and 0xFFFF) }
+	}
+}
@@ -0,0 +1,182 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import kotlinx.coroutines.experimental.CompletableDeferred
+import kotlinx.coroutines.experimental.CoroutineStart
+import kotlinx.coroutines.experimental.Deferred
+import kotlinx.coroutines.experimental.launch
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.ExplorationAction
+import org.droidmate.exploration.ExplorationContext
+import org.droidmate.exploration.statemodel.ActionData
+import org.droidmate.exploration.statemodel.StateData
+import org.droidmate.exploration.statemodel.Widget
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/** immutable notification which is published once and shared by all [ModelFeature]s */
+sealed class FeatureEvent {
+	/** [System.nanoTime] of the publication, used for the latency metrics */
+	val publishTime: Long = System.nanoTime()
+}
+
+/** a new action (or action queue) on [targets] lead from [prevState] to [newState] */
+class ActionEvent(val traceId: UUID, val actionIdx: Int, val action: ExplorationAction, val targets: List<Widget>,
+                  val prevState: StateData, val newState: StateData, val actionData: Deferred<ActionData>) : FeatureEvent()
+
+/** the model and [context] were completely updated with the last action */
+class ContextUpdateEvent(val context: ExplorationContext) : FeatureEvent()
+
+/**
+ * Delivers [FeatureEvent]s to the registered features, each feature receives the events in publication order
+ * one after another.
+ *
+ * Each feature has its own ring buffer of [capacity] events. If it is full the publisher waits until the feature
+ * processed at least one event (back-pressure), such that slow features cannot accumulate an unbounded backlog.
+ * The events are processed by a single coroutine per feature which is only running while the buffer is not empty,
+ * it is started as child of the feature's job, therefore [ModelFeature.await] still waits for all published events.
+ *
+ * The feature list is only read on publication, features added later receive all events published after their addition.
+ */
+class FeatureEventBus(private val features: List<ModelFeature>, private val capacity: Int = defaultCapacity) {
+	init {
+		require(capacity > 0) { "the event bus capacity has to be positive but was $capacity" }
+	}
+
+	/** latency of the event delivery to [feature], i.e. the time from publication until its handlers returned */
+	class Metrics(val feature: String, val events: Long, val totalLatencyNanos: Long, val maxLatencyNanos: Long,
+	              val blockedPublications: Long) {
+		val meanLatencyMillis: Double get() = if (events == 0L) 0.0 else totalLatencyNanos / events / 1e6
+
+		override fun toString(): String = "$feature: $events events, latency mean ${"%.2f".format(meanLatencyMillis)} ms " +
+				"max ${"%.2f".format(maxLatencyNanos / 1e6)} ms, $blockedPublications publications waited for free capacity"
+	}
+
+	private inner class Subscriber(val feature: ModelFeature) {
+		private val buffer = arrayOfNulls<FeatureEvent>(capacity)
+		private var head = 0
+		private var size = 0
+		private var draining = false
+		/** completed as soon as an element was taken from the full buffer */
+		private var space: CompletableDeferred<Unit>? = null
+
+		private var events = 0L
+		private var totalLatency = 0L
+		private var maxLatency = 0L
+		private var blocked = 0L
+
+		/** @return false if the buffer is full */
+		fun offer(event: FeatureEvent): Boolean {
+			val startDrain = synchronized(this) {
+				if (size == capacity) return false
+				buffer[(head + size) % capacity] = event
+				size += 1
+				(!draining).also { draining = true }
+			}
+			if (startDrain)  // atomic such that the buffer is always drained, even if the feature's job was cancelled
+				launch(feature.context, parent = feature.job, start = CoroutineStart.ATOMIC) { drain() }
+			return true
+		}
+
+		suspend fun send(event: FeatureEvent) {
+			while (!offer(event)) {
+				synchronized(this) {
+					blocked += 1
+					if (size < capacity) null else space ?: CompletableDeferred<Unit>().also { space = it }
+				}?.await()
+			}
+		}
+
+		private fun poll(): FeatureEvent? = synchronized(this) {
+			if (size == 0) {
+				draining = false
+				null
+			} else {
+				val event = buffer[head]
+				buffer[head] = null
+				head = (head + 1) % capacity
+				size -= 1
+				space?.complete(Unit)
+				space = null
+				event
+			}
+		}
+
+		private suspend fun drain() {
+			while (true) {
+				val event = poll() ?: return
+				try {
+					deliver(feature, event)
+				} catch (e: Throwable) {
+					ModelFeature.log.error("${feature.javaClass.simpleName} failed to process ${event.javaClass.simpleName}: ${e.localizedMessage}", e)
+				}
+				val latency = System.nanoTime() - event.publishTime
+				synchronized(this) {
+					events += 1
+					totalLatency += latency
+					if (latency > maxLatency) maxLatency = latency
+				}
+			}
+		}
+
+		fun metrics(): Metrics = synchronized(this) {
+			Metrics(feature.javaClass.simpleName, events, totalLatency, maxLatency, blocked)
+		}
+	}
+
+	private val subscribers: MutableMap<ModelFeature, Subscriber> = ConcurrentHashMap()
+
+	private fun subscriber(feature: ModelFeature): Subscriber = subscribers.computeIfAbsent(feature) { Subscriber(it) }
+
+	/** publish [event] to all features, suspending while the buffer of a feature is full */
+	suspend fun publish(event: FeatureEvent) {
+		features.toList().forEach { subscriber(it).send(event) }
+	}
+
+	/** publish [event] to all features, blocking while the buffer of a feature is full */
+	fun publishBlocking(event: FeatureEvent) {
+		features.toList().forEach { f ->
+			subscriber(f).let { s -> if (!s.offer(event)) runBlocking { s.send(event) } }
+		}
+	}
+
+	/** delivery statistics of each feature which received at least one event */
+	fun metrics(): List<Metrics> = subscribers.values.map { it.metrics() }
+
+	companion object {
+		const val defaultCapacity = 256
+
+		private suspend fun deliver(feature: ModelFeature, event: FeatureEvent) = when (event) {
+			is ActionEvent -> with(event) {
+				feature.onNewInteracted(traceId, targets, prevState, newState)
+				feature.onNewInteracted(traceId, actionIdx, action, targets, prevState, newState)
+				feature.onNewAction(traceId, actionData, prevState, newState)
+			}
+			is ContextUpdateEvent -> feature.onContextUpdate(event.context)
+		}
+	}
+}
@@ -41,6 +41,8 @@ import kotlin.coroutines.experimental.CoroutineContext
 /**
  * this class contains three different observer methods to keep track of model changes.
  * the Feature should try to follow the least principle policy and prefer [onNewInteracted] over the alternatives
+ *
+ * the observer methods are called one after another in the order of the model updates, see [FeatureEventBus]
  */
 @Suppress("unused", "UNUSED_ANONYMOUS_PARAMETER")
 abstract class ModelFeature {
@@ -0,0 +1,154 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import java.io.*
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.ZoneId
+import java.util.*
+
+/**
+ * Statement coverage of the statements in [index], computed from the logcat output of the instrumented app.
+ *
+ * The coverage is a bit set over the statement ordinals, additionally the time each statement was covered first is kept and the
+ * statements newly covered since the last call of [takeDelta], which allows to attribute the coverage increase to the actions.
+ *
+ * The log lines are processed by a single consumer ([consume] or [processLine]), which is the only writer of the coverage.
+ * All other methods can be called concurrently by any thread.
+ *
+ * @param clock time used for log lines which do not start with a timestamp
+ */
+class StatementCoverage @JvmOverloads constructor(val index: StatementIndex,
+                                                  private val clock: () -> Long = System::currentTimeMillis) {
+	companion object {
+		/** tag of the lines logged by the instrumented statements */
+		const val marker = "[androcov]"
+		/** logcat timestamps ("MM-dd HH:mm:ss.SSS") do not contain the year */
+		private val year = LocalDate.now().year
+		private val zone = ZoneId.systemDefault()
+
+		private fun digits(s: CharSequence, start: Int, n: Int): Int {
+			var v = 0
+			for (i in start until start + n) {
+				val d = s[i] - '0'
+				if (d < 0 || d > 9) return -1
+				v = v * 10 + d
+			}
+			return v
+		}
+
+		/** @return the epoch millis of the "MM-dd HH:mm:ss.SSS" timestamp at the start of [line] or null if there is none */
+		@JvmStatic
+		fun parseTimestamp(line: CharSequence): Long? {
+			if (line.length < 18 || line[2] != '-' || line[5] != ' ' || line[8] != ':' || line[11] != ':' || line[14] != '.') return null
+			val month = digits(line, 0, 2)
+			val day = digits(line, 3, 2)
+			val hour = digits(line, 6, 2)
+			val minute = digits(line, 9, 2)
+			val second = digits(line, 12, 2)
+			val millis = digits(line, 15, 3)
+			if (month < 1 || day < 1 || hour < 0 || minute < 0 || second < 0 || millis < 0) return null
+			return try {
+				LocalDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000).atZone(zone).toInstant().toEpochMilli()
+			} catch (e: java.time.DateTimeException) {
+				null
+			}
+		}
+	}
+
+	private val covered = BitSet(index.size)
+	/** ordinal -> epoch millis of the first log line of the statement */
+	private val firstCovered = LongArray(index.size)
+	private var delta = BitSet(index.size)
+
+	@Volatile
+	var coveredCount: Int = 0
+		private set
+
+	/** the ratio of covered statements, 1 if there are no instrumented statements */
+	val coverage: Double get() = if (index.size == 0) 1.0 else coveredCount / index.size.toDouble()
+
+	/**
+	 * Updates the coverage with the log [line], must only be called by the single consumer.
+	 * @return true if the line covered a statement for the first time
+	 */
+	fun processLine(line: String): Boolean {
+		if (!line.contains(marker)) return false
+		val ordinal = index.ordinalOf(line)
+		// only the consumer writes the bits, therefore it can read them without synchronization
+		if (ordinal < 0 || covered.get(ordinal)) return false
+
+		val time = parseTimestamp(line) ?: clock()
+		synchronized(this) {
+			covered.set(ordinal)
+			delta.set(ordinal)
+			firstCovered[ordinal] = time
+			coveredCount++
+		}
+		return true
+	}
+
+	/**
+	 * Processes all lines of [input] until its end, e.g. the output of a running `adb logcat` process.
+	 * Every line is copied to [archive] if it is given.
+	 * @return the number of processed lines
+	 */
+	@Throws(IOException::class)
+	@JvmOverloads
+	fun consume(input: InputStream, archive: Writer? = null): Long {
+		var lines = 0L
+		BufferedReader(InputStreamReader(input, Charsets.UTF_8), 1 shl 16).use { reader ->
+			while (true) {
+				val line = reader.readLine() ?: break
+				archive?.apply { write(line); write('\n'.toInt()) }
+				processLine(line)
+				lines++
+			}
+		}
+		archive?.flush()
+		return lines
+	}
+
+	/** @return the statements covered for the first time since the previous call */
+	@Synchronized
+	fun takeDelta(): BitSet = delta.also { delta = BitSet(index.size) }
+
+	@Synchronized
+	fun isCovered(ordinal: Int): Boolean = covered.get(ordinal)
+
+	/** @return (ordinal, epoch millis of the first coverage) of all covered statements, ordered by their first coverage */
+	@Synchronized
+	fun coveredStatements(): List<Pair<Int, Long>> {
+		val result = ArrayList<Pair<Int, Long>>(coveredCount)
+		var ordinal = covered.nextSetBit(0)
+		while (ordinal >= 0) {
+			result.add(Pair(ordinal, firstCovered[ordinal]))
+			ordinal = covered.nextSetBit(ordinal + 1)
+		}
+		return result.sortedBy { it.second }
+	}
+}
@@ -32,22 +32,16 @@ import org.droidmate.configuration.ConfigurationWrapper
 import org.droidmate.device.android_sdk.IAdbWrapper
 import org.droidmate.exploration.ExplorationContext
 import org.droidmate.exploration.statemodel.ModelConfig
+import org.droidmate.exploration.statemodel.StateData
+import org.droidmate.exploration.statemodel.Widget
 import org.droidmate.logging.Markers
-import org.droidmate.misc.SysCmdInterruptableExecutor
 import org.droidmate.misc.deleteDir
-import java.io.IOException
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
 import java.util.*
-import java.util.concurrent.ConcurrentHashMap
-import org.json.JSONArray
-import org.json.JSONObject
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
-import java.text.SimpleDateFormat
-import java.time.Duration
-import java.time.Instant
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.coroutines.experimental.CoroutineContext
 import kotlin.streams.toList
@@ -55,13 +49,16 @@ import kotlin.streams.toList
 /**
  * Model feature to monitor the statement coverage by processing and optional instrumentation file and actively
  * monitor and parse the logcat in order to calculate the coverage.
+ *
+ * A single `adb logcat` process is kept running for the whole exploration and its output is consumed as stream by
+ * [StatementCoverage], it is only restarted if it terminates unexpectedly (e.g. because the device reconnected).
+ * The raw logcat output is archived into [logcatOutputDir].
  */
 class StatementCoverageMF(private val cfg: ConfigurationWrapper,
 						  private val modelCfg: ModelConfig,
 						  private val adbWrapper: IAdbWrapper) : ModelFeature() {
 
 	private val log: Logger by lazy { LoggerFactory.getLogger(StatementCoverageMF::class.java) }
-	private val dateFormat = SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault())
 
 	override val context: CoroutineContext = newCoroutineContext(context = CoroutineName("StatementCoverageMF"), parent = job)
 	private val processingJob = Job()
@@ -70,11 +67,13 @@ class StatementCoverageMF(private val cfg: ConfigurationWrapper,
 	private val instrumentationDir = Paths.get(modelCfg[statementCoverageDir].toString()).toAbsolutePath()
 	private val logcatOutputDir: Path = cfg.coverageReportDirPath.toAbsolutePath().resolve(modelCfg.appName)
 
-	private val executedStatementsMap: ConcurrentHashMap<String, Date> = ConcurrentHashMap()
-	private val instrumentationMap: Map<String, String>
+	private val coverage: StatementCoverage
+	/** statements newly covered by each action, in the order of the actions */
+	private val actionDeltas: MutableList<BitSet> = Collections.synchronizedList(ArrayList())
 
 	// Coverage monitor variables
-	private val sysCmdExecutor = SysCmdInterruptableExecutor()
+	@Volatile
+	private var logcatProcess: Process? = null
 	private var running: AtomicBoolean = AtomicBoolean(true)
 	private val purgedDeviceSerialNumber = cfg[ConfigProperties.Exploration.deviceSerialNumber].toString().replace(":", "-")
 
@@ -82,7 +81,7 @@ class StatementCoverageMF(private val cfg: ConfigurationWrapper,
 		job = Job(parent = (this.job)) // We don't want to wait for other features (or having them wait for us), therefore create our own (child) job
 		logcatOutputDir.deleteDir()
 		Files.createDirectories(logcatOutputDir)
-		instrumentationMap = getInstrumentation(modelCfg.appName)
+		coverage = StatementCoverage(getInstrumentation(modelCfg.appName))
 
 		// Start monitoring the coverage
 		launch(processingContext) {
@@ -91,20 +90,20 @@ class StatementCoverageMF(private val cfg: ConfigurationWrapper,
 	}
 
 	/**
-	 * Returns a map which is used for the coverage calculation.
+	 * Returns the index of the instrumented statements which is used for the coverage calculation.
 	 */
-	private fun getInstrumentation(apkName: String): Map<String, String> {
+	private fun getInstrumentation(apkName: String): StatementIndex {
 		return if (!Files.exists(instrumentationDir)) {
 			log.warn("Provided statementCoverageDir does not exist: $statementCoverageDir. DroidMate will monitor coverage will not be able to calculate coverage.")
-			emptyMap()
+			StatementIndex.empty
 		}
 		else {
 			val instrumentationFile = getInstrumentationFile(apkName)
 
 			if (instrumentationFile != null)
-				readInstrumentationFile(instrumentationFile)
+				StatementIndex.fromInstrumentationFile(instrumentationFile)
 			else
-				emptyMap()
+				StatementIndex.empty
 		}
 	}
 
@@ -122,42 +121,25 @@ class StatementCoverageMF(private val cfg: ConfigurationWrapper,
 						&& it.fileName.toString().endsWith(".apk.json")}
 	}
 
-	@Throws(IOException::class)
-	private fun readInstrumentationFile(instrumentationFile: Path): Map<String, String> {
-		val jsonData = String(Files.readAllBytes(instrumentationFile))
-		val jObj = JSONObject(jsonData)
-
-		val jArr = JSONArray(jObj.getJSONArray("allMethods").toString())
-
-		val l = "9946a686-9ef6-494f-b893-ac8b78efb667".length
-		val statements : MutableMap<String, String> = mutableMapOf()
-		(0 until jArr.length()).forEach { idx ->
-			val method = jArr[idx]
-
-			if (!method.toString().contains("CoverageHelper")) {
-				val parts = method.toString().split("uuid=".toRegex(), 2).toTypedArray()
-				val uuid = parts.last()
-
-				assert(uuid.length == l) { "Invalid UUID $uuid $method" }
-
-				statements[uuid] = method.toString()
-			}
-		}
-
-		return statements
-	}
-
 	/**
 	 * Returns the current measured coverage.
-	 * Note: Returns 1 if [instrumentationMap] is empty.
+	 * Note: Returns 1 if no statements were instrumented.
 	 */
 	@Suppress("MemberVisibilityCanBePrivate")
-	fun getCurrentCoverage(): Double {
-		return if (instrumentationMap.isEmpty()) {
-			1.0
-		} else {
-			executedStatementsMap.size / instrumentationMap.size.toDouble()
-		}
+	fun getCurrentCoverage(): Double = coverage.coverage
+
+	/**
+	 * Returns the statements (as [StatementIndex] ordinals) newly covered by each action so far.
+	 * The logcat output reaches us slightly delayed, statements logged right before an action finished may therefore be
+	 * attributed to the next action.
+	 */
+	@Suppress("unused")
+	fun getActionDeltas(): List<BitSet> = synchronized(actionDeltas) { actionDeltas.map { it.clone() as BitSet } }
+
+	override suspend fun onNewInteracted(traceId: UUID, targetWidgets: List<Widget>, prevState: StateData, newState: StateData) {
+		val delta = coverage.takeDelta()
+		actionDeltas.add(delta)
+		log.info("Current statement coverage: ${getCurrentCoverage()} (${delta.cardinality()} new statements)")
 	}
 
 	/**
@@ -166,62 +148,31 @@ class StatementCoverageMF(private val cfg: ConfigurationWrapper,
 	private fun run() {
 		log.info(Markers.appHealth, "Start monitoring coverage for ${modelCfg.appName}. Output to ${cfg.coverageReportDirPath.toAbsolutePath()}")
 
-		try {
-			Files.createDirectories(logcatOutputDir)
-			var counter = 0
-
-			while (running.get()) {
-				counter = monitorLogcat(counter)
-				runBlocking { delay(5) }
+		var counter = 0
+		while (running.get()) {
+			try {
+				monitorLogcat(counter++)
+			} catch (ex: Exception) {
+				if (running.get())
+					log.warn("Logcat coverage monitor failed, restarting it: ${ex.message}")
 			}
-
-		} catch (ex: Exception) {
-			ex.printStackTrace()
+			if (running.get())
+				runBlocking { delay(100) }  // the process terminated unexpectedly, do not restart it in a busy loop
 		}
 	}
 
 	/**
-	 * Starts executing a command in order to monitor the logcat if the previous command is already terminated.
-	 * Additionally, it parses the returned logcat output and updates [executedStatementsMap].
+	 * Starts a logcat process and updates [coverage] with its output until the process terminates.
 	 */
-	private fun monitorLogcat(counter: Int): Int {
-
-		val file = getLogFilename(counter)
-		val output = adbWrapper.executeCommand(sysCmdExecutor, cfg.deviceSerialNumber, "", "Logcat coverage monitor",
-				"logcat", "-v", "threadtime", "-s", "System.out")
-		//log.info("Writing logcat output into $file")
-
-		output.lines().forEach { line ->
-			if (line.contains("[androcov]") && !line.contains("CoverageHelper")) {
-				val parts = line.split("uuid=".toRegex(), 2).toTypedArray()
-
-				// Get uuid
-				val uuid = parts.last()
-
-				val tms = if (parts.size > 1) {
-					// Get timestamp
-					val logParts = parts[0].split(" ".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
-					val timestamp = logParts[0] + " " + logParts[1]
-
-					dateFormat.parse(timestamp)
-				} else {
-					Date.from(Instant.now())
-				}
-
-				// Add the statement if it wasn't executed before
-				val found = executedStatementsMap.containsKey(uuid)
-
-				if (!found && instrumentationMap.containsKey(uuid))
-					executedStatementsMap[uuid] = tms
-			}
+	private fun monitorLogcat(counter: Int) {
+		val process = adbWrapper.startLogcatStream(cfg.deviceSerialNumber, "-v", "threadtime", "-s", "System.out")
+		logcatProcess = process
+		if (!running.get()) process.destroy()  // dump was called while we were starting the process
+
+		Files.newBufferedWriter(getLogFilename(counter)).use { archive ->
+			val lines = coverage.consume(process.inputStream, archive)
+			log.debug("Logcat coverage monitor processed $lines lines")
 		}
-
-		log.info("Current statement coverage: ${getCurrentCoverage()}")
-
-		// Write the logcat content into a file
-		Files.write(file, output.toByteArray())
-
-		return counter + 1
 	}
 
 	/**
@@ -232,37 +183,46 @@ class StatementCoverageMF(private val cfg: ConfigurationWrapper,
 	}
 
 	/**
-	 * Notifies the logcat monitor and [sysCmdExecutor] to finish.
+	 * Terminates the logcat process and writes the coverage.
 	 */
 	override suspend fun dump(context: ExplorationContext) {
 		job.joinChildren()
 		running.set(false)
-		sysCmdExecutor.stopCurrentExecutionIfExisting()
+		logcatProcess?.destroy()
 		log.info("Coverage monitor thread destroyed")
 
-		// Wait for the last file to be processed before proceeding
+		// Wait for the last output to be processed before proceeding
 		processingJob.joinChildren()
 
 		val sb = StringBuilder()
 		sb.appendln(header)
 
-		if (executedStatementsMap.isNotEmpty()) {
-			val sortedStatements = executedStatementsMap.entries
-					.sortedBy { it.value }
-			val initialDate = sortedStatements.first().value
+		val coveredStatements = coverage.coveredStatements()
+		if (coveredStatements.isNotEmpty()) {
+			val initialTime = coveredStatements.first().second
 
-			sortedStatements
-					.forEach {
-						sb.appendln("${it.key};${Duration.between(initialDate.toInstant(), it.value.toInstant()).toMillis() / 1000}")
+			coveredStatements
+					.forEach { (ordinal, time) ->
+						sb.appendln("${coverage.index.uuid(ordinal)};${(time - initialTime) / 1000}")
 					}
 		}
 
 		val outputFile = context.getModel().config.baseDir.resolve("coverage.txt")
 		Files.write(outputFile, sb.lines())
+
+		val actions = StringBuilder()
+		actions.appendln(actionHeader)
+		var total = 0
+		getActionDeltas().forEachIndexed { actionNr, delta ->
+			total += delta.cardinality()
+			actions.appendln("$actionNr;${delta.cardinality()};$total")
+		}
+		Files.write(context.getModel().config.baseDir.resolve("coverage-per-action.txt"), actions.lines())
 	}
 
 	companion object {
 		private const val header = "Statement;Time"
+		private const val actionHeader = "Action;NewStatements;CoveredStatements"
 	}
 
 }
\ No newline at end of file
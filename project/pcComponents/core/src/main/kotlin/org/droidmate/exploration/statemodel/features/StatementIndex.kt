@@ -0,0 +1,141 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import org.json.JSONObject
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Dense index of the statements instrumented by `StatementInstrumenter`, each statement gets an ordinal in 0 until [size] when
+ * the instrumentation file is loaded, such that the coverage can be kept as bit set (see [StatementCoverage]).
+ *
+ * The statements are identified by the UUID the instrumentation logs for them. The UUIDs are stored as their raw 128 bits in an
+ * open addressing table and [ordinalOf] parses them directly from the log line, i.e. looking up a logged statement does not allocate.
+ */
+class StatementIndex private constructor(private val statements: Array<String>, private val uuids: Array<String>) {
+	companion object {
+		private const val uuidLength = 36
+		private const val uuidMarker = "uuid="
+		/** statements of the coverage helper itself are logged too, but are not part of the app */
+		private const val helperClass = "CoverageHelper"
+
+		@JvmStatic
+		val empty = StatementIndex(emptyArray(), emptyArray())
+
+		/** @param statements the `allMethods` entries of the instrumentation file, i.e. "<statement> uuid=<uuid>" */
+		@JvmStatic
+		fun of(statements: Collection<String>): StatementIndex {
+			val appStatements = statements.filterNot { it.contains(helperClass) }
+			return StatementIndex(appStatements.toTypedArray(), Array(appStatements.size) { i ->
+				val statement = appStatements[i]
+				statement.substring(statement.lastIndexOf(uuidMarker) + uuidMarker.length).also {
+					assert(it.length == uuidLength) { "Invalid UUID $it $statement" }
+				}
+			})
+		}
+
+		@JvmStatic
+		@Throws(IOException::class)
+		fun fromInstrumentationFile(instrumentationFile: Path): StatementIndex {
+			val allMethods = JSONObject(String(Files.readAllBytes(instrumentationFile))).getJSONArray("allMethods")
+			return of((0 until allMethods.length()).map { allMethods[it].toString() })
+		}
+
+		private fun hexValue(c: Char): Int = when (c) {
+			in '0'..'9' -> c - '0'
+			in 'a'..'f' -> c - 'a' + 10
+			in 'A'..'F' -> c - 'A' + 10
+			else -> -1
+		}
+
+		private fun mix(msb: Long, lsb: Long): Int {
+			val h = (msb * -0x61c8864680b583ebL) xor lsb
+			return (h xor (h ushr 29)).toInt()
+		}
+	}
+
+	val size: Int get() = statements.size
+
+	/** slot -> (msb, lsb) of the UUID in [keys] and its ordinal in [ordinals] (-1 if free), the load factor is at most 0.5 */
+	private val mask: Int
+	private val keys: LongArray
+	private val ordinals: IntArray
+
+	init {
+		var capacity = 2
+		while (capacity < 2 * statements.size) capacity = capacity shl 1
+		mask = capacity - 1
+		keys = LongArray(2 * capacity)
+		ordinals = IntArray(capacity) { -1 }
+		uuids.forEachIndexed { ordinal, uuid ->
+			val msb = java.lang.Long.parseUnsignedLong(uuid.substring(0, 8) + uuid.substring(9, 13) + uuid.substring(14, 18), 16)
+			val lsb = java.lang.Long.parseUnsignedLong(uuid.substring(19, 23) + uuid.substring(24), 16)
+			var slot = mix(msb, lsb) and mask
+			while (ordinals[slot] >= 0) {
+				assert(keys[2 * slot] != msb || keys[2 * slot + 1] != lsb) { "Statement UUID $uuid is instrumented twice" }
+				slot = (slot + 1) and mask
+			}
+			keys[2 * slot] = msb
+			keys[2 * slot + 1] = lsb
+			ordinals[slot] = ordinal
+		}
+	}
+
+	fun statement(ordinal: Int): String = statements[ordinal]
+
+	fun uuid(ordinal: Int): String = uuids[ordinal]
+
+	/** @return the ordinal of the statement whose UUID follows the last "uuid=" in [line], -1 if there is none or it is unknown */
+	fun ordinalOf(line: String): Int {
+		val start = line.lastIndexOf(uuidMarker) + uuidMarker.length
+		if (start < uuidMarker.length || line.length - start < uuidLength) return -1
+		return ordinalOf(line, start)
+	}
+
+	private fun ordinalOf(s: CharSequence, start: Int): Int {
+		var msb = 0L
+		var lsb = 0L
+		var digits = 0
+		for (i in start until start + uuidLength) {
+			val c = s[i]
+			if (c == '-') continue
+			val v = hexValue(c)
+			if (v < 0) return -1
+			if (digits < 16) msb = (msb shl 4) or v.toLong() else lsb = (lsb shl 4) or v.toLong()
+			digits++
+		}
+		if (digits != 32) return -1
+
+		var slot = mix(msb, lsb) and mask
+		while (true) {
+			val ordinal = ordinals[slot]
+			if (ordinal < 0 || (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb)) return ordinal
+			slot = (slot + 1) and mask
+		}
+	}
+}
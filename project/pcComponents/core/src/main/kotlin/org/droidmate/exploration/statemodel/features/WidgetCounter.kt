@@ -0,0 +1,242 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import kotlinx.coroutines.experimental.CompletableDeferred
+import java.util.*
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.locks.StampedLock
+
+/**
+ * Interaction counters of widgets in the context of states, i.e. (widget.uid, state.uid) -> count.
+ *
+ * The ids are stored as their raw 128 bits in open addressing tables, such that neither updates nor queries allocate any objects.
+ * Besides the counter of each pair we keep the total of each widget over all states, therefore [Counts.total] is a single lookup.
+ *
+ * Updates are serialized by a write lock, reads are optimistic and only fall back to a read lock if they overlapped with an update.
+ * Each update increases the [epoch], which allows readers to wait for a specific update via [awaitEpoch] instead of waiting for
+ * every pending feature coroutine.
+ */
+class WidgetCounter {
+	/** read access to the counters, all values read within one [read] call belong to the same [epoch] */
+	interface Counts {
+		/** @return how often the widget [wId] was triggered in the state-context [sId] */
+		fun count(wId: UUID, sId: UUID): Int
+
+		/** @return how often the widget [wId] was triggered over all states */
+		fun total(wId: UUID): Int
+
+		/** @return the number of distinct states for which any counter was recorded */
+		val numStates: Int
+	}
+
+	private val lock = StampedLock()
+	private val pairs = CounterTable(4)
+	private val totals = CounterTable(2)
+	private val states = CounterTable(2)
+	private val waiting = ConcurrentLinkedQueue<Pair<Long, CompletableDeferred<Unit>>>()
+
+	/** the number of updates applied so far */
+	@Volatile var epoch: Long = 0
+		private set
+
+	private val counts = object : Counts {
+		override fun count(wId: UUID, sId: UUID): Int =
+				pairs.get(wId.mostSignificantBits, wId.leastSignificantBits, sId.mostSignificantBits, sId.leastSignificantBits)
+
+		override fun total(wId: UUID): Int = totals.get(wId.mostSignificantBits, wId.leastSignificantBits)
+
+		override val numStates: Int get() = states.size
+	}
+
+	/** increase the counters of all widgets [wIds] in the context of [sId] as one update */
+	fun inc(wIds: Collection<UUID>, sId: UUID) = update { wIds.forEach { add(it, sId, 1) } }
+
+	fun inc(wId: UUID, sId: UUID) = update { add(wId, sId, 1) }
+
+	/** decrease the counter of [wId] in the context of [sId], counters never become negative but the pair is recorded in any case */
+	fun dec(wId: UUID, sId: UUID) = update { add(wId, sId, -1) }
+
+	private fun add(wId: UUID, sId: UUID, delta: Int) {
+		val w0 = wId.mostSignificantBits
+		val w1 = wId.leastSignificantBits
+		val s0 = sId.mostSignificantBits
+		val s1 = sId.leastSignificantBits
+		val prev = pairs.get(w0, w1, s0, s1)
+		val next = Math.max(prev + delta, 0)
+		pairs.put(w0, w1, s0, s1, next)
+		totals.put(w0, w1, 0, 0, totals.get(w0, w1) + next - prev)
+		states.put(s0, s1, 0, 0, states.get(s0, s1) + next - prev)
+	}
+
+	private inline fun update(body: () -> Unit) {
+		val stamp = lock.writeLock()
+		try {
+			body()
+			epoch++
+		} finally {
+			lock.unlockWrite(stamp)
+		}
+		val current = epoch
+		waiting.removeIf { (min, done) -> (min <= current).also { if (it) done.complete(Unit) } }
+	}
+
+	/**
+	 * Evaluates [body] on the current counters without waiting for pending updates.
+	 * The body may be evaluated more than once if it overlapped with an update, therefore it should not have any side effects.
+	 */
+	fun <T> read(body: Counts.() -> T): T {
+		val stamp = lock.tryOptimisticRead()
+		if (stamp != 0L) {
+			try {
+				val result = counts.body()
+				if (lock.validate(stamp)) return result
+			} catch (e: RuntimeException) {
+				if (lock.validate(stamp)) throw e  // otherwise the body just saw an inconsistent table
+			}
+		}
+		val readStamp = lock.readLock()
+		try {
+			return counts.body()
+		} finally {
+			lock.unlockRead(readStamp)
+		}
+	}
+
+	fun count(wId: UUID, sId: UUID): Int = read { count(wId, sId) }
+
+	fun total(wId: UUID): Int = read { total(wId) }
+
+	/** suspends until at least [epoch] updates were applied */
+	suspend fun awaitEpoch(epoch: Long) {
+		if (this.epoch >= epoch) return
+		val done = CompletableDeferred<Unit>()
+		waiting.add(epoch to done)
+		if (this.epoch >= epoch) done.complete(Unit)  // the update may have finished before we were added to the queue
+		done.await()
+	}
+
+	/** calls [action] with (widget.uid, state.uid, count) for every recorded pair */
+	fun forEach(action: (UUID, UUID, Int) -> Unit) {
+		val entries = LinkedList<Triple<UUID, UUID, Int>>()
+		read {
+			entries.clear()
+			pairs.forEach { keys, offset, value ->
+				entries.add(Triple(UUID(keys[offset], keys[offset + 1]), UUID(keys[offset + 2], keys[offset + 3]), value))
+			}
+		}
+		entries.forEach { (wId, sId, count) -> action(wId, sId, count) }
+	}
+
+	/**
+	 * Open addressing (linear probing) table from keys of [width] longs to non-negative ints, free slots have the value [EMPTY].
+	 * The keys and values are replaced as a whole on resize, such that concurrent (optimistic) readers never see arrays of
+	 * different tables.
+	 */
+	private class CounterTable(private val width: Int) {
+		private class Slots(val capacity: Int, width: Int) {
+			val keys = LongArray(capacity * width)
+			val values = IntArray(capacity).apply { fill(EMPTY) }
+		}
+
+		@Volatile private var slots = Slots(64, width)
+
+		var size = 0
+			private set
+
+		private fun hash(k0: Long, k1: Long, k2: Long, k3: Long): Int {
+			var h = k0 * -7046029254386353131L
+			h = (h xor k1) * -7046029254386353131L
+			h = (h xor k2) * -7046029254386353131L
+			h = (h xor k3) * -7046029254386353131L
+			return (h xor (h ushr 32)).toInt()
+		}
+
+		/** @return the slot of the key or the free slot where it would be inserted, -1 if the table is full (only for torn reads) */
+		private fun Slots.find(k0: Long, k1: Long, k2: Long, k3: Long): Int {
+			val mask = capacity - 1
+			var i = hash(k0, k1, k2, k3) and mask
+			for (probe in 0 until capacity) {
+				val o = i * width
+				if (values[i] == EMPTY ||
+						(keys[o] == k0 && keys[o + 1] == k1 && (width == 2 || (keys[o + 2] == k2 && keys[o + 3] == k3))))
+					return i
+				i = (i + 1) and mask
+			}
+			return -1
+		}
+
+		fun get(k0: Long, k1: Long, k2: Long = 0, k3: Long = 0): Int {
+			val s = slots
+			val i = s.find(k0, k1, k2, k3)
+			return if (i < 0 || s.values[i] == EMPTY) 0 else s.values[i]
+		}
+
+		/** has to be called under the write lock */
+		fun put(k0: Long, k1: Long, k2: Long, k3: Long, value: Int) {
+			if (2 * (size + 1) > slots.capacity) resize()
+			val s = slots
+			val i = s.find(k0, k1, k2, k3)
+			if (s.values[i] == EMPTY) {
+				val o = i * width
+				s.keys[o] = k0
+				s.keys[o + 1] = k1
+				if (width == 4) {
+					s.keys[o + 2] = k2
+					s.keys[o + 3] = k3
+				}
+				size++
+			}
+			s.values[i] = value
+		}
+
+		private fun resize() {
+			val old = slots
+			val s = Slots(old.capacity * 2, width)
+			for (i in 0 until old.capacity) {
+				if (old.values[i] == EMPTY) continue
+				val o = i * width
+				val k2 = if (width == 4) old.keys[o + 2] else 0
+				val k3 = if (width == 4) old.keys[o + 3] else 0
+				val j = s.find(old.keys[o], old.keys[o + 1], k2, k3)
+				System.arraycopy(old.keys, o, s.keys, j * width, width)
+				s.values[j] = old.values[i]
+			}
+			slots = s
+		}
+
+		fun forEach(action: (LongArray, Int, Int) -> Unit) {
+			val s = slots
+			for (i in 0 until s.capacity) {
+				if (s.values[i] != EMPTY) action(s.keys, i * width, s.values[i])
+			}
+		}
+
+		companion object {
+			const val EMPTY = -1
+		}
+	}
+}
@@ -30,11 +30,10 @@ import kotlinx.coroutines.experimental.joinChildren
 import java.nio.file.Files
 import java.nio.file.Path
 import java.util.*
-import java.util.concurrent.ConcurrentHashMap
 
 abstract class WidgetCountingMF : ModelFeature() {
 	// records how often a specific widget was selected and from which state-eContext (widget.uid -> Map<state.uid -> numActions>)
-	private val wCnt: ConcurrentHashMap<UUID, MutableMap<UUID, Int>> = ConcurrentHashMap()
+	private val wCnt = WidgetCounter()
 
 	init {
 		job = Job(parent = (this.job)) // we don't want to wait for other features (or having them wait for us), therefore create our own (child) job
@@ -47,24 +46,30 @@ abstract class WidgetCountingMF : ModelFeature() {
 	 * @param stateId the unique id of the state (the prevState) from which the widget was triggered
 	 */
 	fun incCnt(wId: UUID, stateId: UUID){
-		wCnt.compute(wId) { _, m -> m?.incCnt(stateId) ?: mutableMapOf(stateId to 1) }
+		wCnt.inc(wId, stateId)
 	}
 
 	/** decrease the counter for a given widget id [wId] and state eContext [stateId].
 	 * The minimal possible value is 0 for any counter value.
 	 */
 	fun decCnt(wId: UUID, stateId: UUID){
-		wCnt.compute(wId) { _, m -> m?.decCnt(stateId) ?: mutableMapOf(stateId to 0)}
+		wCnt.dec(wId, stateId)
 	}
 
+	/** the number of counter updates applied so far, see [WidgetCounter.epoch] */
+	val epoch: Long get() = wCnt.epoch
+
+	/** evaluates [body] on the current counter values without waiting for any pending update */
+	fun <T> read(body: WidgetCounter.Counts.() -> T): T = wCnt.read(body)
+
 	suspend fun isBlacklisted(wId: UUID, threshold: Int = 1): Boolean {
 		job.joinChildren() // wait that all updates are applied before changing the counter value
-		return wCnt.sumCounter(wId) >= threshold
+		return wCnt.total(wId) >= threshold
 	}
 
 	suspend fun isBlacklistedInState(wId: UUID, sId: UUID, threshold: Int = 1): Boolean {
 		job.joinChildren() // wait that all updates are applied before changing the counter value
-		return wCnt.getCounter(wId, sId) >= threshold
+		return wCnt.count(wId, sId) >= threshold
 	}
 
 	/** dumping the current state of the widget counter
@@ -74,11 +79,11 @@ abstract class WidgetCountingMF : ModelFeature() {
 		job.joinChildren() // wait that all updates are applied before changing the counter value
 		val out = StringBuffer()
 		out.appendln(header)
-			wCnt.toSortedMap(compareBy { it.toString() }).forEach { wMap ->
-				wMap.value.entries.forEach { (sId, cnt) ->
-					out.appendln("${wMap.key} ;\t$sId ;\t$cnt")
-				}
-			}
+		val entries = LinkedList<Triple<UUID, UUID, Int>>()
+		wCnt.forEach { wId, sId, cnt -> entries.add(Triple(wId, sId, cnt)) }
+		entries.sortedWith(compareBy({ it.first.toString() }, { it.second.toString() })).forEach { (wId, sId, cnt) ->
+			out.appendln("$wId ;\t$sId ;\t$cnt")
+		}
 
 		Files.write(file, out.lines())
 	}
@@ -1,36 +1,120 @@
 package org.droidmate.exploration.statemodel.features.graph
 
+import java.util.*
+
+/**
+ * Directed multi-graph where all lookups go through hash indexes instead of scanning the adjacency lists.
+ *
+ * Vertices are indexed by [stateKey] and edges of a source vertex by [labelKey], both keys have to be consistent with the
+ * respective comparison, i.e. elements which are equal w.r.t. [stateComparison] ([labelComparison]) must have equal keys.
+ * The defaults use the elements themselves as keys, which is consistent with the default (equality based) comparisons.
+ * Edges are additionally indexed by their order and each vertex keeps its reverse adjacency to answer [ancestors] directly.
+ *
+ * Shortest paths are computed by breadth first search (each edge has length one) and the resulting path trees are cached for
+ * the most recently queried sources. Inserted edges are relaxed into the cached trees, only if an edge is redirected away
+ * from a state the cached trees are dropped.
+ */
 class Graph<S, L>(root: S,
 				  val stateComparison : (S, S) -> Boolean = { a, b -> a == b },
-				  val labelComparison : (L, L) -> Boolean = { a, b -> a == b }): IGraph<S, L>{
-	private val adjacencyMap: MutableMap<Vertex<S>, MutableList<Edge<S, L>>> = mutableMapOf()
+				  val labelComparison : (L, L) -> Boolean = { a, b -> a == b },
+				  private val stateKey: (S) -> Any? = { it },
+				  private val labelKey: (L) -> Any? = { it }): IGraph<S, L>{
+
+	private inner class Node(val vertex: Vertex<S>) {
+		val edges: MutableList<Edge<S, L>> = ArrayList()
+		val edgesByLabel: MutableMap<Any?, MutableList<Edge<S, L>>> = HashMap()
+		/** source key -> number of edges from this source into this vertex */
+		val ancestors: MutableMap<Any?, Int> = LinkedHashMap()
+	}
+
+	/** breadth first search tree of [source], distances are the number of edges on the shortest path */
+	private inner class PathTree(val source: Any?) {
+		val distance: MutableMap<Any?, Int> = HashMap()
+		val parent: MutableMap<Any?, Edge<S, L>> = HashMap()
+
+		init {
+			distance[source] = 0
+			propagate(source)
+		}
+
+		fun relax(edge: Edge<S, L>) {
+			val dst = edge.destination ?: return
+			val d = distance[stateKey(edge.source.data)] ?: return
+			val dstKey = stateKey(dst.data)
+			if (distance[dstKey]?.let { it <= d + 1 } == true) return
+
+			distance[dstKey] = d + 1
+			parent[dstKey] = edge
+			propagate(dstKey)
+		}
+
+		private fun propagate(start: Any?) {
+			val queue: Deque<Any?> = LinkedList()  // keys may be null
+			queue.add(start)
+			while (queue.isNotEmpty()) {
+				val key = queue.poll()
+				val d = distance[key]!! + 1
+				nodes[key]?.edges?.forEach { edge ->
+					edge.destination?.let { dst ->
+						val dstKey = stateKey(dst.data)
+						if (distance[dstKey]?.let { it <= d } != true) {
+							distance[dstKey] = d
+							parent[dstKey] = edge
+							queue.add(dstKey)
+						}
+					}
+				}
+			}
+		}
+
+		fun path(destination: Any?): List<Edge<S, L>>? {
+			if (!distance.containsKey(destination)) return null
+			val path = LinkedList<Edge<S, L>>()
+			var key = destination
+			while (key != source) {
+				val edge = parent[key]!!
+				path.addFirst(edge)
+				key = stateKey(edge.source.data)
+			}
+			return path
+		}
+	}
+
+	private val nodes: MutableMap<Any?, Node> = LinkedHashMap()
+	private val vertices: MutableSet<Vertex<S>> = LinkedHashSet()
+	/** edge with order i is at position i, orders are handed out consecutively by [numEdges] */
+	private val edgesByOrder: MutableList<Edge<S, L>> = ArrayList()
+	private val pathTrees: MutableMap<Any?, PathTree> = object : LinkedHashMap<Any?, PathTree>(16, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Any?, PathTree>?): Boolean = size > maxCachedPathTrees
+	}
 
 	override val root: Vertex<S> = createVertex(root)
 
 	var numEdges: Int = 0
 		private set
 
-	private fun createVertex(data: S): Vertex<S> {
-		val vertex = Vertex(data, stateComparison)
+	private fun node(data: S): Node? = nodes[stateKey(data)]
 
-		adjacencyMap[vertex] ?: run {
-			adjacencyMap[vertex] = mutableListOf()
-		}
+	private fun createVertex(data: S): Vertex<S> = getOrCreateNode(data).vertex
 
-		return vertex
+	private fun getOrCreateNode(data: S): Node = nodes.getOrPut(stateKey(data)) {
+		Node(Vertex(data, stateComparison)).also { vertices.add(it.vertex) }
 	}
 
     fun contains(data: S): Boolean = getVertex(data) != null
 
-    fun getVertex(data: S): Vertex<S>? = getVertices().find { stateComparison(it.data, data) }
+    fun getVertex(data: S): Vertex<S>? = node(data)?.vertex
 
 	private fun addDirectedEdge(source: S, destination: S?, label: L, weight: Double): Edge<S, L> {
-		val sourceVertex = getVertex(source)?:createVertex(source)
-		val destinationVertex = destination?.run { getVertex(destination)?:createVertex(destination) }
+		val sourceNode = getOrCreateNode(source)
+		val destinationVertex = destination?.let { createVertex(it) }
 
-		val edge = Edge(sourceVertex, destinationVertex, numEdges++, label, labelComparison, 0, weight)
+		val edge = Edge(sourceNode.vertex, destinationVertex, numEdges++, label, labelComparison, 0, weight)
 
-		adjacencyMap[sourceVertex]?.add(edge)
+		sourceNode.edges.add(edge)
+		sourceNode.edgesByLabel.getOrPut(labelKey(label)) { ArrayList(1) }.add(edge)
+		edgesByOrder.add(edge)
+		destinationVertex?.let { addAncestor(edge) }
 
 		return edge
 	}
@@ -38,9 +122,23 @@ class Graph<S, L>(root: S,
 	private fun updateDirectedEdge(edge: Edge<S, L>): Edge<S, L>{
 		edge.count++
 		edge.order.add(numEdges++)
+		edgesByOrder.add(edge)
 		return edge
 	}
 
+	private fun addAncestor(edge: Edge<S, L>) {
+		val destinationNode = node(edge.destination!!.data)!!
+		destinationNode.ancestors.merge(stateKey(edge.source.data), 1) { a, b -> a + b }
+		pathTrees.values.forEach { it.relax(edge) }
+	}
+
+	private fun removeAncestor(edge: Edge<S, L>) {
+		val destinationNode = node(edge.destination!!.data)!!
+		destinationNode.ancestors.computeIfPresent(stateKey(edge.source.data)) { _, n -> if (n > 1) n - 1 else null }
+		// removing edges may increase distances, which cannot be updated incrementally
+		pathTrees.clear()
+	}
+
 	override fun add(source: S, destination: S?, label: L, updateIfExists: Boolean, weight: Double): Edge<S, L> {
 		val edge = edge(source, destination, label)
 
@@ -54,65 +152,86 @@ class Graph<S, L>(root: S,
 	}
 
 	override fun update(source: S, prevDestination: S?, newDestination: S, prevLabel: L, newLabel: L): Edge<S, L>?{
-		return edge(source, prevDestination, prevLabel)?.apply {
-			destination = createVertex(newDestination)
-			label = newLabel
+		val edge = edge(source, prevDestination, prevLabel) ?: return null
+		val sourceNode = node(source)!!
+
+		edge.destination?.let { removeAncestor(edge) }
+		val prevKey = labelKey(prevLabel)
+		val newKey = labelKey(newLabel)
+		if (prevKey != newKey) {
+			sourceNode.edgesByLabel[prevKey]?.let { if (it.remove(edge) && it.isEmpty()) sourceNode.edgesByLabel.remove(prevKey) }
+			sourceNode.edgesByLabel.getOrPut(newKey) { ArrayList(1) }.add(edge)
 		}
+
+		edge.destination = createVertex(newDestination)
+		edge.label = newLabel
+		addAncestor(edge)
+		return edge
 	}
 
-    override fun getVertices(): Set<Vertex<S>> = adjacencyMap.keys.toSet()
+    override fun getVertices(): Set<Vertex<S>> = Collections.unmodifiableSet(vertices)
 
-	override fun edge(order: Int): Edge<S, L>?{
-		return adjacencyMap
-				.map {
-					it.value.firstOrNull { it.order.contains(order) }
-				}
-				.filterNotNull()
-				.firstOrNull()
-	}
+	override fun edge(order: Int): Edge<S, L>? = edgesByOrder.getOrNull(order)
 
-    override fun edges(): List<Edge<S, L>> = adjacencyMap.values.flatten()
+    override fun edges(): List<Edge<S, L>> = nodes.values.flatMap { it.edges }
 
-	override fun edges(source: Vertex<S>): List<Edge<S, L>> = adjacencyMap[source] ?: emptyList()
+	override fun edges(source: Vertex<S>): List<Edge<S, L>> = edges(source.data)
 
-	override fun edges(source: S): List<Edge<S, L>> = getVertex(source)?.let{ edges(it) }?: emptyList()
+	override fun edges(source: S): List<Edge<S, L>> = node(source)?.edges ?: emptyList()
 
-	override fun edges(source: S, destination: S?): List<Edge<S, L>> = edges(source).filter {
-        (it.destination == null && destination == null) || (it.destination != null && destination != null && stateComparison(it.destination!!.data, destination))
-    }
+	override fun edges(source: S, destination: S?): List<Edge<S, L>> = edges(source).filter { isDestination(it, destination) }
 
 	override fun edge(source: S, destination: S?, label: L): Edge<S, L>? {
-        val edges = edges(source, destination)
-        return edges.find {
-            labelComparison(it.label, label)
-        }
-    }
+		val candidates = node(source)?.edgesByLabel?.get(labelKey(label)) ?: return null
+		return candidates.find { isDestination(it, destination) && labelComparison(it.label, label) }
+	}
+
+	private fun isDestination(edge: Edge<S, L>, destination: S?): Boolean {
+		val edgeDestination = edge.destination
+		return (edgeDestination == null && destination == null) ||
+				(edgeDestination != null && destination != null && stateKey(edgeDestination.data) == stateKey(destination)
+						&& stateComparison(edgeDestination.data, destination))
+	}
 
 	override fun isEmpty(): Boolean {
-		return adjacencyMap[root]?.isEmpty() ?: true
+		return node(root.data)?.edges?.isEmpty() ?: true
 	}
 
 	override fun ancestors(destination: S): List<Vertex<S>> {
-		val targetVertex = getVertex(destination) ?: return emptyList()
+		val targetNode = node(destination) ?: return emptyList()
+
+		return targetNode.ancestors.keys.map { nodes[it]!!.vertex }
+	}
 
-        return adjacencyMap
-				.filter { p -> p.value.any { it.destination == targetVertex} }
-				.map { it.key }
+	private fun pathTree(source: S): PathTree? {
+		val key = stateKey(source)
+		if (!nodes.containsKey(key)) return null
+		return pathTrees.getOrPut(key) { PathTree(key) }
 	}
 
+	override fun shortestPath(source: S, destination: S): List<Edge<S, L>>? = pathTree(source)?.path(stateKey(destination))
+
+	override fun isReachable(source: S, destination: S): Boolean =
+			pathTree(source)?.distance?.containsKey(stateKey(destination)) ?: false
+
 	override fun toString(): String {
 		var result = ""
-		for ((vertex, edges) in adjacencyMap) {
+		for (node in nodes.values) {
 			var edgeString = ""
-			for ((index, edge) in edges.withIndex()) {
-				edgeString += if (index != edges.count() - 1) {
+			for ((index, edge) in node.edges.withIndex()) {
+				edgeString += if (index != node.edges.count() - 1) {
 					"${edge.destination}, "
 				} else {
 					"${edge.destination}"
 				}
 			}
-			result += "$vertex ---> [ $edgeString ] \n"
+			result += "${node.vertex} ---> [ $edgeString ] \n"
 		}
 		return result
 	}
-}
\ No newline at end of file
+
+	companion object {
+		/** number of sources for which the shortest path trees are kept */
+		const val maxCachedPathTrees = 8
+	}
+}
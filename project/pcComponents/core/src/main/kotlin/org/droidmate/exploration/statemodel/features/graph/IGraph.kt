@@ -23,5 +23,10 @@ interface IGraph<S, L>{
 
 	fun ancestors(destination: S): List<Vertex<S>>
 
+	/** @return the edges of a shortest path from [source] to [destination], an empty list if both are the same state or null if it is not reachable */
+	fun shortestPath(source: S, destination: S): List<Edge<S, L>>?
+
+	fun isReachable(source: S, destination: S): Boolean
+
 	fun isEmpty(): Boolean
 }
\ No newline at end of file
@@ -5,7 +5,7 @@ import kotlinx.coroutines.experimental.newCoroutineContext
 import org.droidmate.deviceInterface.guimodel.isLaunchApp
 import org.droidmate.exploration.ExplorationContext
 import org.droidmate.exploration.statemodel.ActionData
-import org.droidmate.exploration.statemodel.ActionData.Companion.ActionDataFields
+import org.droidmate.exploration.statemodel.ConcreteId
 import org.droidmate.exploration.statemodel.StateData
 import org.droidmate.exploration.statemodel.features.ModelFeature
 import kotlin.coroutines.experimental.CoroutineContext
@@ -13,13 +13,9 @@ import kotlin.coroutines.experimental.CoroutineContext
 class StateGraphMF @JvmOverloads constructor(private val graph: IGraph<StateData, ActionData> =
 						   Graph(StateData.emptyState,
 								   stateComparison = {a, b -> a.uid == b.uid },
-								   labelComparison = {a, b ->
-									   val fields = arrayOf(ActionDataFields.Action, ActionDataFields.WId, ActionDataFields.Exception, ActionDataFields.SuccessFul)
-									   val aData = a.actionString(fields)
-									   val bData = b.actionString(fields)
-
-									   aData == bData
-								   })) : ModelFeature(), IGraph<StateData, ActionData> by graph {
+								   labelComparison = {a, b -> labelKey(a) == labelKey(b) },
+								   stateKey = { it.uid },
+								   labelKey = ::labelKey)) : ModelFeature(), IGraph<StateData, ActionData> by graph {
 
 
 	override val context: CoroutineContext = newCoroutineContext(context = CoroutineName("StateGraphMF"), parent = job)
@@ -53,4 +49,12 @@ class StateGraphMF @JvmOverloads constructor(private val graph: IGraph<StateData
 	override fun toString(): String {
 		return graph.toString()
 	}
-}
\ No newline at end of file
+
+	companion object {
+		/** the action fields which distinguish two labels (type, target widget, exception and success) */
+		private data class LabelKey(val actionType: String, val widgetId: ConcreteId?, val exception: String, val successful: Boolean)
+
+		private fun labelKey(action: ActionData): Any =
+				LabelKey(action.actionType, action.targetWidget?.id, action.exception, action.successful)
+	}
+}
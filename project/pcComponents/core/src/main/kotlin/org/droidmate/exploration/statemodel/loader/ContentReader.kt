@@ -6,9 +6,11 @@ import org.droidmate.exploration.statemodel.ModelConfig
 import org.droidmate.exploration.statemodel.dumpString
 import java.io.BufferedReader
 import java.io.FileReader
+import java.io.RandomAccessFile
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.util.*
 import kotlin.streams.toList
 
 
@@ -28,9 +30,24 @@ open class ContentReader(val config: ModelConfig){
 		}
 	}
 
+	/** file name (without directory) of each state file by the state id string, the directory is only listed once
+	 * (and again if a state is requested which was not yet dumped when the index was created) */
+	@Volatile private var stateFiles: Map<String, Path>? = null
+
+	private fun indexStateFiles(): Map<String, Path> = synchronized(this) {
+		HashMap<String, Path>().apply {
+			Files.newDirectoryStream(Paths.get(config.stateDst.toUri())).use { dir ->
+				dir.forEach { p -> p.fileName.toString().let { name ->
+					name.indexOf(ModelConfig.defaultWidgetSuffix).let { if (it > 0) putIfAbsent(name.substring(0, it), p) }
+				} }
+			}
+		}.also { stateFiles = it }
+	}
+
 	open fun getStateFile(stateId: ConcreteId): Triple<Path,Boolean,String>{
-		val contentPath = Files.list(Paths.get(config.stateDst.toUri())).use { it.toList() }.first {
-			it.fileName.toString().startsWith( stateId.dumpString()+ ModelConfig.defaultWidgetSuffix) }
+		val key = stateId.dumpString()
+		val contentPath = stateFiles?.get(key) ?: indexStateFiles()[key]
+				?: throw NoSuchElementException("there is no state file for $key in ${config.stateDst}")
 		return contentPath.fileName.toString().let {
 			Triple(contentPath, it.contains("HS"), it.substring(it.indexOf("_PN-")+4,it.indexOf(config[ConfigProperties.ModelProperties.dump.stateFileExtension])))
 		}
@@ -39,14 +56,35 @@ open class ContentReader(val config: ModelConfig){
 	fun getHeader(path: Path): List<String>{
 		return getFileContent(path,0)?.first()?.split(config[ConfigProperties.ModelProperties.dump.sep])!!
 	}
-	suspend inline fun <T> processLines(path: Path, skip: Long = 1, crossinline lineProcessor: suspend (List<String>) -> T): List<T> {
+	/** every line of a trace is terminated when it is written, if the exploration was killed while appending to the trace
+	 * the last line may be incomplete */
+	open fun isLastLineTerminated(path: Path): Boolean = path.toFile().let { file ->
+		if (!file.exists() || file.length() == 0L) true
+		else RandomAccessFile(file, "r").use { it.seek(file.length() - 1); it.read() == '\n'.toInt() }
+	}
+
+	/** if [dropIncomplete] is set an unterminated last line (see [isLastLineTerminated]) is not processed */
+	suspend inline fun <T> processLines(path: Path, skip: Long = 1, dropIncomplete: Boolean = false, crossinline lineProcessor: suspend (List<String>) -> T): List<T> {
 		log("call P_processLines for ${path.toUri()}")
-		getFileContent(path,skip)?.let { br ->	// skip the first line (headline)
+		readLines(path, skip, dropIncomplete)?.let { br ->	// skip the first line (headline)
 			assert(br.count() > 0 // all 'non-empty' states have to have entries for their widgets
 					|| skip==0L || !path.fileName.startsWith("d41d8cd9-8f00-3204-a980-0998ecf8427e_d41d8cd9-8f00-3204-a980-0998ecf8427e"))
 				{ "ERROR on model loading: file ${path.fileName} does not contain any entries" }
-			return br.map { line -> lineProcessor(line.split(config[ConfigProperties.ModelProperties.dump.sep]).map { it.trim() }) }
+			return br.map { fields -> lineProcessor(fields) }
 		} ?: return emptyList()
 	}
 
-}
\ No newline at end of file
+	/**
+	 * @return the (trimmed) fields of each line after the first [skip] lines.
+	 * Existing files are tokenized directly from a reused character buffer, i.e. without creating a string for each line,
+	 * the content of any other path is requested via [getFileContent].
+	 */
+	fun readLines(path: Path, skip: Long, dropIncomplete: Boolean): List<List<String>>? {
+		val sep = config[ConfigProperties.ModelProperties.dump.sep]
+		if (!Files.exists(path))
+			return getFileContent(path, skip)?.let { if (dropIncomplete && it.isNotEmpty() && !isLastLineTerminated(path)) it.dropLast(1) else it }
+					?.map { line -> LineTokenizer.fields(line, 0, line.length, sep) }
+		return LineTokenizer.readFields(path, sep, skip, dropIncomplete)
+	}
+
+}
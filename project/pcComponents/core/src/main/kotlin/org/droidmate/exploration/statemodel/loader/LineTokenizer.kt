@@ -0,0 +1,97 @@
+package org.droidmate.exploration.statemodel.loader
+
+import java.io.InputStreamReader
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.*
+
+/**
+ * Splits dumped model files into trimmed fields, equivalent to `line.split(sep).map { it.trim() }` for each line but the fields
+ * are created directly from the character buffer without intermediate line and substring objects.
+ */
+internal object LineTokenizer {
+	/** one fixed size buffer per parser thread, the files are streamed through it */
+	private val buffers = ThreadLocal.withInitial { CharArray(1 shl 16) }
+
+	/**
+	 * @param skip number of (header) lines to be ignored
+	 * @param dropIncomplete if set the last line is ignored if it is not terminated by a line break
+	 * @param buffer holds the lines which were not tokenized yet, a line longer than the buffer is read into a temporary
+	 * larger copy, i.e. the buffer itself never grows
+	 */
+	fun readFields(path: Path, sep: String, skip: Long, dropIncomplete: Boolean, buffer: CharArray = buffers.get()): List<List<String>> {
+		var buf = buffer
+		val lines = ArrayList<List<String>>()
+		var lineNr = 0L
+		var start = 0  // first character of the current line
+		var scan = 0  // next character to be checked for a line break
+		var size = 0
+		var eof = false
+		var skipLf = false  // the last line ended with '\r', a directly following '\n' belongs to this line break
+		InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8).use { reader ->
+			while (true) {
+				if (scan == size) {
+					if (eof) break
+					if (start > 0) {  // move the current line to the front to make room for the next characters
+						System.arraycopy(buf, start, buf, 0, size - start)
+						scan -= start
+						size -= start
+						start = 0
+					}
+					if (size == buf.size) buf = buf.copyOf(buf.size * 2)
+					val n = reader.read(buf, size, buf.size - size)
+					if (n < 0) eof = true else size += n
+					continue
+				}
+				val c = buf[scan]
+				if (skipLf) {
+					skipLf = false
+					if (c == '\n') {
+						start = ++scan
+						continue
+					}
+				}
+				if (c == '\n' || c == '\r') {
+					if (lineNr++ >= skip) lines.add(fields(buf, start, scan, sep))
+					skipLf = c == '\r'
+					start = ++scan
+				} else scan++
+			}
+		}
+		if (start < size && !dropIncomplete && lineNr >= skip) lines.add(fields(buf, start, size, sep))
+		return lines
+	}
+
+	fun fields(line: String, start: Int, end: Int, sep: String): List<String> =
+			split(start, end, sep, { line[it] }) { from, to -> line.substring(from, to) }
+
+	fun fields(buf: CharArray, start: Int, end: Int, sep: String): List<String> =
+			split(start, end, sep, { buf[it] }) { from, to -> String(buf, from, to - from) }
+
+	private inline fun split(start: Int, end: Int, sep: String, charAt: (Int) -> Char, field: (Int, Int) -> String): List<String> {
+		require(sep.isNotEmpty()) { "the field separator must not be empty" }
+		val fields = ArrayList<String>(32)
+		var from = start
+		var i = start
+		while (i <= end - sep.length) {
+			var matches = true
+			for (k in 0 until sep.length) if (charAt(i + k) != sep[k]) { matches = false; break }
+			if (matches) {
+				fields.add(trimmed(from, i, charAt, field))
+				i += sep.length
+				from = i
+			} else i++
+		}
+		fields.add(trimmed(from, end, charAt, field))
+		return fields
+	}
+
+	private inline fun trimmed(start: Int, end: Int, charAt: (Int) -> Char, field: (Int, Int) -> String): String {
+		var from = start
+		var to = end
+		while (from < to && charAt(from).isWhitespace()) from++
+		while (to > from && charAt(to - 1).isWhitespace()) to--
+		return field(from, to)
+	}
+}
@@ -26,8 +26,13 @@ import java.util.*
 object ModelParser{
 	@JvmOverloads @JvmStatic fun loadModel(config: ModelConfig, watcher: LinkedList<ModelFeature> = LinkedList(),
 	                            autoFix: Boolean = false, sequential: Boolean = false, enablePrint: Boolean = false,
-	                            contentReader: ContentReader = ContentReader(config), enableChecks: Boolean = true)
+	                            contentReader: ContentReader = ContentReader(config), enableChecks: Boolean = true,
+	                            columnar: Boolean = config.isColumnarStore)
 			: Model{
+		// the single file store is only written on complete model dumps, if it does not exist (yet) the CSV files are used
+		if(columnar && Files.exists(config.storeFile)) return debugT("model loading (columnar)", {
+			ModelStore.load(config, watcher)
+		}, inMillis = true)
 		if(sequential) return debugT("model loading (sequential)", {
 			ModelParserS(config, compatibilityMode = autoFix, enablePrint = enablePrint, reader = contentReader, enableChecks = enableChecks).loadModel(watcher)
 		}, inMillis = true)
@@ -105,8 +110,10 @@ internal abstract class ModelParserI<T,S,W>: ParserI<T,Pair<ActionData, StateDat
 			val traceId = tracePath.fileName.toString().removePrefix(config[ConfigProperties.ModelProperties.dump.traceFilePrefix]).toUUID()
 			modelMutex.withLock { model.initNewTrace(watcher, traceId) }
 					.let { trace ->
-						reader.processLines(tracePath, lineProcessor = processor).let { actionPairs ->  // use maximal parallelism to process the single actions/states
-							if (watcher.isEmpty()){
+						// traces are appended while exploring, an incomplete last action (i.e. DroidMate was killed while writing it) is ignored
+						reader.processLines(tracePath, dropIncomplete = true, lineProcessor = processor).let { actionPairs ->  // use maximal parallelism to process the single actions/states
+							if (actionPairs.isEmpty()) logger.warn("trace $tracePath does not contain any action")
+							else if (watcher.isEmpty()){
 								val resState = getElem(actionPairs.last()).second
 								logger.debug(" wait for completion of actions")
 								trace.updateAll(actionPairs.map { getElem(it).first }, resState)
@@ -128,7 +135,7 @@ internal abstract class ModelParserI<T,S,W>: ParserI<T,Pair<ActionData, StateDat
 		val targetWidgetId = widgetParser.fixedWidgetId(actionS[ActionData.widgetIdx])
 
 		val srcId = idFromString(actionS[ActionData.srcStateIdx])
-		val srcState = stateParser.queue.getOrDefault(srcId,stateParser.parseIfAbsent(srcId)).getState()
+		val srcState = stateParser.queue.computeIfAbsent(srcId, stateParser.parseIfAbsent).getState()  // only parse unknown states, e.g. the empty state has no file
 		val targetWidget = targetWidgetId?.let { tId ->
 			srcState.widgets.find { it.id == tId } ?: run{
 				logger.warn("ERROR target widget $tId cannot be found in src state")
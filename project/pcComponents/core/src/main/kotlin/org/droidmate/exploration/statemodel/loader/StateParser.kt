@@ -136,15 +136,17 @@ internal abstract class StateParserI<T,W>: ParserI<T,StateData> {
 	}
 
 	private fun computeActableDescendent(widgets: Collection<Widget>){
+		val byId = HashMap<ConcreteId, Widget>(widgets.size * 2)
+		widgets.forEach { byId.putIfAbsent(it.id, it) }
+		val queued = HashSet<ConcreteId>()
 		val toProcess: LinkedList<ConcreteId> = LinkedList()
 		widgets.filter { it.properties.actable && it.parentId != null }.forEach {
-			toProcess.add(it.parentId!!) }
-		var i=0
-		while (i<toProcess.size){
-			val n = toProcess[i++]
-			widgets.find { it.id == n }?.run {
+			if (queued.add(it.parentId!!)) toProcess.add(it.parentId!!) }
+		while (toProcess.isNotEmpty()){
+			val n = toProcess.poll()
+			byId[n]?.run {
 				this.properties.hasActableDescendant = true
-				if(parentId != null && !toProcess.contains(parentId!!)) toProcess.add(parentId!!)
+				if(parentId != null && queued.add(parentId!!)) toProcess.add(parentId!!)
 			}
 		}
 	}
@@ -53,7 +53,7 @@ internal abstract class WidgetParserI<T>: ParserI<T,Widget> {
 		val wConfigId = UUID.fromString(line[Widget.idIdx.second]) + line[P.ImgId.idx(customWidgetIndicies)].asUUID()
 		val id = Pair((UUID.fromString(line[Widget.idIdx.first])), wConfigId)
 
-		return queue.computeIfAbsent(line.toTypedArray().contentHashCode()){
+		return queue.computeIfAbsent(line.hashCode()){  // same value as the content hash of the fields array, without copying them
             log("parse absent widget $id")
 			P_S_process(line,id)
 		}
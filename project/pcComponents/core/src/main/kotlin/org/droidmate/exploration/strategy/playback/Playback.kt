@@ -24,7 +24,6 @@
 // web: www.droidmate.org
 package org.droidmate.exploration.strategy.playback
 
-import kotlinx.coroutines.experimental.runBlocking
 import org.droidmate.deviceInterface.guimodel.*
 import org.droidmate.exploration.ExplorationContext
 import org.droidmate.exploration.actions.*
@@ -43,6 +42,7 @@ open class Playback constructor(private val modelDir: Path) : ExplorationStrateg
 	private var traceIdx = 0
 	private var actionIdx = 0
 	protected lateinit var model : Model
+	private lateinit var plan: ReplayPlan
 	private var lastSkipped: ActionData = ActionData.empty
 	protected var toExecute: ActionData = ActionData.empty
 
@@ -57,62 +57,38 @@ open class Playback constructor(private val modelDir: Path) : ExplorationStrateg
 		super.initialize(memory)
 
 		model = ModelParser.loadModel(ModelConfig(modelDir, eContext.apk.packageName, true))
+		plan = ReplayPlan(model)
 	}
 
 	private fun isComplete(): Boolean {
-		return model.getPaths().let { traceIdx+1 == it.size && actionIdx+1 == it[traceIdx].size }
+		return traceIdx+1 == plan.size && actionIdx+1 == plan[traceIdx].size
 	}
 
 	private fun supposedToBeCrash():Boolean{
-		val lastAction = model.getPaths()[traceIdx].getActions()[max(0,actionIdx)]
-		return runBlocking { model.getState(lastAction.resState)!!.isAppHasStoppedDialogBox }
+		val lastAction = plan[traceIdx][max(0,actionIdx)]
+		return plan.getState(lastAction.resState)!!.isAppHasStoppedDialogBox
 	}
 
 	private fun getNextTraceAction(peek: Boolean = false): ActionData {
-		model.let { m ->
-			m.getPaths()[traceIdx].let { currentTrace ->
-				if (currentTrace.size - 1 == actionIdx) { // check if all actions of this trace were handled
-					if(m.getPaths().size == traceIdx + 1) return ActionData.empty  // this may happen on a peek for next action on the end of the trace
-					return m.getPaths()[traceIdx + 1].first().also {
-						if (!peek) {
-							traceIdx += 1
-							actionIdx = 0
-						}
+		plan[traceIdx].let { currentTrace ->
+			if (currentTrace.size - 1 == actionIdx) { // check if all actions of this trace were handled
+				if(plan.size == traceIdx + 1) return ActionData.empty  // this may happen on a peek for next action on the end of the trace
+				return plan[traceIdx + 1].first().also {
+					if (!peek) {
+						traceIdx += 1
+						actionIdx = 0
 					}
 				}
-				return currentTrace.getActions()[actionIdx].also {
-					if (!peek)
-						actionIdx += 1
-				}
+			}
+			return currentTrace[actionIdx].also {
+				if (!peek)
+					actionIdx += 1
 			}
 		}
 	}
 
-
-	/** determine if the state is similar enough to execute a back action by computing how many relevant widgets are similar */
-	private fun StateData.similarity(other: StateData): Double {
-		val otherWidgets = other.widgets
-		val candidates = this.widgets.filter{this.isRelevantForId(it)}
-		val mappedWidgets = candidates.map { w ->
-			if (otherWidgets.any { it.uid == w.uid || it.propertyId == w.propertyId })
-				1
-			else
-				0
-		}
-		return mappedWidgets.sum() / candidates.size.toDouble()
-	}
-
 	/** checking if we can actually trigger the widget of our recorded trace */
-	private fun Widget?.canExecute(state: StateData): Pair<Double,Widget?> {
-		return when{
-			this == null -> Pair(0.0, null) // no match possible
-			state.widgets.any { it.id == this.id } -> Pair(1.0, this) // we have a perfect match
-			else -> // possibly it is a match but we can't be 100% sure
-				state.widgets.find { it.canBeActedUpon && it.uid == this.uid }	?.let { Pair(0.6, it) } // prefer uid match over property equivalence
-						?: state.widgets.find { it.canBeActedUpon && it.propertyId == this.propertyId }?.let{ Pair(0.5, it) }
-						?:	Pair(0.0, null) // no match found
-		}
-	}
+	private fun Widget?.canExecute(state: StateData): Pair<Double,Widget?> = plan.matcher(state).canExecute(this)
 
 	private fun getNextAction(): ExplorationAction {
 
@@ -140,13 +116,8 @@ open class Playback constructor(private val modelDir: Path) : ExplorationStrateg
 					val peekAction = getNextTraceAction(peek = true)
 					val nextEquiv = peekAction.targetWidget.canExecute(eContext.getCurrentState())
 					val explorationAction = if (prevEquiv.first > nextEquiv.first  // try to execute the last previously skipped action only if the next action is executable afterwards
-							&& runBlocking {
-								model.getState(lastSkipped.resState)?.run {
-									actionableWidgets.any {
-										peekAction.targetWidget == null || it.uid == peekAction.targetWidget.uid
-												|| it.propertyId == peekAction.targetWidget.uid
-									}
-								}
+							&& plan.getState(lastSkipped.resState)?.let { plan.matcher(it) }?.run {
+								if (peekAction.targetWidget == null) hasActable() else hasActable(peekAction.targetWidget.uid)
 							} == true) {
 						lastSkipped = ActionData.empty  // we execute it now so do not try to do so again
 						if(action.isClick()){
@@ -182,7 +153,7 @@ open class Playback constructor(private val modelDir: Path) : ExplorationStrateg
 					return getNextAction()
 				}
 
-				val similarity = eContext.getCurrentState().similarity(runBlocking { model.getState(currTraceData.resState)!!})
+				val similarity = plan.matcher(eContext.getCurrentState()).similarity(plan.matcher(plan.getState(currTraceData.resState)!!))
 
 				// Rule:
 				// 0 - Doesn't belong to app, skip
@@ -233,12 +204,12 @@ open class Playback constructor(private val modelDir: Path) : ExplorationStrateg
 	 * (action 0 should always be a reset to start the app) */
 	private fun handleReplayCrash(){
 		logger.info("handle app crash on replay")
-		model.getPaths()[traceIdx].let { trace ->
+		plan[traceIdx].let { trace ->
 			var isReset = false
 			var i = actionIdx
 			while (!isReset && i >= 0) {
 				i -= 1
-				isReset = trace.getActions()[i].actionType.isLaunchApp()
+				isReset = trace[i].actionType.isLaunchApp()
 			}
 		}
 	}
@@ -0,0 +1,91 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.strategy.playback
+
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.exploration.statemodel.*
+import java.util.*
+
+/**
+ * The actions of all traces of a recorded [model], materialized once when the replay starts,
+ * such that replaying an action does not have to wait for (and copy) the trace it belongs to.
+ * Additionally it caches the [StateMatcher]s of the states recorded and the states observed during the replay.
+ */
+class ReplayPlan(private val model: Model) {
+	private val traces: List<List<ActionData>> = model.getPaths().map { it.getActions() }
+
+	private val matchers = object : LinkedHashMap<ConcreteId, StateMatcher>(16, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ConcreteId, StateMatcher>?): Boolean = size > maxCachedMatchers
+	}
+
+	/** the number of traces */
+	val size: Int get() = traces.size
+
+	operator fun get(traceIdx: Int): List<ActionData> = traces[traceIdx]
+
+	fun getState(id: ConcreteId): StateData? = runBlocking { model.getState(id) }
+
+	fun matcher(state: StateData): StateMatcher = synchronized(matchers) { matchers.getOrPut(state.stateId) { StateMatcher(state) } }
+
+	companion object {
+		/** number of states for which the widget indexes are kept */
+		const val maxCachedMatchers = 256
+	}
+}
+
+/** widget indexes of one [state] to find the (recorded) widgets to be replayed, each index is only built on its first use */
+class StateMatcher(private val state: StateData) {
+	private val ids: Set<ConcreteId> by lazy { state.widgets.mapTo(HashSet()) { it.id } }
+	private val uids: Set<UUID> by lazy { state.widgets.mapTo(HashSet()) { it.uid } }
+	private val propertyIds: Set<UUID> by lazy { state.widgets.mapTo(HashSet()) { it.propertyId } }
+	/** the first actionable widget for each uid (and property id), like they would be found by searching the widget list */
+	private val actableByUid: Map<UUID, Widget> by lazy { state.actionableWidgets.reversed().associateBy { it.uid } }
+	private val actableByPropertyId: Map<UUID, Widget> by lazy { state.actionableWidgets.reversed().associateBy { it.propertyId } }
+	private val relevant: List<Widget> by lazy { state.widgets.filter { state.isRelevantForId(it) } }
+
+	/** checking if we can actually trigger the (recorded) widget [w] in this state
+	 * @return the confidence of the match together with the matching widget of this state
+	 */
+	fun canExecute(w: Widget?): Pair<Double, Widget?> {
+		return when {
+			w == null -> Pair(0.0, null) // no match possible
+			ids.contains(w.id) -> Pair(1.0, w) // we have a perfect match
+			else -> // possibly it is a match but we can't be 100% sure
+				actableByUid[w.uid]?.let { Pair(0.6, it) } // prefer uid match over property equivalence
+						?: actableByPropertyId[w.propertyId]?.let { Pair(0.5, it) }
+						?: Pair(0.0, null) // no match found
+		}
+	}
+
+	/** determine if the state is similar enough to execute a back action by computing how many relevant widgets are similar */
+	fun similarity(other: StateMatcher): Double =
+			relevant.count { w -> other.uids.contains(w.uid) || other.propertyIds.contains(w.propertyId) } / relevant.size.toDouble()
+
+	/** @return true if any actionable widget has the given [uid] or a property id equal to it */
+	fun hasActable(uid: UUID): Boolean = actableByUid.containsKey(uid) || actableByPropertyId.containsKey(uid)
+
+	fun hasActable(): Boolean = state.actionableWidgets.isNotEmpty()
+}
@@ -0,0 +1,135 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.strategy.widget
+
+import org.droidmate.exploration.statemodel.ConcreteId
+import org.droidmate.exploration.statemodel.StateData
+import org.droidmate.exploration.statemodel.Widget
+import org.droidmate.exploration.statemodel.features.ActionCounterMF
+import org.droidmate.exploration.statemodel.features.WidgetCountingMF
+import java.util.*
+
+/**
+ * Action candidates of the explored states for [RandomWidget], ranked by how often they were already interacted with.
+ *
+ * The candidates of a state are determined once and kept together with the epochs of the [crashList], [blackList] and
+ * [counter] they were computed for. They are only re-ranked if any of these features applied an update in the meantime,
+ * which is a single pass over the state targets with constant time counter lookups.
+ * [candidates] waits once for pending feature updates, there are no further suspension points per widget.
+ *
+ * @param tInState the threshold to consider the widget blacklisted within the current state eContext
+ * @param tOverall the threshold to consider the widget blacklisted over all states
+ */
+class CandidateIndex(private val appPackage: String,
+					 private val crashList: WidgetCountingMF,
+					 private val blackList: WidgetCountingMF,
+					 private val counter: ActionCounterMF,
+					 private val tInState: Int = 1,
+					 private val tOverall: Int = 2) {
+
+	private class Entry(val filtered: List<Widget>, val ranked: List<Widget>, val epochs: LongArray)
+
+	private val entries = object : LinkedHashMap<ConcreteId, Entry>(16, 0.75f, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ConcreteId, Entry>?): Boolean = size > maxCachedStates
+	}
+
+	private fun epochs() = longArrayOf(crashList.epoch, blackList.epoch, counter.epoch)
+
+	/** waits once for the pending updates of all features the candidates depend on */
+	suspend fun await() {
+		crashList.await()
+		blackList.await()
+		counter.await()
+	}
+
+	/** waits for the pending updates of the features and returns the [ranked] candidates of [state] */
+	suspend fun candidates(state: StateData): List<Widget> {
+		await()
+		return ranked(state)
+	}
+
+	/** the non-crashing and (if possible) non-blacklisted targets of [state] with supported actions, without waiting for updates */
+	fun filtered(state: StateData): List<Widget> = entry(state).filtered
+
+	/** the [filtered] candidates which were least interacted with in [state] and over all states, without waiting for updates */
+	fun ranked(state: StateData): List<Widget> = entry(state).ranked
+
+	/**
+	 * Ranks custom [candidates] of [state] like [ranked], without waiting for updates.
+	 * If [candidates] is the list returned by [filtered] the cached ranking is used.
+	 */
+	fun ranked(state: StateData, candidates: Collection<Widget>): List<Widget> {
+		val entry = entry(state)
+		return if (candidates === entry.filtered) entry.ranked else rank(candidates, state.uid)
+	}
+
+	private fun entry(state: StateData): Entry = synchronized(entries) {
+		// the epochs are read before the counters, such that concurrent updates lead to a recomputation on the next call
+		val epochs = epochs()
+		entries[state.stateId]?.takeIf { it.epochs.contentEquals(epochs) }
+				?: compute(state, epochs).also { entries[state.stateId] = it }
+	}
+
+	private fun compute(state: StateData, epochs: LongArray): Entry {
+		val sId = state.uid
+		val nonCrashing = crashList.read { state.distinctTargets.filterNot { count(it.uid, sId) >= 1 } }
+		val filtered = blackList.read {
+			val noBlacklistedInState = nonCrashing.filterNot { count(it.uid, sId) >= tInState }
+			val noBlacklisted = noBlacklistedInState.filterNot { total(it.uid) >= tOverall }
+			when {
+				noBlacklisted.isNotEmpty() -> noBlacklisted
+				noBlacklistedInState.isNotEmpty() -> noBlacklistedInState
+				else -> nonCrashing
+			}
+		}.filter { it.clickable || it.longClickable || it.checked != null } // the other actions are currently not supported
+
+		return Entry(filtered, rank(filtered, sId), epochs)
+	}
+
+	/**
+	 * The widgets with the least interactions in state [sId], where all widgets which do not belong to the app package count with
+	 * the interactions of their package to prioritize app targets. If multiple widgets were clicked with the same frequency, the
+	 * ones least clicked over all states are chosen.
+	 */
+	private fun rank(filtered: Collection<Widget>, sId: UUID): List<Widget> = counter.read {
+		// grouped by package (in order of appearance), like the candidates were ranked before
+		val byPackage = filtered.distinct().groupBy { it.packageName }.values.flatten()
+		val cnt = byPackage.map { w -> if (w.packageName != appPackage) counter.pkgCount(w.packageName) else count(w.uid, sId) }
+		val min = cnt.min() ?: return@read emptyList<Widget>()
+		val leastInState = byPackage.filterIndexed { i, _ -> cnt[i] == min }
+
+		if (leastInState.size > 1) {
+			val totals = leastInState.map { total(it.uid) }
+			val minTotal = totals.min()!!
+			leastInState.filterIndexed { i, _ -> totals[i] == minTotal }
+		} else leastInState
+	}
+
+	companion object {
+		/** number of states for which the candidates are kept */
+		const val maxCachedStates = 64
+	}
+}
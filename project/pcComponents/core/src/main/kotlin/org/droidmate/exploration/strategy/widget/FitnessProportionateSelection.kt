@@ -81,9 +81,10 @@ open class FitnessProportionateSelection @JvmOverloads constructor(randomSeed: L
 	 * Returns an array with the probabilities of the candidates
 	 */
 	protected open fun getCandidatesProbabilities(): Map<Widget,Double> {
+		runBlocking { countWatcher.await() }
 		return eventWatcher.getProbabilities(currentState)
 				.map { it.key to
-						(if (runBlocking { countWatcher.widgetCnt(it.key.uid) } == 0)
+						(if (countWatcher.read { total(it.key.uid) } == 0)
 							it.value * 2
 						else
 							it.value)
@@ -34,7 +34,6 @@ import org.droidmate.exploration.statemodel.Widget
 import org.droidmate.exploration.statemodel.emptyId
 import org.droidmate.exploration.statemodel.features.ActionCounterMF
 import org.droidmate.exploration.statemodel.features.BlackListMF
-import org.droidmate.exploration.statemodel.features.listOfSmallest
 import java.util.*
 
 /**
@@ -59,6 +58,7 @@ open class RandomWidget @JvmOverloads constructor(private val randomSeed: Long,
 	@Suppress("MemberVisibilityCanBePrivate")
 	protected val counter: ActionCounterMF by lazy { eContext.getOrCreateWatcher<ActionCounterMF>()	}
 	private val blackList: BlackListMF by lazy {	eContext.getOrCreateWatcher<BlackListMF>() }
+	private val candidateIndex: CandidateIndex by lazy { CandidateIndex(eContext.apk.packageName, eContext.crashlist, blackList, counter) }
 
 	private fun mustRepeatLastAction(): Boolean {
 		if (!this.eContext.isEmpty()) {
@@ -68,10 +68,8 @@ open class RandomWidget @JvmOverloads constructor(private val randomSeed: Long,
 					// Has last action
 					this.eContext.lastTarget != null &&
 					// Has a state that is not a runtime permission
-					eContext.getModel().let{runBlocking { it.getStates() }}
-							.filterNot { it.stateId == emptyId }
-							.filterNot { it.isRequestRuntimePermissionDialogBox }
-							.isNotEmpty() &&
+					eContext.getModel().S_getStates()
+							.any { it.stateId != emptyId && !it.isRequestRuntimePermissionDialogBox } &&
 					// Can re-execute the same action
 					currentState.actionableWidgets
 							.any { p -> eContext.lastTarget?.let { p.id == it.id } ?: false }
@@ -99,10 +97,12 @@ open class RandomWidget @JvmOverloads constructor(private val randomSeed: Long,
 	}
 
 	/** use this function to filter potential candidates against previously blacklisted widgets
+	 * (the default [computeCandidates] is computed by [candidateIndex] and does not call it)
 	 * @param block your function determining the ExplorationAction based on the filtered candidates
 	 * @param tInState the threshold to consider the widget blacklisted within the current state eContext
 	 * @param tOverall the threshold to consider the widget blacklisted over all states
 	 */
+	@Deprecated("the default candidates are filtered by the candidate index, this is only kept for overrides of computeCandidates")
 	protected open suspend fun excludeBlacklisted(candidates: List<Widget>, tInState:Int=1, tOverall:Int=2, block:(listedInsState:List<Widget>, blacklisted: List<Widget>)->List<Widget>): List<Widget> =
 			candidates.filterNot { blackList.isBlacklistedInState(it.uid, currentState.uid, tInState) }.let{ noBlacklistedInState ->
 				noBlacklistedInState.filterNot { blackList.isBlacklisted(it.uid, tOverall) }.let{ noBlacklisted ->
@@ -118,40 +118,14 @@ open class RandomWidget @JvmOverloads constructor(private val randomSeed: Long,
 	}
 
 	open suspend fun computeCandidates():Collection<Widget> = debugT("blacklist computation", {
-		val nonCrashing = super.eContext.nonCrashingWidgets()
-		excludeBlacklisted(super.eContext.nonCrashingWidgets()){ noBlacklistedInState, noBlacklisted ->
-			when {
-				noBlacklisted.isNotEmpty() -> noBlacklisted
-				noBlacklistedInState.isNotEmpty() -> noBlacklistedInState
-				else -> nonCrashing
-			}
-		}
+		candidateIndex.await()
+		candidateIndex.filtered(currentState)
 	}, inMillis = true)
-			.filter{ it.clickable || it.longClickable || it.checked != null } // the other actions are currently not supported
-
-	protected suspend fun getCandidates(): List<Widget>{
-		return computeCandidates()
-				.let { filteredCandidates ->
-					// for each widget in this state the number of interactions
-					counter.numExplored(currentState, filteredCandidates).entries
-							.groupBy { it.key.packageName }.flatMap { (pkgName,countEntry) ->
-								if(pkgName != super.eContext.apk.packageName) {
-									val pkgActions = counter.pkgCount(pkgName)
-									countEntry.map { Pair(it.key, pkgActions) }
-								} else
-									countEntry.map { Pair(it.key, it.value) }
-							}// we sum up all counters of widgets which do not belong to the app package to prioritize app targets
-							.groupBy { (_,countVal) -> countVal }.let { map ->
-								map.listOfSmallest()?.map { (w,_) -> w }?.let { leastInState: List<Widget> ->
-									// determine the subset of widgets which were least interacted with
-									// if multiple widgets clicked with same frequency, choose the one least clicked over all states
-									if (leastInState.size > 1) {
-										leastInState.groupBy { counter.widgetCnt(it.uid) }.listOfSmallest()
-									} else leastInState
-								}
-							}
-							?: emptyList()
-				}
+
+	/** @return the [computeCandidates] least interacted with, see [CandidateIndex] */
+	protected suspend fun getCandidates(): List<Widget> = computeCandidates().let { candidates ->
+		candidateIndex.await()  // overrides of computeCandidates may not have waited for the counter updates
+		candidateIndex.ranked(currentState, candidates)
 	}
 
 	private fun chooseBiased(): ExplorationAction = runBlocking{
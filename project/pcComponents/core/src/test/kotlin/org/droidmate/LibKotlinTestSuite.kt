@@ -0,0 +1,76 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate
+
+import org.droidmate.device.ApiLogTransportTest
+import org.droidmate.device.DaemonConnectionTest
+import org.droidmate.device.DeviceResponseCodecTest
+import org.droidmate.device.SnapshotDeltaTest
+import org.droidmate.exploration.statemodel.ImageComparisonTest
+import org.droidmate.exploration.statemodel.ImageIdentityTest
+import org.droidmate.exploration.statemodel.IndexedStoreTest
+import org.droidmate.exploration.statemodel.ModelDumperTest
+import org.droidmate.exploration.statemodel.ModelStoreTest
+import org.droidmate.exploration.statemodel.RasterHashTest
+import org.droidmate.exploration.statemodel.StateIdTest
+import org.droidmate.exploration.statemodel.WidgetPipelineTest
+import org.droidmate.exploration.statemodel.features.EventProbabilityMFTest
+import org.droidmate.exploration.statemodel.features.FeatureEventBusTest
+import org.droidmate.exploration.statemodel.features.StatementCoverageTest
+import org.droidmate.exploration.statemodel.features.WidgetCounterTest
+import org.droidmate.exploration.statemodel.features.graph.GraphTest
+import org.droidmate.exploration.statemodel.loader.ContentReaderTest
+import org.droidmate.exploration.statemodel.loader.LineTokenizerTest
+import org.droidmate.exploration.strategy.playback.ReplayPlanTest
+import org.droidmate.exploration.strategy.widget.CandidateIndexTest
+import org.junit.runner.RunWith
+import org.junit.runners.Suite
+
+@RunWith(Suite::class)
+@Suite.SuiteClasses(
+		DaemonConnectionTest::class,
+		DeviceResponseCodecTest::class,
+		SnapshotDeltaTest::class,
+		IndexedStoreTest::class,
+		RasterHashTest::class,
+		WidgetPipelineTest::class,
+		ImageIdentityTest::class,
+		StateIdTest::class,
+		ModelDumperTest::class,
+		ModelStoreTest::class,
+		LineTokenizerTest::class,
+		ContentReaderTest::class,
+		GraphTest::class,
+		WidgetCounterTest::class,
+		EventProbabilityMFTest::class,
+		CandidateIndexTest::class,
+		ReplayPlanTest::class,
+		ImageComparisonTest::class,
+		FeatureEventBusTest::class,
+		ApiLogTransportTest::class,
+		StatementCoverageTest::class
+)
+class LibKotlinTestSuite
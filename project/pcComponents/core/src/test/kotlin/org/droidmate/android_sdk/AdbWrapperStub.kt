@@ -108,6 +108,10 @@ class AdbWrapperStub : IAdbWrapper {
 		return ArrayList()
 	}
 
+	override fun startLogcatStream(deviceSerialNumber: String, vararg logcatParams: String): Process {
+		throw NotImplementedError("Not yet implemented!")
+	}
+
 	override fun listPackage(deviceSerialNumber: String, packageName: String): String {
 		assert(false, { "Not yet implemented!" })
 		return ""
@@ -0,0 +1,111 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.apis.*
+import org.droidmate.misc.MonitorConstants
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.device_simulation.LoopbackMonitorServer
+import org.junit.Test
+import java.io.Serializable
+import java.time.LocalDateTime
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+import java.util.*
+
+/** Messages per second and transferred bytes of the text and the binary transport of the monitor API logs. */
+class ApiLogBatchBenchmark {
+	private val sizes = listOf(100, 1000, 10000)
+	private val pid = "4242"
+	private val start = LocalDateTime.of(2018, 7, 1, 12, 0)
+	private val formatter = DateTimeFormatter.ofPattern(MonitorConstants.monitor_time_formatter_pattern,
+			MonitorConstants.monitor_time_formatter_locale)
+
+	/** [size] calls of a handful of apis from a few call sites, as a monitored app produces them */
+	private fun apiLogs(size: Int): List<Pair<Long, IApi>> {
+		val traces = (0 until 4).map { site ->
+			(0 until 30).joinToString(Api.stack_trace_frame_delimiter) { "com.example.app.Class$site.method$it(Class$site.java:${100 + it})" }
+		}
+		val epochMillis = start.toInstant(ZoneOffset.UTC).toEpochMilli()
+		return (0 until size).map { i ->
+			val api = when (i % 3) {
+				0 -> Api("android.webkit.WebView", "loadUrl", "void", listOf("java.lang.String"),
+						listOf("http://www.droidmate.org/page$i"), "1", traces[i % 4])
+				1 -> Api("android.net.ConnectivityManager", "getActiveNetworkInfo", "android.net.NetworkInfo",
+						emptyList(), emptyList(), "1", traces[i % 4])
+				else -> Api("android.content.ContentResolver", "query", "android.database.Cursor",
+						listOf("android.net.Uri", "java.lang.String[]"), listOf("content://contacts/people/$i", "null"), "2", traces[i % 4])
+			}
+			Pair(epochMillis + i, api as IApi)
+		}
+	}
+
+	/** the [pid, time, payload] triples of [MonitorConstants.srvCmd_get_logs] */
+	private fun textLogs(logs: List<Pair<Long, IApi>>): LinkedList<ArrayList<String>> =
+			logs.mapTo(LinkedList()) { (epochMillis, api) ->
+				val time = LocalDateTime.ofEpochSecond(epochMillis / 1000, (epochMillis % 1000).toInt() * 1_000_000, ZoneOffset.UTC)
+				arrayListOf(pid, time.format(formatter), ApiLogcatMessage.toLogcatMessagePayload(api))
+			}
+
+	private fun server(logs: List<Pair<Long, IApi>>): LoopbackMonitorServer {
+		val text = textLogs(logs)
+		val binary = ApiLogBatch.encode(pid, logs)
+		return LoopbackMonitorServer { command ->
+			when (command) {
+				MonitorConstants.srvCmd_get_logs -> text
+				MonitorConstants.srvCmd_get_logs_binary -> binary
+				else -> LinkedList<ArrayList<String>>()
+			}
+		}
+	}
+
+	/** what the host did so far for each log, see [org.droidmate.device.deviceInterface.ApiLogsReader] */
+	private fun readText(client: ITcpClientBase<String, LinkedList<ArrayList<String>>>, port: Int): List<IApiLogcatMessage> =
+			client.queryServer(MonitorConstants.srvCmd_get_logs, port).map { msg ->
+				val message = TimeFormattedLogcatMessage.from(LocalDateTime.parse(msg[1], formatter), "I", "tag", msg[0], msg[2])
+				ApiLogcatMessage.from(message)
+			}
+
+	private fun readBinary(client: ITcpClientBase<String, Serializable>, port: Int): List<IApiLogcatMessage> =
+			ApiLogBatch.decode(client.queryServer(MonitorConstants.srvCmd_get_logs_binary, port) as ByteArray, "I", "tag").messages
+
+	@Test
+	fun `messages per second of text and binary transport`() {
+		val textClient: ITcpClientBase<String, LinkedList<ArrayList<String>>> = TcpClientBase(5000)
+		val binaryClient: ITcpClientBase<String, Serializable> = TcpClientBase(5000)
+		for (size in sizes) {
+			val logs = apiLogs(size)
+			server(logs).use { server ->
+				val text = Benchmark.measure("$size logs: text fetch and parse") { readText(textClient, server.port) }
+				val binary = Benchmark.measure("$size logs: binary fetch and decode") { readBinary(binaryClient, server.port) }
+				Benchmark.report("$size logs: messages/s text / binary",
+						String.format("%.0f / %.0f", size / (text.medianMs / 1000), size / (binary.medianMs / 1000)))
+				Benchmark.report("$size logs: bytes text (payloads) / binary",
+						"${textLogs(logs).sumBy { it[2].length }} / ${ApiLogBatch.encode(pid, logs).size}")
+			}
+		}
+	}
+}
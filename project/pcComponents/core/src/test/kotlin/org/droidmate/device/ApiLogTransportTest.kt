@@ -0,0 +1,113 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.apis.*
+import org.droidmate.misc.MonitorConstants
+import org.droidmate.test_tools.device_simulation.LoopbackMonitorServer
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.Serializable
+import java.time.LocalDateTime
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+import java.util.*
+
+class ApiLogTransportTest {
+	private val pid = "4242"
+	private val start = LocalDateTime.of(2018, 7, 1, 12, 0, 0, 250_000_000)
+	private val formatter = DateTimeFormatter.ofPattern(MonitorConstants.monitor_time_formatter_pattern,
+			MonitorConstants.monitor_time_formatter_locale)
+	private val trace = "com.example.app.Main.onCreate(Main.java:12)->com.example.app.Main.load(Main.java:40)"
+
+	private val apis: List<IApi> = listOf(
+			Api("android.webkit.WebView", "loadUrl", "void", listOf("java.lang.String"), listOf("http://www.droidmate.org/"), "1", trace),
+			Api("android.net.ConnectivityManager", "getActiveNetworkInfo", "android.net.NetworkInfo", emptyList(), emptyList(), "1", trace),
+			Api("android.content.ContentResolver", "query", "android.database.Cursor", listOf("android.net.Uri", "java.lang.String[]"),
+					listOf("content://contacts/people/7", "null"), "2", "com.example.app.Sync.run(Sync.java:3)"))
+
+	/** the apis logged 5 ms apart */
+	private val logs = apis.mapIndexed { i, api -> Pair(start.toInstant(ZoneOffset.UTC).toEpochMilli() + i * 5, api) }
+
+	/** a monitor which answers the text and binary log requests with [logs] */
+	private fun server(logs: List<Pair<Long, IApi>>): LoopbackMonitorServer {
+		val text = logs.mapTo(LinkedList()) { (epochMillis, api) ->
+			val time = LocalDateTime.ofEpochSecond(epochMillis / 1000, (epochMillis % 1000).toInt() * 1_000_000, ZoneOffset.UTC)
+			arrayListOf(pid, time.format(formatter), ApiLogcatMessage.toLogcatMessagePayload(api))
+		}
+		val binary = ApiLogBatch.encode(pid, logs)
+		return LoopbackMonitorServer { command ->
+			when (command) {
+				MonitorConstants.srvCmd_get_logs -> text
+				MonitorConstants.srvCmd_get_logs_binary -> binary
+				else -> LinkedList<ArrayList<String>>()
+			}
+		}
+	}
+
+	private fun readText(port: Int): List<IApiLogcatMessage> =
+			TcpClientBase<String, LinkedList<ArrayList<String>>>(5000).queryServer(MonitorConstants.srvCmd_get_logs, port).map { msg ->
+				ApiLogcatMessage.from(TimeFormattedLogcatMessage.from(LocalDateTime.parse(msg[1], formatter), "I", "tag", msg[0], msg[2]))
+			}
+
+	private fun readBinary(port: Int): List<IApiLogcatMessage> =
+			ApiLogBatch.decode(TcpClientBase<String, Serializable>(5000).queryServer(MonitorConstants.srvCmd_get_logs_binary, port) as ByteArray,
+					"I", "tag").messages
+
+	private fun assertLogged(expected: List<Pair<Long, IApi>>, actual: List<IApiLogcatMessage>) {
+		assertEquals(expected.size, actual.size)
+		actual.zip(expected).forEachIndexed { i, (message, log) ->
+			val api = log.second
+			assertEquals(start.plusNanos(i * 5_000_000L), message.time)
+			assertEquals(pid, message.pidString)
+			assertEquals(api.objectClass, message.objectClass)
+			assertEquals(api.methodName, message.methodName)
+			assertEquals(api.returnClass, message.returnClass)
+			assertEquals(api.paramTypes, message.paramTypes)
+			assertEquals(api.paramValues, message.paramValues)
+			assertEquals(api.threadId, message.threadId)
+			assertEquals(api.stackTrace, message.stackTrace)
+		}
+	}
+
+	@Test
+	fun `The text transport delivers the logged calls`() {
+		server(logs).use { assertLogged(logs, readText(it.port)) }
+	}
+
+	@Test
+	fun `The binary transport delivers the logged calls`() {
+		server(logs).use { assertLogged(logs, readBinary(it.port)) }
+	}
+
+	@Test
+	fun `Both transports deliver empty batches`() {
+		server(emptyList()).use {
+			assertTrue(readText(it.port).isEmpty())
+			assertTrue(readBinary(it.port).isEmpty())
+		}
+	}
+}
@@ -0,0 +1,60 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.deviceInterface.DeviceCommand
+import org.droidmate.deviceInterface.DeviceResponse
+import org.droidmate.deviceInterface.ExecuteCommand
+import org.droidmate.deviceInterface.guimodel.ActionType
+import org.droidmate.deviceInterface.guimodel.GlobalAction
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.droidmate.test_tools.device_simulation.LoopbackDaemonServer
+import org.junit.Test
+
+/** Round trip latency of a fetch request with a new socket per command and over a [TcpSessionClient] connection. */
+class DaemonConnectionBenchmark {
+	private val fetch = ExecuteCommand(GlobalAction(ActionType.FetchGUI))
+	private val timeout = 5000
+
+	@Test
+	fun `round trip latency per connection mode`() {
+		for (size in listOf(0, 300)) {
+			val response = if (size == 0) DeviceResponse.empty else SyntheticGui.response(size)
+			LoopbackDaemonServer { response }.use { server ->
+				val legacy = TcpClientBase<DeviceCommand, DeviceResponse>(timeout)
+				Benchmark.measure("socket per command, $size widgets", warmup = 50, iterations = 500) {
+					legacy.queryServer(fetch, server.port)
+				}
+				TcpSessionClient<DeviceCommand, DeviceResponse>(timeout).use { session ->
+					Benchmark.measure("session connection, $size widgets", warmup = 50, iterations = 500) {
+						session.queryServer(fetch, server.port)
+					}
+				}
+			}
+		}
+	}
+}
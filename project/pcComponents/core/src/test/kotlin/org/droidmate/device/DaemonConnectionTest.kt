@@ -0,0 +1,114 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.deviceInterface.DeviceCommand
+import org.droidmate.deviceInterface.DeviceResponse
+import org.droidmate.deviceInterface.ExecuteCommand
+import org.droidmate.deviceInterface.StopDaemonCommand
+import org.droidmate.deviceInterface.guimodel.ActionType
+import org.droidmate.deviceInterface.guimodel.GlobalAction
+import org.droidmate.test_tools.DroidmateTestCase
+import org.droidmate.test_tools.device_simulation.LoopbackDaemonServer
+import org.junit.FixMethodOrder
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import org.junit.runners.MethodSorters
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@RunWith(JUnit4::class)
+class DaemonConnectionTest : DroidmateTestCase() {
+	private val fetch = ExecuteCommand(GlobalAction(ActionType.FetchGUI))
+	private val timeout = 5000
+
+	private fun TcpSessionClient<DeviceCommand, DeviceResponse>.fetch(server: LoopbackDaemonServer): String =
+			queryServer(fetch, server.port).topNodePackageName
+
+	@Test
+	fun `session client sends successive requests over one connection`() {
+		LoopbackDaemonServer().use { server ->
+			TcpSessionClient<DeviceCommand, DeviceResponse>(timeout).use { client ->
+				repeat(10) { expect(client.fetch(server), DeviceResponse.empty.topNodePackageName) }
+				expect(server.acceptedConnections, 1)
+			}
+		}
+	}
+
+	@Test
+	fun `request after the server closed the connection succeeds over a new one`() {
+		LoopbackDaemonServer().use { server ->
+			TcpSessionClient<DeviceCommand, DeviceResponse>(timeout).use { client ->
+				client.fetch(server)
+
+				server.dropConnections()
+				expect(client.fetch(server), DeviceResponse.empty.topNodePackageName)
+				expect(server.acceptedConnections, 2)
+
+				server.dropConnections()
+				client.fetch(server)
+				expect(server.acceptedConnections, 3)
+			}
+		}
+	}
+
+	@Test
+	fun `keepalive of a reused session client detects dropped connections`() {
+		LoopbackDaemonServer().use { server ->
+			val client = TcpSessionClient<DeviceCommand, DeviceResponse>(timeout, 50)
+			try {
+				client.fetch(server)
+				client.close()  // e.g. the daemon was restarted, the client is reused for the new one
+				client.fetch(server)
+
+				server.dropConnections()
+				Thread.sleep(500)  // the keepalive pings the idle connection and drops it
+				client.fetch(server)
+				expect(server.acceptedConnections, 3)
+			} finally {
+				client.close()
+			}
+		}
+	}
+
+	@Test
+	fun `requests after a stop request report the server as unreachable`() {
+		LoopbackDaemonServer().use { server ->
+			TcpSessionClient<DeviceCommand, DeviceResponse>(timeout).use { client ->
+				client.fetch(server)
+				client.queryServer(StopDaemonCommand(), server.port)
+
+				val failure = try {
+					client.fetch(server)
+					null
+				} catch (e: TcpServerUnreachableException) {
+					e
+				}
+				assertNotNull("the stopped server must not be reachable anymore", failure)
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.deviceInterface.DeviceResponse
+import org.droidmate.deviceInterface.DeviceResponseCodec
+import org.droidmate.deviceInterface.SerializationHelper
+import org.droidmate.deviceInterface.SessionProtocol
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+
+/** Encode/decode time and bytes on the wire of [DeviceResponseCodec] compared to Java serialization, for 50 to 5000 widgets. */
+class DeviceResponseCodecBenchmark {
+	private val sizes = listOf(50, 300, 1000, 5000)
+
+	private fun javaSerialized(response: DeviceResponse): ByteArray =
+			ByteArrayOutputStream().also { SerializationHelper.writeObjectToStream(DataOutputStream(it), response) }.toByteArray()
+
+	@Test
+	fun `encode decode time and bytes on wire`() {
+		for (size in sizes) {
+			val response = SyntheticGui.response(size)
+			val javaBytes = javaSerialized(response)
+			val binaryBytes = DeviceResponseCodec.encode(response)
+			Benchmark.report("$size widgets: bytes java / binary", "${javaBytes.size} / ${binaryBytes.size} " +
+					"(without screenshot ${javaBytes.size - response.screenshot.size} / ${binaryBytes.size - response.screenshot.size})")
+
+			Benchmark.measure("$size widgets: java serialization encode") { javaSerialized(response) }
+			Benchmark.measure("$size widgets: binary encode") { DeviceResponseCodec.encode(response) }
+			Benchmark.measure("$size widgets: java serialization decode") { SessionProtocol.fromPayload(javaBytes) }
+			Benchmark.measure("$size widgets: binary decode") { DeviceResponseCodec.decode(binaryBytes) }
+		}
+	}
+}
@@ -0,0 +1,126 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.deviceInterface.*
+import org.droidmate.deviceInterface.guimodel.ActionType
+import org.droidmate.deviceInterface.guimodel.GlobalAction
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.test_tools.SyntheticGui
+import org.droidmate.test_tools.device_simulation.LoopbackDaemonServer
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.IOException
+import java.util.*
+
+class DeviceResponseCodecTest {
+	private val pkg = "org.droidmate.codec"
+
+	/** covers negative coordinates, extreme hashes, non-ASCII text and set nullable flags */
+	private val button = WidgetData(text = "Ok ✓ äöü", resourceId = "$pkg:id/ok", className = "android.widget.Button",
+			packageName = pkg, enabled = true, clickable = true, checked = false, focused = true,
+			boundsX = -20, boundsY = 63, boundsWidth = 300, boundsHeight = 120, isLeaf = true, visible = true).apply {
+		xpath = "//ListView[1]/Button[1]"
+		idHash = -7
+		parentHash = Int.MIN_VALUE
+		uncoveredCoord = Pair(-1, 64)
+	}
+
+	/** covers the remaining flags, a transferred property id and children hashes, without an uncovered coordinate */
+	private val list = WidgetData(text = "", contentDesc = "list", className = "android.widget.ListView", packageName = pkg,
+			editable = true, isPassword = true, longClickable = true, scrollable = true, selected = true,
+			boundsWidth = 1080, boundsHeight = 1920, _uid = UUID(-1L, 42L)).apply {
+		xpath = "//ListView[1]"
+		idHash = Int.MAX_VALUE
+		childrenXpathHashes = listOf(1, -2, Int.MAX_VALUE)
+		hasActableDescendant = true
+	}
+
+	private fun response(widgets: List<WidgetData>) = SyntheticGui.response(widgets, byteArrayOf(-119, 80, 78, 71, 0, 127))
+
+	@Test
+	fun `Round-trips all widget properties`() {
+		val decoded = DeviceResponseCodec.decode(DeviceResponseCodec.encode(response(listOf(list, button)))).widgets
+
+		assertEquals(listOf(list, button), decoded)  // data class equality covers the constructor properties
+		listOf(list, button).zip(decoded).forEach { (expected, actual) ->
+			assertEquals(expected.uidOverride, actual.uidOverride)
+			assertEquals(expected.pId, actual.pId)
+			assertEquals(expected.xpath, actual.xpath)
+			assertEquals(expected.idHash, actual.idHash)
+			assertEquals(expected.parentHash, actual.parentHash)
+			assertEquals(expected.uncoveredCoord, actual.uncoveredCoord)
+			assertEquals(expected.childrenXpathHashes, actual.childrenXpathHashes)
+			assertEquals(expected.hasActableDescendant, actual.hasActableDescendant)
+		}
+	}
+
+	@Test
+	fun `Round-trips the response properties and its throwable`() {
+		val response = response(listOf(button)).apply { throwable = IllegalStateException("device failure") }
+
+		val decoded = DeviceResponseCodec.decode(DeviceResponseCodec.encode(response))
+
+		assertArrayEquals(response.screenshot, decoded.screenshot)
+		assertEquals(pkg, decoded.topNodePackageName)
+		assertEquals(response.launchableMainActivityName, decoded.launchableMainActivityName)
+		assertEquals(response.androidLauncherPackageName, decoded.androidLauncherPackageName)
+		assertEquals(response.androidPackageName, decoded.androidPackageName)
+		assertEquals(response.appSize, decoded.appSize)
+		assertEquals(response.statusBarSize, decoded.statusBarSize)
+		assertEquals(response.screenshotWidth to response.screenshotHeight, decoded.screenshotWidth to decoded.screenshotHeight)
+		assertTrue(decoded.throwable is IllegalStateException)
+		assertEquals("device failure", decoded.throwable?.message)
+	}
+
+	@Test
+	fun `Encodes repeated strings only once`() {
+		val text = "x".repeat(1000)
+		fun encodedSize(n: Int) = DeviceResponseCodec.encode(response(List(n) { WidgetData(text = text, packageName = pkg) })).size
+
+		// every additional widget only adds its references, numbers and flags
+		assertTrue(encodedSize(50) - encodedSize(1) < 49 * 32)
+	}
+
+	@Test(expected = IOException::class)
+	fun `Rejects unknown encoding versions`() {
+		val bytes = DeviceResponseCodec.encode(response(listOf(button)))
+		bytes[0] = (DeviceResponseCodec.VERSION + 1).toByte()
+		DeviceResponseCodec.decode(bytes)
+	}
+
+	@Test
+	fun `Negotiated binary format is used by both client types`() {
+		val response = response(listOf(list, button))
+		val fetch = ExecuteCommand(GlobalAction(ActionType.FetchGUI))
+		LoopbackDaemonServer { response }.use { server ->
+			assertEquals(response.widgets, TcpClientBase<DeviceCommand, DeviceResponse>(5000, WireFormat.BINARY_V1).queryServer(fetch, server.port).widgets)
+			TcpSessionClient<DeviceCommand, DeviceResponse>(5000, 0, WireFormat.BINARY_V1).use {
+				assertEquals(response.widgets, it.queryServer(fetch, server.port).widgets)
+			}
+		}
+	}
+}
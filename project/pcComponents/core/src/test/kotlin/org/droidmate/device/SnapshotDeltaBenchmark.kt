@@ -0,0 +1,60 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.deviceInterface.DeviceResponseCodec
+import org.droidmate.deviceInterface.SnapshotDelta
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+
+/** Bytes on the wire and encode/decode time of [SnapshotDelta] payloads compared to full snapshots, for 300 to 5000 widgets. */
+class SnapshotDeltaBenchmark {
+
+	/** the next screen: every 50th widget changed its text, one widget removed and one added */
+	private fun nextScreen(widgets: List<WidgetData>): List<WidgetData> =
+			widgets.mapIndexed { i, w -> if (i % 50 == 7) SyntheticGui.changed(w, "changed") else w }
+					.filterIndexed { i, _ -> i != widgets.size / 2 }
+					.plus(SyntheticGui.changed(widgets.last(), "added").apply { idHash = "added".hashCode() })
+
+	@Test
+	fun `bytes on wire and decode time of deltas`() {
+		for (size in listOf(300, 1000, 5000)) {
+			val first = SyntheticGui.response(size)
+			val second = SyntheticGui.response(nextScreen(first.widgets), first.screenshot.copyOf())
+			val encoder = SnapshotDelta.Encoder().apply { encode(first) }
+			val delta = encoder.encode(second)
+			Benchmark.report("$size widgets: bytes full / delta (unchanged screenshot)", "${DeviceResponseCodec.encode(second).size} / ${delta.size}")
+
+			Benchmark.measure("$size widgets: full encode") { DeviceResponseCodec.encode(second) }
+			Benchmark.measure("$size widgets: delta encode") { SnapshotDelta.Encoder().apply { encode(first) }.encode(second) }
+			Benchmark.measure("$size widgets: full decode") { DeviceResponseCodec.decode(DeviceResponseCodec.encode(second)) }
+			val firstFull = SnapshotDelta.Encoder().encode(first)
+			Benchmark.measure("$size widgets: delta decode") { SnapshotDelta.Decoder().apply { decode(firstFull) }.decode(delta) }
+		}
+	}
+}
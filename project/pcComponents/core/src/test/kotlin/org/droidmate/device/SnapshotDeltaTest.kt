@@ -0,0 +1,164 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.device
+
+import org.droidmate.deviceInterface.*
+import org.droidmate.deviceInterface.guimodel.ActionType
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.deviceInterface.guimodel.GlobalAction
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.exploration.statemodel.ActionResult
+import org.droidmate.exploration.statemodel.ModelConfig
+import org.droidmate.exploration.statemodel.WidgetCache
+import org.droidmate.test_tools.SyntheticGui
+import org.droidmate.test_tools.device_simulation.LoopbackDaemonServer
+import org.junit.Assert.*
+import org.junit.Test
+import java.time.LocalDateTime
+
+class SnapshotDeltaTest {
+	private val screenshot = byteArrayOf(1, 2, 3, 4)
+
+	private fun node(idHash: Int, text: String = "", parent: Int = 1) = WidgetData(text = text, className = "android.widget.TextView",
+			packageName = "org.droidmate.inbox", enabled = true, visible = true).apply {
+		this.idHash = idHash
+		parentHash = if (idHash == parent) 0 else parent
+		xpath = "//node[$idHash]"
+	}
+
+	private val root = node(1)
+	private val title = node(2, "Inbox")
+	private val mail1 = node(3, "mail 1")
+	private val mail2 = node(4, "mail 2")
+
+	/** the title changed, the second mail was removed and a third one added */
+	private val afterNewMail = listOf(root, node(2, "Inbox (1)"), mail1, node(5, "mail 3"))
+
+	private fun response(widgets: List<WidgetData>, screenshot: ByteArray = this.screenshot) = SyntheticGui.response(widgets, screenshot)
+
+	@Test
+	fun `Delta keeps unchanged nodes of the previous snapshot and ships the others`() {
+		val encoder = SnapshotDelta.Encoder()
+		val decoder = SnapshotDelta.Decoder()
+		val first = decoder.decode(encoder.encode(response(listOf(root, title, mail1, mail2)))) as DeviceResponse
+
+		val second = decoder.decode(encoder.encode(response(afterNewMail, screenshot.copyOf()))) as DeviceResponse
+
+		assertEquals(afterNewMail, second.widgets)
+		second.widgets.zip(afterNewMail).forEach { (decoded, expected) -> assertTrue(SnapshotDelta.isSameNode(decoded, expected)) }
+		assertSame(first.widgets[0], second.widgets[0])
+		assertSame(first.widgets[2], second.widgets[2])
+		assertEquals("Inbox (1)", second.widgets[1].text)
+		// neither the unchanged screenshot nor the unchanged dump were shipped
+		assertSame(first.screenshot, second.screenshot)
+		assertSame(first.windowHierarchyDump, second.windowHierarchyDump)
+		assertEquals(first.topNodePackageName, second.topNodePackageName)
+	}
+
+	@Test
+	fun `Delta ships a changed screenshot`() {
+		val encoder = SnapshotDelta.Encoder()
+		val decoder = SnapshotDelta.Decoder()
+		decoder.decode(encoder.encode(response(listOf(root, title))))
+
+		val second = decoder.decode(encoder.encode(response(listOf(root, title), byteArrayOf(9, 9)))) as DeviceResponse
+
+		assertArrayEquals(byteArrayOf(9, 9), second.screenshot)
+	}
+
+	@Test
+	fun `Nodes with ambiguous hashes are always shipped`() {
+		val encoder = SnapshotDelta.Encoder()
+		val decoder = SnapshotDelta.Decoder()
+		val twins = listOf(root, node(7, "left"), node(7, "right"))
+		val first = decoder.decode(encoder.encode(response(twins))) as DeviceResponse
+
+		val second = decoder.decode(encoder.encode(response(twins))) as DeviceResponse
+
+		assertEquals(twins, second.widgets)
+		assertSame(first.widgets[0], second.widgets[0])
+		assertNotSame(first.widgets[1], second.widgets[1])
+		assertNotSame(first.widgets[2], second.widgets[2])
+	}
+
+	@Test
+	fun `Delta to an unknown snapshot is rejected and resolved by a full snapshot`() {
+		val encoder = SnapshotDelta.Encoder()
+		SnapshotDelta.Decoder().decode(encoder.encode(response(listOf(root, title, mail1, mail2))))
+		val delta = encoder.encode(response(afterNewMail))
+
+		val outOfSync = SnapshotDelta.Decoder()
+		assertNull(outOfSync.decode(delta))
+		assertEquals(afterNewMail, (outOfSync.decode(encoder.encodeFull()) as DeviceResponse).widgets)
+	}
+
+	@Test
+	fun `Other responses are passed through`() {
+		assertEquals("ok", SnapshotDelta.Decoder().decode(SnapshotDelta.Encoder().encode("ok")))
+	}
+
+	@Test
+	fun `Session client applies deltas transparently`() {
+		val fetch = ExecuteCommand(GlobalAction(ActionType.FetchGUI))
+		val screens = listOf(listOf(root, title, mail1, mail2), afterNewMail, listOf(root, title))
+		var served = 0
+		LoopbackDaemonServer { response(screens[served++ % screens.size]) }.use { server ->
+			TcpSessionClient<DeviceCommand, DeviceResponse>(5000, 0, WireFormat.DELTA_V1).use { client ->
+				screens.forEach { assertEquals(it, client.queryServer(fetch, server.port).widgets) }
+			}
+			// single request connections do not keep any snapshot and fall back to the binary format
+			assertEquals(screens[0], TcpClientBase<DeviceCommand, DeviceResponse>(5000, WireFormat.DELTA_V1).queryServer(fetch, server.port).widgets)
+		}
+	}
+
+	@Test
+	fun `Unchanged widgets are reused for the next state unless they depend on a changed screenshot`() {
+		val config = ModelConfig("JUnit", true)
+		val encoder = SnapshotDelta.Encoder()
+		val decoder = SnapshotDelta.Decoder()
+		fun result(widgets: List<WidgetData>, screenshot: ByteArray = this.screenshot) = (decoder.decode(encoder.encode(response(widgets, screenshot))) as DeviceResponse)
+				.let { ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(), guiSnapshot = it, screenshot = it.screenshot) }
+
+		val cache = WidgetCache()
+		val firstAction = result(listOf(root, title, mail1, mail2))
+		val first = firstAction.getWidgets(config, cache.reusableFor(firstAction))
+		cache.update(firstAction, firstAction.resultState(first))
+
+		val secondAction = result(afterNewMail)
+		val second = secondAction.getWidgets(config, cache.reusableFor(secondAction))
+		assertEquals(afterNewMail, second.map { it.properties })
+		assertSame(first[0], second[0])
+		assertSame(first[2], second[2])
+		assertNotSame(first[1], second[1])
+		cache.update(secondAction, secondAction.resultState(second))
+
+		// the id of the root depends on its image since it has no text
+		val thirdAction = result(afterNewMail, byteArrayOf(5, 6))
+		val third = thirdAction.getWidgets(config, cache.reusableFor(thirdAction))
+		assertNotSame(second[0], third[0])
+		assertSame(second[2], third[2])
+	}
+}
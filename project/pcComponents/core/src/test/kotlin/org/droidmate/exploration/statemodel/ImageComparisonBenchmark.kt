@@ -0,0 +1,119 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+package org.droidmate.exploration.statemodel
+
+import org.droidmate.test_tools.Benchmark
+import org.junit.Test
+import java.awt.Color
+import java.awt.GradientPaint
+import java.awt.Point
+import java.awt.image.BufferedImage
+import java.awt.image.Raster
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.*
+import javax.imageio.ImageIO
+
+/** Screenshot comparison time of [ImageComparison] compared to the previous byte based comparison of the effective actions report. */
+class ImageComparisonBenchmark {
+	private val statusBarHeight = 63
+
+	private fun screen(width: Int = 1080, height: Int = 1920, seed: Long = 42): BufferedImage {
+		val rnd = Random(seed)
+		return BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR).apply {
+			createGraphics().run {
+				paint = GradientPaint(0f, 0f, Color.WHITE, width.toFloat(), height.toFloat(), Color.DARK_GRAY)
+				fillRect(0, 0, width, height)
+				repeat(400) {
+					color = Color(rnd.nextInt(0xFFFFFF))
+					fillRect(rnd.nextInt(width), rnd.nextInt(height), 8 + rnd.nextInt(120), 8 + rnd.nextInt(120))
+				}
+				dispose()
+			}
+		}
+	}
+
+	/** copy of [img] with [n] pixels changed at random positions below [fromRow] */
+	private fun changed(img: BufferedImage, n: Int, fromRow: Int = 0, seed: Long = 1): BufferedImage {
+		val rnd = Random(seed)
+		return BufferedImage(img.width, img.height, img.type).apply {
+			data = img.data
+			val positions = HashSet<Int>()
+			while (positions.size < n) positions.add(fromRow * img.width + rnd.nextInt((img.height - fromRow) * img.width))
+			positions.forEach { p -> setRGB(p % img.width, p / img.width, getRGB(p % img.width, p / img.width) xor 0x404040) }
+		}
+	}
+
+	private fun png(img: BufferedImage): ByteArray = ByteArrayOutputStream().also { ImageIO.write(img, "png", it) }.toByteArray()
+
+	/** the comparison EffectiveActions did before: ImageIO decoding, copying the raster without status bar and boxed sample access */
+	private fun legacySimilarity(screenshotA: ByteArray, screenshotB: ByteArray): Double {
+		val dbA = withoutStatusBar(ImageIO.read(ByteArrayInputStream(screenshotA))).dataBuffer
+		val dbB = withoutStatusBar(ImageIO.read(ByteArrayInputStream(screenshotB))).dataBuffer
+		if (dbA.size != dbB.size) return 0.0
+		var count = 0
+		(0 until dbA.size).filter { dbA.getElem(it) == dbB.getElem(it) }.forEach { count++ }
+		return (count * 100 / dbA.size).toDouble()
+	}
+
+	private fun withoutStatusBar(bi: BufferedImage): Raster {
+		val raster = bi.data
+		val wr = Raster.createWritableRaster(raster.sampleModel, Point(raster.sampleModelTranslateX, raster.sampleModelTranslateY))
+		var tData: Any? = null
+		for (i in statusBarHeight until raster.height) {
+			tData = raster.getDataElements(raster.minX, i, raster.width, 1, tData)
+			wr.setDataElements(raster.minX, i, raster.width, 1, tData)
+		}
+		return wr
+	}
+
+	@Test
+	fun `compare 1080x1920 screenshots`() {
+		val base = screen()
+		val similar = changed(base, 2000, statusBarHeight)
+		val different = screen(seed = 7)
+		val pngBase = png(base)
+		val pngSimilar = png(similar)
+		val pngDifferent = png(different)
+
+		Benchmark.measure("legacy: decode, copy and compare", warmup = 2, iterations = 5) { legacySimilarity(pngBase, pngSimilar) }
+		Benchmark.measure("decode png into ScreenImage", warmup = 2, iterations = 5) { ScreenImage.decode(pngBase) }
+
+		val cache = DecodedImageCache()
+		val ids = listOf(pngBase, pngSimilar, pngDifferent).map { Pair(UUID.randomUUID(), UUID.randomUUID()) }
+		val load = { id: ConcreteId -> ScreenImage.decode(listOf(pngBase, pngSimilar, pngDifferent)[ids.indexOf(id)]) }
+		val a = cache.get(ids[0], load)!!
+		val b = cache.get(ids[1], load)!!
+		val c = cache.get(ids[2], load)!!
+		Benchmark.report("similarity legacy / full / downscaled 4x", "${legacySimilarity(pngBase, pngSimilar)} / " +
+				"${ImageComparison.similarity(a, b, statusBarHeight) * 100} / ${ImageComparison.similarity(a, b, statusBarHeight, scale = 4) * 100}")
+
+		Benchmark.measure("cached: full comparison") { ImageComparison.similarity(cache.get(ids[0], load)!!, cache.get(ids[1], load)!!, statusBarHeight) }
+		Benchmark.measure("cached: downscaled 4x (scaled copies cached)") { ImageComparison.similarity(a, b, statusBarHeight, scale = 4) }
+		Benchmark.measure("downscale 4x without cache") { ScreenImage(a.width, a.height, a.pixels).downscaled(4) }
+		Benchmark.measure("early exit: 99% threshold on similar screens") { ImageComparison.isSimilar(a, b, 0.99, statusBarHeight) }
+		Benchmark.measure("early exit: 99% threshold on different screens") { ImageComparison.isSimilar(a, c, 0.99, statusBarHeight) }
+	}
+}
@@ -0,0 +1,134 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.awt.Color
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.util.*
+import javax.imageio.ImageIO
+
+class ImageComparisonTest {
+	/** a [width]x[height] white image with a red, green and blue box, such that the samples of the pixels differ */
+	private fun screen(width: Int = 60, height: Int = 80, type: Int = BufferedImage.TYPE_3BYTE_BGR) = BufferedImage(width, height, type).apply {
+		createGraphics().run {
+			color = Color.WHITE
+			fillRect(0, 0, width, height)
+			listOf(Color.RED, Color.GREEN, Color.BLUE).forEachIndexed { i, c ->
+				color = c
+				fillRect(5 + i * 15, 10 + i * 20, 12, 15)
+			}
+			dispose()
+		}
+	}
+
+	/** copy of [img] where the pixels at [positions] (row major) are inverted */
+	private fun changed(img: BufferedImage, vararg positions: Int) = BufferedImage(img.width, img.height, img.type).apply {
+		data = img.data
+		positions.forEach { p -> setRGB(p % width, p / width, getRGB(p % width, p / width) xor 0xFFFFFF) }
+	}
+
+	private fun png(img: BufferedImage): ByteArray = ByteArrayOutputStream().also { ImageIO.write(img, "png", it) }.toByteArray()
+
+	@Test
+	fun `Sub-images and converted layouts are packed like copies`() {
+		val img = screen()
+		val sub = img.getSubimage(3, 7, 40, 50)
+		val copy = BufferedImage(sub.width, sub.height, sub.type).apply { data = sub.copyData(null).createTranslatedChild(0, 0) }
+		assertArrayEquals(ScreenImage.of(copy).pixels, ScreenImage.of(sub).pixels)
+
+		val intImg = screen(type = BufferedImage.TYPE_INT_RGB)
+		assertEquals(0, ImageComparison.differences(ScreenImage.of(intImg), ScreenImage.of(intImg)))
+		assertEquals(3, ImageComparison.differences(ScreenImage.of(intImg), ScreenImage.of(changed(intImg, 0, 61, 4799))))
+	}
+
+	@Test
+	fun `Decoded screenshots equal the drawn image`() {
+		val img = screen()
+		val decoded = ScreenImage.decode(png(img))!!
+
+		assertEquals(60, decoded.width)
+		assertEquals(80, decoded.height)
+		assertArrayEquals(ScreenImage.of(img).pixels, decoded.pixels)
+		assertNull(ScreenImage.decode(ByteArray(8)))
+	}
+
+	@Test
+	fun `The similarity ignores the skipped rows`() {
+		val img = screen()
+		val a = ScreenImage.of(img)
+		val statusBar = ScreenImage.of(changed(img, *IntArray(60) { it }))  // the whole first row
+		val content = ScreenImage.of(changed(img, 120, 121, 122))
+
+		assertEquals(1.0 - 60.0 / (60 * 80), ImageComparison.similarity(a, statusBar), 0.0)
+		assertEquals(1.0, ImageComparison.similarity(a, statusBar, fromRow = 1), 0.0)
+		assertEquals(1.0 - 3.0 / (60 * 79), ImageComparison.similarity(a, content, fromRow = 1), 0.0)
+		assertEquals(1.0, ImageComparison.similarity(a, content, fromRow = 80), 0.0)  // nothing left to compare
+		assertEquals(0.0, ImageComparison.similarity(a, ScreenImage.of(screen(width = 40))), 0.0)
+	}
+
+	@Test
+	fun `The early exit agrees with the full comparison`() {
+		val img = screen()
+		val a = ScreenImage.of(img)
+		listOf(0, 10, 500, 2400, 4800).forEach { n ->
+			val b = ScreenImage.of(changed(img, *IntArray(n) { it }))
+			val similarity = ImageComparison.similarity(a, b)
+			listOf(0.5, 0.9, 0.99, 1.0).forEach { min -> assertEquals("$n changes, $min", similarity >= min, ImageComparison.isSimilar(a, b, min)) }
+			assertEquals(n > 100, ImageComparison.differences(a, b, limit = 100) > 100)
+		}
+	}
+
+	@Test
+	fun `Downscaled images average blocks`() {
+		val img = ScreenImage(4, 2, intArrayOf(0, 2, 10, 10, 4, 6, 10, 10))
+		val scaled = img.downscaled(2)
+
+		assertEquals(2, scaled.width)
+		assertEquals(1, scaled.height)
+		assertEquals(listOf(3, 10), scaled.pixels.toList())
+		assertSame(scaled, img.downscaled(2))
+		assertSame(img, img.downscaled(1))
+	}
+
+	@Test
+	fun `Decoded images are cached by state id`() {
+		val cache = DecodedImageCache(capacity = 2)
+		val loads = mutableListOf<ConcreteId>()
+		val ids = List(3) { Pair(UUID.randomUUID(), UUID.randomUUID()) }
+		val load = { id: ConcreteId -> loads.add(id); if (id == ids[2]) null else ScreenImage(1, 1, intArrayOf(ids.indexOf(id))) }
+
+		val first = cache.get(ids[0], load)
+		assertSame(first, cache.get(ids[0], load))
+		assertNull(cache.get(ids[2], load))
+		assertNull(cache.get(ids[2], load))  // missing images are cached as well
+		cache.get(ids[1], load)  // evicts the least recently used ids[0]
+		cache.get(ids[0], load)
+		assertEquals(listOf(ids[0], ids[2], ids[1], ids[0]), loads)
+	}
+}
@@ -0,0 +1,85 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.awt.Color
+import java.awt.GradientPaint
+import java.awt.image.BufferedImage
+import java.util.*
+
+/** Number of distinct image ids and hashing time of the exact and the perceptual image identity on slightly re-rendered screens. */
+class ImageIdentityBenchmark {
+	/** a screen with gradients and boxes, such that widget images have some structure */
+	private fun screen(width: Int = 1080, height: Int = 1920, seed: Long = 42): BufferedImage {
+		val rnd = Random(seed)
+		return BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR).apply {
+			createGraphics().run {
+				paint = GradientPaint(0f, 0f, Color.WHITE, width.toFloat(), height.toFloat(), Color.DARK_GRAY)
+				fillRect(0, 0, width, height)
+				repeat(400) {
+					color = Color(rnd.nextInt(0xFFFFFF))
+					fillRect(rnd.nextInt(width), rnd.nextInt(height), 8 + rnd.nextInt(120), 8 + rnd.nextInt(120))
+				}
+				dispose()
+			}
+		}
+	}
+
+	/** the same screen with a few pixels rendered slightly differently, e.g. due to anti-aliasing or a blinking cursor */
+	private fun rerendered(img: BufferedImage, seed: Long): BufferedImage {
+		val rnd = Random(seed)
+		return BufferedImage(img.width, img.height, img.type).apply {
+			data = img.data
+			repeat(img.width * img.height / 2000) {
+				val x = rnd.nextInt(img.width)
+				val y = rnd.nextInt(img.height)
+				setRGB(x, y, getRGB(x, y) xor 0x030303)
+			}
+		}
+	}
+
+	@Test
+	fun `model size and hashing cost exact vs perceptual`() {
+		val nodes = SyntheticGui.widgets(300).map { w ->
+			w.copy(text = "", contentDesc = "", boundsWidth = Math.min(w.boundsWidth, 1080 - w.boundsX), boundsHeight = Math.min(w.boundsHeight, 1920 - w.boundsY))
+		}.filter { it.boundsWidth > 0 && it.boundsHeight > 0 }
+		val base = screen()
+		val screens = (0 until 20).map { rerendered(base, it.toLong()) }
+
+		val engines = listOf("exact" to ImageIdentity.exact, "dhash" to PerceptualImageIdentity())
+		engines.forEach { (name, engine) ->
+			val ids = HashSet<UUID>()
+			screens.forEach { s -> nodes.forEach { w -> ids.add(engine.idOf(w, s.getSubimage(w.boundsX, w.boundsY, w.boundsWidth, w.boundsHeight))) } }
+			Benchmark.report("$name: distinct image ids (${screens.size} screens x ${nodes.size} widgets)", ids.size)
+			Benchmark.measure("$name: hash ${nodes.size} widget images") {
+				nodes.forEach { w -> Benchmark.sink = engine.idOf(w, screens[0].getSubimage(w.boundsX, w.boundsY, w.boundsWidth, w.boundsHeight)) }
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import com.natpryce.konfig.ConfigurationMap
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.junit.Assert.*
+import org.junit.Test
+import java.awt.Color
+import java.awt.image.BufferedImage
+import java.util.*
+
+class ImageIdentityTest {
+	private val node = WidgetData(text = "", resourceId = "app:id/icon", boundsX = 10, boundsY = 20, boundsWidth = 9, boundsHeight = 8, visible = true)
+
+	/** 9x8 image whose dHash is [hash]: each row starts at brightness 100 and each set bit increases the brightness to the right */
+	private fun hashImage(hash: Long): BufferedImage = BufferedImage(9, 8, BufferedImage.TYPE_3BYTE_BGR).also { draw(it, 0, 0, hash) }
+
+	private fun draw(img: BufferedImage, x0: Int, y0: Int, hash: Long) {
+		for (y in 0 until 8) {
+			var v = 100
+			img.setRGB(x0, y0 + y, Color(v, v, v).rgb)
+			for (x in 0 until 8) {
+				val bit = (hash ushr (63 - (y * 8 + x))) and 1L
+				v = if (bit == 1L) v + 1 else v - 1
+				img.setRGB(x0 + x + 1, y0 + y, Color(v, v, v).rgb)
+			}
+		}
+	}
+
+	private fun flip(hash: Long, vararg bits: Int) = bits.fold(hash) { h, b -> h xor (1L shl b) }
+
+	@Test
+	fun `The hash image has the given dHash`() {
+		val hash = 0x0123456789ABCDEFL
+		assertEquals(hash, PerceptualImageIdentity.dHash(hashImage(hash)))
+	}
+
+	@Test
+	fun `Near duplicate images get the id of the first one seen`() {
+		val identity = PerceptualImageIdentity(maxDistance = 4)
+		val original = 0x0F0F0F0F0F0F0F0FL
+		val id = identity.idOf(node, hashImage(original))
+
+		assertEquals(id, identity.idOf(node, hashImage(flip(original, 1, 20, 63))))
+		// the index is used if the widget is found at another position
+		assertEquals(id, identity.idOf(node.copy(boundsX = 500), hashImage(flip(original, 2, 3, 4, 5))))
+		assertNotEquals(id, identity.idOf(node.copy(boundsX = 600), hashImage(flip(original, 2, 3, 4, 5, 6))))
+		assertEquals(2, identity.size)
+	}
+
+	@Test
+	fun `Exact ids distinguish a single flipped bit`() {
+		val original = 0x0F0F0F0F0F0F0F0FL
+		assertNotEquals(ImageIdentity.exact.idOf(node, hashImage(original)), ImageIdentity.exact.idOf(node, hashImage(flip(original, 7))))
+		assertEquals(ImageIdentity.exact.idOf(node, hashImage(original)), ImageIdentity.exact.idOf(node, hashImage(original)))
+	}
+
+	@Test
+	fun `Band index finds the same near duplicates as a linear search`() {
+		val rnd = Random(42)
+		val maxDistance = 4
+		val hashes = (0 until 2000).map { rnd.nextLong() }
+		val identity = PerceptualImageIdentity(maxDistance, cacheSize = 1)
+		// all hashes are inserted via distinct cache keys, afterwards perturbed versions are looked up
+		val ids = hashes.mapIndexed { i, h -> identity.idOf(node.copy(resourceId = "a$i"), h) }
+		hashes.forEachIndexed { i, h ->
+			val perturbed = (0 until rnd.nextInt(maxDistance + 1)).fold(h) { acc, _ -> acc xor (1L shl rnd.nextInt(64)) }
+			val linear = hashes.withIndex().filter { PerceptualImageIdentity.distance(it.value, perturbed) <= maxDistance }.map { ids[it.index] }
+			assertTrue(linear.contains(identity.idOf(node.copy(resourceId = "b$i"), perturbed)))
+		}
+	}
+
+	@Test
+	fun `Perceptual ids of widgets created in parallel do not depend on the thread timing`() {
+		// for each of 40 images there are three variants h0, h1 and h2 where h1 is near h0 and h2 is near h1 but not near h0,
+		// in node order h0 is seen first, such that h0 and h1 share one id and h2 gets its own
+		val rnd = Random(42)
+		val h0 = (0 until 40).map { rnd.nextLong() }
+		val h1 = h0.map { flip(it, 0, 1, 2) }
+		val h2 = h1.map { flip(it, 10, 11, 12) }
+		val hashes = h0 + h1 + h2
+		val columns = 12
+		val screen = BufferedImage(columns * 9, hashes.size / columns * 8, BufferedImage.TYPE_3BYTE_BGR)
+		val nodes = hashes.mapIndexed { i, h ->
+			val x = (i % columns) * 9
+			val y = (i / columns) * 8
+			draw(screen, x, y, h)
+			WidgetData(text = "", className = "android.widget.ImageView", visible = true, boundsX = x, boundsY = y, boundsWidth = 9, boundsHeight = 8)
+					.apply { idHash = i + 1; xpath = "//node[$i]" }
+		}
+		val sequential = PerceptualImageIdentity().let { identity -> nodes.mapIndexed { i, n -> identity.idOf(n, hashes[i]) } }
+
+		repeat(10) {
+			val config = ModelConfig("JUnit", true, ConfigurationMap("Output.outputDir" to "./out/test",
+					"ModelProperties.imgDump.widgets" to "false", "ModelProperties.imgId.engine" to "dhash"))
+			val ids = WidgetPipeline.createWidgets(nodes, lazyOf<BufferedImage?>(screen), config) { null }.map { it.imgId }
+
+			assertEquals(sequential, ids)
+			(0 until 40).forEach { i ->
+				assertEquals(ids[i], ids[i + 40])
+				assertNotEquals(ids[i], ids[i + 80])
+			}
+		}
+	}
+}
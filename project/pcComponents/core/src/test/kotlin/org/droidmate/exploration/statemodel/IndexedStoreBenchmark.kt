@@ -0,0 +1,80 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import kotlinx.coroutines.experimental.Job
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.test_tools.Benchmark
+import org.junit.Test
+import java.util.*
+
+/** Lookup latency of [IndexedStore] compared to the previous [CollectionActor], for 10k states and 500k widgets. */
+class IndexedStoreBenchmark {
+
+	private fun widget(i: Int) = Widget(WidgetData(text = "widget $i", packageName = if (i % 4 == 0) "com.other" else "com.app",
+			enabled = true, visible = true, clickable = i % 2 == 0))
+
+	@Test
+	fun `lookup latency indexed store vs collection actor`() {
+		val nStates = 10_000
+		val nWidgets = 500_000
+		val widgets = (0 until nWidgets).map { widget(it) }
+		val states = (0 until nStates).map { i -> StateData(lazyOf(widgets.subList(i * 10, i * 10 + 10)), topNodePackageName = "com.app") }
+		val rnd = Random(42)
+		val stateIds = (0 until 1000).map { states[rnd.nextInt(nStates)].stateId }
+		val widgetIds = (0 until 1000).map { widgets[rnd.nextInt(nWidgets)].id }
+
+		val job = Job()
+		val stateActor = CollectionActor(HashSet<StateData>(), "StateActor").create(job)
+		val widgetActor = CollectionActor(HashSet<Widget>(), "WidgetActor").create(job)
+		runBlocking {
+			stateActor.send(AddAll(states))
+			widgetActor.send(AddAll(widgets))
+		}
+		val stateStore = IndexedStore<ConcreteId, StateData> { it.stateId }.apply { addAll(states) }
+		val widgetStore = IndexedStore<ConcreteId, Widget> { it.id }
+		val actable = widgetStore.index { if (it.canBeActedUpon) it.packageName else null }
+		widgetStore.addAll(widgets)
+
+		runBlocking {
+			Benchmark.measure("actor: 1 state lookup of $nStates", iterations = 10) {
+				stateActor.getAll<StateData, Set<StateData>>().find { it.stateId == stateIds[0] }
+			}
+			Benchmark.measure("actor: 1 widget lookup of $nWidgets", iterations = 10) {
+				widgetActor.getAll<Widget, Set<Widget>>().find { it.id == widgetIds[0] }
+			}
+			Benchmark.measure("actor: actable app widgets of $nWidgets", iterations = 10) {
+				widgetActor.getAll<Widget, Set<Widget>>().filter { it.packageName == "com.app" && it.canBeActedUpon }
+			}
+		}
+		Benchmark.measure("store: 1000 state lookups of $nStates") { stateIds.count { stateStore[it] != null } }
+		Benchmark.measure("store: 1000 widget lookups of $nWidgets") { widgetIds.count { widgetStore[it] != null } }
+		Benchmark.measure("store: actable app widgets of $nWidgets") { actable["com.app"] }
+		Benchmark.measure("store: snapshot of $nWidgets widgets") { widgetStore.snapshot() }
+		job.cancel()
+	}
+}
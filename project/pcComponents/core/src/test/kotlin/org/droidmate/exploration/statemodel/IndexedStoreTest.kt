@@ -0,0 +1,115 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class IndexedStoreTest {
+	private data class Entry(val key: String, val value: Int)
+
+	private val store = IndexedStore<String, Entry> { it.key }
+	private val byValue = store.index { it.value }
+	private val evenOnly = store.index { if (it.value % 2 == 0) it.value else null }
+
+	@Test
+	fun `Elements are unique by key and the first one is kept`() {
+		assertTrue(store.add(Entry("a", 1)))
+		assertFalse(store.add(Entry("a", 3)))
+		store.addAll(listOf(Entry("b", 2), Entry("b", 4), Entry("a", 5)))
+
+		assertEquals(2, store.size)
+		assertEquals(Entry("a", 1), store["a"])
+		assertEquals(Entry("b", 2), store["b"])
+		assertNull(store["x"])
+		assertTrue("b" in store)
+		assertEquals(listOf(Entry("a", 1), Entry("b", 2)), store.snapshot().toList())
+	}
+
+	@Test
+	fun `Secondary indices return the elements of a key in insertion order`() {
+		store.addAll(listOf(Entry("c", 2), Entry("a", 1), Entry("b", 2)))
+
+		assertEquals(listOf(Entry("c", 2), Entry("b", 2)), byValue[2])
+		assertEquals(emptyList<Entry>(), byValue[3])
+		assertEquals(emptyList<Entry>(), evenOnly[1])
+		assertEquals(listOf(Entry("c", 2), Entry("b", 2)), evenOnly[2])
+	}
+
+	@Test(expected = IllegalStateException::class)
+	fun `Indices cannot be created after elements were added`() {
+		store.add(Entry("a", 1))
+		store.index { it.value }
+	}
+
+	@Test
+	fun `Snapshots do not see elements added afterwards`() {
+		store.add(Entry("a", 1))
+		val snapshot = store.snapshot()
+
+		store.add(Entry("b", 2))
+
+		assertEquals(setOf(Entry("a", 1)), snapshot)
+		assertFalse(snapshot.contains(Entry("b", 2)))
+		assertEquals(2, store.snapshot().size)
+	}
+
+	@Test
+	fun `Readers only see completely added elements while a writer is adding`() {
+		val numbers = IndexedStore<Int, Int> { it }
+		val parity = numbers.index { it % 2 }
+		val writer = thread { (0 until 100_000).forEach { numbers.add(it) } }
+		do {
+			val snapshot = numbers.snapshot()
+			assertEquals((0 until snapshot.size).toList(), snapshot.toList())
+			parity[0].forEach { assertEquals(it, numbers[it]) }
+		} while (writer.isAlive)
+		writer.join()
+
+		assertEquals(50_000, parity[1].size)
+	}
+
+	@Test
+	fun `Keys of a bulk add are computed before the store is locked`() {
+		val computingKey = CountDownLatch(1)
+		val keyComputed = CountDownLatch(1)
+		val numbers = IndexedStore<Int, Int> { if (it == 1) { computingKey.countDown(); keyComputed.await() }; it }
+
+		val bulk = thread { numbers.addAll(listOf(1, 2)) }
+		computingKey.await()
+		// while the (lazy) key of 1 is computed other writers are not blocked
+		val single = thread { numbers.add(3) }
+		single.join(TimeUnit.SECONDS.toMillis(5))
+		assertFalse(single.isAlive)
+		keyComputed.countDown()
+		bulk.join()
+
+		assertEquals(listOf(3, 1, 2), numbers.snapshot().toList())
+	}
+}
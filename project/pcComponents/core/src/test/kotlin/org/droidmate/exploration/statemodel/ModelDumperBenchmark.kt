@@ -0,0 +1,79 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.time.LocalDateTime
+import java.util.*
+
+/** Time to dump explorations of 100 and 500 actions, rewriting the trace after each action (previous) vs. the write-behind [ModelDumper]. */
+class ModelDumperBenchmark {
+	private fun cfg(onEachAction: Boolean) = ConfigurationMap("Output.outputDir" to "./out/test",
+			"ModelProperties.imgDump.widgets" to "false", "ModelProperties.imgDump.states" to "false",
+			"ModelProperties.dump.onEachAction" to onEachAction.toString())
+
+	/** actions alternating between [nStates] different GUIs */
+	private fun actions(nStates: Int, size: Int = 100) = (0 until nStates).map { i ->
+		ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(),
+				guiSnapshot = SyntheticGui.response(SyntheticGui.widgets(size, seed = i.toLong()), ByteArray(0)))
+	}
+
+	private fun explore(config: ModelConfig, nActions: Int, nStates: Int = 5, afterEach: (Trace) -> Unit = {}): Pair<Model, Trace> {
+		val model = Model.emptyModel(config)
+		val trace = model.initNewTrace(LinkedList())
+		val actions = actions(nStates)
+		repeat(nActions) {
+			model.S_updateModel(actions[it % nStates], trace)
+			afterEach(trace)
+		}
+		return Pair(model, trace)
+	}
+
+	@Test
+	fun `trace dump time per exploration`() {
+		for (nActions in listOf(100, 500)) {
+			val previous = ModelConfig("JUnit-dump-rewrite", false, cfg(false))
+			Benchmark.measure("$nActions actions: rewrite trace after each action (previous)", warmup = 1, iterations = 3) {
+				explore(previous, nActions) { trace ->
+					trace.currentState.dump(previous)
+					runBlocking { trace.dump(previous) }
+				}
+			}
+			val appending = ModelConfig("JUnit-dump-append", false, cfg(true))
+			Benchmark.measure("$nActions actions: write-behind dumper", warmup = 1, iterations = 3) {
+				explore(appending, nActions).let { (model, _) ->
+					runBlocking { model.P_dumpModel(appending).join() }
+					Benchmark.report("$nActions actions: dumper metrics", model.dumpMetrics)
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.channels.ClosedSendChannelException
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.exploration.statemodel.loader.ModelParser
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.time.LocalDateTime
+import java.util.*
+
+class ModelDumperTest {
+	private fun config(name: String, onEachAction: Boolean = false, isLoad: Boolean = false) = ModelConfig(name, isLoad,
+			ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false",
+					"ModelProperties.imgDump.states" to "false", "ModelProperties.dump.onEachAction" to onEachAction.toString()))
+
+	/** a screen with a title and a button, screens with a different [i] are different states */
+	private fun screen(i: Int) = listOf(
+			WidgetData(text = "Screen $i", packageName = "org.droidmate.dump", enabled = true, visible = true, boundsWidth = 1080, boundsHeight = 200)
+					.apply { idHash = 1; xpath = "//title" },
+			WidgetData(text = "Next", packageName = "org.droidmate.dump", enabled = true, visible = true, clickable = true, isLeaf = true,
+					boundsY = 200, boundsWidth = 1080, boundsHeight = 200).apply { idHash = 2; xpath = "//next" })
+
+	private fun action(i: Int) = ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(),
+			guiSnapshot = SyntheticGui.response(screen(i), ByteArray(0)))
+
+	private fun explore(config: ModelConfig, nActions: Int): Pair<Model, Trace> {
+		val model = Model.emptyModel(config)
+		val trace = model.initNewTrace(LinkedList())
+		repeat(nActions) { model.S_updateModel(action(it % 3), trace) }
+		return Pair(model, trace)
+	}
+
+	@Test
+	fun `Actions are appended to the trace file, also after a sync closed it`() = runBlocking<Unit> {
+		val config = config("JUnit-dumper-append")
+		val (model, trace) = explore(config, 3)
+		val traceFile = File(config.traceFile(trace.id.toString()))
+		val dumper = ModelDumper(config)
+
+		dumper.dumpTrace(trace)
+		dumper.sync()
+		assertEquals(4, traceFile.readLines().size)  // header + one line per action
+
+		repeat(2) { model.S_updateModel(action(it), trace) }
+		dumper.dumpTrace(trace)
+		dumper.dumpTrace(trace)  // nothing new to append
+		dumper.close()
+		assertEquals(trace.getActions().map { it.actionString() }, traceFile.readLines().drop(1))
+	}
+
+	@Test
+	fun `Each state file is written once`() = runBlocking<Unit> {
+		val config = config("JUnit-dump-once")
+		val state = StateData(lazyOf(screen(0).map { Widget(it) }), topNodePackageName = "org.droidmate.dump")
+		val dumper = ModelDumper(config)
+
+		repeat(3) { dumper.dumpState(state) }
+		dumper.close()
+		assertEquals(1L, dumper.metrics.written)
+		assertEquals(3, File(config.widgetFile(state.stateId, state.isHomeScreen, state.topNodePackageName)).readLines().size)
+	}
+
+	@Test
+	fun `A state whose write failed is written on the next dump`() = runBlocking<Unit> {
+		val config = config("JUnit-dump-retry")
+		val state = StateData(lazyOf(screen(1).map { Widget(it) }), topNodePackageName = "org.droidmate.dump")
+		val stateFile = File(config.widgetFile(state.stateId, state.isHomeScreen, state.topNodePackageName))
+		stateFile.deleteRecursively()
+		assertTrue(stateFile.mkdirs())  // the state file cannot be created while a directory has its name
+		val dumper = ModelDumper(config)
+
+		dumper.dumpState(state)
+		dumper.sync()
+		assertTrue(stateFile.isDirectory)
+
+		assertTrue(stateFile.delete())
+		dumper.dumpState(state)
+		dumper.close()
+		assertEquals(3, stateFile.readLines().size)  // header + one line per widget
+	}
+
+	@Test
+	fun `Appended traces can be loaded even if the last line is incomplete`() {
+		val config = config("JUnit-dump-load", onEachAction = true)
+		val (model, trace) = explore(config, 6)
+		runBlocking { model.P_dumpModel(config).join() }
+
+		val traceFile = File(config.traceFile(trace.id.toString()))
+		assertEquals(7, traceFile.readLines().size)
+		assertEquals(0, model.dumpMetrics.queueDepth)
+
+		// simulate a crash while appending the next action
+		traceFile.appendText(trace.getActions().last().actionString().take(30))
+		val loaded = ModelParser.loadModel(config("JUnit-dump-load", onEachAction = true, isLoad = true), sequential = true)
+		assertEquals(trace.getActions().map { it.actionString() }, loaded.getPaths().single().getActions().map { it.actionString() })
+	}
+
+	@Test
+	fun `Closing writes the pending tasks and rejects new ones`() = runBlocking<Unit> {
+		val config = config("JUnit-dump-close")
+		val (_, trace) = explore(config, 2)
+		ModelDumper(config).close()  // nothing was enqueued, the consumer is not even started
+
+		val dumper = ModelDumper(config)
+		dumper.dumpTrace(trace)
+		dumper.close()
+		assertEquals(3, File(config.traceFile(trace.id.toString())).readLines().size)
+		assertEquals(0, dumper.metrics.queueDepth)
+
+		try {
+			dumper.dumpTrace(trace)
+			fail("a closed dumper must not accept new tasks")
+		} catch (e: ClosedSendChannelException) {
+		}
+	}
+}
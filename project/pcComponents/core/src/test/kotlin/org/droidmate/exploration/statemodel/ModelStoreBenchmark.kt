@@ -0,0 +1,70 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.exploration.statemodel.loader.ModelParser
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.time.LocalDateTime
+import java.util.*
+
+/** Time to load models with 1000 and 5000 states from the CSV files vs. the columnar [ModelStore]. */
+class ModelStoreBenchmark {
+	private val cfg = ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false",
+			"ModelProperties.imgDump.states" to "false", "ModelProperties.dump.storeFormat" to "columnar")
+
+	/** explore [nStates] different GUIs with [nActions] actions and dump the model (CSV files and model store) */
+	private fun dumpedModel(appName: String, nStates: Int, nActions: Int = nStates, widgets: Int = 30): Model {
+		val config = ModelConfig(appName, false, cfg)
+		val guis = (0 until nStates).map { i -> SyntheticGui.response(SyntheticGui.widgets(widgets, seed = i.toLong()), ByteArray(0)) }
+		return Model.emptyModel(config).also { model ->
+			val trace = model.initNewTrace(LinkedList())
+			repeat(nActions) { model.S_updateModel(ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(), guiSnapshot = guis[it % nStates]), trace) }
+			runBlocking { model.P_dumpModel(config).join() }
+		}
+	}
+
+	@Test
+	fun `model load time csv versus model store`() {
+		for (nStates in listOf(1000, 5000)) {
+			dumpedModel("JUnit-store-$nStates", nStates)
+			val config = ModelConfig("JUnit-store-$nStates", true, cfg)
+			Benchmark.measure("$nStates states: csv files (parallel parser)", warmup = 1, iterations = 3) {
+				ModelParser.loadModel(config, columnar = false)
+			}
+			Benchmark.measure("$nStates states: model store", warmup = 2, iterations = 10) {
+				ModelParser.loadModel(config, columnar = true)
+			}
+			Benchmark.measure("$nStates states: model store incl. all widgets", warmup = 2, iterations = 10) {
+				runBlocking { ModelParser.loadModel(config, columnar = true).getWidgets().size }
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.Click
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.exploration.actions.widgetTargets
+import org.droidmate.exploration.statemodel.loader.ModelParser
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Assert.*
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+import java.time.LocalDateTime
+import java.util.*
+
+class ModelStoreTest {
+	private val cfg = ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false",
+			"ModelProperties.imgDump.states" to "false", "ModelProperties.dump.storeFormat" to "columnar")
+
+	/** a list screen with [n] entries, each entry can be clicked */
+	private fun screen(n: Int) = (0..n).map { i ->
+		WidgetData(text = if (i == 0) "Entries" else "Entry $i", packageName = "org.droidmate.store", enabled = true, visible = true,
+				clickable = i > 0, isLeaf = true, boundsY = i * 100, boundsWidth = 1080, boundsHeight = 100)
+				.apply { idHash = i + 1; xpath = "//entry[$i]" }
+	}
+
+	/** click the last entry of the current screen, which results in a screen with [n] entries */
+	private fun Model.click(trace: Trace, n: Int) {
+		trace.currentState.widgets.lastOrNull { it.clickable }?.let { widgetTargets.add(it) }
+		S_updateModel(ActionResult(Click(540, 50, hasWidgetTarget = true), LocalDateTime.now(), LocalDateTime.now(),
+				guiSnapshot = SyntheticGui.response(screen(n), ByteArray(0))), trace)
+	}
+
+	private fun Model.content() = runBlocking {
+		Pair(getStates().map { s -> s.stateId to s.widgets.map { it.dataString(";") } }.toMap(),
+				getPaths().map { t -> t.getActions().map { it.actionString() } })
+	}
+
+	private fun load(appName: String) = ModelParser.loadModel(ModelConfig(appName, true, cfg), columnar = true)
+
+	@Test
+	fun `The store contains the same states, widgets and traces as the model`() {
+		val config = ModelConfig("JUnit-store", false, cfg)
+		val model = Model.emptyModel(config)
+		val trace = model.initNewTrace(LinkedList())
+		model.S_updateModel(ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(),
+				guiSnapshot = SyntheticGui.response(screen(1), ByteArray(0))), trace)
+		(2..4).forEach { model.click(trace, it) }
+		runBlocking { model.P_dumpModel(config).join() }
+
+		val loaded = load("JUnit-store")
+		assertEquals(model.content(), loaded.content())
+		assertEquals(runBlocking { model.getWidgets() }, runBlocking { loaded.getWidgets() })
+		assertEquals(3, loaded.getPaths().single().getActions().count { it.targetWidget != null })
+		// the widgets are created from the file, the state ids have to match the ones computed from them
+		runBlocking { loaded.getStates() }.forEach { s ->
+			assertEquals(s.stateId, StateData(lazyOf(s.widgets), topNodePackageName = s.topNodePackageName, isHomeScreen = s.isHomeScreen).stateId)
+		}
+	}
+
+	@Test
+	fun `Each dump appends only the new states and actions`() {
+		val config = ModelConfig("JUnit-store-append", false, cfg)
+		val model = Model.emptyModel(config)
+		val trace = model.initNewTrace(LinkedList())
+		(1..3).forEach { model.click(trace, it) }
+		runBlocking { model.P_dumpModel(config).join() }
+		val first = Files.readAllBytes(config.storeFile)
+
+		runBlocking { model.P_dumpModel(config).join() }
+		assertArrayEquals("nothing new, nothing is appended", first, Files.readAllBytes(config.storeFile))
+
+		model.click(trace, 1)  // a known state
+		model.click(trace, 5)
+		runBlocking { model.P_dumpModel(config).join() }
+		val second = Files.readAllBytes(config.storeFile)
+		assertArrayEquals(first, second.copyOf(first.size))
+
+		// the new actions refer to target widgets of states written by the first dump
+		assertEquals(model.content(), load("JUnit-store-append").content())
+		assertEquals(trace.getActions().map { it.targetWidget }, load("JUnit-store-append").getPaths().single().getActions().map { it.targetWidget })
+	}
+
+	@Test
+	fun `An incomplete last segment is ignored`() {
+		val config = ModelConfig("JUnit-store-crash", false, cfg)
+		val model = Model.emptyModel(config)
+		val trace = model.initNewTrace(LinkedList())
+		(1..3).forEach { model.click(trace, it) }
+		runBlocking { model.P_dumpModel(config).join() }
+		val firstDump = model.content()
+		val size = Files.size(config.storeFile)
+
+		model.click(trace, 4)
+		runBlocking { model.P_dumpModel(config).join() }
+		// simulate a crash while the second segment was appended
+		Files.newByteChannel(config.storeFile, StandardOpenOption.WRITE).use { it.truncate(Files.size(config.storeFile) - 10) }
+
+		assertTrue(Files.size(config.storeFile) > size)
+		assertEquals(firstDump, load("JUnit-store-crash").content())
+	}
+}
@@ -0,0 +1,67 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.awt.image.BufferedImage
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import javax.imageio.ImageIO
+
+class RasterHashTest {
+	/** 3x2 pixels, pixel (x, y) has the color r = 10*x, g = 10*y, b = x+y */
+	private fun image(type: Int) = BufferedImage(3, 2, type).apply {
+		for (y in 0 until 2) for (x in 0 until 3) setRGB(x, y, (0xFF shl 24) or (10 * x shl 16) or (10 * y shl 8) or (x + y))
+	}
+
+	@Test
+	fun `Hashes the samples of the image like Arrays hashCode of its data elements`() {
+		val img = image(BufferedImage.TYPE_3BYTE_BGR)
+
+		// samples in B, G, R order
+		assertEquals(byteArrayOf(0, 0, 0, 1, 0, 10, 2, 0, 20, 1, 10, 0, 2, 10, 10, 3, 10, 20).contentHashCode(), img.dataElementsHashCode())
+		assertEquals(byteArrayOf(2, 10, 10, 3, 10, 20).contentHashCode(), img.getSubimage(1, 1, 2, 1).dataElementsHashCode())
+		assertEquals(byteArrayOf(1, 0, 10, 2, 10, 10).contentHashCode(), img.getSubimage(1, 0, 1, 2).dataElementsHashCode())
+	}
+
+	@Test
+	fun `Hashes nested sub-images and other sample layouts in place`() {
+		val abgr = image(BufferedImage.TYPE_4BYTE_ABGR)
+		assertEquals(byteArrayOf(-1, 2, 10, 10, -1, 3, 10, 20).contentHashCode(), abgr.getSubimage(1, 0, 2, 2).getSubimage(0, 1, 2, 1).dataElementsHashCode())
+
+		val gray = BufferedImage(4, 4, BufferedImage.TYPE_BYTE_GRAY).apply { raster.setSamples(0, 0, 4, 4, 0, IntArray(16) { it }) }
+		assertEquals(byteArrayOf(5, 6, 9, 10).contentHashCode(), gray.getSubimage(1, 1, 2, 2).dataElementsHashCode())
+	}
+
+	@Test
+	fun `Hashes decoded PNG screenshots like their copied data elements`() {
+		val png = ByteArrayOutputStream().also { ImageIO.write(image(BufferedImage.TYPE_3BYTE_BGR), "png", it) }.toByteArray()
+		val sub = ImageIO.read(ByteArrayInputStream(png)).getSubimage(1, 0, 2, 2)
+
+		assertEquals((sub.raster.getDataElements(0, 0, 2, 2, null) as ByteArray).contentHashCode(), sub.dataElementsHashCode())
+	}
+}
@@ -0,0 +1,100 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.Unconfined
+import kotlinx.coroutines.experimental.async
+import kotlinx.coroutines.experimental.launch
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.deviceInterface.guimodel.toUUID
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.awt.image.BufferedImage
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.time.LocalDateTime
+import java.util.*
+import javax.imageio.ImageIO
+
+/**
+ * Time to build a state from a 1080x1920 screenshot with 300 and 1000 text-less widgets, with the previous sequential construction
+ * and with [WidgetPipeline].
+ */
+class StateConstructionBenchmark {
+	private val config = ModelConfig("JUnit", true,
+			ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false"))
+
+	private fun screenshot(): ByteArray {
+		val rnd = Random(42)
+		val img = BufferedImage(1080, 1920, BufferedImage.TYPE_3BYTE_BGR).apply {
+			for (y in 0 until height step 8) for (x in 0 until width step 8) setRGB(x, y, rnd.nextInt())
+		}
+		return ByteArrayOutputStream().also { ImageIO.write(img, "png", it) }.toByteArray()
+	}
+
+	/** text-less variants of the synthetic widgets (within the screen bounds), such that all of them are identified via their image */
+	private fun imageWidgets(size: Int): List<WidgetData> = SyntheticGui.widgets(size).map { w ->
+		w.copy(text = "", contentDesc = "", boundsWidth = Math.min(w.boundsWidth, 1080 - w.boundsX),
+				boundsHeight = Math.min(w.boundsHeight, 1920 - w.boundsY)).also { c ->
+			c.xpath = w.xpath
+			c.idHash = w.idHash
+			c.parentHash = w.parentHash
+		}
+	}
+
+	private fun copyingHash(img: BufferedImage) = (img.raster.getDataElements(0, 0, img.width, img.height, null) as ByteArray).contentHashCode()
+
+	@Test
+	fun `model update time for large screens`() {
+		for (size in listOf(300, 1000)) {
+			val pngBytes = screenshot()
+			val nodes = imageWidgets(size)
+
+			Benchmark.measure("$size widgets: previous (sequential, copying hash, quadratic parent scan)", iterations = 10) {
+				// mirrors the previous implementation: crop on the calling thread, hash a copy of the pixels on the common pool
+				val img = ImageIO.read(ByteArrayInputStream(pngBytes))
+				val widgets = nodes.map { w ->
+					async(Unconfined) {
+						val sub = if (w.visible && w.boundsWidth > 0 && w.boundsHeight > 0) img.getSubimage(w.boundsX, w.boundsY, w.boundsWidth, w.boundsHeight) else null
+						Widget(w, lazy { Pair(Widget.computeId(w).first, sub?.let { copyingHash(it).toUUID() }) }).also { launch { it.uid } }
+					}
+				}.map { runBlocking { it.await() } }
+				widgets.forEach { w -> w.parentId = widgets.firstOrNull { it.idHash == w.parentHash }?.id }
+				StateData(lazyOf(widgets)).stateId
+			}
+			val action = ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(),
+					guiSnapshot = SyntheticGui.response(nodes, pngBytes), screenshot = pngBytes)
+			Benchmark.measure("$size widgets: pipeline", iterations = 10) {
+				val widgets = WidgetPipeline.linkParents(action.getWidgets(config)) { false }
+				action.resultState(widgets).stateId
+			}
+		}
+	}
+}
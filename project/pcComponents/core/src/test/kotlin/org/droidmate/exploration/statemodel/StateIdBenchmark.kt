@@ -0,0 +1,68 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.util.*
+
+/** Time to compute the ids of states with 100 to 5000 widgets, folding one UUID per widget (previous) vs. a single pass. */
+class StateIdBenchmark {
+	private val appPackage = "org.droidmate.synthetic"
+
+	/** app widgets mixed with keyboard widgets of another package, about half of them with an image id */
+	private fun widgets(size: Int, seed: Long = 42): List<Widget> {
+		val rnd = Random(seed)
+		return (SyntheticGui.widgets(size - size / 5, packageName = appPackage, seed = seed) +
+				SyntheticGui.widgets(size / 5, packageName = "com.android.inputmethod", seed = seed))
+				.map { w: WidgetData -> Widget(w, lazyOf(Pair(UUID(rnd.nextLong(), rnd.nextLong()), if (rnd.nextBoolean()) UUID(rnd.nextLong(), rnd.nextLong()) else null))) }
+	}
+
+	/** the previous implementation: sort by the id strings and fold the ids with one UUID per widget */
+	private fun legacyIds(state: StateData, widgets: Collection<Widget>): Triple<UUID, UUID, UUID> {
+		val sorted = widgets.sortedBy { it.id.dumpString() }
+		val (uid, configId) = sorted.fold(Pair(emptyUUID, emptyUUID)) { (id, configId), w ->
+			Pair(if (state.isRelevantForId(w)) id + w.uid else id, configId + w.uid + w.id.second)
+		}
+		val iEdit = sorted.fold(emptyUUID) { id, w -> if (w.isEdit && state.isRelevantForId(w)) id + w.uid else id }
+		return Triple(uid, configId, iEdit)
+	}
+
+	@Test
+	fun `state id computation time`() {
+		for (size in listOf(100, 1000, 5000)) {
+			val widgets = widgets(size).onEach { it.id }  // widget ids are cached by the widgets themselves
+			Benchmark.measure("$size widgets: folded ids (previous)") {
+				legacyIds(StateData(lazyOf(widgets), topNodePackageName = appPackage), widgets)
+			}
+			Benchmark.measure("$size widgets: single pass ids") {
+				StateData(lazyOf(widgets), topNodePackageName = appPackage).let { Triple(it.uid, it.configId, it.iEditId) }
+			}
+		}
+	}
+}
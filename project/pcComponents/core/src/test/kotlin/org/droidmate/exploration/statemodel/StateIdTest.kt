@@ -0,0 +1,102 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.*
+
+class StateIdTest {
+	private val app = "org.droidmate.inbox"
+
+	private fun widget(uidBits: Long, data: WidgetData, imgId: UUID? = null) = Widget(data, lazyOf(Pair(UUID(uidBits, 0), imgId)))
+
+	// the uids only set single bits of the most significant half, such that the sum of the relevant ones is easy to read
+	private val title = widget(1, WidgetData(text = "Inbox", packageName = app))
+	private val refresh = widget(2, WidgetData(text = "", packageName = app, enabled = true, visible = true, clickable = true, isLeaf = true), UUID(100, 0))
+	private val container = widget(4, WidgetData(text = "", packageName = app, enabled = true, visible = true))
+	private val search = widget(8, WidgetData(text = "", packageName = app, enabled = true, visible = true, clickable = true, editable = true, isLeaf = true))
+	private val key = widget(16, WidgetData(text = "q", packageName = "com.android.inputmethod", enabled = true, visible = true, clickable = true, isLeaf = true))
+	private val inbox = listOf(title, refresh, container, search, key)
+
+	private fun state(widgets: List<Widget>, isHomeScreen: Boolean = false) = StateData(lazyOf(widgets), topNodePackageName = app, isHomeScreen = isHomeScreen)
+
+	private fun bits(id: UUID) = id.mostSignificantBits - emptyUUID.mostSignificantBits
+
+	@Test
+	fun `The uid sums the app widgets with content or which can be acted upon`() {
+		val ids = state(inbox)
+
+		assertEquals(1L + 2 + 8, bits(ids.uid))
+		assertEquals(listOf(title, refresh, search).fold(emptyUUID) { id, w -> id + w.uid }, ids.uid)
+		assertEquals(listOf(true, true, false, true, false), inbox.map { it.usedForStateId })
+	}
+
+	@Test
+	fun `The edit id only sums the relevant edit fields`() {
+		assertEquals(8L, bits(state(inbox).iEditId))
+		assertEquals(0L, bits(state(listOf(title, refresh)).iEditId))
+	}
+
+	@Test
+	fun `The config id includes all widgets and their image ids`() {
+		val otherImage = widget(2, refresh.properties, UUID(200, 0))
+		val original = state(inbox)
+		val rendered = state(listOf(title, otherImage, container, search, key))
+
+		assertEquals(original.uid, rendered.uid)
+		assertNotEquals(original.configId, rendered.configId)
+		assertNotEquals(original.configId, state(inbox - key).configId)
+	}
+
+	@Test
+	fun `The ids do not depend on the widget order`() {
+		val ordered = state(inbox)
+		val shuffled = state(inbox.shuffled(Random(42)))
+
+		assertEquals(ordered.stateId, shuffled.stateId)
+		assertEquals(ordered.iEditId, shuffled.iEditId)
+		assertEquals(ordered.widgets.map { it.id }, shuffled.widgets.map { it.id })
+	}
+
+	@Test
+	fun `No widget of the home screen is relevant for its uid`() {
+		val home = state(inbox, isHomeScreen = true)
+
+		assertEquals(emptyUUID, home.uid)
+		assertEquals(state(inbox).configId, home.configId)
+	}
+
+	@Test
+	fun `Permission dialogs are detected independent of the text case`() {
+		fun state(vararg texts: String) = StateData(lazyOf(texts.map { Widget(WidgetData(text = it), lazyOf(Pair(UUID.randomUUID(), null))) }))
+		assertTrue(state("Deny", "allow").isRequestRuntimePermissionDialogBox)
+		assertTrue(state("Don't allow", "OK").isRequestRuntimePermissionDialogBox)
+		assertFalse(state("Deny", "Cancel").isRequestRuntimePermissionDialogBox)
+		assertFalse(state("Allowed", "ok").isRequestRuntimePermissionDialogBox)
+	}
+}
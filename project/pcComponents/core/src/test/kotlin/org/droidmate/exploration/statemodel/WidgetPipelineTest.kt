@@ -0,0 +1,110 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel
+
+import com.natpryce.konfig.ConfigurationMap
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.junit.Assert.*
+import org.junit.Test
+import java.awt.Color
+import java.awt.image.BufferedImage
+
+class WidgetPipelineTest {
+	private val config = ModelConfig("JUnit", true,
+			ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false"))
+
+	/** a screen of 16x16 pixel tiles with distinct colors, such that each tile has its own image id */
+	private val screen = BufferedImage(320, 480, BufferedImage.TYPE_3BYTE_BGR).apply {
+		with(createGraphics()) {
+			for (y in 0 until 30) for (x in 0 until 20) {
+				color = Color(x * 12, y * 8, (x + y) * 5)
+				fillRect(x * 16, y * 16, 16, 16)
+			}
+			dispose()
+		}
+	}
+
+	private fun node(idHash: Int, parentHash: Int = 0, text: String = "", x: Int = 0, y: Int = 0) =
+			WidgetData(text = text, className = "android.widget.ImageView", packageName = "org.droidmate.pipeline", enabled = true,
+					visible = true, boundsX = x, boundsY = y, boundsWidth = 16, boundsHeight = 16).apply {
+				this.idHash = idHash
+				this.parentHash = parentHash
+				xpath = "//node[$idHash]"
+			}
+
+	/** enough text-less tiles for several batches of the worker pool */
+	private val tiles = (0 until 200).map { i -> node(i + 1, x = (i % 20) * 16, y = (i / 20) * 16) }
+
+	@Test
+	fun `Widgets are created in node order with the ids of their images`() {
+		val widgets = WidgetPipeline.createWidgets(tiles, lazyOf<BufferedImage?>(screen), config) { null }
+
+		assertEquals(tiles, widgets.map { it.properties })
+		widgets.forEach { w ->
+			val expected = Widget.computeId(w.properties, screen.getSubimage(w.properties.boundsX, w.properties.boundsY, 16, 16), true)
+			assertEquals(expected, w.uidImgId.value)
+			assertTrue(w.uidImgId.isInitialized())
+		}
+		assertEquals(tiles.size, widgets.map { it.imgId }.toSet().size)
+	}
+
+	@Test
+	fun `Reusable widgets are taken over without decoding the screenshot`() {
+		val previous = tiles.take(3).map { Widget(it) }
+		val notDecoded = lazy<BufferedImage?> { throw AssertionError("the screenshot must not be decoded if all widgets are reused") }
+
+		val widgets = WidgetPipeline.createWidgets(tiles.take(3), notDecoded, config) { node -> previous.first { it.properties === node } }
+
+		widgets.zip(previous).forEach { (w, p) -> assertSame(p, w) }
+	}
+
+	@Test
+	fun `Parents are linked via the device hashes of the nodes`() {
+		val nodes = listOf(node(1, text = "root"), node(2, 1, "list"), node(3, 2, "item"), node(4, 99, "orphan"))
+		val widgets = WidgetPipeline.linkParents(WidgetPipeline.createWidgets(nodes, lazyOf<BufferedImage?>(null), config) { null }) { false }
+
+		assertNull(widgets[0].parentId)
+		assertEquals(widgets[0].id, widgets[1].parentId)
+		assertEquals(widgets[1].id, widgets[2].parentId)
+		assertNull(widgets[3].parentId)
+	}
+
+	@Test
+	fun `Shared widgets are copied instead of modified when their parent changed`() {
+		val oldParent = Widget(node(1, text = "old parent"))
+		val newParent = Widget(node(1, text = "new parent"))
+		val child = Widget(node(2, 1, "child")).also { it.parentId = oldParent.id }
+
+		val linked = WidgetPipeline.linkParents(listOf(newParent, child)) { it === child }
+
+		assertEquals(oldParent.id, child.parentId)
+		assertNotSame(child, linked[1])
+		assertEquals(newParent.id, linked[1].parentId)
+		assertEquals(child.properties, linked[1].properties)
+		// an unchanged parent does not require a copy
+		assertSame(child, WidgetPipeline.linkParents(listOf(oldParent, child)) { true }[1])
+	}
+}
@@ -0,0 +1,121 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.exploration.statemodel.ModelConfig
+import org.droidmate.exploration.statemodel.StateData
+import org.droidmate.exploration.statemodel.Widget
+import org.droidmate.exploration.statemodel.WidgetPipeline
+import org.droidmate.exploration.strategy.AbstractStrategy
+import org.droidmate.test_tools.DroidmateTestCase
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.FixMethodOrder
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import org.junit.runners.MethodSorters
+import weka.core.Instance
+import weka.core.Instances
+import java.awt.image.BufferedImage
+import java.util.*
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@RunWith(JUnit4::class)
+class EventProbabilityMFTest : DroidmateTestCase() {
+	private val config = ModelConfig("JUnit", true,
+			ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false"))
+
+	/** replaces the pre-trained classifier by a deterministic function of the feature values and counts its invocations */
+	private class StubEventProbabilityMF : EventProbabilityMF("no classifier needed", "baseModelFile.arff", true) {
+		var predictions = 0
+
+		override fun predict(instance: Instance): Double {
+			predictions++
+			return (0 until 4).fold(0.0) { sum, i -> sum * 31 + instance.value(i) } % 100 / 100.0
+		}
+
+		/**
+		 * classifies each actionable widget on its own, with the nominal indices looked up in a copy of the ARFF header,
+		 * widgets with the same uid get the probability of the last one (as the probabilities are stored by uid)
+		 */
+		fun uncached(state: StateData): Map<Widget, Double> {
+			val header = Instances(wekaInstances, 0)
+			val byUid = HashMap<UUID, Double>()
+			state.actionableWidgets.forEach { byUid[it.uid] = predict(it.toWekaInstance(state, header)) }
+			return state.actionableWidgets.associate { it to byUid.getValue(it.uid) }
+		}
+
+		fun refinedType(w: Widget): String = w.getRefinedType()
+
+		/** the refinement without the cache of refined types */
+		fun uncachedRefinedType(className: String): String =
+				if (AbstractStrategy.VALID_WIDGETS.contains(className.toLowerCase())) className.toLowerCase()
+				else findClosestView(className.split(".").last().toLowerCase()).toLowerCase()
+	}
+
+	private fun state(nodes: List<WidgetData>): StateData =
+			StateData(lazyOf(WidgetPipeline.linkParents(WidgetPipeline.createWidgets(nodes, lazyOf<BufferedImage?>(null), config) { null }) { false }),
+					topNodePackageName = "org.droidmate.synthetic")
+
+	@Test
+	fun `cached classification is the same as classifying each widget`() {
+		val mf = StubEventProbabilityMF()
+		var nodes = SyntheticGui.widgets(300)
+		var prev = state(nodes)
+		var classified = 0
+		for (step in 1..5) {
+			// some widgets change their text, such that their uid changes while their features stay the same
+			nodes = nodes.mapIndexed { i, w -> if (i % 20 == step) SyntheticGui.changed(w, "step $step") else w }
+			val next = state(if (step % 2 == 0) nodes else SyntheticGui.widgets(300, seed = step.toLong()))
+			runBlocking { mf.onNewInteracted(UUID.randomUUID(), emptyList(), prev, next) }
+			classified += next.actionableWidgets.size
+
+			val cached = mf.getProbabilities(next)
+			val before = mf.predictions
+			expect(cached, mf.uncached(next))
+			mf.predictions = before
+			prev = next
+		}
+		// the feature vectors repeat across widgets and states, i.e. most of them are answered from the cache
+		expect(mf.predictions in 1 until classified / 2, true)
+	}
+
+	@Test
+	fun `cached refined types are the same as the refinement of each class name`() {
+		val mf = StubEventProbabilityMF()
+		val classNames = listOf("android.widget.Button", "android.widget.TextView", "android.support.v7.widget.RecyclerView",
+				"com.example.FancyImageButton", "com.example.views.MyLinearLayout", "Button", "org.app.x", "com.example.FancyImageButton")
+		classNames.forEach { className ->
+			val w = Widget(WidgetData(className = className), lazyOf(Pair(UUID.randomUUID(), null)))
+			// the second lookup is answered from the cache
+			expect(mf.refinedType(w), mf.uncachedRefinedType(className))
+			expect(mf.refinedType(w), mf.uncachedRefinedType(className))
+		}
+	}
+}
@@ -0,0 +1,86 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import kotlinx.coroutines.experimental.*
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.deviceInterface.guimodel.ExplorationAction
+import org.droidmate.exploration.statemodel.ActionData
+import org.droidmate.exploration.statemodel.StateData
+import org.droidmate.exploration.statemodel.Widget
+import org.droidmate.test_tools.Benchmark
+import org.junit.Test
+import java.util.*
+import kotlin.coroutines.experimental.CoroutineContext
+
+/** Time to notify ten features of each action through the [FeatureEventBus] compared to the previous coroutine fan-out. */
+class FeatureEventBusBenchmark {
+
+	private class RecordingMF : ModelFeature() {
+		override val context: CoroutineContext = newCoroutineContext(context = CoroutineName("RecordingMF"), parent = job)
+		val received: MutableList<Int> = Collections.synchronizedList(ArrayList())
+
+		override suspend fun onNewInteracted(traceId: UUID, actionIdx: Int, action: ExplorationAction, targetWidgets: List<Widget>,
+		                                     prevState: StateData, newState: StateData) {
+			received.add(actionIdx)
+		}
+
+		override suspend fun onNewAction(traceId: UUID, deferredAction: Deferred<ActionData>, prevState: StateData, newState: StateData) {
+			deferredAction.await()
+		}
+	}
+
+	private val traceId = UUID.randomUUID()
+	private val actionData = CompletableDeferred(ActionData.empty)
+
+	private fun event(i: Int) = ActionEvent(traceId, i, EmptyAction, emptyList(), StateData.emptyState, StateData.emptyState, actionData)
+
+	/** the previous notification, three launches and one async per feature and action */
+	private fun legacyNotify(features: List<ModelFeature>, i: Int) = features.forEach {
+		launch(it.context, parent = it.job) { it.onNewInteracted(traceId, emptyList(), StateData.emptyState, StateData.emptyState) }
+		launch(it.context, parent = it.job) { it.onNewInteracted(traceId, i, EmptyAction, emptyList(), StateData.emptyState, StateData.emptyState) }
+		val action = async(it.context) { actionData.await() }
+		launch(it.context, parent = it.job) { it.onNewAction(traceId, action, StateData.emptyState, StateData.emptyState) }
+	}
+
+	@Test
+	fun `notification time for ten features`() {
+		val nActions = 10000
+		Benchmark.measure("legacy fan-out, $nActions actions") {
+			val features = List(10) { RecordingMF() }
+			(0 until nActions).forEach { legacyNotify(features, it) }
+			runBlocking { features.forEach { it.await() } }
+		}
+		var bus = FeatureEventBus(emptyList())
+		Benchmark.measure("event bus, $nActions actions") {
+			val features = List(10) { RecordingMF() }
+			bus = FeatureEventBus(features)
+			(0 until nActions).forEach { bus.publishBlocking(event(it)) }
+			runBlocking { features.forEach { it.await() } }
+		}
+		Benchmark.report("event bus delivery", bus.metrics().first())
+	}
+}
@@ -0,0 +1,139 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import kotlinx.coroutines.experimental.*
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.deviceInterface.guimodel.ExplorationAction
+import org.droidmate.exploration.statemodel.ActionData
+import org.droidmate.exploration.statemodel.StateData
+import org.droidmate.exploration.statemodel.Widget
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.*
+import kotlin.coroutines.experimental.CoroutineContext
+
+class FeatureEventBusTest {
+
+	/** records the handler calls, the handler for action [failAt] throws and the one for [waitAt] waits for [gate] */
+	private class RecordingMF(private val failAt: Int = -1, private val waitAt: Int = -1) : ModelFeature() {
+		override val context: CoroutineContext = newCoroutineContext(context = CoroutineName("RecordingMF"), parent = job)
+		val calls: MutableList<String> = Collections.synchronizedList(ArrayList())
+		val gate = CompletableDeferred<Unit>()
+
+		val received: List<Int> get() = calls.filter { it.startsWith("interacted") }.map { it.substringAfter(' ').toInt() }
+
+		override suspend fun onNewInteracted(traceId: UUID, targetWidgets: List<Widget>, prevState: StateData, newState: StateData) {
+			calls.add("targets ${targetWidgets.size}")
+		}
+
+		override suspend fun onNewInteracted(traceId: UUID, actionIdx: Int, action: ExplorationAction, targetWidgets: List<Widget>,
+		                                     prevState: StateData, newState: StateData) {
+			if (actionIdx == waitAt) gate.await()
+			if (actionIdx == failAt) throw IllegalStateException("action $actionIdx")
+			calls.add("interacted $actionIdx")
+		}
+
+		override suspend fun onNewAction(traceId: UUID, deferredAction: Deferred<ActionData>, prevState: StateData, newState: StateData) {
+			deferredAction.await()
+			calls.add("action")
+		}
+	}
+
+	private val traceId = UUID.randomUUID()
+	private val actionData = CompletableDeferred(ActionData.empty)
+
+	private fun event(i: Int) = ActionEvent(traceId, i, EmptyAction, emptyList(), StateData.emptyState, StateData.emptyState, actionData)
+
+	@Test
+	fun `The handlers of each action are called one after another`() {
+		val feature = RecordingMF()
+		val bus = FeatureEventBus(listOf(feature))
+		bus.publishBlocking(event(0))
+		bus.publishBlocking(event(1))
+		runBlocking { feature.await() }
+
+		assertEquals(listOf("targets 0", "interacted 0", "action", "targets 0", "interacted 1", "action"), feature.calls)
+	}
+
+	@Test
+	fun `Each feature receives all events in order`() {
+		val features = List(3) { RecordingMF() }
+		val bus = FeatureEventBus(features, 4)
+		(0 until 20).forEach { bus.publishBlocking(event(it)) }
+		runBlocking { features.forEach { it.await() } }
+
+		features.forEach { assertEquals((0 until 20).toList(), it.received) }
+		assertEquals(List(3) { 20L }, bus.metrics().map { it.events })
+	}
+
+	@Test
+	fun `The publisher waits while the buffer of a feature is full`() = runBlocking<Unit> {
+		val blocked = RecordingMF(waitAt = 0)
+		val bus = FeatureEventBus(listOf(blocked), 2)
+		val publisher = launch(CommonPool) { (0 until 10).forEach { bus.publish(event(it)) } }
+
+		// at most the buffered events and the one in delivery can be published before the feature continues
+		withTimeout(5000) { while ((bus.metrics().firstOrNull()?.blockedPublications ?: 0L) == 0L) delay(1) }
+		assertFalse(publisher.isCompleted)
+		blocked.gate.complete(Unit)
+		publisher.join()
+		blocked.await()
+
+		assertEquals((0 until 10).toList(), blocked.received)
+	}
+
+	@Test
+	fun `A failing handler does not stop the delivery`() {
+		val failing = RecordingMF(failAt = 1)
+		val bus = FeatureEventBus(listOf(failing))
+		(0 until 4).forEach { bus.publishBlocking(event(it)) }
+		runBlocking { failing.await() }
+
+		assertEquals(listOf(0, 2, 3), failing.received)
+		assertEquals(4L, bus.metrics().single().events)
+	}
+
+	@Test
+	fun `Features added later receive the events published afterwards`() {
+		val first = RecordingMF()
+		val late = RecordingMF()
+		val features = mutableListOf<ModelFeature>(first)
+		val bus = FeatureEventBus(features)
+		bus.publishBlocking(event(0))
+		features.add(late)
+		bus.publishBlocking(event(1))
+		runBlocking { first.await(); late.await() }
+
+		assertEquals(listOf(0, 1), first.received)
+		assertEquals(listOf(1), late.received)
+	}
+
+	@Test(expected = IllegalArgumentException::class)
+	fun `The capacity has to be positive`() {
+		FeatureEventBus(emptyList(), 0)
+	}
+}
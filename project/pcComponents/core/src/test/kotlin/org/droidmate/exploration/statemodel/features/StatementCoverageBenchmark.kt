@@ -0,0 +1,122 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import org.droidmate.test_tools.Benchmark
+import org.junit.Test
+import java.io.PipedInputStream
+import java.io.PipedOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.text.SimpleDateFormat
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.concurrent.thread
+
+/** Time to load the statement index and to process a recorded logcat, compared to the previous per-poll parsing of the coverage. */
+class StatementCoverageBenchmark {
+
+	/** the previous per-poll parsing: regex split, [SimpleDateFormat] and uuid -> date maps */
+	private class LegacyCoverage(statements: List<String>) {
+		val dateFormat = SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault())
+		val instrumentationMap: Map<String, String> = statements.filterNot { it.contains("CoverageHelper") }
+				.associateBy { it.split("uuid=".toRegex(), 2).last() }
+		val executedStatementsMap: ConcurrentHashMap<String, Date> = ConcurrentHashMap()
+
+		fun process(output: String) {
+			output.lines().forEach { line ->
+				if (line.contains("[androcov]") && !line.contains("CoverageHelper")) {
+					val parts = line.split("uuid=".toRegex(), 2).toTypedArray()
+					val uuid = parts.last()
+					val logParts = parts[0].split(" ".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
+					val tms = dateFormat.parse(logParts[0] + " " + logParts[1])
+					if (!executedStatementsMap.containsKey(uuid) && instrumentationMap.containsKey(uuid))
+						executedStatementsMap[uuid] = tms
+				}
+			}
+		}
+	}
+
+	private fun statements(n: Int, rnd: Random) = List(n) { i ->
+		"<com.example.app.C${i % 97}: void m${i % 13}()> \$r$i = virtualinvoke \$r0.<java.lang.Object: int hashCode()>() " +
+				"uuid=${UUID(rnd.nextLong(), rnd.nextLong())}"
+	}
+
+	private fun uuidOf(statement: String) = statement.substringAfterLast("uuid=")
+
+	private val timestampFormat = SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.getDefault())
+
+	private fun logLine(time: Long, message: String) = "${timestampFormat.format(Date(time))}  4711  4711 I System.out: $message"
+
+	private fun coverageLine(time: Long, uuid: String) = logLine(time, "[androcov] statement: uuid=$uuid")
+
+	/** a recorded logcat, where most lines log already covered statements and some are unrelated app output */
+	private fun recordedLogcat(statements: List<String>, lines: Int, rnd: Random): List<String> {
+		val start = System.currentTimeMillis() - 3600_000
+		return List(lines) { i ->
+			when {
+				i % 50 == 0 -> "--------- beginning of main"
+				i % 10 == 0 -> logLine(start + i, "some app output $i")
+				else -> coverageLine(start + i, uuidOf(statements[(Math.abs(rnd.nextGaussian()) * statements.size / 4).toInt() % statements.size]))
+			}
+		}
+	}
+
+	private fun replay(file: Path, consumer: (java.io.InputStream) -> Unit) {
+		val input = PipedInputStream(1 shl 16)
+		val output = PipedOutputStream(input)
+		val writer = thread { output.use { Files.copy(file, it) } }
+		consumer(input)
+		writer.join()
+	}
+
+	@Test
+	fun `replay recorded logcat through a pipe`() {
+		val rnd = Random(13)
+		val statements = statements(50000, rnd)
+		val logcat = recordedLogcat(statements, 200000, rnd)
+		val file = Files.createTempFile("logcat", ".txt")
+		try {
+			Files.write(file, logcat)
+			Benchmark.report("recorded logcat", "${logcat.size} lines, ${Files.size(file)} bytes, ${statements.size} statements")
+
+			Benchmark.measure("${statements.size} statements: load index (previous map)", warmup = 1, iterations = 5) { LegacyCoverage(statements) }
+			Benchmark.measure("${statements.size} statements: load index", warmup = 1, iterations = 5) { StatementIndex.of(statements) }
+
+			Benchmark.measure("${logcat.size} lines: regex split, SimpleDateFormat and maps (previous)", warmup = 1, iterations = 5) {
+				val legacy = LegacyCoverage(statements)
+				replay(file) { legacy.process(it.bufferedReader().readText()) }
+			}
+			val index = StatementIndex.of(statements)
+			Benchmark.measure("${logcat.size} lines: streamed into bit set", warmup = 1, iterations = 5) {
+				val coverage = StatementCoverage(index)
+				replay(file) { coverage.consume(it) }
+			}
+		} finally {
+			Files.deleteIfExists(file)
+		}
+	}
+}
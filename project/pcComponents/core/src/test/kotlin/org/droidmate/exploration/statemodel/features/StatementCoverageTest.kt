@@ -0,0 +1,113 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.StringWriter
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.ZoneId
+import java.util.*
+
+class StatementCoverageTest {
+	private val uuids = listOf("3f2a9c4e-1b7d-4e8a-9c21-5d6e7f809a1b", "8b1c2d3e-4f5a-4b6c-8d7e-9f0a1b2c3d4e",
+			"c0ffee00-1234-4abc-9def-0123456789ab", "0a1b2c3d-4e5f-4a6b-8c7d-e8f9a0b1c2d3")
+	private val statements = listOf(
+			"<com.example.app.Main: void onCreate(android.os.Bundle)> \$r0 := @this: com.example.app.Main uuid=${uuids[0]}",
+			"<com.example.app.Main: void onCreate(android.os.Bundle)> return uuid=${uuids[1]}",
+			"<com.example.app.Sync: void run()> \$i0 = virtualinvoke \$r0.<java.lang.Object: int hashCode()>() uuid=${uuids[2]}",
+			"<com.example.app.Sync: void run()> return uuid=${uuids[3]}")
+	private val helper = "<org.droidmate.CoverageHelper: void log()> return uuid=9e8d7c6b-5a4f-4e3d-8c2b-1a0f9e8d7c6b"
+	private val index = StatementIndex.of(statements.take(2) + helper + statements.drop(2))
+
+	/** epoch millis of the logcat timestamp "06-01 12:00:[second].[millis]" */
+	private fun time(second: Int, millis: Int) =
+			LocalDateTime.of(LocalDate.now().year, 6, 1, 12, 0, second, millis * 1_000_000).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+
+	private fun covered(timestamp: String, statement: Int) = "$timestamp  4711  4711 I System.out: [androcov] statement: uuid=${uuids[statement]}"
+
+	@Test
+	fun `The index assigns dense ordinals to the instrumented statements`() {
+		assertEquals(4, index.size)
+		statements.forEachIndexed { i, s ->
+			assertEquals(s, index.statement(i))
+			assertEquals(uuids[i], index.uuid(i))
+			assertEquals(i, index.ordinalOf(covered("06-01 12:00:00.000", i)))
+		}
+		assertEquals(2, index.ordinalOf("uuid=${uuids[2].toUpperCase()}"))
+		assertEquals(-1, index.ordinalOf(helper))
+		assertEquals(-1, index.ordinalOf("uuid=${UUID(1, 2)}"))
+		assertEquals(-1, index.ordinalOf("uuid=not-a-uuid"))
+		assertEquals(-1, index.ordinalOf("no statement"))
+		assertEquals(0, StatementIndex.empty.size)
+		assertEquals(1.0, StatementCoverage(StatementIndex.empty).coverage, 0.0)
+	}
+
+	@Test
+	fun `Logcat timestamps are parsed in the current year`() {
+		assertEquals(time(1, 250), StatementCoverage.parseTimestamp(covered("06-01 12:00:01.250", 0)))
+		assertNull(StatementCoverage.parseTimestamp("[androcov] statement: uuid=${uuids[0]}"))
+		assertNull(StatementCoverage.parseTimestamp("13-01 12:00:01.250  4711  4711 I System.out: text"))
+		assertNull(StatementCoverage.parseTimestamp("06-01 12:0x:01.250  4711  4711 I System.out: text"))
+	}
+
+	@Test
+	fun `The coverage keeps the first time and the statements covered since the last delta`() {
+		val coverage = StatementCoverage(index) { 42L }
+
+		assertTrue(coverage.processLine(covered("06-01 12:00:01.000", 2)))
+		assertFalse(coverage.processLine(covered("06-01 12:00:02.000", 2)))
+		assertTrue(coverage.processLine("[androcov] statement: uuid=${uuids[0]}"))  // no timestamp, the clock is used
+		assertFalse(coverage.processLine("06-01 12:00:03.000  4711  4711 I System.out: uuid=${uuids[1]}"))  // no coverage marker
+		assertEquals(BitSet().apply { set(0); set(2) }, coverage.takeDelta())
+		assertTrue(coverage.takeDelta().isEmpty)
+
+		assertTrue(coverage.processLine(covered("06-01 12:00:04.000", 3)))
+		assertEquals(BitSet().apply { set(3) }, coverage.takeDelta())
+		assertEquals(3, coverage.coveredCount)
+		assertEquals(0.75, coverage.coverage, 0.0)
+		assertTrue(coverage.isCovered(2))
+		assertFalse(coverage.isCovered(1))
+		assertEquals(listOf(Pair(0, 42L), Pair(2, time(1, 0)), Pair(3, time(4, 0))), coverage.coveredStatements())
+	}
+
+	@Test
+	fun `A streamed logcat is archived and covers its statements`() {
+		val logcat = listOf(
+				"--------- beginning of main",
+				covered("06-01 12:00:00.100", 1),
+				"06-01 12:00:00.200  4711  4711 I System.out: some app output",
+				covered("06-01 12:00:00.300", 3),
+				covered("06-01 12:00:00.400", 1))
+		val coverage = StatementCoverage(index)
+		val archive = StringWriter()
+
+		assertEquals(5L, coverage.consume(logcat.joinToString("\n").byteInputStream(), archive))
+		assertEquals(logcat.joinToString("\n", postfix = "\n"), archive.toString())
+		assertEquals(listOf(Pair(1, time(0, 100)), Pair(3, time(0, 300))), coverage.coveredStatements())
+	}
+}
@@ -0,0 +1,68 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import org.droidmate.test_tools.Benchmark
+import org.junit.Test
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/** Update and query time of the [WidgetCounter] tables vs. the previous nested maps, for 5000 widgets in 500 states. */
+class WidgetCounterBenchmark {
+
+	/** the previous counter representation: widget.uid -> (state.uid -> count) */
+	private class LegacyCounter {
+		val wCnt = ConcurrentHashMap<UUID, MutableMap<UUID, Int>>()
+		fun inc(wId: UUID, sId: UUID) { wCnt.compute(wId) { _, m -> m?.incCnt(sId) ?: mutableMapOf(sId to 1) } }
+		fun dec(wId: UUID, sId: UUID) { wCnt.compute(wId) { _, m -> m?.decCnt(sId) ?: mutableMapOf(sId to 0) } }
+		fun count(wId: UUID, sId: UUID) = wCnt.getCounter(wId, sId)
+		fun total(wId: UUID) = wCnt.sumCounter(wId)
+	}
+
+	private fun ids(n: Int, rnd: Random) = List(n) { UUID(rnd.nextLong(), rnd.nextLong()) }
+
+	@Test
+	fun `update and query time`() {
+		val rnd = Random(7)
+		val widgets = ids(5000, rnd)
+		val states = ids(500, rnd)
+		val updates = List(100000) { Pair(widgets[rnd.nextInt(widgets.size)], states[rnd.nextInt(states.size)]) }
+
+		Benchmark.measure("${updates.size} updates: nested maps (previous)", warmup = 2, iterations = 10) {
+			LegacyCounter().apply { updates.forEach { (w, s) -> inc(w, s) } }
+		}
+		Benchmark.measure("${updates.size} updates: primitive counter", warmup = 2, iterations = 10) {
+			WidgetCounter().apply { updates.forEach { (w, s) -> inc(w, s) } }
+		}
+
+		val legacy = LegacyCounter().apply { updates.forEach { (w, s) -> inc(w, s) } }
+		val counter = WidgetCounter().apply { updates.forEach { (w, s) -> inc(w, s) } }
+		Benchmark.measure("${widgets.size} widget totals: nested maps (previous)") { widgets.sumBy { legacy.total(it) } }
+		Benchmark.measure("${widgets.size} widget totals: primitive counter") { counter.read { widgets.sumBy { total(it) } } }
+		Benchmark.measure("${updates.size} state counters: nested maps (previous)") { updates.sumBy { (w, s) -> legacy.count(w, s) } }
+		Benchmark.measure("${updates.size} state counters: primitive counter") { counter.read { updates.sumBy { (w, s) -> count(w, s) } } }
+	}
+}
@@ -0,0 +1,126 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features
+
+import kotlinx.coroutines.experimental.async
+import kotlinx.coroutines.experimental.launch
+import kotlinx.coroutines.experimental.runBlocking
+import kotlinx.coroutines.experimental.withTimeout
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.*
+import kotlin.concurrent.thread
+
+class WidgetCounterTest {
+	private val inbox = UUID(1, 1)
+	private val settings = UUID(1, 2)
+	private val send = UUID(2, 1)
+	private val back = UUID(2, 2)
+
+	@Test
+	fun `Counters are kept per state and summed per widget`() {
+		val counter = WidgetCounter()
+		counter.inc(send, inbox)
+		counter.inc(send, inbox)
+		counter.inc(send, settings)
+		counter.inc(back, settings)
+
+		counter.read {
+			assertEquals(2, count(send, inbox))
+			assertEquals(1, count(send, settings))
+			assertEquals(0, count(back, inbox))
+			assertEquals(3, total(send))
+			assertEquals(1, total(back))
+			assertEquals(2, numStates)
+		}
+		assertEquals(0, counter.total(UUID(3, 3)))
+		assertEquals(4L, counter.epoch)
+	}
+
+	@Test
+	fun `Counters never become negative but the pair is recorded`() {
+		val counter = WidgetCounter()
+		counter.inc(send, inbox)
+		counter.dec(send, inbox)
+		counter.dec(send, inbox)
+		counter.dec(back, settings)
+
+		assertEquals(0, counter.count(send, inbox))
+		assertEquals(0, counter.total(send))
+		val entries = ArrayList<Triple<UUID, UUID, Int>>()
+		counter.forEach { w, s, c -> entries.add(Triple(w, s, c)) }
+		assertEquals(setOf(Triple(send, inbox, 0), Triple(back, settings, 0)), entries.toSet())
+		assertEquals(2, counter.read { numStates })
+	}
+
+	@Test
+	fun `Increasing several widgets at once is a single update`() {
+		val counter = WidgetCounter()
+		counter.inc(listOf(send, back), inbox)
+
+		assertEquals(1L, counter.epoch)
+		assertEquals(1, counter.count(send, inbox))
+		assertEquals(1, counter.count(back, inbox))
+	}
+
+	@Test
+	fun `Counters are kept when the tables grow`() {
+		val counter = WidgetCounter()
+		val widgets = List(500) { UUID(7, it.toLong()) }
+		widgets.forEachIndexed { i, w -> repeat(i % 3 + 1) { counter.inc(w, if (i % 2 == 0) inbox else settings) } }
+
+		widgets.forEachIndexed { i, w ->
+			assertEquals(i % 3 + 1, counter.count(w, if (i % 2 == 0) inbox else settings))
+			assertEquals(i % 3 + 1, counter.total(w))
+		}
+	}
+
+	@Test
+	fun `Concurrent updates are not lost and reads see whole updates`() {
+		val counter = WidgetCounter()
+		val widgets = List(1000) { UUID(9, it.toLong()) }
+		val writers = List(4) { t ->
+			thread { widgets.forEachIndexed { i, w -> counter.inc(listOf(w, widgets[(i + t + 1) % widgets.size]), inbox) } }
+		}
+		while (writers.any { it.isAlive }) {
+			// every update increases two counters, therefore a consistent read always sees an even sum
+			assertEquals(0, counter.read { widgets.sumBy { total(it) } } % 2)
+		}
+		assertEquals(4L * widgets.size, counter.epoch)
+		assertEquals(8 * widgets.size, widgets.sumBy { counter.total(it) })
+	}
+
+	@Test
+	fun `awaitEpoch waits for the requested update only`() = runBlocking<Unit> {
+		val counter = WidgetCounter()
+		counter.inc(send, inbox)
+		withTimeout(1000) { counter.awaitEpoch(1) }  // already applied
+
+		val waiting = async { counter.awaitEpoch(3); counter.total(send) }
+		launch { counter.inc(send, inbox); counter.inc(send, inbox) }
+		assertTrue(withTimeout(1000) { waiting.await() } >= 3)
+	}
+}
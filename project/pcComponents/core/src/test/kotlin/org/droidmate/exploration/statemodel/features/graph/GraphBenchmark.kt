@@ -0,0 +1,68 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features.graph
+
+import org.droidmate.test_tools.Benchmark
+import org.junit.Test
+import java.util.*
+
+/** Time of the indexed [Graph] lookups and the cached shortest paths on a random graph with 10k vertices and 200k edges. */
+class GraphBenchmark {
+
+	/** random graph over the vertices 0 until [vertices], labels are taken from a small alphabet such that labels repeat per source */
+	private fun randomGraph(vertices: Int, edges: Int, seed: Long = 42): Graph<Int, Int> {
+		val rnd = Random(seed)
+		return Graph<Int, Int>(0).apply {
+			repeat(edges) { add(rnd.nextInt(vertices), rnd.nextInt(vertices), rnd.nextInt(16)) }
+		}
+	}
+
+	@Test
+	fun `graph operations at 10k vertices and 200k edges`() {
+		val vertices = 10000
+		val edges = 200000
+		Benchmark.measure("build $vertices vertices, $edges edges", warmup = 2, iterations = 5) { randomGraph(vertices, edges) }
+
+		val graph = randomGraph(vertices, edges)
+		val rnd = Random(1)
+		val queries = IntArray(10000) { rnd.nextInt(vertices) }
+		val sample = graph.edges().shuffled(rnd).take(queries.size)
+		Benchmark.report("distinct edges", graph.edges().size)
+
+		Benchmark.measure("${queries.size} vertex lookups") { queries.count { graph.getVertex(it) != null } }
+		Benchmark.measure("${queries.size} edge lookups by order") { queries.count { graph.edge(it * (edges / vertices)) != null } }
+		Benchmark.measure("${sample.size} edge lookups by label") { sample.count { graph.edge(it.source.data, it.destination?.data, it.label) != null } }
+		Benchmark.measure("${queries.size} ancestor queries") { queries.sumBy { graph.ancestors(it).size } }
+		var next = 0  // rotating through more sources than cached, such that each query builds a new path tree
+		Benchmark.measure("shortest path from an uncached source") { graph.shortestPath(queries[next++ % queries.size], 1) }
+		graph.isReachable(0, 1)
+		Benchmark.measure("${queries.size} cached shortest paths") { queries.count { graph.shortestPath(0, it) != null } }
+		Benchmark.measure("1000 insertions with cached path tree") {
+			repeat(1000) { graph.add(rnd.nextInt(vertices), rnd.nextInt(vertices), rnd.nextInt(16)) }
+			graph.isReachable(0, 1)
+		}
+	}
+}
@@ -0,0 +1,113 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.statemodel.features.graph
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class GraphTest {
+	/** home -open-> list -tap-> detail -back-> list, list -menu-> settings */
+	private fun app() = Graph<String, String>("home").apply {
+		add("home", "list", "open")
+		add("list", "detail", "tap")
+		add("detail", "list", "back")
+		add("list", "settings", "menu")
+	}
+
+	private fun List<Edge<String, String>>?.labels() = this?.map { it.label }
+
+	@Test
+	fun `Repeated edges are counted and can be found by each of their orders`() {
+		val graph = app()
+		val open = graph.add("home", "list", "open")
+
+		assertEquals(listOf(0, 4), open.order)
+		assertEquals(2, open.count)
+		assertSame(open, graph.edge(0))
+		assertSame(open, graph.edge(4))
+		assertEquals(5, graph.numEdges)
+		assertEquals(4, graph.edges().size)
+		assertSame(open, graph.add("home", "list", "open", updateIfExists = false))
+		assertEquals(5, graph.numEdges)
+	}
+
+	@Test
+	fun `Edges are found by source, destination and label`() {
+		val graph = app()
+
+		assertEquals("tap", graph.edge("list", "detail", "tap")?.label)
+		assertNull(graph.edge("list", "detail", "menu"))
+		assertNull(graph.edge("detail", "home", "back"))
+		assertEquals(listOf("tap", "menu"), graph.edges("list").labels())
+		assertEquals(listOf("menu"), graph.edges("list", "settings").labels())
+		assertEquals(emptyList<Edge<String, String>>(), graph.edges("unknown"))
+	}
+
+	@Test
+	fun `Ancestors are the distinct sources of the incoming edges`() {
+		val graph = app()
+		graph.add("home", "list", "swipe")
+		graph.add("home", null, "pending")  // edges without destination are no incoming edges
+
+		assertEquals(listOf("home", "detail"), graph.ancestors("list").map { it.data })
+		assertEquals(emptyList<Vertex<String>>(), graph.ancestors("home"))
+	}
+
+	@Test
+	fun `Shortest paths are updated by later insertions`() {
+		val graph = app()
+		assertEquals(listOf("open", "tap"), graph.shortestPath("home", "detail").labels())
+		assertTrue(graph.isReachable("home", "settings"))
+		assertFalse(graph.isReachable("settings", "home"))
+		assertNull(graph.shortestPath("settings", "home"))
+		assertEquals(emptyList<Edge<String, String>>(), graph.shortestPath("list", "list"))
+
+		// the path tree of home is cached by the queries above and has to reflect the new edges
+		graph.add("home", "detail", "notification")
+		graph.add("settings", "home", "back")
+		assertEquals(listOf("notification"), graph.shortestPath("home", "detail").labels())
+		assertEquals(listOf("menu", "back"), graph.shortestPath("list", "home").labels())
+	}
+
+	@Test
+	fun `Updating an edge moves it in all indexes`() {
+		val graph = Graph<Int, Int>(0)
+		val placeholder = graph.add(0, null, 1, updateIfExists = false)
+		graph.add(2, 1, 5)
+		assertEquals(listOf(2), graph.ancestors(1).map { it.data })
+
+		assertSame(placeholder, graph.update(0, null, 1, 1, 7))
+		assertNull(graph.edge(0, null, 1))
+		assertSame(placeholder, graph.edge(0, 1, 7))
+		assertEquals(listOf(2, 0), graph.ancestors(1).map { it.data })
+		assertEquals(listOf(placeholder), graph.shortestPath(0, 1))
+
+		graph.update(0, 1, 3, 7, 7)
+		assertEquals(listOf(2), graph.ancestors(1).map { it.data })
+		assertFalse(graph.isReachable(0, 1))
+		assertTrue(graph.isReachable(0, 3))
+	}
+}
@@ -0,0 +1,50 @@
+package org.droidmate.exploration.statemodel.loader
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.exploration.statemodel.*
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.File
+import java.time.LocalDateTime
+import java.util.*
+
+class ContentReaderTest {
+	private val cfg = ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false",
+			"ModelProperties.imgDump.states" to "false")
+
+	private fun screen(title: String, packageName: String) = listOf(
+			WidgetData(text = title, packageName = packageName, enabled = true, visible = true, boundsWidth = 1080, boundsHeight = 200)
+					.apply { idHash = 1; xpath = "//title" })
+
+	@Test
+	fun `State files are found by their state id`() {
+		val config = ModelConfig("JUnit-content", false, cfg)
+		val model = Model.emptyModel(config)
+		val trace = model.initNewTrace(LinkedList())
+		listOf("Inbox" to "org.droidmate.mail", "Sent" to "org.droidmate.mail", "Settings" to "com.android.settings").forEach { (title, pkg) ->
+			model.S_updateModel(ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(),
+					guiSnapshot = SyntheticGui.response(screen(title, pkg), ByteArray(0))), trace)
+		}
+		runBlocking { model.P_dumpModel(config).join() }
+
+		val loadConfig = ModelConfig("JUnit-content", true, cfg)
+		val reader = ContentReader(loadConfig)
+		runBlocking { model.getStates() }.forEach { s ->
+			val (path, isHomeScreen, topPackage) = reader.getStateFile(s.stateId)
+			assertEquals(File(loadConfig.widgetFile(s.stateId, s.isHomeScreen, s.topNodePackageName)), path.toFile())
+			assertEquals(s.isHomeScreen, isHomeScreen)
+			assertEquals(s.topNodePackageName, topPackage)
+		}
+		val loaded = ModelParser.loadModel(loadConfig, sequential = true)
+		assertEquals(runBlocking { model.getStates().map { it.stateId }.toSet() }, runBlocking { loaded.getStates().map { it.stateId }.toSet() })
+	}
+
+	@Test(expected = NoSuchElementException::class)
+	fun `A missing state file is reported`() {
+		ContentReader(ModelConfig("JUnit-content-missing", false, cfg)).getStateFile(emptyId)
+	}
+}
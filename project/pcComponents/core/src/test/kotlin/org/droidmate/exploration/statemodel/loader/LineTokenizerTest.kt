@@ -0,0 +1,50 @@
+package org.droidmate.exploration.statemodel.loader
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.file.Files
+
+class LineTokenizerTest {
+	private val file = Files.createTempFile("tokenizer", ".csv")
+
+	@After
+	fun deleteFile() = Files.delete(file)
+
+	@Test
+	fun `Fields are the same as split and trim`() {
+		listOf("a;b;c", " a ; b\t;c ", ";;", "", "x", "a;", ";a", "text with spaces ; 1 ; null").forEach { line ->
+			assertEquals(line.split(";").map { it.trim() }, LineTokenizer.fields(line, 0, line.length, ";"))
+			assertEquals(line.split("::").map { it.trim() }, LineTokenizer.fields(line, 0, line.length, "::"))
+		}
+	}
+
+	@Test
+	fun `Lines are split at any line break and the header lines are skipped`() {
+		file.toFile().writeText("h1;h2\r\na; b\n\nc;d\re;f")
+
+		assertEquals(listOf(listOf("a", "b"), listOf(""), listOf("c", "d"), listOf("e", "f")), LineTokenizer.readFields(file, ";", 1, false))
+		assertEquals(listOf(listOf("h1", "h2")), LineTokenizer.readFields(file, ";", 0, false).take(1))
+		assertEquals(emptyList<List<String>>(), LineTokenizer.readFields(file, ";", 10, false))
+	}
+
+	@Test
+	fun `An incomplete last line can be dropped`() {
+		file.toFile().writeText("h\na;b\nc;")
+		assertEquals(listOf(listOf("a", "b")), LineTokenizer.readFields(file, ";", 1, true))
+
+		file.toFile().writeText("h\na;b\r\n")
+		assertEquals(listOf(listOf("a", "b")), LineTokenizer.readFields(file, ";", 1, true))
+	}
+
+	@Test
+	fun `Lines crossing the buffer boundary or longer than the buffer are tokenized like any other`() {
+		val content = "header;1\r\n" + "short;x\r\n" + "a much longer line ; than the buffer\n" + "\r\n" + "last;line"
+		file.toFile().writeText(content)
+		val expected = LineTokenizer.readFields(file, ";", 1, false)
+
+		assertEquals(content.lines().drop(1).map { line -> line.split(";").map { it.trim() } }, expected)
+		// e.g. with 4 chars the '\r' and '\n' of a line break are read separately
+		for (size in 1..12) assertEquals("buffer of $size chars", expected, LineTokenizer.readFields(file, ";", 1, false, CharArray(size)))
+	}
+}
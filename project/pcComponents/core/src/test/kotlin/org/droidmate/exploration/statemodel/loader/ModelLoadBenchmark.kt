@@ -0,0 +1,62 @@
+package org.droidmate.exploration.statemodel.loader
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.exploration.statemodel.*
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.time.LocalDateTime
+import java.util.*
+import kotlin.streams.toList
+
+/** Time to look up and tokenize the state files of models with 100 to 10000 states, and to load the complete model. */
+class ModelLoadBenchmark {
+	private val cfg = ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false",
+			"ModelProperties.imgDump.states" to "false")
+
+	/** explore [nStates] different GUIs and dump them, such that the model directory contains [nStates] state files */
+	private fun dumpModel(appName: String, nStates: Int, widgets: Int = 20): Model {
+		val config = ModelConfig(appName, false, cfg)
+		return Model.emptyModel(config).also { model ->
+			val trace = model.initNewTrace(LinkedList())
+			repeat(nStates) { i ->
+				val gui = SyntheticGui.response(SyntheticGui.widgets(widgets, seed = i.toLong()), ByteArray(0))
+				model.S_updateModel(ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(), guiSnapshot = gui), trace)
+			}
+			runBlocking { model.P_dumpModel(config).join() }
+		}
+	}
+
+	@Test
+	fun `model load time by number of states`() {
+		for (nStates in listOf(100, 1000, 10000)) {
+			dumpModel("JUnit-load-$nStates", nStates)
+			val config = ModelConfig("JUnit-load-$nStates", true, cfg)
+			val ids = runBlocking { ModelParser.loadModel(config).getStates().map { it.stateId } }
+
+			Benchmark.measure("$nStates states: directory scan per state (previous)", warmup = 1, iterations = 3) {
+				ids.forEach { id ->
+					Files.list(Paths.get(config.stateDst.toUri())).use { it.toList() }
+							.first { it.fileName.toString().startsWith(id.dumpString() + ModelConfig.defaultWidgetSuffix) }
+				}
+			}
+			Benchmark.measure("$nStates states: indexed lookup", warmup = 1, iterations = 3) {
+				ContentReader(config).let { reader -> ids.forEach { reader.getStateFile(it) } }
+			}
+			val files = ContentReader(config).let { reader -> ids.map { reader.getStateFile(it).first } }
+			Benchmark.measure("$nStates states: read lines and split (previous)", warmup = 1, iterations = 3) {
+				files.forEach { f -> f.toFile().readLines().drop(1).map { line -> line.split(";").map { it.trim() } } }
+			}
+			Benchmark.measure("$nStates states: tokenize through a fixed buffer", warmup = 1, iterations = 3) {
+				files.forEach { f -> LineTokenizer.readFields(f, ";", 1, false) }
+			}
+			Benchmark.measure("$nStates states: complete model load", warmup = 1, iterations = 3) {
+				ModelParser.loadModel(config)
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.strategy.playback
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.exploration.statemodel.*
+import org.droidmate.exploration.statemodel.loader.ModelParser
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.time.LocalDateTime
+import java.util.*
+
+/** Replay time of recorded traces with the [ReplayPlan] compared to the previous trace copies and linear widget searches of [Playback]. */
+class ReplayPlanBenchmark {
+	private val cfg = ConfigurationMap("Output.outputDir" to "./out/test", "ModelProperties.imgDump.widgets" to "false",
+			"ModelProperties.imgDump.states" to "false")
+
+	/** record [nTraces] traces of [nActions] actions over [nStates] GUIs and load the model from its dump, like a playback would */
+	private fun recordedModel(appName: String, nStates: Int, nTraces: Int, nActions: Int): Model {
+		val config = ModelConfig(appName, false, cfg)
+		val guis = (0 until nStates).map { i -> SyntheticGui.response(SyntheticGui.widgets(100, seed = i.toLong() % 50), ByteArray(0)) }
+		Model.emptyModel(config).also { model ->
+			repeat(nTraces) { t ->
+				val trace = model.initNewTrace(LinkedList())
+				repeat(nActions) {
+					model.S_updateModel(ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(),
+							guiSnapshot = guis[(t * 31 + it * 7) % nStates]), trace)
+				}
+			}
+			runBlocking { model.P_dumpModel(config).join() }
+		}
+		return ModelParser.loadModel(ModelConfig(appName, true, cfg))
+	}
+
+	/** the previous matching of Playback, scanning all widgets of the state */
+	private fun Widget?.legacyCanExecute(state: StateData): Pair<Double, Widget?> = when {
+		this == null -> Pair(0.0, null)
+		state.widgets.any { it.id == this.id } -> Pair(1.0, this)
+		else -> state.widgets.find { it.canBeActedUpon && it.uid == this.uid }?.let { Pair(0.6, it) }
+				?: state.widgets.find { it.canBeActedUpon && it.propertyId == this.propertyId }?.let { Pair(0.5, it) }
+				?: Pair(0.0, null)
+	}
+
+	/** the widget a replayed action targets, the synthetic traces have no targets, therefore we take one of the result state */
+	private fun targetOf(state: StateData?, i: Int): Widget? = state?.actionableWidgets?.let { if (it.isEmpty()) null else it[i % it.size] }
+
+	@Test
+	fun `replay throughput`() {
+		for (nActions in listOf(1000, 5000)) {
+			val model = recordedModel("JUnit-replay-$nActions", 500, 1, nActions)
+			val trace = model.getPaths().first()
+
+			// each replayed action looks up its recorded action, the state it should lead to and matches the next target there
+			Benchmark.measure("$nActions actions: trace copies and linear search (previous)", warmup = 1, iterations = 3) {
+				for (i in 0 until trace.size - 1) {
+					val action = trace.getActions()[i]
+					val state = runBlocking { model.getState(action.resState) }!!
+					targetOf(runBlocking { model.getState(trace.getActions()[i + 1].resState) }, i).legacyCanExecute(state)
+				}
+			}
+			Benchmark.measure("$nActions actions: replay plan and matchers", warmup = 1, iterations = 3) {
+				val plan = ReplayPlan(model)
+				val actions = plan[0]
+				for (i in 0 until actions.size - 1) {
+					val state = plan.getState(actions[i].resState)!!
+					plan.matcher(state).canExecute(targetOf(plan.getState(actions[i + 1].resState), i))
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.strategy.playback
+
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.exploration.statemodel.*
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Assert.*
+import org.junit.Test
+import java.time.LocalDateTime
+import java.util.*
+
+class ReplayPlanTest {
+	private val app = "org.droidmate.mail"
+
+	private fun widget(uid: Long, data: WidgetData) = Widget(data, lazyOf(Pair(UUID(uid, 0), null)))
+
+	private fun button(text: String, y: Int) = WidgetData(text = text, packageName = app, enabled = true, visible = true, clickable = true,
+			isLeaf = true, boundsY = y, boundsWidth = 200, boundsHeight = 100)
+
+	private val title = widget(1, WidgetData(text = "Compose", packageName = app, enabled = true, visible = true, isLeaf = true))
+	private val send = widget(2, button("Send", 0))
+	private val attach = widget(4, button("Attach", 100))
+	private val body = widget(8, WidgetData(text = "", packageName = app, enabled = true, visible = true, clickable = true, editable = true,
+			isLeaf = true, boundsY = 200))
+	private val compose = StateData(lazyOf(listOf(title, send, attach, body)), topNodePackageName = app)
+
+	private fun matcher(vararg widgets: Widget) = StateMatcher(StateData(lazyOf(widgets.toList()), topNodePackageName = app))
+
+	@Test
+	fun `A recorded widget of the state is a perfect match`() {
+		val m = StateMatcher(compose)
+
+		assertEquals(Pair(1.0, send), m.canExecute(send))
+		assertEquals(Pair(1.0, title), m.canExecute(title))  // like before, the perfect match does not require an actionable widget
+		assertEquals(Pair(0.0, null), m.canExecute(null))
+	}
+
+	@Test
+	fun `Widgets are matched by uid before their properties`() {
+		val m = StateMatcher(compose)
+		val movedSend = widget(2, button("Send", 300))
+		val sameAttach = widget(16, attach.properties)
+
+		assertEquals(Pair(0.6, send), m.canExecute(movedSend))
+		assertEquals(Pair(0.5, attach), m.canExecute(sameAttach))
+		assertEquals(Pair(0.6, send), m.canExecute(widget(2, attach.properties)))
+		assertEquals(Pair(0.0, null), m.canExecute(widget(32, button("Discard", 0))))
+	}
+
+	@Test
+	fun `Only actionable widgets match by uid or properties`() {
+		val m = StateMatcher(compose)
+		val movedTitle = widget(1, WidgetData(text = "Compose", packageName = app, enabled = true, visible = true, isLeaf = true, boundsY = 50))
+
+		assertEquals(Pair(0.0, null), m.canExecute(movedTitle))
+		assertFalse(m.hasActable(title.uid))
+		assertTrue(m.hasActable(send.uid))
+		assertTrue(m.hasActable(attach.propertyId))
+		assertTrue(m.hasActable())
+		assertFalse(matcher(title).hasActable())
+	}
+
+	@Test
+	fun `The first actionable widget with the uid is chosen`() {
+		val other = widget(2, button("Send", 400))
+		val state = StateData(lazyOf(listOf(title, other, send)), topNodePackageName = app)
+		val first = state.widgets.first { it.uid == send.uid }
+
+		assertEquals(Pair(0.6, first), StateMatcher(state).canExecute(widget(2, button("Send", 800))))
+	}
+
+	@Test
+	fun `The similarity is the share of relevant widgets found in the other state`() {
+		val m = StateMatcher(compose)
+		val sent = matcher(title, widget(2, button("Send", 300)))
+
+		assertEquals(1.0, m.similarity(m), 0.0)
+		assertEquals(0.5, m.similarity(sent), 0.0)  // title and send out of title, send, attach and body
+		assertEquals(1.0, sent.similarity(m), 0.0)
+		assertEquals(0.0, m.similarity(matcher(widget(32, button("Discard", 0)))), 0.0)
+	}
+
+	@Test
+	fun `The plan contains the actions of all traces and caches the matchers`() {
+		val config = ModelConfig("JUnit-replay-plan", false, ConfigurationMap("Output.outputDir" to "./out/test",
+				"ModelProperties.imgDump.widgets" to "false", "ModelProperties.imgDump.states" to "false"))
+		val screens = listOf(listOf(button("Inbox", 0)), listOf(button("Send", 0), button("Attach", 100)))
+		val model = Model.emptyModel(config)
+		repeat(2) { t ->
+			val trace = model.initNewTrace(LinkedList())
+			(0..t + 1).forEach { i ->
+				model.S_updateModel(ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(),
+						guiSnapshot = SyntheticGui.response(screens[i % 2], ByteArray(0))), trace)
+			}
+		}
+		val plan = ReplayPlan(model)
+
+		assertEquals(2, plan.size)
+		assertEquals(model.getPaths().map { it.getActions() }, listOf(plan[0], plan[1]))
+		assertEquals(listOf(2, 3), listOf(plan[0].size, plan[1].size))
+
+		val state = plan.getState(plan[1].last().resState)!!
+		assertEquals(runBlocking { model.getState(state.stateId) }, state)
+		assertSame(plan.matcher(state), plan.matcher(state))
+		assertSame(plan.matcher(state), plan.matcher(plan.getState(plan[0].first().resState)!!))  // the same screen was recorded
+		assertNull(plan.getState(ConcreteId(UUID(0, 0), UUID(0, 0))))
+	}
+}
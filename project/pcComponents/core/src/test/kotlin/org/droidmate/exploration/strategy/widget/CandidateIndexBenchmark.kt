@@ -0,0 +1,124 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.strategy.widget
+
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.exploration.statemodel.StateData
+import org.droidmate.exploration.statemodel.Widget
+import org.droidmate.exploration.statemodel.features.ActionCounterMF
+import org.droidmate.exploration.statemodel.features.BlackListMF
+import org.droidmate.exploration.statemodel.features.CrashListMF
+import org.droidmate.exploration.statemodel.features.listOfSmallest
+import org.droidmate.test_tools.Benchmark
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Test
+import java.util.*
+
+/** Decision latency of the [CandidateIndex] compared to the previous per widget counter queries of [RandomWidget]. */
+class CandidateIndexBenchmark {
+	private val appPackage = "org.droidmate.synthetic"
+
+	private class Features {
+		val crashList = CrashListMF()
+		val blackList = BlackListMF()
+		val counter = ActionCounterMF()
+		val index get() = CandidateIndex("org.droidmate.synthetic", crashList, blackList, counter)
+	}
+
+	/** app widgets and keyboard widgets of another package, every seventh state shares the widget uids to have overall counts */
+	private fun states(n: Int, size: Int): List<StateData> = List(n) { i ->
+		val widgets = (SyntheticGui.widgets(size, packageName = appPackage, seed = i.toLong()) +
+				SyntheticGui.widgets(size / 5, packageName = "com.android.inputmethod", seed = i.toLong()))
+				.mapIndexed { idx, w -> Widget(w, lazyOf(Pair(UUID((i % 7).toLong(), idx.toLong()), null))) }
+		StateData(lazyOf(widgets), topNodePackageName = appPackage)
+	}
+
+	/** crashes, blacklist entries and interactions on random targets of the [states] */
+	private fun explore(f: Features, states: List<StateData>, actions: Int, rnd: Random) = runBlocking {
+		repeat(actions) {
+			val s = states[rnd.nextInt(states.size)]
+			val targets = s.distinctTargets
+			if (targets.isEmpty()) return@repeat
+			val w = targets[rnd.nextInt(targets.size)]
+			when (rnd.nextInt(20)) {
+				0 -> f.crashList.incCnt(w.uid, s.uid)
+				1, 2 -> f.blackList.incCnt(w.uid, s.uid)
+				else -> f.counter.onNewInteracted(UUID.randomUUID(), listOf(w), s, s)
+			}
+		}
+	}
+
+	/** the previous candidate computation of [RandomWidget] with one suspending counter query per widget */
+	private suspend fun legacyCandidates(f: Features, state: StateData): List<Widget> {
+		val nonCrashing = state.distinctTargets.filterNot { f.crashList.isBlacklistedInState(it.uid, state.uid) }
+		val noBlacklistedInState = nonCrashing.filterNot { f.blackList.isBlacklistedInState(it.uid, state.uid, 1) }
+		val noBlacklisted = noBlacklistedInState.filterNot { f.blackList.isBlacklisted(it.uid, 2) }
+		val filtered = when {
+			noBlacklisted.isNotEmpty() -> noBlacklisted
+			noBlacklistedInState.isNotEmpty() -> noBlacklistedInState
+			else -> nonCrashing
+		}.filter { it.clickable || it.longClickable || it.checked != null }
+
+		return f.counter.numExplored(state, filtered).entries
+				.groupBy { it.key.packageName }.flatMap { (pkgName, countEntry) ->
+					if (pkgName != appPackage) {
+						val pkgActions = f.counter.pkgCount(pkgName)
+						countEntry.map { Pair(it.key, pkgActions) }
+					} else
+						countEntry.map { Pair(it.key, it.value) }
+				}
+				.groupBy { (_, countVal) -> countVal }.let { map ->
+					map.listOfSmallest()?.map { (w, _) -> w }?.let { leastInState: List<Widget> ->
+						if (leastInState.size > 1) {
+							leastInState.groupBy { f.counter.widgetCnt(it.uid) }.listOfSmallest()
+						} else leastInState
+					}
+				}
+				?: emptyList()
+	}
+
+	@Test
+	fun `decision latency`() = runBlocking<Unit> {
+		for (actions in listOf(100, 1000, 10000)) {
+			val rnd = Random(7)
+			val f = Features()
+			val states = states(100, 200)
+			explore(f, states, actions, rnd)
+			val index = f.index
+			var i = 0
+			// each decision is preceded by one interaction, like during an exploration
+			Benchmark.measure("$actions actions: per widget queries (previous)", warmup = 20, iterations = 200) {
+				runBlocking { explore(f, states, 1, rnd); legacyCandidates(f, states[i++ % states.size]) }
+			}
+			Benchmark.measure("$actions actions: candidate index", warmup = 20, iterations = 200) {
+				runBlocking { explore(f, states, 1, rnd); index.candidates(states[i++ % states.size]) }
+			}
+			Benchmark.measure("$actions actions: candidate index, unchanged counters", warmup = 20, iterations = 200) {
+				runBlocking { index.candidates(states[i++ % 10]) }
+			}
+		}
+	}
+}
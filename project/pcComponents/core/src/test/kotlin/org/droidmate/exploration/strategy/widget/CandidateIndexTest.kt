@@ -0,0 +1,150 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.exploration.strategy.widget
+
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import org.droidmate.exploration.statemodel.StateData
+import org.droidmate.exploration.statemodel.Widget
+import org.droidmate.exploration.statemodel.features.ActionCounterMF
+import org.droidmate.exploration.statemodel.features.BlackListMF
+import org.droidmate.exploration.statemodel.features.CrashListMF
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.*
+
+class CandidateIndexTest {
+	private val app = "org.droidmate.inbox"
+	private val keyboard = "com.android.inputmethod"
+
+	private val crashList = CrashListMF()
+	private val blackList = BlackListMF()
+	private val counter = ActionCounterMF()
+	private val index = CandidateIndex(app, crashList, blackList, counter)
+
+	private fun widget(uid: Long, text: String, packageName: String = app, clickable: Boolean = true, scrollable: Boolean = false) =
+			Widget(WidgetData(text = text, packageName = packageName, enabled = true, visible = true, clickable = clickable,
+					scrollable = scrollable, isLeaf = true), lazyOf(Pair(UUID(uid, 0), null)))
+
+	private val archive = widget(1, "Archive")
+	private val delete = widget(2, "Delete")
+	private val reply = widget(3, "Reply")
+	private val list = widget(4, "", clickable = false, scrollable = true)  // only scroll actions, which are not supported
+	private val q = widget(16, "q", packageName = keyboard)
+	private val w = widget(17, "w", packageName = keyboard)
+
+	private val mail = StateData(lazyOf(listOf(archive, delete, reply, list, q, w)), topNodePackageName = app)
+	private val preview = StateData(lazyOf(listOf(archive, reply)), topNodePackageName = app)
+
+	private fun candidates(state: StateData) = runBlocking { index.candidates(state) }
+
+	private fun interact(target: Widget, state: StateData = mail) = runBlocking {
+		counter.onNewInteracted(UUID.randomUUID(), listOf(target), state, state)
+	}
+
+	@Test
+	fun `Only targets with supported actions are candidates`() {
+		assertEquals(listOf(archive, delete, reply, q, w), index.filtered(mail))
+		assertEquals(listOf(archive, delete, reply, q, w), candidates(mail))
+	}
+
+	@Test
+	fun `The least interacted app widgets are preferred`() {
+		interact(archive)
+		assertEquals(listOf(delete, reply, q, w), candidates(mail))
+
+		interact(delete)
+		interact(reply)
+		interact(reply)
+		assertEquals(listOf(q, w), candidates(mail))
+	}
+
+	@Test
+	fun `Widgets of other packages count with the interactions of their package`() {
+		interact(q)
+		assertEquals(listOf(archive, delete, reply), candidates(mail))
+
+		interact(archive)
+		interact(delete)
+		interact(reply)
+		// all targets rank equal within the state, but w is the only one which was never interacted with
+		assertEquals(listOf(w), candidates(mail))
+	}
+
+	@Test
+	fun `Ties are decided by the interactions over all states`() {
+		interact(archive, preview)
+		assertEquals(listOf(delete, reply, q, w), candidates(mail))
+	}
+
+	@Test
+	fun `Crashed widgets are never candidates`() {
+		crashList.incCnt(delete.uid, mail.uid)
+		repeat(3) { blackList.incCnt(archive.uid, mail.uid); blackList.incCnt(reply.uid, mail.uid) }
+		listOf(list, q, w).forEach { blackList.incCnt(it.uid, mail.uid) }
+
+		assertEquals(listOf(archive, reply, q, w), index.filtered(mail))
+	}
+
+	@Test
+	fun `Blacklisted widgets are only used if there is no other candidate`() {
+		blackList.incCnt(archive.uid, mail.uid)
+		assertEquals(listOf(delete, reply, q, w), index.filtered(mail))
+
+		// blacklisted in another state often enough to be excluded overall
+		blackList.incCnt(delete.uid, preview.uid)
+		blackList.incCnt(delete.uid, preview.uid)
+		assertEquals(listOf(reply, q, w), index.filtered(mail))
+
+		listOf(reply, list, q, w).forEach { blackList.incCnt(it.uid, mail.uid) }
+		assertEquals(listOf(delete), index.filtered(mail))  // only blacklisted overall, not in this state
+
+		blackList.incCnt(delete.uid, mail.uid)
+		assertEquals(listOf(archive, delete, reply, q, w), index.filtered(mail))
+	}
+
+	@Test
+	fun `The candidates are only recomputed after feature updates`() {
+		val first = candidates(mail)
+		assertSame(first, candidates(mail))
+		assertSame(first, index.ranked(mail, index.filtered(mail)))
+
+		interact(archive)
+		val second = candidates(mail)
+		assertNotSame(first, second)
+		assertSame(second, candidates(mail))
+
+		blackList.incCnt(w.uid, preview.uid)
+		assertNotSame(second, candidates(mail))
+	}
+
+	@Test
+	fun `Custom candidate lists are ranked without the cache`() {
+		interact(archive)
+		assertEquals(listOf(reply), index.ranked(mail, listOf(archive, reply)))
+		assertEquals(emptyList<Widget>(), index.ranked(mail, emptyList()))
+	}
+}
@@ -0,0 +1,63 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.test_tools
+
+/**
+ * Minimal micro-benchmark harness for the `*Benchmark` test classes. These are not registered in any test suite,
+ * the `benchmark` gradle task runs them.
+ * It runs [warmup] untimed iterations to let the JIT settle and reports the mean and the median of the [iterations] timed ones.
+ */
+object Benchmark {
+
+	class Result(val name: String, private val nanos: LongArray) {
+		val meanMs: Double get() = nanos.average() / 1e6
+		val medianMs: Double get() = nanos.sorted()[nanos.size / 2] / 1e6
+		val minMs: Double get() = (nanos.min() ?: 0L) / 1e6
+
+		override fun toString(): String = String.format("%-50s mean %10.3f ms  median %10.3f ms  min %10.3f ms  (n=%d)",
+				name, meanMs, medianMs, minMs, nanos.size)
+	}
+
+	/** prevents the JIT from eliminating benchmarked computations whose result is otherwise unused */
+	@Volatile
+	@JvmStatic
+	var sink: Any? = null
+
+	@JvmStatic
+	@JvmOverloads
+	fun measure(name: String, warmup: Int = 5, iterations: Int = 20, body: () -> Any?): Result {
+		repeat(warmup) { sink = body() }
+		val nanos = LongArray(iterations) {
+			val start = System.nanoTime()
+			sink = body()
+			System.nanoTime() - start
+		}
+		return Result(name, nanos).also { println(it) }
+	}
+
+	@JvmStatic
+	fun report(name: String, value: Any) = println(String.format("%-50s %s", name, value))
+}
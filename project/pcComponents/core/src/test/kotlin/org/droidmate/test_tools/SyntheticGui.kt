@@ -0,0 +1,109 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.test_tools
+
+import kotlinx.coroutines.experimental.CompletableDeferred
+import org.droidmate.deviceInterface.DeviceResponse
+import org.droidmate.deviceInterface.guimodel.WidgetData
+import java.util.*
+
+/** Generators for artificial but realistically shaped GUI hierarchies, used by the benchmarks. */
+object SyntheticGui {
+	private val classNames = listOf("android.widget.FrameLayout", "android.widget.LinearLayout", "android.widget.TextView",
+			"android.widget.Button", "android.widget.ImageView", "android.widget.EditText", "android.support.v7.widget.RecyclerView")
+
+	/**
+	 * Creates a tree of [size] widgets with a fan-out of [fanOut]. Widget i is the parent of widgets `i*fanOut+1 .. i*fanOut+fanOut`,
+	 * bounds shrink with the depth such that they stay within a 1080x1920 screen.
+	 */
+	@JvmStatic
+	@JvmOverloads
+	fun widgets(size: Int, fanOut: Int = 4, packageName: String = "org.droidmate.synthetic", seed: Long = 42): List<WidgetData> {
+		val rnd = Random(seed)
+		return (0 until size).map { i ->
+			val depth = depth(i, fanOut)
+			val isLeaf = i * fanOut + 1 >= size
+			val className = if (isLeaf) classNames[2 + rnd.nextInt(classNames.size - 2)] else classNames[rnd.nextInt(2)]
+			WidgetData(text = if (isLeaf && rnd.nextBoolean()) "Text $i" else "",
+					contentDesc = if (rnd.nextInt(4) == 0) "description $i" else "",
+					resourceId = if (rnd.nextBoolean()) "$packageName:id/widget_${i % 50}" else "",
+					className = className,
+					packageName = packageName,
+					enabled = true,
+					editable = className == "android.widget.EditText",
+					clickable = isLeaf && rnd.nextBoolean(),
+					longClickable = isLeaf && rnd.nextInt(5) == 0,
+					scrollable = className == "android.support.v7.widget.RecyclerView",
+					checked = if (rnd.nextInt(10) == 0) rnd.nextBoolean() else null,
+					focused = if (rnd.nextInt(10) == 0) false else null,
+					boundsX = (i * 7) % (1080 shr depth.coerceAtMost(4)),
+					boundsY = 63 + (i * 13) % 1800,
+					boundsWidth = 1080 shr depth.coerceAtMost(4),
+					boundsHeight = 1857 shr depth.coerceAtMost(6),
+					isLeaf = isLeaf,
+					visible = true
+			).apply {
+				idHash = ("$packageName/$i").hashCode()
+				parentHash = if (i == 0) 0 else ("$packageName/${(i - 1) / fanOut}").hashCode()
+				xpath = "//$className[$depth]/$i"
+				childrenXpathHashes = (1..fanOut).map { i * fanOut + it }.filter { it < size }.map { "//$it".hashCode() }
+				uncoveredCoord = if (clickable) Pair(boundsX + 1, boundsY + 1) else null
+			}
+		}
+	}
+
+	private fun depth(i: Int, fanOut: Int): Int {
+		var d = 0
+		var idx = i
+		while (idx > 0) {
+			idx = (idx - 1) / fanOut
+			d++
+		}
+		return d
+	}
+
+	/** a device response with [size] widgets and a screenshot payload of [screenshotBytes] pseudo-random bytes */
+	@JvmStatic
+	@JvmOverloads
+	fun response(size: Int, screenshotBytes: Int = 200 * 1024, seed: Long = 42): DeviceResponse =
+			response(widgets(size, seed = seed), ByteArray(screenshotBytes).also { Random(seed).nextBytes(it) })
+
+	@JvmStatic
+	fun response(widgets: List<WidgetData>, screenshot: ByteArray): DeviceResponse =
+			DeviceResponse.create(CompletableDeferred(widgets), "", "org.droidmate.synthetic.MainActivity",
+					"Google-Android SDK built for x86/25", 1080, 1920, screenshot, 1080, 1920, Pair(1080, 1794), 63)
+
+	/** the same widget with a different text, as if the user or the app changed it */
+	@JvmStatic
+	fun changed(w: WidgetData, text: String): WidgetData = w.copy(text = text).also { c ->
+		c.xpath = w.xpath
+		c.idHash = w.idHash
+		c.parentHash = w.parentHash
+		c.childrenXpathHashes = w.childrenXpathHashes
+		c.uncoveredCoord = w.uncoveredCoord
+		c.hasActableDescendant = w.hasActableDescendant
+	}
+}
@@ -0,0 +1,110 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.test_tools.device_simulation
+
+import org.droidmate.deviceInterface.DeviceCommand
+import org.droidmate.deviceInterface.DeviceResponse
+import org.droidmate.deviceInterface.SerializationHelper
+import org.droidmate.deviceInterface.SessionProtocol
+import org.droidmate.deviceInterface.StopDaemonCommand
+import org.droidmate.deviceInterface.WireFormat
+import java.io.*
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.SocketException
+
+/**
+ * Plain JVM stand-in for the uiautomator2-daemon server on the device.
+ * It speaks the same protocols as `Uiautomator2DaemonTcpServerBase` (legacy one-request-per-connection, [SessionProtocol] sessions
+ * and [WireFormat] negotiation)
+ * and answers every command with [respond], such that the PC side communication can be tested and benchmarked without a device.
+ */
+class LoopbackDaemonServer(private val respond: (DeviceCommand) -> DeviceResponse = { DeviceResponse.empty }) : Closeable {
+
+	private val serverSocket = ServerSocket(0)
+	val port: Int get() = serverSocket.localPort
+
+	@Volatile
+	var acceptedConnections = 0
+		private set
+
+	private val handler = object : SessionProtocol.RequestHandler {
+		override fun onRequest(input: Serializable?, inputReadEx: Exception?): Serializable {
+			if (inputReadEx != null) throw inputReadEx
+			return respond(input as DeviceCommand)
+		}
+
+		override fun isStopRequest(input: Serializable?): Boolean = input is StopDaemonCommand
+	}
+
+	@Volatile
+	private var currentClient: Socket? = null
+
+	private val serverThread = Thread({
+		while (!serverSocket.isClosed) {
+			val client = try {
+				serverSocket.accept()
+			} catch (e: SocketException) {
+				break  // server socket closed
+			}
+			acceptedConnections++
+			currentClient = client
+			try {
+				client.use { serve(it) }
+			} catch (e: IOException) {
+				// client connection dropped, wait for the next one
+			}
+		}
+	}, "loopback-daemon-server").apply {
+		isDaemon = true
+		start()
+	}
+
+	private fun serve(client: Socket) {
+		val bufferedInput = BufferedInputStream(client.getInputStream())
+		val input = DataInputStream(bufferedInput)
+		val output = DataOutputStream(BufferedOutputStream(client.getOutputStream()))
+
+		val handshake = SessionProtocol.readHandshake(bufferedInput, output)
+		val stop = if (handshake.isSession)
+			SessionProtocol.serve(input, output, handler, handshake.wireFormat)
+		else {
+			val command = SerializationHelper.readObjectFromStream(input) as Serializable
+			WireFormat.writeResponse(output, handler.onRequest(command, null), handshake.wireFormat)
+			handler.isStopRequest(command)
+		}
+		if (stop) serverSocket.close()
+	}
+
+	/** drops the currently open client connection without closing the server, as a restarted adb forward would */
+	fun dropConnections() {
+		currentClient?.close()
+	}
+
+	override fun close() {
+		serverSocket.close()
+	}
+}
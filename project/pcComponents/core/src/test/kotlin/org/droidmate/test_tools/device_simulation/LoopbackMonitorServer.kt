@@ -0,0 +1,72 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.test_tools.device_simulation
+
+import org.droidmate.deviceInterface.SerializationHelper
+import org.droidmate.misc.MonitorConstants
+import java.io.*
+import java.net.ServerSocket
+import java.net.SocketException
+
+/**
+ * Plain JVM stand-in for the `MonitorTcpServer` of the monitor inlined into the app on the device.
+ * It speaks the one-request-per-connection protocol of the monitor and answers every command with [respond],
+ * such that the PC side of the API logs transport can be tested and benchmarked without a device.
+ */
+class LoopbackMonitorServer(private val respond: (String) -> Serializable) : Closeable {
+
+	private val serverSocket = ServerSocket(0)
+	val port: Int get() = serverSocket.localPort
+
+	private val serverThread = Thread({
+		while (!serverSocket.isClosed) {
+			val client = try {
+				serverSocket.accept()
+			} catch (e: SocketException) {
+				break  // server socket closed
+			}
+			try {
+				client.use {
+					val input = DataInputStream(BufferedInputStream(it.getInputStream()))
+					val output = DataOutputStream(BufferedOutputStream(it.getOutputStream()))
+					val command = SerializationHelper.readObjectFromStream(input) as String
+					SerializationHelper.writeObjectToStream(output, respond(command))
+					output.flush()
+					if (command == MonitorConstants.srvCmd_close) serverSocket.close()
+				}
+			} catch (e: IOException) {
+				// client connection dropped, wait for the next one
+			}
+		}
+	}, "loopback-monitor-server").apply {
+		isDaemon = true
+		start()
+	}
+
+	override fun close() {
+		serverSocket.close()
+	}
+}
@@ -79,6 +79,13 @@ class RedirectionsGenerator constructor(private val androidApi: AndroidAPI) : IR
 			return objectClass.replace("\$", "_").replace(".", "_")
 		}
 
+		@JvmStatic
+		private val paramToStringCall = Regex("objectToString\\(p(\\d+)\\)")
+
+		/** Java string literal of [s], the signatures may contain '$' but no quotes or backslashes */
+		@JvmStatic
+		private fun quote(s: String): String = "\"$s\""
+
 		@JvmStatic
 		private fun buildParamVarNames(ams: ApiMethodSignature): List<String> {
 			return if (ams.paramClasses.isEmpty())
@@ -176,6 +183,10 @@ class RedirectionsGenerator constructor(private val androidApi: AndroidAPI) : IR
 
 					with(ams) {
 
+						// registered once when the monitor class is initialized, such that the binary logs only carry the id
+						val apiIdField = ams.name.substringBefore("(").trim() + "_apiId"
+						out.append(String.format("private static final int %s = registerApi(%s);", apiIdField,
+								(listOf(ams.objectClass, ams.methodName, ams.returnClass) + ams.paramClasses).joinToString(", ") { quote(it) }) + nl)
 						out.append(String.format("@Hook(\"%s\")", ams.hook) + nl)
 						out.append(String.format("public static %s %s", ams.returnClass, ams.name) + nl)
 						out.append("{$nl")
@@ -197,15 +208,20 @@ class RedirectionsGenerator constructor(private val androidApi: AndroidAPI) : IR
 
 						out.append(ind4 + "String stackTrace = getStackTrace();" + nl)
 						out.append(ind4 + "long threadId = getThreadId();" + nl)
-						out.append(ind4 + String.format("String logSignature = %s;", ams.logId) + nl)
-						out.append(ind4 + String.format("Log.%s(\"%s\", logSignature);", MonitorConstants.loglevel, MonitorConstants.tag_api) + nl)
-						out.append(ind4 + "addCurrentLogs(logSignature);" + nl)
-
-						out.append(ind4 + "List<Uri> uriList = new ArrayList<>();" + nl)
+						// each parameter is converted once and shared by the text and the binary log
+						out.append(ind4 + "String[] paramValues = {" +
+								(0 until ams.paramClasses.size).joinToString(", ") { "objectToString(p$it)" } + "};" + nl)
+						out.append(ind4 + String.format("String logSignature = %s;",
+								ams.logId.replace(paramToStringCall, "paramValues[\$1]")) + nl)
+						out.append(ind4 + String.format("Log.%s(\"%s\", getLogcatPayload(logSignature, stackTrace));", MonitorConstants.loglevel, MonitorConstants.tag_api) + nl)
+						out.append(ind4 + String.format("addCurrentLogs(logSignature, %s, threadId, paramValues, stackTrace);", apiIdField) + nl)
 
-						(0 until ams.paramClasses.size).forEach { x ->
-							if (ams.paramClasses[x] == "android.net.Uri")
-								out.append(ind4 + "uriList.add(p$x);" + nl)
+						val uriParams = (0 until ams.paramClasses.size).filter { x -> ams.paramClasses[x] == "android.net.Uri" }
+						if (uriParams.isEmpty())
+							out.append(ind4 + "List<Uri> uriList = Collections.emptyList();" + nl)
+						else {
+							out.append(ind4 + "List<Uri> uriList = new ArrayList<>(${uriParams.size});" + nl)
+							uriParams.forEach { x -> out.append(ind4 + "uriList.add(p$x);" + nl) }
 						}
 						out.append(ind4 + "ApiPolicy policy = getPolicy(\"${ams.getShortSignature()}\", uriList);" + nl)
 						// Currently, when denying, the method is not being called
@@ -36,7 +36,6 @@ import android.util.Log;
 import org.droidmate.misc.MonitorConstants;
 
 import java.io.*;
-import java.lang.reflect.Array;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
@@ -44,6 +43,9 @@ import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 // org.droidmate.monitor.MonitorSrcTemplate:API_19_UNCOMMENT_LINES
 // import de.uds.infsec.instrumentation.Instrumentation;
@@ -95,20 +97,33 @@ public class MonitorJavaTemplate
 	 * TCP server.
 	 * <p>
 	 * </p><p>
-	 * Each log is a 3 element array obeying following contract:<br/>
+	 * Each drained log is a 3 element array obeying following contract:<br/>
 	 * log[0]: process ID of the log<br/>
 	 * log[1]: timestamp of the log<br/>
 	 * log[2]: the payload of the log (method name, parameter values, stack trace, etc.)
 	 * <p>
 	 * </p>
 	 *
-	 * @see MonitorJavaTemplate#addCurrentLogs(java.lang.String)
+	 * @see MonitorJavaTemplate#addCurrentLogs(String, int, long, String[], String)
 	 */
-	final static List<ArrayList<String>> currentLogs = new ArrayList<ArrayList<String>>();
+	final static LogBuffer currentLogs = new LogBuffer(LogBuffer.DEFAULT_CAPACITY);
+	/**
+	 * Stack traces of the monitored calls, referenced from the payloads in {@link #currentLogs} until they are drained.
+	 *
+	 * @see StackTraces
+	 */
+	private final static StackTraces stackTraces = new StackTraces(MonitorConstants.Companion.getMonitor_stacktrace_interning(),
+					MonitorConstants.Companion.getMonitor_stacktrace_max_depth(), MonitorConstants.Companion.getMonitor_stacktrace_sampling_rate(),
+					MonitorConstants.Companion.getMonitor_stacktrace_max_interned());
+	/**
+	 * Signatures of the monitored APIs, registered by the generated code.
+	 *
+	 * @see #registerApi(String, String, String, String...)
+	 */
+	private final static ApiSignatures apiSignatures = new ApiSignatures();
 	private final static String ESCAPE_CHAR = "\\";
 	private final static String VALUESTRING_ENCLOSCHAR = "'";
 	private static final String FORMAT_STRING = "TId:%s;objCls:'%s';mthd:'%s';retCls:'void';params:'java.lang.String' '%s' 'java.lang.Object[]' %s;stacktrace:'%s'";
-	private static final SimpleDateFormat monitor_time_formatter = new SimpleDateFormat(MonitorConstants.Companion.getMonitor_time_formatter_pattern(), MonitorConstants.Companion.getMonitor_time_formatter_locale());
 	//endregion
 
 	//region TCP server code
@@ -120,7 +135,9 @@ public class MonitorJavaTemplate
 	 * @see #getNowDate()
 	 */
 	private static final long startNanoTime = System.nanoTime();
-	private final static HashMap<ApiPolicyId, ApiPolicy> apiPolicies = new HashMap<>();
+	/** only used by the TCP server thread */
+	private static final TimestampFormatter monitor_time_formatter = new TimestampFormatter(MonitorConstants.Companion.getMonitor_time_formatter_pattern(), MonitorConstants.Companion.getMonitor_time_formatter_locale(), startDate.getTime(), startNanoTime);
+	private final static ApiPolicies apiPolicies = new ApiPolicies(new File("#POLICIES_FILE_PATH"), ApiPolicies.RELOAD_CHECK_INTERVAL_MS);
 	private static MonitorTcpServer server;
 
 	//endregion
@@ -177,6 +194,8 @@ public class MonitorJavaTemplate
 	}
 
 	private static String escapeEnclosings(String paramString) {
+		if (!paramString.contains(VALUESTRING_ENCLOSCHAR))
+			return paramString; // String.replace compiles a pattern on each call
 		return paramString.replace(VALUESTRING_ENCLOSCHAR, ESCAPE_CHAR + VALUESTRING_ENCLOSCHAR);
 	}
 
@@ -206,7 +225,7 @@ public class MonitorJavaTemplate
 			if (!paramStr.endsWith("end")) throw new AssertionError();
 			result = paramStr;
 		} else if (param.getClass().isArray()) {
-			result = Arrays.deepToString(convertToObjectArray(param));
+			result = arrayToString(param);
 		} else {
 			result = param.toString();
 		}
@@ -215,36 +234,63 @@ public class MonitorJavaTemplate
 		return escapeEnclosings(result);
 	}
 
-	// Copied from http://stackoverflow.com/a/16428065/986533
-	private static Object[] convertToObjectArray(Object array) {
-		Class ofArray = array.getClass().getComponentType();
-		if (ofArray.isPrimitive()) {
-			ArrayList<Object> ar = new ArrayList<>();
-			int length = Array.getLength(array);
-			for (int i = 0; i < length; i++) {
-				ar.add(Array.get(array, i));
-			}
-			return ar.toArray();
-		} else {
-			return (Object[]) array;
-		}
+	/** same result as {@code Arrays.deepToString} of the boxed array, but primitive arrays are printed without boxing */
+	private static String arrayToString(Object array) {
+		if (array instanceof Object[])
+			return Arrays.deepToString((Object[]) array);
+		else if (array instanceof int[])
+			return Arrays.toString((int[]) array);
+		else if (array instanceof byte[])
+			return Arrays.toString((byte[]) array);
+		else if (array instanceof long[])
+			return Arrays.toString((long[]) array);
+		else if (array instanceof char[])
+			return Arrays.toString((char[]) array);
+		else if (array instanceof boolean[])
+			return Arrays.toString((boolean[]) array);
+		else if (array instanceof float[])
+			return Arrays.toString((float[]) array);
+		else if (array instanceof double[])
+			return Arrays.toString((double[]) array);
+		else
+			return Arrays.toString((short[]) array);
 	}
 
+	/**
+	 * @return the stack trace of the monitored call as it has to be inserted into the log payload, which is only a reference
+	 * to the interned trace if stack trace interning is enabled (see {@link StackTraces})
+	 */
 	private static String getStackTrace() {
-		StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < stackTrace.length; i++) {
-			sb.append(stackTrace[i].toString());
-			if (i < stackTrace.length - 1)
-				sb.append("->");
-		}
-		return sb.toString();
+		if (!stackTraces.sample())
+			return "";
+		return stackTraces.capture(Thread.currentThread().getStackTrace());
+	}
+
+	/**
+	 * Called by the generated code to obtain the message which is written to logcat for a monitored call.
+	 *
+	 * @return the {@code payload} where the reference to an interned {@code stackTrace} is replaced by the trace itself,
+	 * such that the logcat messages are readable without the interning table of the monitor
+	 */
+	@SuppressWarnings("unused") // See javadoc
+	private static String getLogcatPayload(String payload, String stackTrace) {
+		return stackTraces.expandForLogcat(payload, stackTrace);
 	}
 
 	private static long getThreadId() {
 		return Thread.currentThread().getId();
 	}
 
+	/**
+	 * Called by the generated code once per monitored API, when the monitor class is initialized.
+	 *
+	 * @return the id by which the logs of this API refer to its signature in the binary log transport
+	 */
+	@SuppressWarnings("unused")
+	private static int registerApi(String objectClass, String methodName, String returnClass, String... paramTypes) {
+		return apiSignatures.register(objectClass, methodName, returnClass, paramTypes);
+	}
+
 	/**
 	 * <p>
 	 * Called by monitor code to log Android API calls. Calls to this methods are generated in:
@@ -252,9 +298,12 @@ public class MonitorJavaTemplate
 	 * org.droidmate.monitor.RedirectionsGenerator#generateCtorCallsAndTargets(java.util.List)
 	 * org.droidmate.monitor.RedirectionsGenerator#generateMethodTargets(java.util.List)</pre>
 	 * </p>
-	 * This method has to be accessed in a synchronized manner to ensure proper access to the {@code currentLogs} list and also
-	 * to ensure calls to {@code SimpleDateFormat.format(new Date())} return correct results.
-	 * If there was interleaving between threads, the calls non-deterministically returned invalid dates,
+	 * This method is called concurrently by all threads of the app, therefore it only stores the raw {@code System.nanoTime()}
+	 * and the log into the lock-free {@link LogBuffer}. Each log is stored both as text {@code payload} and structured,
+	 * such that it can be sent in either format (see {@link MonitorTcpServer}).
+	 * The timestamps are formatted when the TCP server drains the buffer, such that {@code SimpleDateFormat} is only used by a
+	 * single thread.
+	 * Formatting dates concurrently previously non-deterministically returned invalid dates,
 	 * which caused {@code LocalDateTime.parse()} on the host machine, called by
 	 * {@code org.droidmate.exploration.device.ApiLogsReader.extractLogcatMessagesFromTcpMessages()}
 	 * to fail with exceptions like
@@ -277,16 +326,8 @@ public class MonitorJavaTemplate
 	 *   2015-08-28 23:03:28.0453</pre>
 	 */
 	@SuppressWarnings("unused") // See javadoc
-	private static void addCurrentLogs(String payload) {
-		synchronized (currentLogs) {
-//      Log.v(tag_mjt, "addCurrentLogs(" + payload + ")");
-			String now = getNowDate();
-
-//      Log.v(tag_mjt, "currentLogs.add(new ArrayList<String>(Arrays.asList(getPid(), now, payload)));");
-			currentLogs.add(new ArrayList<String>(Arrays.asList(getPid(), now, payload)));
-
-//      Log.v(tag_mjt, "addCurrentLogs(" + payload + "): DONE");
-		}
+	private static void addCurrentLogs(String payload, int apiId, long threadId, String[] paramValues, String stackTrace) {
+		currentLogs.offer(System.nanoTime(), payload, apiId, threadId, paramValues, stackTrace);
 	}
 
 	/**
@@ -303,66 +344,13 @@ public class MonitorJavaTemplate
 	 * </p>
 	 */
 	private static String getNowDate() {
-//    Log.v(tag_mjt, "final Date nowDate = new Date(startDate.getTime() + (System.nanoTime() - startNanoTime) / 1000000);");
-		final Date nowDate = new Date(startDate.getTime() + (System.nanoTime() - startNanoTime) / 1000000);
-
-//    Log.v(tag_mjt, "final String formattedDate = monitor_time_formatter.format(nowDate);");
-		final String formattedDate = monitor_time_formatter.format(nowDate);
-
-//    Log.v(tag_mjt, "return formattedDate;");
-		return formattedDate;
+		return monitor_time_formatter.formatNanoTime(System.nanoTime());
 	}
 
 	private static String getPid() {
 		return String.valueOf(android.os.Process.myPid());
 	}
 
-	private static boolean skipLine(String line) {
-		return (line.trim().length() == 0) ||
-						!line.contains("\t") ||
-						line.startsWith("#");
-	}
-
-	private static void processLine(String line) {
-		if (skipLine(line))
-			return;
-
-		// first field is method signature
-		// last field is policy
-		// anything in between are URIs
-		String[] lineData = line.split("\t");
-
-		String methodName = lineData[0].replaceAll("\\s+", "");
-		String policyStr = lineData[lineData.length - 1].trim();
-
-		ApiPolicy policy = ApiPolicy.valueOf(policyStr);
-		List<String> uriList = new ArrayList<>();
-		uriList.addAll(Arrays.asList(lineData).subList(1, lineData.length - 1));
-
-		// org.droidmate.monitor.MonitorSrcTemplate:REMOVE_LINES
-		apiPolicies.put(new MonitorJavaTemplate(true).new ApiPolicyId(methodName, uriList.toArray(new String[0])), policy);
-		// org.droidmate.monitor.MonitorSrcTemplate:UNCOMMENT_LINES
-		// apiPolicies.put(new Monitor(true).new ApiPolicyId(methodName, uriList.toArray(new String[0])), policy);
-		// org.droidmate.monitor.MonitorSrcTemplate:KEEP_LINES
-	}
-
-	private static void initializeApiPolicies() throws Exception {
-		// loads every time to allow restrictions to be dynamically changed
-		apiPolicies.clear();
-
-		File policiesFile = new File("#POLICIES_FILE_PATH");
-		if (policiesFile.exists()) {
-			try (BufferedReader reader = new BufferedReader(new FileReader(policiesFile))) {
-				String line;
-				while ((line = reader.readLine()) != null) {
-					processLine(line);
-				}
-			}
-		}
-		//else
-		//  Log.w(MonitorConstants.Companion.getTag_srv(), "Api policies file not found. Continuing with default behavior (Allow)");
-	}
-
 	/**
 	 * Check is the API call should be allowed or not
 	 *
@@ -373,23 +361,11 @@ public class MonitorJavaTemplate
 	@SuppressWarnings("unused")
 	private static ApiPolicy getPolicy(String methodName, List<Uri> uriList) {
 		try {
-			initializeApiPolicies();
-
-			for (ApiPolicyId apiId : apiPolicies.keySet()) {
-				List<String> uriListStr = new ArrayList<>();
-				for (Uri uri : uriList) {
-					uriListStr.add(uri.toString());
-				}
-
-				if (apiId.affects(methodName, uriListStr))
-					return apiPolicies.get(apiId);
-			}
+			return apiPolicies.getPolicy(methodName, uriList);
 		} catch (Exception e) {
 			// Default behavior is to allow
 			return ApiPolicy.Allow;
 		}
-
-		return ApiPolicy.Allow;
 	}
 
 	@SuppressWarnings("ResultOfMethodCallIgnored")
@@ -444,47 +420,713 @@ public class MonitorJavaTemplate
 		Mock
 	}
 
-	static class MonitorTcpServer extends TcpServerBase<String, LinkedList<ArrayList<String>>> {
+	/**
+	 * <p>
+	 * The api policies file compiled into a hash index from the method signature (without whitespace) to the policies of
+	 * this method, such that the lookup cost does not depend on the number of policies.
+	 * </p><p>
+	 * Each line of the file contains the method signature, the restricted URIs and the policy separated by tabs. A policy
+	 * affects a call if the concatenation of the call's URIs contains each of its URIs, the first affecting policy in file
+	 * order is returned. Since URIs are matched as substrings they cannot be hashed, but they are only checked for the
+	 * (usually very few) policies of the called method.
+	 * </p><p>
+	 * The policies may be changed while the app is running. The file modification time and length are checked at most once
+	 * per {@code checkIntervalMs} and only if they changed the file is parsed again, into a new index which replaces the
+	 * current one as a whole. Therefore readers never need to synchronize.
+	 * </p>
+	 */
+	static class ApiPolicies {
+		static final long RELOAD_CHECK_INTERVAL_MS = 1000;
 
-		public Context context;
+		private static class Entry {
+			final String[] uris;
+			final ApiPolicy policy;
 
-		protected MonitorTcpServer() {
-			super();
+			Entry(String[] uris, ApiPolicy policy) {
+				this.uris = uris;
+				this.policy = policy;
+			}
+		}
+
+		private static final Map<String, Entry[]> emptyIndex = Collections.emptyMap();
+
+		private final File file;
+		private final long checkIntervalNanos;
+		private volatile Map<String, Entry[]> index = emptyIndex;
+		private volatile long nextCheck;
+		private long lastModified = -1;
+		private long length = -1;
+
+		ApiPolicies(File file, long checkIntervalMs) {
+			this.file = file;
+			this.checkIntervalNanos = checkIntervalMs * 1000000;
+			this.nextCheck = System.nanoTime();
+		}
+
+		ApiPolicy getPolicy(String methodName, List<?> uriList) throws IOException {
+			if (System.nanoTime() - nextCheck >= 0)
+				reloadIfChanged();
+
+			Map<String, Entry[]> index = this.index;
+			if (index.isEmpty())
+				return ApiPolicy.Allow;
+			Entry[] entries = index.get(removeWhitespace(methodName));
+			if (entries == null)
+				return ApiPolicy.Allow;
+
+			String uris = null;
+			for (Entry entry : entries) {
+				if (entry.uris.length > 0 && uris == null) {
+					StringBuilder b = new StringBuilder();
+					for (Object uri : uriList)
+						b.append(uri);
+					uris = b.toString();
+				}
+				if (affects(entry, uris))
+					return entry.policy;
+			}
+			return ApiPolicy.Allow;
+		}
+
+		private static boolean affects(Entry entry, String uris) {
+			for (String restrictedUri : entry.uris) {
+				if (!uris.contains(restrictedUri))
+					return false;
+			}
+			return true;
+		}
+
+		private synchronized void reloadIfChanged() throws IOException {
+			long now = System.nanoTime();
+			if (now - nextCheck < 0)
+				return; // another thread did already check
+			nextCheck = now + checkIntervalNanos;
+
+			long modified = file.lastModified(); // 0 if the file does not exist
+			long size = file.length();
+			if (modified == lastModified && size == length)
+				return;
+
+			index = modified == 0 ? emptyIndex : compile(file);
+			lastModified = modified;
+			length = size;
+		}
+
+		private static Map<String, Entry[]> compile(File file) throws IOException {
+			Map<String, List<Entry>> policies = new LinkedHashMap<>();
+			try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (skipLine(line))
+						continue;
+
+					// first field is method signature
+					// last field is policy
+					// anything in between are URIs
+					String[] lineData = line.split("\t");
+					String methodName = removeWhitespace(lineData[0]);
+					ApiPolicy policy = ApiPolicy.valueOf(lineData[lineData.length - 1].trim());
+					String[] uris = Arrays.copyOfRange(lineData, 1, lineData.length - 1);
+
+					List<Entry> entries = policies.get(methodName);
+					if (entries == null) {
+						entries = new ArrayList<>(1);
+						policies.put(methodName, entries);
+					}
+					entries.add(new Entry(uris, policy));
+				}
+			}
+
+			Map<String, Entry[]> index = new HashMap<>(policies.size() * 2);
+			for (Map.Entry<String, List<Entry>> e : policies.entrySet())
+				index.put(e.getKey(), e.getValue().toArray(new Entry[0]));
+			return index;
+		}
+
+		private static boolean skipLine(String line) {
+			return (line.trim().length() == 0) ||
+							!line.contains("\t") ||
+							line.startsWith("#");
+		}
+
+		/** same as {@code s.replaceAll("\\s+", "")} but without allocation if there is no whitespace */
+		static String removeWhitespace(String s) {
+			int i = 0;
+			while (i < s.length() && !Character.isWhitespace(s.charAt(i)))
+				i++;
+			if (i == s.length())
+				return s;
+
+			StringBuilder b = new StringBuilder(s.length());
+			b.append(s, 0, i);
+			for (; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (!Character.isWhitespace(c))
+					b.append(c);
+			}
+			return b.toString();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Records the stack traces of the monitored calls. Most monitored calls happen at a few call sites, thus the same traces
+	 * are logged over and over again. Instead of joining the {@code StackTraceElement}s into a string on each call, the raw
+	 * elements are interned into a table, which assigns each distinct trace a small id. The payload only contains a reference
+	 * to the trace ({@link #TRACE_REF_MARK}id{@link #TRACE_REF_MARK}) and when the logs are drained each referenced trace is
+	 * serialized once and inserted into all payloads referencing it.
+	 * </p><p>
+	 * The number of recorded frames can be limited to the innermost {@code maxDepth} frames and with a {@code samplingRate}
+	 * n &gt; 1 only every n-th call records its stack trace, the other calls log an empty trace. If interning is disabled or
+	 * {@code maxInterned} distinct traces have been recorded, the trace is joined into the payload directly.
+	 * The payloads written to logcat are expanded right away ({@link #expandForLogcat}), there each interned trace is only
+	 * serialized on its first call.
+	 * </p>
+	 */
+	static class StackTraces {
+		static final char TRACE_REF_MARK = '\u0001';
+		static final String FRAME_DELIMITER = "->";
+
+		private static final class Trace {
+			final StackTraceElement[] elements;
+			final int hash;
+			int id;
+			String reference;
+			/** the serialized trace for logcat, set on first use */
+			String text;
+
+			Trace(StackTraceElement[] elements) {
+				this.elements = elements;
+				this.hash = Arrays.hashCode(elements);
+			}
+
+			@Override
+			public boolean equals(Object o) {
+				return o instanceof Trace && hash == ((Trace) o).hash && Arrays.equals(elements, ((Trace) o).elements);
+			}
+
+			@Override
+			public int hashCode() {
+				return hash;
+			}
+		}
+
+		private final boolean interning;
+		private final int maxDepth;
+		private final int samplingRate;
+		private final int maxInterned;
+		private final ConcurrentHashMap<Trace, Trace> table = new ConcurrentHashMap<>();
+		/** trace with id i is at position i, replaced as a whole when a trace is added */
+		private volatile Trace[] traces = new Trace[0];
+		/** deliberately not synchronized, lost updates only make the sampling slightly irregular */
+		private int calls = 0;
+
+		StackTraces(boolean interning, int maxDepth, int samplingRate, int maxInterned) {
+			this.interning = interning;
+			this.maxDepth = maxDepth;
+			this.samplingRate = samplingRate;
+			this.maxInterned = maxInterned;
+		}
+
+		/** @return true if the stack trace of the current call should be recorded, check it before obtaining the trace */
+		boolean sample() {
+			return samplingRate <= 1 || (calls++ & Integer.MAX_VALUE) % samplingRate == 0;
+		}
+
+		/** @return the string to be put into the payload, either a reference to the interned trace or the trace itself */
+		String capture(StackTraceElement[] stackTrace) {
+			if (maxDepth > 0 && stackTrace.length > maxDepth)
+				stackTrace = Arrays.copyOf(stackTrace, maxDepth);
+
+			if (interning) {
+				Trace trace = intern(stackTrace);
+				if (trace != null)
+					return trace.reference;
+			}
+			return serialize(stackTrace);
+		}
+
+		/** @return the interned trace, or null if the table is full */
+		private Trace intern(StackTraceElement[] stackTrace) {
+			Trace candidate = new Trace(stackTrace);
+			Trace trace = table.get(candidate);
+			if (trace != null)
+				return trace;
+
+			synchronized (table) {
+				trace = table.get(candidate);
+				if (trace == null) {
+					Trace[] traces = this.traces;
+					if (traces.length >= maxInterned)
+						return null;
+					candidate.id = traces.length;
+					candidate.reference = TRACE_REF_MARK + String.valueOf(candidate.id) + TRACE_REF_MARK;
+					Trace[] newTraces = Arrays.copyOf(traces, traces.length + 1);
+					newTraces[candidate.id] = candidate;
+					this.traces = newTraces;
+					table.put(candidate, candidate);
+					trace = candidate;
+				}
+			}
+			return trace;
+		}
+
+		/**
+		 * Replaces the trace reference in {@code payload} by the serialized trace. The traces are serialized at most once
+		 * per {@code serialized} cache, which is expected to be used for one drain of the logs.
+		 */
+		String expand(String payload, Map<Integer, String> serialized) {
+			// the stack trace is the last field of the payload, only its enclosing char may follow the reference
+			int end = payload.lastIndexOf(TRACE_REF_MARK);
+			int start = end > 0 ? payload.lastIndexOf(TRACE_REF_MARK, end - 1) : -1;
+			if (start < 0 || end < payload.length() - 2)
+				return payload;
+			int id = parseReference(payload, start, end);
+			if (id < 0)
+				return payload;
+
+			String text = serialized.get(id);
+			if (text == null) {
+				text = serialize(traces[id].elements);
+				serialized.put(id, text);
+			}
+			return payload.substring(0, start) + text + payload.substring(end + 1);
+		}
+
+		/**
+		 * Replaces the reference {@code captured} (as returned by {@link #capture}) in {@code payload} by the serialized trace.
+		 * Each interned trace keeps its serialization, such that the logcat message of a call does not serialize its trace again.
+		 */
+		String expandForLogcat(String payload, String captured) {
+			int id = referencedId(captured);
+			if (id < 0)
+				return payload;
+			int start = payload.lastIndexOf(captured);
+			if (start < 0)
+				return payload;
+
+			Trace trace = traces[id];
+			String text = trace.text;
+			if (text == null) {  // concurrent first uses may serialize the trace twice, which yields the same string
+				text = serialize(trace.elements);
+				trace.text = text;
+			}
+			return payload.substring(0, start) + text + payload.substring(start + captured.length());
+		}
+
+		/** @return the id of the interned trace if {@code captured} is a reference returned by {@link #capture}, -1 otherwise */
+		int referencedId(String captured) {
+			if (captured == null || captured.length() < 3 || captured.charAt(0) != TRACE_REF_MARK)
+				return -1;
+			return parseReference(captured, 0, captured.length() - 1);
+		}
+
+		/** @return the id of the reference between the marks at {@code start} and {@code end}, or -1 if there is none */
+		private int parseReference(String s, int start, int end) {
+			if (end - start < 2 || s.charAt(start) != TRACE_REF_MARK || s.charAt(end) != TRACE_REF_MARK)
+				return -1;
+			int id = 0;
+			for (int i = start + 1; i < end; i++) {
+				char c = s.charAt(i);
+				if (c < '0' || c > '9' || id > (Integer.MAX_VALUE - 9) / 10)
+					return -1;
+				id = id * 10 + (c - '0');
+			}
+			return id < traces.length ? id : -1;
+		}
+
+		String serialized(int id) {
+			return serialize(traces[id].elements);
+		}
+
+		/** number of distinct interned traces */
+		int size() {
+			return traces.length;
+		}
+
+		static String serialize(StackTraceElement[] stackTrace) {
+			StringBuilder sb = new StringBuilder(stackTrace.length * 64);
+			for (int i = 0; i < stackTrace.length; i++) {
+				sb.append(stackTrace[i].toString());
+				if (i < stackTrace.length - 1)
+					sb.append(FRAME_DELIMITER);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Bounded multi-producer single-consumer ring buffer for the API logs, where the producers (app threads calling
+	 * {@link #addCurrentLogs(String, int, long, String[], String)}) never block each other. Each slot has a sequence number:
+	 * a producer claims the next position by a CAS on {@code tail}, writes its entry and then publishes it by setting the slot
+	 * sequence to position + 1.
+	 * The single consumer (the TCP server thread) takes published entries in order and releases the slot for the next round
+	 * by setting its sequence to position + capacity.
+	 * </p><p>
+	 * If the buffer is full the log is dropped and counted, the number of dropped logs is reported on the next drain.
+	 * </p>
+	 */
+	static class LogBuffer {
+		static final int DEFAULT_CAPACITY = 1 << 14;
+
+		private final int mask;
+		private final AtomicLongArray sequences;
+		private final long[] timestamps;
+		private final String[] payloads;
+		private final int[] apiIds;
+		private final long[] threadIds;
+		private final String[][] paramValues;
+		private final String[] stackTraces;
+		private final AtomicLong tail = new AtomicLong();
+		private final AtomicLong overflow = new AtomicLong();
+		/** only accessed by the consumer */
+		private long head = 0;
+		private long reportedOverflow = 0;
+
+		LogBuffer(int capacity) {
+			if (Integer.bitCount(capacity) != 1)
+				throw new IllegalArgumentException("the log buffer capacity has to be a power of two but was " + capacity);
+			mask = capacity - 1;
+			sequences = new AtomicLongArray(capacity);
+			for (int i = 0; i < capacity; i++)
+				sequences.set(i, i);
+			timestamps = new long[capacity];
+			payloads = new String[capacity];
+			apiIds = new int[capacity];
+			threadIds = new long[capacity];
+			paramValues = new String[capacity][];
+			stackTraces = new String[capacity];
+		}
+
+		/** Receives the drained logs, see {@link #drain(Sink)}. */
+		interface Sink {
+			/** all arguments except {@code nanoTime} and {@code payload} are only set for logs of a registered api */
+			void accept(long nanoTime, String payload, int apiId, long threadId, String[] paramValues, String stackTrace);
+		}
+
+		/** adds a log which is only available as text */
+		boolean offer(long nanoTime, String payload) {
+			return offer(nanoTime, payload, -1, 0, null, null);
+		}
+
+		/** @return false if the buffer was full and the log was dropped */
+		boolean offer(long nanoTime, String payload, int apiId, long threadId, String[] paramValues, String stackTrace) {
+			long pos;
+			while (true) {
+				pos = tail.get();
+				long diff = sequences.get((int) pos & mask) - pos;
+				if (diff == 0) {
+					if (tail.compareAndSet(pos, pos + 1))
+						break;
+				} else if (diff < 0) { // the consumer did not yet release this slot of the previous round
+					overflow.incrementAndGet();
+					return false;
+				}
+				// else another producer claimed this position, retry with the new tail
+			}
+			int slot = (int) pos & mask;
+			timestamps[slot] = nanoTime;
+			payloads[slot] = payload;
+			apiIds[slot] = apiId;
+			threadIds[slot] = threadId;
+			this.paramValues[slot] = paramValues;
+			stackTraces[slot] = stackTrace;
+			sequences.lazySet(slot, pos + 1); // publishes the slot content to the consumer
+			return true;
+		}
+
+		/**
+		 * Moves all published logs to {@code out}, formatting the timestamps and replacing the stack trace references by the
+		 * serialized traces. Must only be called by the consumer thread.
+		 *
+		 * @return the number of logs dropped since the last drain
+		 */
+		long drainTo(final List<ArrayList<String>> out, final String pid, final TimestampFormatter formatter, final StackTraces traces) {
+			final Map<Integer, String> serializedTraces = new HashMap<>();
+			return drain(new Sink() {
+				@Override
+				public void accept(long nanoTime, String payload, int apiId, long threadId, String[] paramValues, String stackTrace) {
+					payload = traces.expand(payload, serializedTraces);
+					out.add(new ArrayList<String>(Arrays.asList(pid, formatter.formatNanoTime(nanoTime), payload)));
+				}
+			});
+		}
+
+		/**
+		 * Passes all published logs to {@code sink} in the order they were added. Must only be called by the consumer thread.
+		 *
+		 * @return the number of logs dropped since the last drain
+		 */
+		long drain(Sink sink) {
+			while (true) {
+				int slot = (int) head & mask;
+				if (sequences.get(slot) != head + 1)
+					break; // not yet published
+				long nanoTime = timestamps[slot];
+				String payload = payloads[slot];
+				int apiId = apiIds[slot];
+				long threadId = threadIds[slot];
+				String[] params = paramValues[slot];
+				String stackTrace = stackTraces[slot];
+				payloads[slot] = null;
+				paramValues[slot] = null;
+				stackTraces[slot] = null;
+				sequences.lazySet(slot, head + mask + 1);
+				head++;
+				sink.accept(nanoTime, payload, apiId, threadId, params, stackTrace);
+			}
+			long total = overflow.get();
+			long dropped = total - reportedOverflow;
+			reportedOverflow = total;
+			return dropped;
+		}
+
+		/** total number of logs dropped because the buffer was full */
+		long getOverflowCount() {
+			return overflow.get();
+		}
+	}
+
+	/**
+	 * Formats {@code System.nanoTime()} values relative to a reference date (see {@link #getNowDate()}).
+	 * The {@link SimpleDateFormat} is only invoked once per second, if the pattern ends with milliseconds ({@code .SSS})
+	 * they are appended to the cached prefix. Not thread safe.
+	 */
+	static class TimestampFormatter {
+		private final SimpleDateFormat fullFormat;
+		private final SimpleDateFormat secondsFormat;
+		private final long startMillis;
+		private final long startNanoTime;
+		private long cachedSecond = Long.MIN_VALUE;
+		private String cachedPrefix;
+
+		TimestampFormatter(String pattern, Locale locale, long startMillis, long startNanoTime) {
+			fullFormat = new SimpleDateFormat(pattern, locale);
+			secondsFormat = pattern.endsWith(".SSS") ? new SimpleDateFormat(pattern.substring(0, pattern.length() - 3), locale) : null;
+			this.startMillis = startMillis;
+			this.startNanoTime = startNanoTime;
+		}
+
+		String formatNanoTime(long nanoTime) {
+			return format(toEpochMillis(nanoTime));
+		}
+
+		long toEpochMillis(long nanoTime) {
+			return startMillis + (nanoTime - startNanoTime) / 1000000;
+		}
+
+		String format(long millis) {
+			if (secondsFormat == null || millis < 0)
+				return fullFormat.format(new Date(millis));
+
+			long second = millis / 1000;
+			if (second != cachedSecond) {
+				cachedPrefix = secondsFormat.format(new Date(second * 1000));
+				cachedSecond = second;
+			}
+			int ms = (int) (millis - second * 1000);
+			StringBuilder b = new StringBuilder(cachedPrefix.length() + 3).append(cachedPrefix);
+			if (ms < 100) b.append('0');
+			if (ms < 10) b.append('0');
+			return b.append(ms).toString();
+		}
+	}
+
+	/** Signatures of the monitored APIs by id, each given as object class, method name, return class and parameter types. */
+	static class ApiSignatures {
+		private final List<String[]> signatures = new ArrayList<>();
+
+		synchronized int register(String objectClass, String methodName, String returnClass, String... paramTypes) {
+			String[] signature = new String[3 + paramTypes.length];
+			signature[0] = objectClass;
+			signature[1] = methodName;
+			signature[2] = returnClass;
+			System.arraycopy(paramTypes, 0, signature, 3, paramTypes.length);
+			signatures.add(signature);
+			return signatures.size() - 1;
+		}
+
+		synchronized String[] get(int id) {
+			return signatures.get(id);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Encodes drained logs into the binary batch sent for {@code srvCmd_get_logs_binary}, such that the host does not have to
+	 * parse the text payloads. Numbers are big endian, strings are their UTF-8 length (-1 for null) followed by the bytes.
+	 * <pre>
+	 * batch:     [magic:int][pid:str][time zone id:str][time zone offset ms:int][dropped logs:long]
+	 *            [api count:int] {[api id:int][object class:str][method:str][return class:str][param count:int] {[param type:str]}}
+	 *            [trace count:int] {[trace id:int][trace:str]}
+	 *            [record count:int] {[record length:int][record]}
+	 * record:    [epoch millis:long][thread id:long][api id:int] and for api id &gt;= 0
+	 *            [param count:int] {[param value:str]} [trace id:int] [trace:str, only if the trace id is -1]
+	 *            or for api id -1 (logs without structured data) the text [payload:str]
+	 * </pre>
+	 * Each batch only contains the signatures and the stack traces referenced by its records, so every distinct trace is
+	 * serialized once per drain.
+	 * </p><p>
+	 * !!! DUPLICATION WARNING !!! of the format with org.droidmate.apis.ApiLogBatch
+	 * </p>
+	 */
+	static class BinaryLogWriter implements LogBuffer.Sink {
+		static final int MAGIC = 0x444D4131; // "DMA1"
+
+		private final TimestampFormatter formatter;
+		private final StackTraces traces;
+		private final ApiSignatures apis;
+		private final ByteArrayOutputStream recordsBytes = new ByteArrayOutputStream(8192);
+		private final DataOutputStream records = new DataOutputStream(recordsBytes);
+		private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(512);
+		private final DataOutputStream record = new DataOutputStream(recordBytes);
+		private final Set<Integer> apiIds = new LinkedHashSet<>();
+		private final Set<Integer> traceIds = new LinkedHashSet<>();
+		private final Map<Integer, String> expandedTraces = new HashMap<>();
+		private int count = 0;
+
+		BinaryLogWriter(TimestampFormatter formatter, StackTraces traces, ApiSignatures apis) {
+			this.formatter = formatter;
+			this.traces = traces;
+			this.apis = apis;
 		}
 
 		@Override
-		protected LinkedList<ArrayList<String>> OnServerRequest(String input) {
-			synchronized (currentLogs) {
-				validateLogsAreNotFromMonitor(currentLogs);
+		public void accept(long nanoTime, String payload, int apiId, long threadId, String[] paramValues, String stackTrace) {
+			try {
+				recordBytes.reset();
+				record.writeLong(formatter.toEpochMillis(nanoTime));
+				record.writeLong(threadId);
+				record.writeInt(apiId);
+				if (apiId >= 0) {
+					apiIds.add(apiId);
+					record.writeInt(paramValues.length);
+					for (String value : paramValues)
+						writeString(record, value);
+					int traceId = traces.referencedId(stackTrace);
+					record.writeInt(traceId);
+					if (traceId >= 0)
+						traceIds.add(traceId);
+					else
+						writeString(record, stackTrace);
+				} else
+					writeString(record, traces.expand(payload, expandedTraces));
+
+				records.writeInt(recordBytes.size());
+				recordBytes.writeTo(records);
+				count++;
+			} catch (IOException e) {
+				throw new AssertionError(e); // cannot happen for in memory streams
+			}
+		}
 
-				if (MonitorConstants.Companion.getSrvCmd_connCheck().equals(input)) {
-					final ArrayList<String> payload = new ArrayList<String>(Arrays.asList(getPid(), getPackageName(), ""));
-					return new LinkedList<ArrayList<String>>(Collections.singletonList(payload));
+		byte[] toByteArray(String pid, long droppedLogs, TimeZone timeZone) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(recordsBytes.size() + 4096);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			writeString(out, pid);
+			writeString(out, timeZone.getID());
+			out.writeInt(timeZone.getOffset(System.currentTimeMillis()));
+			out.writeLong(droppedLogs);
+
+			out.writeInt(apiIds.size());
+			for (int id : apiIds) {
+				String[] signature = apis.get(id);
+				out.writeInt(id);
+				writeString(out, signature[0]);
+				writeString(out, signature[1]);
+				writeString(out, signature[2]);
+				out.writeInt(signature.length - 3);
+				for (int i = 3; i < signature.length; i++)
+					writeString(out, signature[i]);
+			}
 
-				} else if (MonitorConstants.Companion.getSrvCmd_get_logs().equals(input)) {
-					LinkedList<ArrayList<String>> logsToSend = new LinkedList<ArrayList<String>>(currentLogs);
-					currentLogs.clear();
+			out.writeInt(traceIds.size());
+			for (int id : traceIds) {
+				out.writeInt(id);
+				writeString(out, traces.serialized(id));
+			}
 
-					return logsToSend;
+			out.writeInt(count);
+			recordsBytes.writeTo(out);
+			out.flush();
+			return bytes.toByteArray();
+		}
 
-				} else if (MonitorConstants.Companion.getSrvCmd_get_time().equals(input)) {
-					final String time = getNowDate();
+		private static void writeString(DataOutputStream out, String s) throws IOException {
+			if (s == null) {
+				out.writeInt(-1);
+				return;
+			}
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
 
-					final ArrayList<String> payload = new ArrayList<String>(Arrays.asList(time, null, null));
+	/**
+	 * Answers the requests of the host. The API logs are sent as list of [pid, time, payload] string triples for
+	 * {@code srvCmd_get_logs} and as byte array encoded by {@link BinaryLogWriter} for {@code srvCmd_get_logs_binary}.
+	 */
+	static class MonitorTcpServer extends TcpServerBase<String, Serializable> {
 
-					Log.d(MonitorConstants.Companion.getTag_srv(), "getTime: " + time);
-					return new LinkedList<ArrayList<String>>(Collections.singletonList(payload));
+		public Context context;
 
-				} else if (MonitorConstants.Companion.getSrvCmd_close().equals(input)) {
-					// In addition to the logic above, this command is handled in
-					// org.droidmate.monitor.MonitorJavaTemplate.MonitorTcpServer.shouldCloseServerSocket
+		protected MonitorTcpServer() {
+			super();
+		}
 
-					return new LinkedList<ArrayList<String>>();
+		@Override
+		protected Serializable OnServerRequest(String input) {
+			if (MonitorConstants.Companion.getSrvCmd_connCheck().equals(input)) {
+				final ArrayList<String> payload = new ArrayList<String>(Arrays.asList(getPid(), getPackageName(), ""));
+				return new LinkedList<ArrayList<String>>(Collections.singletonList(payload));
+
+			} else if (MonitorConstants.Companion.getSrvCmd_get_logs().equals(input)) {
+				LinkedList<ArrayList<String>> logsToSend = new LinkedList<ArrayList<String>>();
+				long dropped = currentLogs.drainTo(logsToSend, getPid(), monitor_time_formatter, stackTraces);
+				if (dropped > 0)
+					Log.w(MonitorConstants.Companion.getTag_srv(), "Log buffer overflow, dropped " + dropped + " API logs since the last request.");
+				validateLogsAreNotFromMonitor(logsToSend);
+
+				return logsToSend;
+
+			} else if (MonitorConstants.Companion.getSrvCmd_get_logs_binary().equals(input)) {
+				final BinaryLogWriter writer = new BinaryLogWriter(monitor_time_formatter, stackTraces, apiSignatures);
+				long dropped = currentLogs.drain(new LogBuffer.Sink() {
+					@Override
+					public void accept(long nanoTime, String payload, int apiId, long threadId, String[] paramValues, String stackTrace) {
+						failOnLogsFromMonitorTCPServerOrMonitorJavaTemplate(payload);
+						writer.accept(nanoTime, payload, apiId, threadId, paramValues, stackTrace);
+					}
+				});
+				if (dropped > 0)
+					Log.w(MonitorConstants.Companion.getTag_srv(), "Log buffer overflow, dropped " + dropped + " API logs since the last request.");
 
-				} else {
-					Log.e(MonitorConstants.Companion.getTag_srv(), "! Unexpected command from DroidMate TCP client. The command: " + input);
-					return new LinkedList<ArrayList<String>>();
+				try {
+					return writer.toByteArray(getPid(), dropped, TimeZone.getDefault());
+				} catch (IOException e) {
+					throw new AssertionError(e); // cannot happen for in memory streams
 				}
+
+			} else if (MonitorConstants.Companion.getSrvCmd_get_time().equals(input)) {
+				final String time = getNowDate();
+
+				final ArrayList<String> payload = new ArrayList<String>(Arrays.asList(time, null, null));
+
+				Log.d(MonitorConstants.Companion.getTag_srv(), "getTime: " + time);
+				return new LinkedList<ArrayList<String>>(Collections.singletonList(payload));
+
+			} else if (MonitorConstants.Companion.getSrvCmd_close().equals(input)) {
+				// In addition to the logic above, this command is handled in
+				// org.droidmate.monitor.MonitorJavaTemplate.MonitorTcpServer.shouldCloseServerSocket
+
+				return new LinkedList<ArrayList<String>>();
+
+			} else {
+				Log.e(MonitorConstants.Companion.getTag_srv(), "! Unexpected command from DroidMate TCP client. The command: " + input);
+				return new LinkedList<ArrayList<String>>();
 			}
 		}
 
@@ -706,40 +1348,6 @@ public class MonitorJavaTemplate
 
 	//region Generated code
 
-	private class ApiPolicyId {
-		private String method;
-		private List<String> uriList = new ArrayList<>();
-
-		public ApiPolicyId(String method, String... uris) {
-			this.method = method;
-			this.uriList = Arrays.asList(uris);
-
-			assert this.method != null;
-		}
-
-		boolean affects(String methodName, List<String> uriList) {
-			boolean equal = this.method.equals(methodName.replaceAll("\\s+", ""));
-
-			StringBuilder b = new StringBuilder();
-			for (String uri : uriList)
-				b.append(uri + "");
-			String apiList = b.toString();
-
-			for (String restrictedUri : this.uriList) {
-				equal &= apiList.contains(restrictedUri);
-			}
-
-			return equal;
-		}
-
-		@Override
-		public boolean equals(Object other) {
-			return (other instanceof ApiPolicyId) &&
-							((ApiPolicyId) other).method.equals(this.method) &&
-							((ApiPolicyId) other).uriList.equals(this.uriList);
-		}
-	}
-
 	// GENERATED_CODE_INJECTION_POINT:METHOD_REDIR_TARGETS
 
 	//endregion
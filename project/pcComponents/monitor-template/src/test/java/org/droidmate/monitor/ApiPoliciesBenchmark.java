@@ -0,0 +1,109 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+package org.droidmate.monitor;
+
+import org.droidmate.monitor.MonitorJavaTemplate.ApiPolicies;
+import org.droidmate.monitor.MonitorJavaTemplate.ApiPolicy;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Per call cost of the api policy lookup for growing policy files, compared to re-reading the file and scanning all policies
+ * on each call as the monitor did before. Not part of the regular test run, execute it manually.
+ */
+public class ApiPoliciesBenchmark {
+	private static final int[] policyCounts = {10, 100, 1000, 10000};
+	private static final List<String> uris = Collections.singletonList("content://com.android.contacts/people");
+	private static volatile Object sink;
+
+	private static File policiesFile(int n) throws IOException {
+		File file = File.createTempFile("api_policies", ".txt");
+		file.deleteOnExit();
+		try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+			for (int i = 0; i < n; i++)
+				writer.write("android.Api" + i + ".method(int)\t" + (i % 3 == 0 ? "content://restricted" + i + "\t" : "") + "Deny\n");
+		}
+		return file;
+	}
+
+	/** the previous lookup: parse the whole file and check each policy */
+	private static ApiPolicy legacyPolicy(File file, String methodName, List<String> uriList) throws IOException {
+		List<String[]> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null)
+				lines.add(line.split("\t"));
+		}
+		for (String[] lineData : lines) {
+			boolean equal = lineData[0].replaceAll("\\s+", "").equals(methodName.replaceAll("\\s+", ""));
+			StringBuilder b = new StringBuilder();
+			for (String uri : uriList)
+				b.append(uri);
+			for (String restrictedUri : Arrays.asList(lineData).subList(1, lineData.length - 1))
+				equal &= b.toString().contains(restrictedUri);
+			if (equal)
+				return ApiPolicy.valueOf(lineData[lineData.length - 1].trim());
+		}
+		return ApiPolicy.Allow;
+	}
+
+	private interface Call {
+		Object run(int i) throws IOException;
+	}
+
+	private static double nanosPerCall(int calls, Call call) throws IOException {
+		for (int i = 0; i < calls; i++) // warmup
+			sink = call.run(i);
+		long start = System.nanoTime();
+		for (int i = 0; i < calls; i++)
+			sink = call.run(i);
+		return (System.nanoTime() - start) / (double) calls;
+	}
+
+	@Test
+	public void lookupTimePerCall() throws IOException {
+		for (final int n : policyCounts) {
+			final File file = policiesFile(n);
+			final ApiPolicies policies = new ApiPolicies(file, ApiPolicies.RELOAD_CHECK_INTERVAL_MS);
+
+			double indexed = nanosPerCall(1000000, new Call() {
+				@Override
+				public Object run(int i) throws IOException {
+					return policies.getPolicy("android.Api" + (i % (2 * n)) + ".method(int)", uris);
+				}
+			});
+			double legacy = nanosPerCall(Math.max(20, 20000 / n), new Call() {
+				@Override
+				public Object run(int i) throws IOException {
+					return legacyPolicy(file, "android.Api" + (i % (2 * n)) + ".method(int)", uris);
+				}
+			});
+			System.out.println(String.format("%-50s %12.1f ns", n + " policies: compiled index", indexed));
+			System.out.println(String.format("%-50s %12.1f ns", n + " policies: re-read and scan", legacy));
+		}
+	}
+}
@@ -0,0 +1,149 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.monitor;
+
+import org.droidmate.monitor.MonitorJavaTemplate.LogBuffer;
+import org.droidmate.monitor.MonitorJavaTemplate.StackTraces;
+import org.droidmate.monitor.MonitorJavaTemplate.TimestampFormatter;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Throughput of logging api calls from concurrent app threads while the tcp server drains the logs, comparing the lock-free
+ * {@link LogBuffer} to the previous synchronized list which formatted the timestamp inside the lock.
+ * Not part of the regular test run, execute it manually.
+ */
+public class LogBufferBenchmark {
+	private static final int[] threadCounts = {1, 2, 4, 8};
+	private static final int logsPerThread = 500000;
+	private static final String pattern = "yyyy-MM-dd HH:mm:ss.SSS";
+	private static final String payload = "TId:1;objCls:'android.net.wifi.WifiManager';mthd:'getScanResults';retCls:'java.util.List';params:;stacktrace:'dalvik'";
+	private static final long startMillis = System.currentTimeMillis();
+	private static final long startNanoTime = System.nanoTime();
+
+	private interface Sink {
+		void add(String payload);
+
+		/** @return number of drained logs */
+		int drain();
+	}
+
+	/** the previous implementation: global lock, formatting and list copy on each drain */
+	private static class SynchronizedSink implements Sink {
+		private final List<ArrayList<String>> logs = new ArrayList<>();
+		private final SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+
+		@Override
+		public void add(String payload) {
+			synchronized (logs) {
+				String now = format.format(new Date(startMillis + (System.nanoTime() - startNanoTime) / 1000000));
+				logs.add(new ArrayList<>(Arrays.asList("42", now, payload)));
+			}
+		}
+
+		@Override
+		public int drain() {
+			synchronized (logs) {
+				LinkedList<ArrayList<String>> toSend = new LinkedList<>(logs);
+				logs.clear();
+				return toSend.size();
+			}
+		}
+	}
+
+	private static class BufferSink implements Sink {
+		private final LogBuffer buffer = new LogBuffer(LogBuffer.DEFAULT_CAPACITY);
+		private final TimestampFormatter formatter = new TimestampFormatter(pattern, Locale.US, startMillis, startNanoTime);
+		private final StackTraces traces = new StackTraces(false, 0, 1, 0);
+		long dropped = 0;
+
+		@Override
+		public void add(String payload) {
+			buffer.offer(System.nanoTime(), payload);
+		}
+
+		@Override
+		public int drain() {
+			LinkedList<ArrayList<String>> toSend = new LinkedList<>();
+			dropped += buffer.drainTo(toSend, "42", formatter, traces);
+			return toSend.size();
+		}
+	}
+
+	/**
+	 * Runs the producers while one thread keeps draining.
+	 *
+	 * @return nanoseconds per logged call on the producer side and nanoseconds per drained log on the consumer side
+	 */
+	private static double[] nanosPerLog(int threads, final Sink sink) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++)
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < logsPerThread; i++)
+							sink.add(payload);
+					} catch (InterruptedException ignored) {
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+
+		long begin = System.nanoTime();
+		start.countDown();
+		long drained = 0;
+		long drainTime = 0;
+		while (done.getCount() > 0) {
+			long drainStart = System.nanoTime();
+			drained += sink.drain();
+			drainTime += System.nanoTime() - drainStart;
+			Thread.yield();
+		}
+		long producerTime = System.nanoTime() - begin;
+		drained += sink.drain();
+		return new double[]{producerTime / (double) (threads * logsPerThread), drainTime / (double) Math.max(1, drained)};
+	}
+
+	@Test
+	public void loggingThroughput() throws InterruptedException {
+		nanosPerLog(2, new SynchronizedSink()); // warmup
+		nanosPerLog(2, new BufferSink());
+		for (int threads : threadCounts) {
+			double[] locked = nanosPerLog(threads, new SynchronizedSink());
+			BufferSink buffer = new BufferSink();
+			double[] lockFree = nanosPerLog(threads, buffer);
+			System.out.println(String.format("%-40s add %8.1f ns, drain %8.1f ns", threads + " threads: synchronized list", locked[0], locked[1]));
+			System.out.println(String.format("%-40s add %8.1f ns, drain %8.1f ns, %d dropped", threads + " threads: ring buffer", lockFree[0], lockFree[1], buffer.dropped));
+		}
+	}
+}
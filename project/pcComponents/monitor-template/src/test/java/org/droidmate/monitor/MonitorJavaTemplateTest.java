@@ -24,9 +24,28 @@
 // web: www.droidmate.org
 package org.droidmate.monitor;
 
+import org.droidmate.apis.ApiLogBatch;
+import org.droidmate.apis.IApiLogcatMessage;
+import org.droidmate.monitor.MonitorJavaTemplate.ApiPolicies;
+import org.droidmate.monitor.MonitorJavaTemplate.ApiPolicy;
+import org.droidmate.monitor.MonitorJavaTemplate.ApiSignatures;
+import org.droidmate.monitor.MonitorJavaTemplate.BinaryLogWriter;
+import org.droidmate.monitor.MonitorJavaTemplate.LogBuffer;
+import org.droidmate.monitor.MonitorJavaTemplate.StackTraces;
+import org.droidmate.monitor.MonitorJavaTemplate.TimestampFormatter;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class MonitorJavaTemplateTest {
 	@Test
@@ -35,4 +54,232 @@ public class MonitorJavaTemplateTest {
 		//assertEquals("[97,98,99]", MonitorJavaTemplate.objectToString(("abc".getBytes())));
 	}
 
+	private static void write(File file, String content) throws IOException {
+		try (FileWriter writer = new FileWriter(file)) {
+			writer.write(content);
+		}
+	}
+
+	@Test
+	public void looksUpApiPolicies() throws IOException {
+		File file = File.createTempFile("api_policies", ".txt");
+		try {
+			write(file, "# comment\n" +
+							"android.net.wifi.WifiManager.getScanResults( )\tDeny\n" +
+							"android.content.ContentResolver.query()\tcontent://contacts\tMock\n" +
+							"android.content.ContentResolver.query()\tcontent://sms\tcontent://inbox\tDeny\n");
+			ApiPolicies policies = new ApiPolicies(file, 0);
+			List<String> none = Collections.emptyList();
+
+			assertEquals(ApiPolicy.Deny, policies.getPolicy("android.net.wifi.WifiManager.getScanResults()", none));
+			assertEquals(ApiPolicy.Deny, policies.getPolicy("android.net.wifi.WifiManager.getScanResults( )", none));
+			assertEquals(ApiPolicy.Allow, policies.getPolicy("android.net.wifi.WifiManager.startScan()", none));
+			assertEquals(ApiPolicy.Mock, policies.getPolicy("android.content.ContentResolver.query()", Arrays.asList("content://contacts/people")));
+			assertEquals(ApiPolicy.Deny, policies.getPolicy("android.content.ContentResolver.query()", Arrays.asList("content://sms", "content://inbox")));
+			assertEquals(ApiPolicy.Allow, policies.getPolicy("android.content.ContentResolver.query()", Arrays.asList("content://sms")));
+
+			// changing the length is detected even if the modification time has a coarse granularity
+			write(file, "android.net.wifi.WifiManager.getScanResults()\tMock\n");
+			assertEquals(ApiPolicy.Mock, policies.getPolicy("android.net.wifi.WifiManager.getScanResults()", none));
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			file.delete();
+		}
+	}
+
+	private static final String timePattern = "yyyy-MM-dd HH:mm:ss.SSS";
+	private static final StackTraces noTraces = new StackTraces(false, 0, 1, 0);
+
+	@Test
+	public void formatsTimestampsLikeSimpleDateFormat() {
+		SimpleDateFormat expected = new SimpleDateFormat(timePattern, Locale.US);
+		TimestampFormatter formatter = new TimestampFormatter(timePattern, Locale.US, 1500000000000L, 0);
+		for (long ms : new long[]{0, 1, 9, 10, 99, 100, 999, 1000, 1001, 61999, 3600000, 86400123})
+			assertEquals(expected.format(new Date(1500000000000L + ms)), formatter.formatNanoTime(ms * 1000000));
+	}
+
+	@Test
+	public void logBufferKeepsAllLogsOfConcurrentProducers() throws InterruptedException {
+		final int producers = 8;
+		final int logsPerProducer = 50000;
+		final LogBuffer buffer = new LogBuffer(1 << 10);
+		final TimestampFormatter formatter = new TimestampFormatter(timePattern, Locale.US, 0, 0);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(producers);
+		final long[] dropped = new long[producers];
+
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < logsPerProducer; i++)
+							if (!buffer.offer(i * 1000000L, producer + ":" + i))
+								dropped[producer]++;
+					} catch (InterruptedException ignored) {
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+
+		List<ArrayList<String>> logs = new ArrayList<>();
+		long reportedDropped = 0;
+		start.countDown();
+		while (done.getCount() > 0)
+			reportedDropped += buffer.drainTo(logs, "42", formatter, noTraces);
+		reportedDropped += buffer.drainTo(logs, "42", formatter, noTraces);
+
+		long totalDropped = 0;
+		for (long d : dropped)
+			totalDropped += d;
+		assertEquals(totalDropped, reportedDropped);
+		assertEquals(totalDropped, buffer.getOverflowCount());
+		assertEquals(producers * logsPerProducer - totalDropped, logs.size());
+
+		// no log is duplicated and the logs of each producer are drained in the order they were added
+		int[] last = new int[producers];
+		Arrays.fill(last, -1);
+		for (ArrayList<String> log : logs) {
+			assertEquals("42", log.get(0));
+			String[] payload = log.get(2).split(":");
+			int producer = Integer.parseInt(payload[0]);
+			int i = Integer.parseInt(payload[1]);
+			assertFalse(i <= last[producer]);
+			assertEquals(formatter.formatNanoTime(i * 1000000L), log.get(1));
+			last[producer] = i;
+		}
+	}
+
+	@Test
+	public void logBufferCountsOverflow() {
+		LogBuffer buffer = new LogBuffer(4);
+		TimestampFormatter formatter = new TimestampFormatter(timePattern, Locale.US, 0, 0);
+		for (int i = 0; i < 6; i++)
+			buffer.offer(i, "log" + i);
+
+		List<ArrayList<String>> logs = new ArrayList<>();
+		assertEquals(2, buffer.drainTo(logs, "1", formatter, noTraces));
+		assertEquals(Arrays.asList("log0", "log1", "log2", "log3"), Arrays.asList(logs.get(0).get(2), logs.get(1).get(2), logs.get(2).get(2), logs.get(3).get(2)));
+
+		// the slots are reusable after the drain and the overflow is only reported once
+		logs.clear();
+		buffer.offer(6, "log6");
+		assertEquals(0, buffer.drainTo(logs, "1", formatter, noTraces));
+		assertEquals(1, logs.size());
+		assertEquals("log6", logs.get(0).get(2));
+	}
+
+	private static StackTraceElement[] trace(String... methods) {
+		StackTraceElement[] trace = new StackTraceElement[methods.length];
+		for (int i = 0; i < methods.length; i++)
+			trace[i] = new StackTraceElement("org.droidmate.App", methods[i], "App.java", i + 1);
+		return trace;
+	}
+
+	@Test
+	public void internsStackTraces() {
+		StackTraces traces = new StackTraces(true, 0, 1, 2);
+		String first = traces.capture(trace("a", "b", "c"));
+		assertEquals(first, traces.capture(trace("a", "b", "c")));
+		String second = traces.capture(trace("a", "b"));
+		assertFalse(first.equals(second));
+		assertEquals(2, traces.size());
+		// the table is full, further traces are logged directly
+		assertEquals(StackTraces.serialize(trace("x")), traces.capture(trace("x")));
+
+		Map<Integer, String> serialized = new HashMap<>();
+		String legacy = "TId: 1;objCls: 'android.App';params: 'int' '" + first + "';stacktrace: '" + StackTraces.serialize(trace("a", "b")) + "'";
+		assertEquals(legacy, traces.expand(legacy, serialized));
+		assertTrue(serialized.isEmpty());
+		assertEquals("stacktrace: '" + StackTraces.serialize(trace("a", "b", "c")) + "'", traces.expand("stacktrace: '" + first + "'", serialized));
+		assertEquals("App.a(App.java:1)->App.b(App.java:2)", traces.expand(second, serialized).replace("org.droidmate.", ""));
+		assertEquals(2, serialized.size());
+	}
+
+	@Test
+	public void limitsStackTraceDepthAndSamples() {
+		StackTraces traces = new StackTraces(false, 2, 3, 0);
+		assertEquals(StackTraces.serialize(trace("a", "b")), traces.capture(trace("a", "b", "c")));
+		assertEquals(StackTraces.serialize(trace("a")), traces.capture(trace("a")));
+
+		List<Boolean> sampled = new ArrayList<>();
+		for (int i = 0; i < 7; i++)
+			sampled.add(traces.sample());
+		assertEquals(Arrays.asList(true, false, false, true, false, false, true), sampled);
+	}
+
+	@Test
+	public void expandsInternedStackTracesForLogcat() {
+		StackTraces traces = new StackTraces(true, 0, 1, 1);
+		String interned = traces.capture(trace("a", "b"));
+		String notInterned = traces.capture(trace("x"));
+
+		assertEquals("mthd: 'call';stacktrace: '" + StackTraces.serialize(trace("a", "b")) + "'",
+				traces.expandForLogcat("mthd: 'call';stacktrace: '" + interned + "'", interned));
+		assertEquals("stacktrace: '" + notInterned + "'", traces.expandForLogcat("stacktrace: '" + notInterned + "'", notInterned));
+		assertEquals("stacktrace: ''", traces.expandForLogcat("stacktrace: ''", ""));
+	}
+
+	@Test
+	public void drainsInternedStackTraces() {
+		LogBuffer buffer = new LogBuffer(8);
+		StackTraces traces = new StackTraces(true, 0, 1, 16);
+		TimestampFormatter formatter = new TimestampFormatter(timePattern, Locale.US, 0, 0);
+		for (int i = 0; i < 3; i++)
+			buffer.offer(i, "mthd: 'call" + i + "';stacktrace: '" + traces.capture(trace("a", "b")) + "'");
+
+		List<ArrayList<String>> logs = new ArrayList<>();
+		buffer.drainTo(logs, "1", formatter, traces);
+		for (int i = 0; i < 3; i++)
+			assertEquals("mthd: 'call" + i + "';stacktrace: '" + StackTraces.serialize(trace("a", "b")) + "'", logs.get(i).get(2));
+	}
+
+	@Test
+	public void binaryLogsAreDecodedByTheHost() throws IOException {
+		ApiSignatures apis = new ApiSignatures();
+		int loadUrl = apis.register("android.webkit.WebView", "loadUrl", "void", "java.lang.String");
+		int getInfo = apis.register("android.net.ConnectivityManager", "getActiveNetworkInfo", "android.net.NetworkInfo");
+		StackTraces traces = new StackTraces(true, 0, 1, 16);
+		String interned = traces.capture(trace("a", "b"));
+
+		LogBuffer buffer = new LogBuffer(8);
+		buffer.offer(1000000, "text of loadUrl", loadUrl, 7, new String[]{"javascript:f(\\'x\\')"}, interned);
+		buffer.offer(2000000, "text of getActiveNetworkInfo", getInfo, 8, new String[0], "not->interned");
+		buffer.offer(3000000, "TId: 9;objCls: 'a.B';mthd: 'c';retCls: 'void';params: ;stacktrace: '" + interned + "'");
+
+		BinaryLogWriter writer = new BinaryLogWriter(new TimestampFormatter(timePattern, Locale.US, 5000, 0), traces, apis);
+		long dropped = buffer.drain(writer);
+		byte[] bytes = writer.toByteArray("42", dropped, TimeZone.getTimeZone("UTC"));
+
+		ApiLogBatch.Batch batch = ApiLogBatch.decode(bytes, "I", "tag");
+		assertEquals("42", batch.getPid());
+		assertEquals(0, batch.getDroppedLogs());
+		List<IApiLogcatMessage> messages = batch.getMessages();
+		assertEquals(3, messages.size());
+
+		IApiLogcatMessage first = messages.get(0);
+		assertEquals(LocalDateTime.of(1970, 1, 1, 0, 0, 5, 1000000), first.getTime());
+		assertEquals("42", first.getPidString());
+		assertEquals("android.webkit.WebView", first.getObjectClass());
+		assertEquals("loadUrl", first.getMethodName());
+		assertEquals(Collections.singletonList("java.lang.String"), first.getParamTypes());
+		assertEquals(Collections.singletonList("javascript:f('x')"), first.getParamValues());
+		assertEquals("7", first.getThreadId());
+		assertEquals(StackTraces.serialize(trace("a", "b")), first.getStackTrace());
+
+		IApiLogcatMessage second = messages.get(1);
+		assertEquals("android.net.NetworkInfo", second.getReturnClass());
+		assertEquals(Collections.emptyList(), second.getParamValues());
+		assertEquals("not->interned", second.getStackTrace());
+
+		// logs without structured data are sent as text
+		IApiLogcatMessage third = messages.get(2);
+		assertEquals("a.B", third.getObjectClass());
+		assertEquals("9", third.getThreadId());
+		assertEquals(StackTraces.serialize(trace("a", "b")), third.getStackTrace());
+	}
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.monitor;
+
+import org.droidmate.monitor.MonitorJavaTemplate.StackTraces;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Per call time and allocation of recording the stack trace of a monitored call, comparing the joined string built on each
+ * call (the previous behavior) to the interned traces with different depth and sampling settings. The cost of serializing
+ * the referenced traces when the logs are drained is included, one drain per {@link #callsPerDrain} calls.
+ * Not part of the regular test run, execute it manually (the allocation is only reported on HotSpot).
+ */
+public class StackTracesBenchmark {
+	private static final int calls = 200000;
+	private static final int callsPerDrain = 1000;
+	private static final int callSites = 20;
+	private static final int stackDepth = 40;
+	private static volatile Object sink;
+
+	private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private interface Capture {
+		String run(int callSite);
+	}
+
+	/** captures the stack trace at one of {@link #callSites} distinct call sites, each {@link #stackDepth} frames deep */
+	private static String atCallSite(int callSite, int depth, Capture capture) {
+		if (depth > 0)
+			return atCallSite(callSite, depth - 1, capture);
+		return capture.run(callSite);
+	}
+
+	private static String callSite(int site, Capture capture) {
+		switch (site % 4) {
+			case 0:
+				return site0(site, capture);
+			case 1:
+				return site1(site, capture);
+			case 2:
+				return site2(site, capture);
+			default:
+				return atCallSite(site, stackDepth - site, capture);
+		}
+	}
+
+	private static String site0(int site, Capture capture) {
+		return atCallSite(site, stackDepth - site, capture);
+	}
+
+	private static String site1(int site, Capture capture) {
+		return atCallSite(site, stackDepth - site, capture);
+	}
+
+	private static String site2(int site, Capture capture) {
+		return atCallSite(site, stackDepth - site, capture);
+	}
+
+	/** @return nanoseconds and allocated bytes per call */
+	private static double[] measure(final StackTraces traces) {
+		Capture capture = new Capture() {
+			@Override
+			public String run(int callSite) {
+				return traces.sample() ? traces.capture(Thread.currentThread().getStackTrace()) : "";
+			}
+		};
+		List<String> payloads = new ArrayList<>(callsPerDrain);
+		for (int i = 0; i < calls; i++) // warmup
+			sink = callSite(i % callSites, capture);
+
+		long threadId = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			payloads.add("stacktrace: '" + callSite(i % callSites, capture) + "'");
+			if (payloads.size() == callsPerDrain) {
+				Map<Integer, String> serialized = new HashMap<>();
+				for (String payload : payloads)
+					sink = traces.expand(payload, serialized);
+				payloads.clear();
+			}
+		}
+		long time = System.nanoTime() - start;
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+		return new double[]{time / (double) calls, allocated / (double) calls};
+	}
+
+	private static void report(String name, double[] result) {
+		System.out.println(String.format("%-45s %10.1f ns %10.0f bytes", name, result[0], result[1]));
+	}
+
+	@Test
+	public void captureCostPerCall() {
+		report("joined string on each call", measure(new StackTraces(false, 0, 1, 0)));
+		report("interned", measure(new StackTraces(true, 0, 1, 4096)));
+		report("interned, depth 16", measure(new StackTraces(true, 16, 1, 4096)));
+		report("interned, every 10th call", measure(new StackTraces(true, 0, 10, 4096)));
+	}
+}
@@ -29,11 +29,14 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.nio.file.Path
 
-class AggregateStats @JvmOverloads constructor(private val fileName: String = "aggregate_stats.txt") : Reporter() {
+class AggregateStats @JvmOverloads constructor(private val fileName: String = "aggregate_stats.txt") : IncrementalReporter() {
 	companion object {
 		private val log: Logger by lazy { LoggerFactory.getLogger(AggregateStats::class.java) }
 	}
 
+	/** rows of the apps passed to [writeApp] since the last [finish] */
+	private val rows: MutableList<List<String>> = mutableListOf()
+
 	fun getTableData(rawData: List<ExplorationContext>, path: Path): TableDataFile<Int, String, String> {
 		return TableDataFile(AggregateStatsTable(rawData), path)
 	}
@@ -48,4 +51,15 @@ class AggregateStats @JvmOverloads constructor(private val fileName: String = "a
 		log.info("Writing out report $report")
 		report.write()
 	}
+
+	override fun safeWriteApp(reportDir: Path, resourceDir: Path, data: ExplorationContext) {
+		rows.add(AggregateStatsTable.row(data))
+	}
+
+	override fun safeFinish(reportDir: Path, resourceDir: Path) {
+		val report = TableDataFile(AggregateStatsTable.fromRows(rows.toList()), getFilePath(reportDir))
+		rows.clear()
+		log.info("Writing out report $report")
+		report.write()
+	}
 }
\ No newline at end of file
@@ -44,7 +44,26 @@ class AggregateStatsTable private constructor(val table: Table<Int, String, Stri
 		const val headerEventApiPairsSeenCount = "unique_event_api_pairs"
 		const val headerException = "exception"
 
-		fun build(data: List<ExplorationContext>): Table<Int, String, String> {
+		fun build(data: List<ExplorationContext>): Table<Int, String, String> = buildFromRows(data.map { row(it) })
+
+		/** the table of the given [rows], each of them computed by [row] */
+		fun fromRows(rows: List<List<String>>): AggregateStatsTable = AggregateStatsTable(buildFromRows(rows))
+
+		fun row(apkData: ExplorationContext): List<String> =
+				listOf(
+						apkData.apk.fileName,
+						apkData.apk.packageName,
+						apkData.getExplorationDuration().seconds.toString(),
+						apkData.actionTrace.size.toString(),
+						apkData.resetActionsCount.toString(),
+						apkData.uniqueActionableWidgets.size.toString(),
+						apkData.uniqueClickedWidgets.size.toString(),
+						apkData.uniqueApis.size.toString(),
+						apkData.uniqueEventApiPairs.size.toString(),
+						apkData.exception.toString()
+				)
+
+		private fun buildFromRows(rows: List<List<String>>): Table<Int, String, String> {
 
 			return buildTable(
 					headers = listOf(
@@ -59,22 +78,8 @@ class AggregateStatsTable private constructor(val table: Table<Int, String, Stri
 							headerEventApiPairsSeenCount,
 							headerException
 					),
-					rowCount = data.size,
-					computeRow = { rowIndex ->
-						val apkData = data[rowIndex]
-						listOf(
-								apkData.apk.fileName,
-								apkData.apk.packageName,
-								apkData.getExplorationDuration().seconds.toString(),
-								apkData.actionTrace.size.toString(),
-								apkData.resetActionsCount.toString(),
-								apkData.uniqueActionableWidgets.size.toString(),
-								apkData.uniqueClickedWidgets.size.toString(),
-								apkData.uniqueApis.size.toString(),
-								apkData.uniqueEventApiPairs.size.toString(),
-								apkData.exception.toString()
-						)
-					}
+					rowCount = rows.size,
+					computeRow = { rowIndex -> rows[rowIndex] }
 			)
 		}
 
@@ -34,6 +34,7 @@ import org.droidmate.exploration.ExplorationContext
 import org.droidmate.logging.LogbackConstants
 import org.droidmate.misc.minutesAndSeconds
 import org.droidmate.misc.replaceVariable
+import org.droidmate.report.misc.actions
 import org.droidmate.report.misc.resetActionsCount
 import java.time.Duration
 
@@ -139,7 +140,7 @@ class ApkSummary {
 		companion object {
 			val ExplorationContext.uniqueApiLogsWithFirstTriggeringActionIndex: Map<IApiLogcatMessage, Int>
 				get() {
-					return this.actionTrace.getActions().uniqueItemsWithFirstOccurrenceIndex(
+					return this.actions.uniqueItemsWithFirstOccurrenceIndex(
 							extractItems = { it.deviceLogs.apiLogs },
 							extractUniqueString = { it.uniqueString }
 					)
@@ -148,7 +149,7 @@ class ApkSummary {
 			val ExplorationContext.uniqueEventApiPairsWithFirstTriggeringActionIndex: Map<Pair<ActionData, IApiLogcatMessage>, Int>
 				get() {
 
-					return this.actionTrace.getActions().uniqueItemsWithFirstOccurrenceIndex(
+					return this.actions.uniqueItemsWithFirstOccurrenceIndex(
 							extractItems = { it.deviceLogs.apiLogs.map { apiLog -> Pair(it, apiLog) } },
 							extractUniqueString = { (action, api) -> action.actionString() + "_" + api.uniqueString }
 					)
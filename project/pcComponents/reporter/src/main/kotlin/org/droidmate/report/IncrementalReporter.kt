@@ -0,0 +1,55 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.report
+
+import org.droidmate.exploration.ExplorationContext
+import java.nio.file.Path
+
+/**
+ * Reporter which gets the data of each app via [writeApp] as soon as its exploration finished and [finish] at the end of the run,
+ * such that the [ReportPipeline] does not have to keep the exploration data of all apps in memory.
+ * Writing the report for a list of apps at once ([write]) passes each app to [safeWriteApp] and calls [safeFinish] afterwards.
+ */
+abstract class IncrementalReporter : Reporter() {
+
+	fun writeApp(reportDir: Path, resourceDir: Path, data: ExplorationContext) {
+		tryWrite(reportDir) { safeWriteApp(reportDir, resourceDir, data) }
+	}
+
+	fun finish(reportDir: Path, resourceDir: Path) {
+		tryWrite(reportDir) { safeFinish(reportDir, resourceDir) }
+	}
+
+	override fun safeWrite(reportDir: Path, resourceDir: Path, rawData: List<ExplorationContext>) {
+		rawData.forEach { data -> safeWriteApp(reportDir, resourceDir, data) }
+		safeFinish(reportDir, resourceDir)
+	}
+
+	protected abstract fun safeWriteApp(reportDir: Path, resourceDir: Path, data: ExplorationContext)
+
+	/** writes the reports over all apps passed to [writeApp] since the last call */
+	protected open fun safeFinish(reportDir: Path, resourceDir: Path) { }
+}
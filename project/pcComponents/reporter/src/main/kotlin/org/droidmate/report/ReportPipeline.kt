@@ -0,0 +1,163 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+package org.droidmate.report
+
+import kotlinx.coroutines.experimental.async
+import kotlinx.coroutines.experimental.newFixedThreadPoolContext
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.exploration.ExplorationContext
+import org.droidmate.report.misc.AppReportData
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Writes the reports of each app as soon as its exploration finished, instead of collecting the exploration data of all apps
+ * and writing every report at the end of the run.
+ *
+ * The [IncrementalReporter]s process an app in parallel, they share the [AppReportData] of the app which is
+ * released afterwards. Each reporter gets the apps in exploration order and never runs concurrently with itself, such that
+ * reporters which aggregate over all apps do not need any synchronization. The data of the apps is only kept until [finish]
+ * if any of the reporters is not incremental.
+ * The per reporter [Metrics] are logged by [finish].
+ */
+class ReportPipeline(private val reportDir: Path, private val resourceDir: Path, reporters: List<Reporter>) {
+	companion object {
+		private val log: Logger by lazy { LoggerFactory.getLogger(ReportPipeline::class.java) }
+
+		private val nThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1)
+		private val pool by lazy { newFixedThreadPoolContext(nThreads, "report-pipeline") }
+
+		private val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+		/** bytes allocated by the current thread so far, or -1 if the JVM does not support measuring it */
+		private fun allocatedBytes(): Long = threadBean?.takeIf { it.isThreadAllocatedMemorySupported && it.isThreadAllocatedMemoryEnabled }
+				?.getThreadAllocatedBytes(Thread.currentThread().id) ?: -1
+
+		private val heapPools = ManagementFactory.getMemoryPoolMXBeans().filter { it.type == MemoryType.HEAP }
+
+		private fun resetPeakHeap() = heapPools.forEach { it.resetPeakUsage() }
+
+		/** sum of the peak usages of the heap pools since the last [resetPeakHeap], an upper bound of the actual peak */
+		private fun peakHeap(): Long = heapPools.sumByLong { it.peakUsage?.used ?: 0 }
+
+		private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long = fold(0L) { sum, e -> sum + selector(e) }
+	}
+
+	/**
+	 * Cost of one reporter over the whole run. The reporters of an app run in parallel, therefore [peakHeapBytes] is the peak
+	 * heap usage of the JVM while any reporter of the same app was running, while [allocatedBytes] only counts the allocations of
+	 * the reporter itself.
+	 */
+	class Metrics(val reporter: String) {
+		var nanos: Long = 0
+			private set
+		var allocatedBytes: Long = 0
+			private set
+		var peakHeapBytes: Long = 0
+			private set
+
+		internal fun add(nanos: Long, allocatedBytes: Long, heapBytes: Long) {
+			this.nanos += nanos
+			if (allocatedBytes < 0 || this.allocatedBytes < 0) this.allocatedBytes = -1
+			else this.allocatedBytes += allocatedBytes
+			peakHeapBytes = Math.max(peakHeapBytes, heapBytes)
+		}
+
+		override fun toString(): String = "$reporter: ${nanos / 1000000} ms, " +
+				(if (allocatedBytes < 0) "allocations unknown" else "${allocatedBytes / (1024 * 1024)} MB allocated") +
+				", peak heap ${peakHeapBytes / (1024 * 1024)} MB"
+	}
+
+	private val incremental = reporters.filterIsInstance<IncrementalReporter>()
+	private val batch = reporters.filterNot { it is IncrementalReporter }
+	private val retained: MutableList<ExplorationContext> = mutableListOf()
+	private val metrics: Map<Reporter, Metrics> = reporters.associate { Pair(it, Metrics(it.javaClass.simpleName)) }
+
+	/** true if the exploration data of all apps has to be kept until [finish] */
+	val retainsExplorationData: Boolean get() = batch.isNotEmpty()
+
+	/** number of apps whose exploration data is currently kept until [finish] */
+	internal val retainedApps: Int get() = retained.size
+
+	fun onAppExplored(data: ExplorationContext) {
+		createReportDir()
+		log.info("Writing reports of ${data.apk.packageName}")
+		AppReportData.register(data)
+		try {
+			runParallel(incremental) { it.writeApp(reportDir, resourceDir, data) }
+		} finally {
+			AppReportData.release(data)
+		}
+		if (retainsExplorationData) retained.add(data)
+	}
+
+	/** writes the reports over all apps and logs the [Metrics] of all reporters */
+	fun finish(): Collection<Metrics> {
+		createReportDir()
+		log.info("Writing reports")
+		runParallel(incremental) { it.finish(reportDir, resourceDir) }
+
+		retained.forEach { AppReportData.register(it) }
+		try {
+			runParallel(batch) { it.write(reportDir, resourceDir, retained) }
+		} finally {
+			retained.forEach { AppReportData.release(it) }
+			retained.clear()
+		}
+
+		metrics.values.forEach { log.info("Report metrics $it") }
+		return metrics.values
+	}
+
+	private fun createReportDir() {
+		if (!Files.exists(reportDir))
+			Files.createDirectories(reportDir)
+
+		assert(Files.exists(reportDir)) { "Unable to create report directory ($reportDir)" }
+	}
+
+	private fun <R : Reporter> runParallel(group: List<R>, block: (R) -> Unit) {
+		resetPeakHeap()
+		val costs = if (group.size <= 1) group.map { measured(it, block) }
+		else runBlocking {
+			group.map { r -> async(pool) { measured(r, block) } }.map { it.await() }
+		}
+		// the reporters of the group run concurrently, therefore the peak is shared by all of them
+		val peak = peakHeap()
+		group.zip(costs).forEach { (reporter, cost) -> metrics[reporter]!!.add(cost.first, cost.second, peak) }
+	}
+
+	/** @return (nanos, allocated bytes) of running [block] for [reporter] */
+	private fun <R : Reporter> measured(reporter: R, block: (R) -> Unit): Pair<Long, Long> {
+		val allocatedBefore = allocatedBytes()
+		val start = System.nanoTime()
+		block(reporter)
+		return Pair(System.nanoTime() - start, if (allocatedBefore < 0) -1 else allocatedBytes() - allocatedBefore)
+	}
+}
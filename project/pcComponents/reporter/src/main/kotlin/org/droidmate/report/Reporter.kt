@@ -35,10 +35,14 @@ abstract class Reporter {
 	protected val log: Logger by lazy { LoggerFactory.getLogger(Reporter::class.java) }
 
 	fun write(reportDir: Path, resourceDir: Path, rawData: List<ExplorationContext>) {
+		tryWrite(reportDir) { safeWrite(reportDir, resourceDir, rawData) }
+	}
+
+	protected fun tryWrite(reportDir: Path, block: () -> Unit) {
 		Files.createDirectories(reportDir)
 		log.info("Writing out report ${this.javaClass.simpleName} to $reportDir")
 		try {
-			safeWrite(reportDir, resourceDir, rawData)
+			block()
 		} catch (e: Exception) {
 			log.error("Unable to write the report ${this.javaClass.simpleName} to $reportDir. Exception: $e. Generating remaining reports.")
 			log.error("Error stack trace:")
@@ -31,18 +31,32 @@ import org.droidmate.misc.getTextFromExtractedResource
 import java.nio.file.Files
 import java.nio.file.Path
 
-class Summary @JvmOverloads constructor(val fileName: String = "summary.txt") : Reporter() {
+class Summary @JvmOverloads constructor(val fileName: String = "summary.txt") : IncrementalReporter() {
+	/** summaries of the apps passed to [writeApp] since the last [finish] */
+	private val summaries: MutableList<String> = mutableListOf()
 
 	override fun safeWrite(reportDir: Path, resourceDir: Path, rawData: List<ExplorationContext>) {
+		writeSummaries(reportDir, resourceDir, rawData.map { ApkSummary.build(it) })
+	}
+
+	override fun safeWriteApp(reportDir: Path, resourceDir: Path, data: ExplorationContext) {
+		summaries.add(ApkSummary.build(data))
+	}
+
+	override fun safeFinish(reportDir: Path, resourceDir: Path) {
+		val apkSummaries = summaries.toList()
+		summaries.clear()
+		writeSummaries(reportDir, resourceDir, apkSummaries)
+	}
+
+	private fun writeSummaries(reportDir: Path, resourceDir: Path, apkSummaries: List<String>) {
 		val file = reportDir.resolve(this.fileName)
 
-		val reportData = if (rawData.isEmpty())
+		val reportData = if (apkSummaries.isEmpty())
 			"Exploration output was empty (no apks), so this summary is empty."
 		else
 			Resource("apk_exploration_summary_header.txt").getTextFromExtractedResource(resourceDir) +
-					rawData.joinToString(separator = System.lineSeparator()) { it ->
-						ApkSummary.build(it)
-					}
+					apkSummaries.joinToString(separator = System.lineSeparator())
 
 		Files.write(file, reportData.toByteArray())
 	}
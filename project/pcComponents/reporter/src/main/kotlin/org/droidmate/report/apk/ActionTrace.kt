@@ -26,6 +26,7 @@
 package org.droidmate.report.apk
 
 import org.droidmate.exploration.ExplorationContext
+import org.droidmate.report.misc.actions
 import java.nio.file.Files
 import java.nio.file.Path
 
@@ -35,7 +36,7 @@ class ActionTrace @JvmOverloads constructor(private val fileName: String = "acti
 		val header = "actionNr\tType\tdecisionTime\tscreenshot\n"
 		sb.append(header)
 
-		data.actionTrace.getActions().forEachIndexed { actionNr, record ->
+		data.actions.forEachIndexed { actionNr, record ->
 			sb.appendln("$actionNr\t${record.actionType}\t${record.decisionTime}}")
 		}
 
@@ -28,6 +28,7 @@ package org.droidmate.report.apk
 import org.droidmate.deviceInterface.guimodel.isLaunchApp
 import org.droidmate.deviceInterface.guimodel.isPressBack
 import org.droidmate.exploration.ExplorationContext
+import org.droidmate.report.misc.actions
 import java.nio.file.Files
 import java.nio.file.Path
 
@@ -45,7 +46,7 @@ class ActivitySeenSummary @JvmOverloads constructor(private val fileName: String
 		// Always see the main activity
 		activitySeenMap.put(currActivity, 1)
 
-		data.actionTrace.getActions().forEach { record ->
+		data.actions.forEach { record ->
 
 			if (record.actionType.isPressBack())
 				currActivity = lastActivity
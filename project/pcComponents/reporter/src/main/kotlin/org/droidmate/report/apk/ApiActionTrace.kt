@@ -27,6 +27,7 @@ package org.droidmate.report.apk
 import org.droidmate.deviceInterface.guimodel.isLaunchApp
 import org.droidmate.deviceInterface.guimodel.isPressBack
 import org.droidmate.exploration.ExplorationContext
+import org.droidmate.report.misc.actions
 import java.nio.file.Files
 import java.nio.file.Path
 
@@ -40,7 +41,7 @@ class ApiActionTrace @JvmOverloads constructor(private val fileName: String = "a
 		var lastActivity = ""
 		var currActivity = data.apk.launchableMainActivityName
 
-		data.actionTrace.getActions().forEachIndexed { actionNr, record ->
+		data.actions.forEachIndexed { actionNr, record ->
 
 			if (record.actionType .isPressBack())
 				currActivity = lastActivity
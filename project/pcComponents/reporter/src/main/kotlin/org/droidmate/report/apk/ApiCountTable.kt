@@ -28,12 +28,16 @@ import org.droidmate.apis.IApiLogcatMessage
 import org.droidmate.exploration.statemodel.ActionData
 import org.droidmate.exploration.ExplorationContext
 import org.droidmate.report.misc.CountsPartitionedByTimeTable
+import org.droidmate.report.misc.actions
 import java.time.Duration
 import java.util.*
 
 class ApiCountTable : CountsPartitionedByTimeTable {
 
-	constructor(data: ExplorationContext) : super(
+	constructor(data: ExplorationContext) : this(data, data.apisByTime)
+
+	/** the api logs are grouped by time once for both columns */
+	private constructor(data: ExplorationContext, apisByTime: Map<Long, List<Pair<ActionData, IApiLogcatMessage>>>) : super(
 			data.getExplorationTimeInMs(),
 			listOf(
 					headerTime,
@@ -41,8 +45,8 @@ class ApiCountTable : CountsPartitionedByTimeTable {
 					headerApiEventsSeen
 			),
 			listOf(
-					data.uniqueApisCountByTime,
-					data.uniqueEventApiPairsCountByTime
+					apisByTime.uniqueApisCountByTime,
+					apisByTime.uniqueEventApiPairsCountByTime
 			)
 	)
 
@@ -58,19 +62,19 @@ class ApiCountTable : CountsPartitionedByTimeTable {
 			get() =
 				LinkedList<Pair<ActionData, IApiLogcatMessage>>().apply {
 					// create a list of (widget.id,IApiLogcatMessage)
-					actionTrace.getActions().forEach { action ->
+					actions.forEach { action ->
 						// collect all apiLogs over the whole trace
 						action.deviceLogs.apiLogs.forEach { add(Pair(action, it)) }
 					}
 				}.groupBy { (_, api) -> Duration.between(explorationStartTime, api.time).toMillis() } // group them by their start time (i.e. how may milli seconds elapsed since exploration start)
 
 		/** map of seconds elapsed during app exploration until the api was called To the set of api calls (their unique string) **/
-		private val ExplorationContext.uniqueApisCountByTime: Map<Long, Iterable<String>>
-			get() = apisByTime.mapValues { it.value.map { (_, api) -> api.uniqueString } }   // instead of the whole IApiLogcatMessage only keep the unique string for the Api
+		private val Map<Long, List<Pair<ActionData, IApiLogcatMessage>>>.uniqueApisCountByTime: Map<Long, Iterable<String>>
+			get() = mapValues { it.value.map { (_, api) -> api.uniqueString } }   // instead of the whole IApiLogcatMessage only keep the unique string for the Api
 
 
 		/** map of seconds elapsed during app exploration until the api was triggered To  **/
-		private val ExplorationContext.uniqueEventApiPairsCountByTime: Map<Long, Iterable<String>>
-			get() = apisByTime.mapValues { it.value.map { (action, api) -> "${action.actionString()}_${api.uniqueString}" } }
+		private val Map<Long, List<Pair<ActionData, IApiLogcatMessage>>>.uniqueEventApiPairsCountByTime: Map<Long, Iterable<String>>
+			get() = mapValues { it.value.map { (action, api) -> "${action.actionString()}_${api.uniqueString}" } }
 	}
 }
\ No newline at end of file
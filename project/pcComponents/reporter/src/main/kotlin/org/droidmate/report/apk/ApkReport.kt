@@ -26,21 +26,19 @@
 package org.droidmate.report.apk
 
 import org.droidmate.exploration.ExplorationContext
-import org.droidmate.report.Reporter
+import org.droidmate.report.IncrementalReporter
 import org.droidmate.report.misc.apkFileNameWithUnderscoresForDots
 import java.nio.file.Files
 import java.nio.file.Path
 
-abstract class ApkReport : Reporter() {
-	override fun safeWrite(reportDir: Path, resourceDir: Path, rawData: List<ExplorationContext>) {
-		rawData.forEach { data ->
-			val apkReportDir = reportDir.resolve(data.apkFileNameWithUnderscoresForDots)
+abstract class ApkReport : IncrementalReporter() {
+	override fun safeWriteApp(reportDir: Path, resourceDir: Path, data: ExplorationContext) {
+		val apkReportDir = reportDir.resolve(data.apkFileNameWithUnderscoresForDots)
 
-			Files.createDirectories(apkReportDir)
+		Files.createDirectories(apkReportDir)
 
-			log.info("Writing out report ${this.javaClass.simpleName} to $apkReportDir")
-			safeWriteApkReport(data, apkReportDir, resourceDir)
-		}
+		log.info("Writing out report ${this.javaClass.simpleName} to $apkReportDir")
+		safeWriteApkReport(data, apkReportDir, resourceDir)
 	}
 
 	protected abstract fun safeWriteApkReport(data: ExplorationContext, apkReportDir: Path, resourceDir: Path)
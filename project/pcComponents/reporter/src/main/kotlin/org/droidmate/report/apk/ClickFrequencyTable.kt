@@ -27,6 +27,7 @@ package org.droidmate.report.apk
 import com.google.common.collect.Table
 import kotlinx.coroutines.experimental.runBlocking
 import org.droidmate.exploration.ExplorationContext
+import org.droidmate.report.misc.actions
 import org.droidmate.report.misc.buildTable
 import java.util.*
 
@@ -62,7 +63,7 @@ class ClickFrequencyTable private constructor(val table: Table<Int, String, Int>
 			get() = mutableMapOf<Int, Int>().also { res ->
 				with(mutableSetOf<UUID>()) {
 					// temporary set of widgets seen over the action trace
-					actionTrace.getActions().forEachIndexed { idx, action ->
+					actions.forEachIndexed { idx, action ->
 						size.let { nSeenBefore -> runBlocking {
 							// the size of the set of widgets seen until step idx
 							getState(action.resState)?.widgets?.map { it.uid }?.let { addAll(it) }  // add the unique ids of widgets seen in the new state
@@ -26,17 +26,18 @@ package org.droidmate.report.apk
 
 import org.droidmate.deviceInterface.guimodel.isClick
 import org.droidmate.exploration.statemodel.ActionData
+import org.droidmate.exploration.statemodel.ConcreteId
+import org.droidmate.exploration.statemodel.DecodedImageCache
+import org.droidmate.exploration.statemodel.ImageComparison
+import org.droidmate.exploration.statemodel.ModelConfig
+import org.droidmate.exploration.statemodel.ScreenImage
 import org.droidmate.exploration.ExplorationContext
+import org.droidmate.report.misc.actions
 import org.droidmate.report.misc.plot
 import org.droidmate.misc.withExtension
-import java.awt.Point
-import java.awt.image.BufferedImage
-import java.awt.image.Raster
-import java.io.ByteArrayInputStream
 import java.nio.file.Files
 import java.nio.file.Path
 import java.time.temporal.ChronoUnit
-import javax.imageio.ImageIO
 
 class EffectiveActions @JvmOverloads constructor(private val pixelDensity: Int = nexus5XPixelDensity,
                                                  private val includePlots: Boolean = true,
@@ -53,6 +54,8 @@ class EffectiveActions @JvmOverloads constructor(private val pixelDensity: Int =
 		private const val nexus5XPixelDensity: Int = (24 * 2.6).toInt()
 	}
 
+	private val screenshots = DecodedImageCache()
+
 	override fun safeWriteApkReport(data: ExplorationContext, apkReportDir: Path, resourceDir: Path) {
 		val sb = StringBuilder()
 		val header = "Time_Seconds\tTotal_Actions\tTotal_Effective\n"
@@ -61,7 +64,7 @@ class EffectiveActions @JvmOverloads constructor(private val pixelDensity: Int =
 		val reportData: HashMap<Long, Pair<Int, Int>> = HashMap()
 
 		// Ignore app start
-		val records = data.actionTrace.getActions().drop(1)
+		val records = data.actions.drop(1)
 		val nrActions = records.size
 		val startTimeStamp = records.first().startTimestamp
 
@@ -118,66 +121,44 @@ class EffectiveActions @JvmOverloads constructor(private val pixelDensity: Int =
 		plot(dataFile.toAbsolutePath().toString(), outFile.toAbsolutePath().toString(), resourceDir)
 	}
 
+	/**
+	 * Returns the percentage similarity between the screenshots of 2 states (without status bar).
+	 * The decoded screenshots are cached, such that comparing consecutive states decodes each of them only once.
+	 */
+	// Currently used in child projects
+	@Suppress("MemberVisibilityCanBePrivate")
+	fun compareStateImages(config: ModelConfig, stateA: ConcreteId, stateB: ConcreteId): Double {
+		val imgA = screenshots.get(stateA, config)
+		val imgB = screenshots.get(stateB, config)
+		if (imgA == null || imgB == null) {
+			log.info("No screenshot available for ${if (imgA == null) stateA else stateB}")
+			return 0.0
+		}
+		return compareImage(imgA, imgB)
+	}
+
 	/**
 	 * Returns the percentage similarity between 2 image files
 	 */
 	private fun compareImage(screenshotA: ByteArray, screenshotB: ByteArray): Double {
-		var percentage = 0.0
 		try {
-			// take buffer data from both image files
-			val biA = ImageIO.read(ByteArrayInputStream(screenshotA))
-			//Original code: val dbA = biA.data.dataBuffer
-			val dbA = getDataWithoutStatusBar(biA).dataBuffer //Get screenshot without Status bar
-			val sizeA = dbA.size
-
-			val biB = ImageIO.read(ByteArrayInputStream(screenshotB))
-			//Original code: val dbB = biB.data.dataBuffer
-			val dbB = getDataWithoutStatusBar(biB).dataBuffer //Get screenshot without Status bar
-			val sizeB = dbB.size
-			var count = 0
-
-			// compare data-buffer objects
-			if (sizeA == sizeB) {
-				(0 until sizeA)
-						.filter { dbA.getElem(it) == dbB.getElem(it) }
-						.forEach { count++ }
-
-				percentage = (count * 100 / sizeA).toDouble()
-			} else
-				log.info("Both images have different size")
-
+			val imgA = ScreenImage.decode(screenshotA)
+			val imgB = ScreenImage.decode(screenshotB)
+			if (imgA != null && imgB != null)
+				return compareImage(imgA, imgB)
 		} catch (e: Exception) {
 			log.error("Failed to compare image files: ${screenshotA} and ${screenshotB}")
 			e.printStackTrace()
 		}
-
-		return percentage
+		return 0.0
 	}
 
-	/**
-	 * Returns a copy of the screenshot without status bar
-	 * @param bi
-	 */
-	private fun getDataWithoutStatusBar(bi: BufferedImage): Raster {
-		val raster = bi.data
-		val width = raster.width
-		val height = raster.height
-		val startX = raster.minX
-
-		val statusBarHeight = getStatusBarHeightInPX()
-
-		val wr = Raster.createWritableRaster(raster.sampleModel,
-				Point(raster.sampleModelTranslateX,
-						raster.sampleModelTranslateY))
-
-		var tData: Any? = null
-
-		for (i in statusBarHeight until statusBarHeight + (height - statusBarHeight)) {
-			tData = raster.getDataElements(startX, i, width, 1, tData)
-			wr.setDataElements(startX, i, width, 1, tData)
+	private fun compareImage(imgA: ScreenImage, imgB: ScreenImage): Double {
+		if (imgA.width != imgB.width || imgA.height != imgB.height) {
+			log.info("Both images have different size")
+			return 0.0
 		}
-
-		return wr
+		return ImageComparison.similarity(imgA, imgB, fromRow = getStatusBarHeightInPX()) * 100
 	}
 
 	/**
@@ -189,4 +170,4 @@ class EffectiveActions @JvmOverloads constructor(private val pixelDensity: Int =
 	private fun getStatusBarHeightInPX(): Int {
 		return 24 * pixelDensity
 	}
-}
\ No newline at end of file
+}
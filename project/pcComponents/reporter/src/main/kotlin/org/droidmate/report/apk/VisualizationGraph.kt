@@ -25,7 +25,7 @@
 
 package org.droidmate.report.apk
 
-import com.google.gson.*
+import com.google.gson.stream.JsonWriter
 import com.konradjamrozik.Resource
 import kotlinx.coroutines.experimental.runBlocking
 import org.droidmate.device.android_sdk.IApk
@@ -34,7 +34,8 @@ import org.droidmate.exploration.ExplorationContext
 import org.droidmate.exploration.statemodel.*
 import org.droidmate.exploration.statemodel.features.highlightWidget
 import org.droidmate.misc.unzip
-import java.lang.reflect.Type
+import java.io.Closeable
+import java.io.Writer
 import java.nio.file.*
 import java.util.*
 import javax.imageio.ImageIO
@@ -45,9 +46,16 @@ import kotlin.collections.HashMap
  * actions as an interactive graph with execution details. The report is generated into a folder
  * named after topLevelDirName.
  *
+ * The graph data is streamed into chunk files within the 'data' sub folder instead of building
+ * the whole Json document in memory. 'data.js' only contains the general information and the
+ * number of chunks, the frontend loads the node and edge chunks when drawing the graph and the
+ * widget chunks on demand when the details of a state or transition are displayed.
+ * Widgets are written only once into a shared widget table, states and edges reference them by
+ * their index in this table.
+ *
  * For better usage set the "ModelProperties.imgDump.widget.nonInteractable" property to true.
  */
-class VisualizationGraph : ApkReport() {
+class VisualizationGraph @JvmOverloads constructor(private val chunkSize: Int = defaultChunkSize) : ApkReport() {
 
 	/**
 	 * All files are generated into this folder.
@@ -59,6 +67,12 @@ class VisualizationGraph : ApkReport() {
 	 */
 	private lateinit var targetStatesImgDir: Path
 
+	/**
+	 * Sorted names of all images within [targetStatesImgDir], such that [getImgPath] does not have to
+	 * list the directory for each state and widget.
+	 */
+	private var imgNames: NavigableSet<String> = TreeSet()
+
 	/**
 	 * Edge encapsulates an ActionData object, because the frontend cannot have multiple
 	 * edges for the same transitions. Therefore, the indices are stored and the corresponding
@@ -77,48 +91,6 @@ class VisualizationGraph : ApkReport() {
 		}
 	}
 
-	/**
-	 * Wrapper object to encapsulate nodes and edges, so that when this object is serialized
-	 * to Json, these fields are named "nodes" and "edges". Additionally, the graph contains
-	 * general information.
-	 */
-	@Suppress("unused")
-	inner class Graph(val nodes: Set<StateData>,
-					  edges: List<Pair<Int, ActionData>>,
-					  val explorationStartTime: String,
-					  val explorationEndTime: String,
-					  val numberOfActions: Int,
-					  val numberOfStates: Int,
-					  val apk: IApk) {
-		private val edges: MutableList<Edge> = ArrayList()
-
-		// The graph in the frontend is not able to display multiple edges for the same transition,
-		// therefore add here the indices and check if the same transition was taken before, if yes
-		// then just add the index to the already added edge
-		init {
-//			val tmpEdges = edges.map { Edge(it) }
-			val edgeMap = HashMap<String, Edge>()
-			edges.forEach { (idx, a) ->
-				if (!(a.actionType.isQueueStart() || a.actionType.isQueueEnd())) { // ignore queue actions
-					val edge = Edge(a)
-					val entry = edgeMap[edge.id]
-					if (entry == null) {
-						edge.addIndex(idx, edge.actionData.targetWidget)
-						edgeMap[edge.id] = edge
-						this.edges.add(edge)
-					} else {
-						entry.addIndex(idx, edge.actionData.targetWidget)
-					}
-				}
-			}
-		}
-
-		fun toJsonVariable(gson: Gson): String {
-			val graphJson = gson.toJson(this)
-			return "var data = $graphJson;"
-		}
-	}
-
 	/**
 	 * This is a dummy apk implementation. It is needed if [createVisualizationGraph] is called
 	 * with only the model, because the model has not the apk as reference.
@@ -146,133 +118,160 @@ class VisualizationGraph : ApkReport() {
 	}
 
 	/**
-	 * Custom Json serializer to control the serialization for StateData objects.
+	 * Json array which is split into files of at most [chunkSize] elements, named '<kind>_<nr>.js'.
+	 * Each file calls the frontend function 'dmChunk' with its elements, such that it can be loaded
+	 * as script (browsers do not allow to fetch local files from a page opened via file://).
 	 */
-	inner class StateDataAdapter : JsonSerializer<StateData> {
-		override fun serialize(src: StateData, typeOfSrc: Type, context: JsonSerializationContext): JsonElement {
-			val obj = JsonObject()
-			val stateId = src.stateId.dumpString()
-			// The frontend needs a property 'id', use the stateId for this
-			obj.addProperty("id", stateId)
-			obj.addProperty("stateId", stateId)
-			obj.addProperty("topNodePackageName", src.topNodePackageName)
-			obj.addProperty("shape", "image")
-			obj.addProperty("image", getImgPath(stateId))
-			obj.addProperty("uid", src.uid.toString())
-			obj.addProperty("configId", src.configId.toString())
-			obj.addProperty("iEditId", src.iEditId.toString())
-			obj.addProperty("hasEdit", src.hasEdit)
-			obj.addProperty("isHomeScreen", src.isHomeScreen)
-			obj.addProperty("title", stateId)
-			// Include all important properties to make the states searchable
-			val properties = arrayListOf(stateId, src.topNodePackageName, src.uid.toString(), src.configId.toString(), src.iEditId.toString())
-			obj.addProperty("content", properties.joinToString("\n"))
-
-			// Widgets
-			val widgets = JsonArray()
-			for (w in src.widgets) {
-				widgets.add(context.serialize(w))
+	private inner class ChunkedArray(private val dir: Path, private val kind: String) : Closeable {
+		private var writer: Writer? = null
+		private var json: JsonWriter? = null
+		/** number of elements written so far */
+		var size = 0
+			private set
+		val numberOfChunks: Int get() = (size + chunkSize - 1) / chunkSize
+
+		/** returns the writer for the next element, the caller has to write exactly one Json value */
+		fun next(): JsonWriter {
+			if (size % chunkSize == 0) {
+				closeChunk()
+				val w = Files.newBufferedWriter(dir.resolve("${kind}_${size / chunkSize}.js"))
+				w.write("dmChunk(\"$kind\", ${size / chunkSize}, ")
+				writer = w
+				json = JsonWriter(w).apply { serializeNulls = false; beginArray() }
 			}
+			size += 1
+			return json!!
+		}
 
-			obj.add("widgets", widgets)
-			return obj
+		private fun closeChunk() {
+			json?.let {
+				it.endArray()
+				it.flush()
+				writer!!.write(");\n")
+				it.close()
+			}
+			json = null
+			writer = null
 		}
+
+		override fun close() = closeChunk()
 	}
 
 	/**
-	 * Custom Json serializer to control the serialization for ActionData objects.
+	 * Assigns each distinct widget an index in the shared widget table and writes it into the widget
+	 * chunks on its first occurrence. Only the ids are kept in memory.
 	 */
-	inner class EdgeAdapter : JsonSerializer<Edge> {
-		override fun serialize(src: Edge, typeOfSrc: Type, context: JsonSerializationContext): JsonElement {
-			val obj = JsonObject()
-			obj.addProperty("from", src.actionData.prevState.dumpString())
-			obj.addProperty("to", src.actionData.resState.dumpString())
-			obj.addProperty("actionType", src.actionData.actionType)
-			obj.addProperty("id", src.id)
-			obj.addProperty("propertyId", src.actionData.targetWidget?.propertyId.toString())
-			obj.addProperty("title", src.id)
-			obj.addProperty("label", "${src.actionData.actionType} ${src.indices.joinToString(",", prefix = "<", postfix = ">")}")
-			obj.add("targetWidgets", context.serialize(src.actionIndexWidgetMap))
-			return obj
+	private inner class WidgetTable(dir: Path) : Closeable {
+		private val chunks = ChunkedArray(dir, "widgets")
+		private val indices = HashMap<ConcreteId, Int>()
+
+		val numberOfChunks: Int get() = chunks.numberOfChunks
+
+		fun indexOf(w: Widget): Int = indices[w.id] ?: chunks.size.also { idx ->
+			indices[w.id] = idx
+			writeWidget(chunks.next(), w)
 		}
+
+		override fun close() = chunks.close()
 	}
 
-	/**
-	 * Custom Json serializer to control the serialization for Widget objects.
-	 */
-	inner class WidgetAdapter : JsonSerializer<Widget> {
-		override fun serialize(src: Widget, typeOfSrc: Type, context: JsonSerializationContext): JsonElement {
-			return convertWidget(src, context)
+	private fun writeState(json: JsonWriter, src: StateData, widgets: WidgetTable) {
+		val stateId = src.stateId.dumpString()
+		json.beginObject()
+		// The frontend needs a property 'id', use the stateId for this
+		json.name("id").value(stateId)
+		json.name("stateId").value(stateId)
+		json.name("topNodePackageName").value(src.topNodePackageName)
+		json.name("shape").value("image")
+		json.name("image").value(getImgPath(stateId))
+		json.name("uid").value(src.uid.toString())
+		json.name("configId").value(src.configId.toString())
+		json.name("iEditId").value(src.iEditId.toString())
+		json.name("hasEdit").value(src.hasEdit)
+		json.name("isHomeScreen").value(src.isHomeScreen)
+		json.name("title").value(stateId)
+		// Include all important properties to make the states searchable
+		val properties = arrayListOf(stateId, src.topNodePackageName, src.uid.toString(), src.configId.toString(), src.iEditId.toString())
+		json.name("content").value(properties.joinToString("\n"))
+
+		// Widgets, as indices into the widget table
+		json.name("widgets").beginArray()
+		for (w in src.widgets) {
+			json.value(widgets.indexOf(w))
 		}
+		json.endArray()
+		json.endObject()
 	}
 
-	/**
-	 * Custom Json serializer to control the serialization for <HashMap<Int, Widget?> objects.
-	 */
-	inner class IdxWidgetHashMapAdapter : JsonSerializer<HashMap<Int, Widget?>> {
-		override fun serialize(src: HashMap<Int, Widget?>, typeOfSrc: Type, context: JsonSerializationContext): JsonElement {
-			val widgets = JsonArray()
-			for ((idx, w) in src) {
-				val obj = convertWidget(w, context)
-				// TODO dataString might be interesting?
-				obj.addProperty("idxOfAction", idx)
-				widgets.add(obj)
-			}
-
-			return widgets
+	private fun writeEdge(json: JsonWriter, src: Edge, widgets: WidgetTable) {
+		json.beginObject()
+		json.name("from").value(src.actionData.prevState.dumpString())
+		json.name("to").value(src.actionData.resState.dumpString())
+		json.name("actionType").value(src.actionData.actionType)
+		json.name("id").value(src.id)
+		json.name("propertyId").value(src.actionData.targetWidget?.propertyId.toString())
+		json.name("title").value(src.id)
+		json.name("label").value("${src.actionData.actionType} ${src.indices.joinToString(",", prefix = "<", postfix = ">")}")
+		json.name("targetWidgets").beginArray()
+		for ((idx, w) in src.actionIndexWidgetMap) {
+			// TODO dataString might be interesting?
+			json.beginObject()
+			json.name("idxOfAction").value(idx)
+			json.name("widget").value(w?.let { widgets.indexOf(it) })
+			json.endObject()
 		}
+		json.endArray()
+		json.endObject()
 	}
 
-	/**
-	 * Custom Json serializer to control the serialization for IApk objects.
-	 */
-	inner class IApkAdapter : JsonSerializer<IApk> {
-		override fun serialize(src: IApk, typeOfSrc: Type, context: JsonSerializationContext): JsonElement {
-			val obj = JsonObject()
-			obj.addProperty("path", src.path.toString())
-			obj.addProperty("packageName", src.packageName)
-			obj.addProperty("launchableMainActivityName", src.launchableMainActivityName)
-			obj.addProperty("applicationLabel", src.applicationLabel)
-			obj.addProperty("fileName", src.fileName)
-			obj.addProperty("fileNameWithoutExtension", src.fileNameWithoutExtension)
-			obj.addProperty("absolutePath", src.absolutePath)
-			obj.addProperty("inlined", src.inlined)
-			obj.addProperty("instrumented", src.instrumented)
-			obj.addProperty("isDummy", src.isDummy)
-			return obj
-		}
+	private fun writeApk(json: JsonWriter, src: IApk) {
+		json.beginObject()
+		json.name("path").value(src.path.toString())
+		json.name("packageName").value(src.packageName)
+		json.name("launchableMainActivityName").value(src.launchableMainActivityName)
+		json.name("applicationLabel").value(src.applicationLabel)
+		json.name("fileName").value(src.fileName)
+		json.name("fileNameWithoutExtension").value(src.fileNameWithoutExtension)
+		json.name("absolutePath").value(src.absolutePath)
+		json.name("inlined").value(src.inlined)
+		json.name("instrumented").value(src.instrumented)
+		json.name("isDummy").value(src.isDummy)
+		json.endObject()
 	}
 
 	/**
-	 * Converts a given Widget as JsonObject with all the necessary information.
+	 * Writes the given Widget as Json object with all the necessary information.
 	 */
-	private fun convertWidget(src: Widget?, context: JsonSerializationContext): JsonObject {
-		val obj = JsonObject()
-
-		val id = src?.id?.dumpString()
-		obj.addProperty("id", id)
-		obj.addProperty("uid", src?.uid.toString())
-		obj.addProperty("propertyId", src?.propertyId.toString())
-		obj.addProperty("image", getImgPath(id))
-		obj.addProperty("text", src?.text)
-		obj.addProperty("contentDesc", src?.contentDesc)
-		obj.addProperty("resourceId", src?.resourceId)
-		obj.addProperty("className", src?.className)
-		obj.addProperty("packageName", src?.packageName)
-		obj.addProperty("isPassword", src?.isPassword)
-		obj.addProperty("enabled", src?.enabled)
-		obj.addProperty("visible", src?.visible)
-		obj.addProperty("clickable", src?.clickable)
-		obj.addProperty("longClickable", src?.longClickable)
-		obj.addProperty("scrollable", src?.scrollable)
-		obj.addProperty("checked", src?.checked)
-		obj.addProperty("focused", src?.focused)
-		obj.add("bounds", context.serialize(src?.bounds))
-		obj.addProperty("selected", src?.selected)
-		obj.addProperty("xpath", src?.xpath)
-		obj.addProperty("isLeaf", src?.isLeaf)
-
-		return obj
+	private fun writeWidget(json: JsonWriter, src: Widget) {
+		val id = src.id.dumpString()
+		json.beginObject()
+		json.name("id").value(id)
+		json.name("uid").value(src.uid.toString())
+		json.name("propertyId").value(src.propertyId.toString())
+		json.name("image").value(getImgPath(id))
+		json.name("text").value(src.text)
+		json.name("contentDesc").value(src.contentDesc)
+		json.name("resourceId").value(src.resourceId)
+		json.name("className").value(src.className)
+		json.name("packageName").value(src.packageName)
+		json.name("isPassword").value(src.isPassword)
+		json.name("enabled").value(src.enabled)
+		json.name("visible").value(src.visible)
+		json.name("clickable").value(src.clickable)
+		json.name("longClickable").value(src.longClickable)
+		json.name("scrollable").value(src.scrollable)
+		json.name("checked").value(src.checked)
+		json.name("focused").value(src.focused)
+		json.name("bounds").beginObject()
+				.name("x").value(src.bounds.x)
+				.name("y").value(src.bounds.y)
+				.name("width").value(src.bounds.width)
+				.name("height").value(src.bounds.height)
+				.endObject()
+		json.name("selected").value(src.selected)
+		json.name("xpath").value(src.xpath)
+		json.name("isLeaf").value(src.isLeaf)
+		json.endObject()
 	}
 
 	/**
@@ -283,8 +282,8 @@ class VisualizationGraph : ApkReport() {
 	 */
 	private fun getImgPath(id: String?): String {
 		return if (id != null
-			// Image is available
-			&& Files.list(targetStatesImgDir).use { list -> list.anyMatch { it.fileName.toString().startsWith(id) } }) {
+			// Image is available, i.e. the smallest name which is not before id starts with it
+			&& imgNames.ceiling(id)?.startsWith(id) == true) {
 
 			Paths.get(".")
 				.resolve("img")
@@ -299,19 +298,19 @@ class VisualizationGraph : ApkReport() {
 	}
 
 	/**
-	 * Returns the custom Json builder, which controls what properties are serialized
-	 * and how they are named.
+	 * The frontend graph is not able to display multiple edges for the same transition,
+	 * therefore add here the indices and check if the same transition was taken before, if yes
+	 * then just add the index to the already added edge.
 	 */
-	private fun getCustomGsonBuilder(): Gson {
-		val gsonBuilder = GsonBuilder().setPrettyPrinting()
-
-		gsonBuilder.registerTypeAdapter(StateData::class.java, StateDataAdapter())
-		gsonBuilder.registerTypeAdapter(Edge::class.java, EdgeAdapter())
-		gsonBuilder.registerTypeAdapter(IApk::class.java, IApkAdapter())
-		gsonBuilder.registerTypeAdapter(Widget::class.java, WidgetAdapter())
-		gsonBuilder.registerTypeAdapter(HashMap<Int, Widget?>()::class.java, IdxWidgetHashMapAdapter())
-
-		return gsonBuilder.create()
+	private fun mergeEdges(actions: List<Pair<Int, ActionData>>): Collection<Edge> {
+		val edgeMap = LinkedHashMap<String, Edge>()
+		actions.forEach { (idx, a) ->
+			if (!(a.actionType.isQueueStart() || a.actionType.isQueueEnd())) { // ignore queue actions
+				val edge = Edge(a)
+				edgeMap.getOrPut(edge.id) { edge }.addIndex(idx, a.targetWidget)
+			}
+		}
+		return edgeMap.values
 	}
 
 	private fun copyFilteredFiles(from: Path, to: Path, suffix: String) {
@@ -355,8 +354,8 @@ class VisualizationGraph : ApkReport() {
 
 		copyFilteredFiles(model.config.stateDst, targetStatesImgDir, ".png")
 
-		val jsonFile = targetVisFolder.resolve("data.js")
-		val gson = getCustomGsonBuilder()
+		val dataDir = targetVisFolder.resolve("data")
+		Files.createDirectories(dataDir)
 
 		runBlocking {
 
@@ -366,20 +365,63 @@ class VisualizationGraph : ApkReport() {
 				markTargets(model, targetStatesImgDir)
 			else
 				model.getPaths().first().getActions().mapIndexed { i, a -> Pair(i, a) }
-			val states = model.getStates().filter { s ->
-				// avoid unconnected states
-				actions.any { (_, a) -> a.prevState == s.stateId || a.resState == s.stateId }
-			}.toSet()
-			val graph = Graph(states,
-				actions,
-				actions.first().second.startTimestamp.toString(),
-				actions.last().second.endTimestamp.toString(),
-				actions.size,
-				states.size,
-				apk)
-			val jsGraph = graph.toJsonVariable(gson)
-
-			Files.write(jsonFile, jsGraph.toByteArray())
+			imgNames = TreeSet<String>().also { names ->
+				Files.list(targetStatesImgDir).use { list -> list.forEach { names.add(it.fileName.toString()) } }
+			}
+
+			// avoid unconnected states
+			val connected = HashSet<ConcreteId>()
+			actions.forEach { (_, a) -> connected.add(a.prevState); connected.add(a.resState) }
+
+			var numberOfStates = 0
+			val nodes = ChunkedArray(dataDir, "nodes")
+			val edges = ChunkedArray(dataDir, "edges")
+			WidgetTable(dataDir).use { widgets ->
+				nodes.use {
+					model.getStates().filter { s -> connected.contains(s.stateId) }.forEach { s ->
+						writeState(nodes.next(), s, widgets)
+						numberOfStates += 1
+					}
+				}
+				edges.use {
+					mergeEdges(actions).forEach { e -> writeEdge(edges.next(), e, widgets) }
+				}
+
+				writeData(targetVisFolder.resolve("data.js"), apk,
+					actions.first().second.startTimestamp.toString(),
+					actions.last().second.endTimestamp.toString(),
+					actions.size,
+					numberOfStates,
+					mapOf("nodes" to nodes.numberOfChunks, "edges" to edges.numberOfChunks, "widgets" to widgets.numberOfChunks))
+			}
+			imgNames = TreeSet()
+		}
+	}
+
+	/**
+	 * Writes 'data.js' with the general information about the exploration, the frontend
+	 * loads the graph itself from the chunk files.
+	 */
+	private fun writeData(file: Path, apk: IApk, explorationStartTime: String, explorationEndTime: String,
+	                      numberOfActions: Int, numberOfStates: Int, chunks: Map<String, Int>) {
+		Files.newBufferedWriter(file).use { writer ->
+			writer.write("var data = ")
+			val json = JsonWriter(writer)
+			json.setIndent("  ")
+			json.beginObject()
+			json.name("explorationStartTime").value(explorationStartTime)
+			json.name("explorationEndTime").value(explorationEndTime)
+			json.name("numberOfActions").value(numberOfActions)
+			json.name("numberOfStates").value(numberOfStates)
+			json.name("apk")
+			writeApk(json, apk)
+			json.name("chunkSize").value(chunkSize)
+			json.name("chunks").beginObject()
+			chunks.forEach { (kind, n) -> json.name(kind).value(n) }
+			json.endObject()
+			json.endObject()
+			json.flush()
+			writer.write(";\n")
 		}
 	}
 
@@ -425,4 +467,8 @@ class VisualizationGraph : ApkReport() {
 			}
 	}
 
+	companion object {
+		/** maximal number of elements (states, edges or widgets) within one chunk file */
+		const val defaultChunkSize = 500
+	}
 }
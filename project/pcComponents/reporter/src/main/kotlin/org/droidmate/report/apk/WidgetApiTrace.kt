@@ -31,6 +31,7 @@ import org.droidmate.exploration.statemodel.ActionData
 import org.droidmate.exploration.statemodel.StateData
 import org.droidmate.exploration.statemodel.Widget
 import org.droidmate.exploration.ExplorationContext
+import org.droidmate.report.misc.actions
 import java.nio.file.Files
 import java.nio.file.Path
 
@@ -40,7 +41,7 @@ class WidgetApiTrace(private val fileName: String = "widget_api_trace.txt") : Ap
 		val header = "actionNr\ttext\tapi\tuniqueStr\taction\n"
 		sb.append(header)
 
-		data.actionTrace.getActions().forEachIndexed { actionNr, record ->
+		data.actions.forEachIndexed { actionNr, record ->
 			if (record.actionType.isClick()) {
 				val text = runBlocking { data.getState(record.resState)?.let { getActionWidget(record, it) } }
 				val logs = record.deviceLogs.apiLogs
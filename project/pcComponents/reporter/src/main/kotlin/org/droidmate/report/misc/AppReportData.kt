@@ -0,0 +1,92 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+package org.droidmate.report.misc
+
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.apis.IApiLogcatMessage
+import org.droidmate.deviceInterface.guimodel.isLaunchApp
+import org.droidmate.exploration.ExplorationContext
+import org.droidmate.exploration.statemodel.ActionData
+import org.droidmate.exploration.statemodel.Widget
+import org.droidmate.exploration.statemodel.emptyUUID
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Aggregates of one explored app which are used by several reporters.
+ * Each value is computed on first access from a single copy of the action trace, such that the reporters of an app do not
+ * traverse the trace (or the model) again. While the data of an app is [register]ed the extensions of [ExplorationContext]
+ * in this package return the shared values, otherwise they compute them for each call.
+ */
+class AppReportData(val data: ExplorationContext) {
+	val actions: List<ActionData> by lazy { data.actionTrace.getActions() }
+
+	val uniqueActionableWidgets: Set<Widget> by lazy {
+		mutableSetOf<Widget>().apply {	runBlocking {
+			data.getModel().getWidgets().filter { it.canBeActedUpon }.groupBy { it.uid } // TODO we would like a mechanism to identify which widget config was the (default)
+					.forEach { add(it.value.first()) }
+		} }
+	}
+
+	val uniqueClickedWidgets: Set<Widget> by lazy {
+		mutableSetOf<Widget>().apply {
+			actions.forEach { action -> action.targetWidget?.let { add(it) } }
+		}
+	}
+
+	val uniqueEventApiPairs: Set<Pair<UUID, IApiLogcatMessage>> by lazy {
+		mutableSetOf<Pair<UUID, IApiLogcatMessage>>().apply {
+			actions.forEach { action ->
+				action.deviceLogs.apiLogs.forEach{ api ->
+					add(Pair(action.targetWidget?.uid ?: emptyUUID, api))
+				}
+			}
+		}
+	}
+
+	val uniqueApis: Set<IApiLogcatMessage> by lazy { uniqueEventApiPairs.map { (_, api) -> api }.toSet() }
+
+	val resetActionsCount: Int by lazy { actions.count { it.actionType.isLaunchApp() } }
+
+	companion object {
+		private val registered: MutableMap<ExplorationContext, AppReportData> = ConcurrentHashMap()
+
+		/** shares the aggregates of [data] between all reporters until it is [release]d */
+		@JvmStatic
+		fun register(data: ExplorationContext): AppReportData = registered.computeIfAbsent(data) { AppReportData(it) }
+
+		@JvmStatic
+		fun release(data: ExplorationContext) {
+			registered.remove(data)
+		}
+
+		@JvmStatic
+		internal fun isRegistered(data: ExplorationContext): Boolean = registered.containsKey(data)
+
+		/** the registered data of [data] or a temporary instance if there is none */
+		@JvmStatic
+		fun of(data: ExplorationContext): AppReportData = registered[data] ?: AppReportData(data)
+	}
+}
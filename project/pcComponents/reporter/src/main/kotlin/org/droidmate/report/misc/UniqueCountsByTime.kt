@@ -0,0 +1,88 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+package org.droidmate.report.misc
+
+import java.util.*
+
+/**
+ * Single pass aggregation of the number of unique items seen until each time partition, as reported by
+ * [CountsPartitionedByTimeTable] (see [countsPartitionedByTime]).
+ *
+ * The items are interned in order of their first occurrence, i.e. the number of interned ids after adding an entry is the
+ * number of unique items seen so far. Partition `k` covers the times in `((k-1)*partitionSize, k*partitionSize]` (the first
+ * one all times up to [partitionSize]) and only keeps the maximal unique count of its entries in an array indexed by `k`,
+ * which replaces copying the accumulated item sets and re-partitioning the remaining entries.
+ */
+class UniqueCountsByTime(private val partitionSize: Long) {
+	private val ids: MutableMap<String, Int> = HashMap()
+	private var partitionMax = IntArray(64)
+	private var lastPartitionIdx = 0
+
+	init {
+		require(partitionSize > 0) { "partitionSize has to be positive but was $partitionSize" }
+	}
+
+	/** number of unique items added so far */
+	val uniqueCount: Int get() = ids.size
+
+	/** the entries have to be added in the order in which their items should be accumulated */
+	fun add(time: Long, items: Iterable<String>) {
+		items.forEach { if (!ids.containsKey(it)) ids[it] = ids.size }
+		val idx = partitionIdx(time)
+		if (idx >= partitionMax.size) partitionMax = partitionMax.copyOf(Math.max(idx + 1, partitionMax.size * 2))
+		partitionMax[idx] = Math.max(partitionMax[idx], ids.size)
+		lastPartitionIdx = Math.max(lastPartitionIdx, idx)
+	}
+
+	/**
+	 * The unique counts by partition start time, from 0 to the last partition with any entry. Partitions without entries
+	 * repeat the count of the previous one and the partitions after the last entry up to [lastPartition] have the count -1.
+	 */
+	fun counts(lastPartition: Long): Map<Long, Int> {
+		require(lastPartition.rem(partitionSize) == 0L, { "lastPartition: $lastPartition partitionSize: $partitionSize" })
+
+		val counts = LinkedHashMap<Long, Int>()
+		var acc = 0
+		for (idx in 0..lastPartitionIdx) {
+			acc = Math.max(acc, partitionMax[idx])
+			counts[idx * partitionSize] = acc
+		}
+		var time = (lastPartitionIdx + 1) * partitionSize
+		while (time <= lastPartition) {
+			counts[time] = -1
+			time += partitionSize
+		}
+		return counts
+	}
+
+	private fun partitionIdx(time: Long): Int = partitionIdx(time, partitionSize)
+
+	companion object {
+		/** index of the first partition whose end is not before [time], times up to [partitionSize] belong to partition 1 */
+		@JvmStatic
+		fun partitionIdx(time: Long, partitionSize: Long): Int =
+				if (time <= partitionSize) 1 else ((time + partitionSize - 1) / partitionSize).toInt()
+	}
+}
@@ -24,40 +24,30 @@
 // web: www.droidmate.org
 package org.droidmate.report.misc
 
-import kotlinx.coroutines.experimental.runBlocking
 import org.droidmate.apis.IApiLogcatMessage
-import org.droidmate.deviceInterface.guimodel.isLaunchApp
+import org.droidmate.exploration.statemodel.ActionData
 import org.droidmate.exploration.statemodel.Widget
 import org.droidmate.exploration.ExplorationContext
-import org.droidmate.exploration.statemodel.emptyUUID
 import java.util.*
 
+/** the actions of the trace, shared between the reporters while the app is registered in [AppReportData] */
+val ExplorationContext.actions: List<ActionData>
+	get() = AppReportData.of(this).actions
+
 val ExplorationContext.uniqueActionableWidgets: Set<Widget>
-	get() = mutableSetOf<Widget>().apply {	runBlocking {
-		getModel().getWidgets().filter { it.canBeActedUpon }.groupBy { it.uid } // TODO we would like a mechanism to identify which widget config was the (default)
-				.forEach { add(it.value.first()) }
-	} }
+	get() = AppReportData.of(this).uniqueActionableWidgets
 
 val ExplorationContext.uniqueClickedWidgets: Set<Widget>
-	get() = mutableSetOf<Widget>().apply {
-		actionTrace.getActions().forEach { action -> action.targetWidget?.let { add(it) } }
-	}
+	get() = AppReportData.of(this).uniqueClickedWidgets
 
-//TODO not sure about the original intention of this function
 val ExplorationContext.uniqueApis: Set<IApiLogcatMessage>
-	get() = uniqueEventApiPairs.map { (_, api) -> api }.toSet()
+	get() = AppReportData.of(this).uniqueApis
 
 val ExplorationContext.uniqueEventApiPairs: Set<Pair<UUID, IApiLogcatMessage>>
-	get() = mutableSetOf<Pair<UUID, IApiLogcatMessage>>().apply {
-		actionTrace.getActions().forEach { action ->
-			action.deviceLogs.apiLogs.forEach{ api ->
-				add(Pair(action.targetWidget?.uid ?: emptyUUID, api))
-			}
-		}
-	}
+	get() = AppReportData.of(this).uniqueEventApiPairs
 
 val ExplorationContext.resetActionsCount: Int
-	get() = actionTrace.getActions().count { it.actionType.isLaunchApp() }
+	get() = AppReportData.of(this).resetActionsCount
 
 val ExplorationContext.apkFileNameWithUnderscoresForDots: String
 	get() = apk.fileName.replace(".", "_")
\ No newline at end of file
@@ -90,23 +90,15 @@ fun Map<Long, Iterable<String>>.accumulate(): Map<Long, Iterable<String>> {
 
 fun <T> Map<Long, T>.partition(partitionSize: Long): Map<Long, List<T>> {
 
-	tailrec fun <T> _partition(
-			acc: Collection<Pair<Long, List<T>>>,
-			remainder: Collection<Pair<Long, T>>,
-			partitionSize: Long,
-			currentPartitionValue: Long): Collection<Pair<Long, List<T>>> {
-
-		if (remainder.isEmpty()) return acc else {
-
-			val currentPartition = remainder.partition { it.first <= currentPartitionValue }
-			val current: List<Pair<Long, T>> = currentPartition.first
-			val currentValues: List<T> = current.fold(mutableListOf(), { out, pair -> out.add(pair.second); out })
-
-			return _partition(acc.plus(Pair(currentPartitionValue, currentValues)), currentPartition.second, partitionSize, currentPartitionValue + partitionSize)
-		}
+	// partition 0 is always empty, each value goes into the first partition whose value is not smaller than its key
+	val partitions: MutableList<MutableList<T>> = mutableListOf(mutableListOf())
+	this.forEach { (time, value) ->
+		val idx = UniqueCountsByTime.partitionIdx(time, partitionSize)
+		while (partitions.size <= idx) partitions.add(mutableListOf())
+		partitions[idx].add(value)
 	}
 
-	return _partition(mutableListOf(Pair(0L, emptyList<T>())), this.toList(), partitionSize, partitionSize).toMap()
+	return partitions.withIndex().associate { (idx, values) -> Pair(idx * partitionSize, values) }
 }
 
 fun <T> Map<Long, T>.accumulateMaxes(
@@ -137,19 +129,19 @@ fun Map<Long, Int>.padPartitions(
 	}
 }
 
+/**
+ * Same result as accumulating the unique strings ([accumulate]), counting them, [partition]ing the counts, taking the
+ * [accumulateMaxes] and [padPartitions], but computed in a single pass by [UniqueCountsByTime].
+ */
 fun Map<Long, Iterable<String>>.countsPartitionedByTime(
 		partitionSize: Long,
 		lastPartition: Int
 ): Map<Long, Int> {
-	return this
-			.mapKeys {
-				// KNOWN BUG got here time with relation to exploration start of -25, but it should be always > 0.
-				// The currently applied workaround is to add 100 milliseconds.
-				it.key + 100L
-			}
-			.accumulate()
-			.mapValues { it.value.count() }
-			.partition(partitionSize)
-			.accumulateMaxes(extractMax = { it.max() ?: 0 })
-			.padPartitions(partitionSize, lastPartition.zeroLeastSignificantDigits(3))
+	val counts = UniqueCountsByTime(partitionSize)
+	this.forEach { (time, items) ->
+		// KNOWN BUG got here time with relation to exploration start of -25, but it should be always > 0.
+		// The currently applied workaround is to add 100 milliseconds.
+		counts.add(time + 100L, items)
+	}
+	return counts.counts(lastPartition.zeroLeastSignificantDigits(3))
 }
\ No newline at end of file
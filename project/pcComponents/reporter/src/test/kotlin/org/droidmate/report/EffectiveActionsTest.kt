@@ -0,0 +1,85 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.report
+
+import org.droidmate.exploration.statemodel.ConcreteId
+import org.droidmate.exploration.statemodel.ModelConfig
+import org.droidmate.report.apk.EffectiveActions
+import org.junit.Test
+import java.awt.Color
+import java.awt.image.BufferedImage
+import java.io.File
+import java.nio.file.Files
+import java.util.*
+import javax.imageio.ImageIO
+import kotlin.test.assertEquals
+
+class EffectiveActionsTest {
+	private val config = ModelConfig(Files.createTempDirectory("effectiveActions"), "JUnit-effective-actions")
+	// a pixel density of 1 makes the status bar 24 pixel rows high
+	private val report = EffectiveActions(pixelDensity = 1, includePlots = false)
+
+	private fun id() = ConcreteId(UUID.randomUUID(), UUID.randomUUID())
+
+	/** dumps a white [width]x[height] screenshot for a new state, where the rows [black] are painted black */
+	private fun screenshot(black: IntRange = IntRange.EMPTY, width: Int = 100, height: Int = 200): ConcreteId = id().also { id ->
+		val img = BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR).apply {
+			createGraphics().run {
+				color = Color.WHITE
+				fillRect(0, 0, width, height)
+				color = Color.BLACK
+				if (!black.isEmpty()) fillRect(0, black.first, width, black.last - black.first + 1)
+				dispose()
+			}
+		}
+		ImageIO.write(img, "png", File(config.statePath(id, fileExtension = ".png")))
+	}
+
+	@Test
+	fun `Equal screenshots are 100 percent similar`() {
+		val home = screenshot()
+		assertEquals(100.0, report.compareStateImages(config, home, home))
+		assertEquals(100.0, report.compareStateImages(config, home, screenshot()))
+	}
+
+	@Test
+	fun `The status bar is not compared`() {
+		assertEquals(100.0, report.compareStateImages(config, screenshot(), screenshot(black = 0 until 24)))
+	}
+
+	@Test
+	fun `The similarity is the share of equal pixels below the status bar`() {
+		// 44 of the 176 compared rows differ
+		assertEquals(75.0, report.compareStateImages(config, screenshot(black = 0 until 24), screenshot(black = 0 until 68)))
+	}
+
+	@Test
+	fun `Missing screenshots and different sizes are not similar`() {
+		val home = screenshot()
+		assertEquals(0.0, report.compareStateImages(config, home, id()))
+		assertEquals(0.0, report.compareStateImages(config, home, screenshot(height = 100)))
+	}
+}
@@ -0,0 +1,116 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.report
+
+import org.droidmate.android_sdk.AdbWrapperStub
+import org.droidmate.android_sdk.ApkTestHelper
+import org.droidmate.configuration.ConfigurationForTests
+import org.droidmate.exploration.ExplorationContext
+import org.droidmate.report.misc.AppReportData
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class ReportPipelineTest {
+	private val cfg = ConfigurationForTests().get()
+
+	private fun context(name: String) = ExplorationContext(cfg, ApkTestHelper.build(name), AdbWrapperStub())
+
+	/** writes one file per app as soon as it is passed and the list of all apps on finish */
+	private class AppListReporter : IncrementalReporter() {
+		val apps: MutableList<String> = mutableListOf()
+		var registeredWhileWriting = true
+
+		override fun safeWriteApp(reportDir: Path, resourceDir: Path, data: ExplorationContext) {
+			registeredWhileWriting = registeredWhileWriting && AppReportData.isRegistered(data)
+			apps.add(data.apk.packageName)
+			Files.write(reportDir.resolve("${data.apk.packageName}.txt"), listOf(data.apk.packageName))
+		}
+
+		override fun safeFinish(reportDir: Path, resourceDir: Path) {
+			Files.write(reportDir.resolve("apps.txt"), apps)
+			apps.clear()
+		}
+	}
+
+	private class AppCountReporter : Reporter() {
+		var apps = -1
+
+		override fun safeWrite(reportDir: Path, resourceDir: Path, rawData: List<ExplorationContext>) {
+			apps = rawData.size
+		}
+	}
+
+	private fun withReportDir(block: (Path) -> Unit) {
+		val reportDir = Files.createTempDirectory("report-pipeline")
+		try {
+			block(reportDir)
+		} finally {
+			reportDir.toFile().deleteRecursively()
+		}
+	}
+
+	@Test
+	fun `incremental reports are written per app and the data is released`() = withReportDir { reportDir ->
+		val reporter = AppListReporter()
+		val pipeline = ReportPipeline(reportDir, reportDir, listOf(reporter))
+		assertFalse(pipeline.retainsExplorationData)
+
+		listOf("app1", "app2").forEach { name ->
+			val data = context(name)
+			pipeline.onAppExplored(data)
+			assertTrue(Files.exists(reportDir.resolve("${data.apk.packageName}.txt")))
+			assertFalse(AppReportData.isRegistered(data))
+			assertEquals(0, pipeline.retainedApps)
+		}
+		assertTrue(reporter.registeredWhileWriting)
+
+		val metrics = pipeline.finish()
+		assertEquals(listOf("app1.pkg_name", "app2.pkg_name"), Files.readAllLines(reportDir.resolve("apps.txt")))
+		assertEquals(listOf("AppListReporter"), metrics.map { it.reporter })
+		assertTrue(metrics.single().peakHeapBytes > 0)
+	}
+
+	@Test
+	fun `exploration data is only retained for non incremental reporters`() = withReportDir { reportDir ->
+		val incremental = AppListReporter()
+		val batch = AppCountReporter()
+		val pipeline = ReportPipeline(reportDir, reportDir, listOf(incremental, batch))
+		assertTrue(pipeline.retainsExplorationData)
+
+		pipeline.onAppExplored(context("app1"))
+		pipeline.onAppExplored(context("app2"))
+		assertEquals(2, pipeline.retainedApps)
+		assertTrue(Files.exists(reportDir.resolve("app2.pkg_name.txt")))
+
+		pipeline.finish()
+		assertEquals(2, batch.apps)
+		assertEquals(0, pipeline.retainedApps)
+	}
+}
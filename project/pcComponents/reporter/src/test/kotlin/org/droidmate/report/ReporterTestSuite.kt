@@ -36,6 +36,9 @@ import org.junit.runners.Suite
 		extensions_time_seriesKtTest::class,
 		functionsKtTest::class,
 		ApkSummaryTest::class,
-		ExplorationOutput2ReportTest::class
+		ExplorationOutput2ReportTest::class,
+		ReportPipelineTest::class,
+		VisualizationGraphTest::class,
+		EffectiveActionsTest::class
 )
 class ReporterTestSuite
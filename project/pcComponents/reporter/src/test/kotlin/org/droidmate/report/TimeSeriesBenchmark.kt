@@ -0,0 +1,77 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+package org.droidmate.report
+
+import org.droidmate.misc.zeroLeastSignificantDigits
+import org.droidmate.report.misc.*
+import org.droidmate.test_tools.Benchmark
+import org.junit.Test
+import java.util.*
+
+/** Time to compute the unique api counts by time partition with [countsPartitionedByTime] compared to the previous chain of map copies. */
+class TimeSeriesBenchmark {
+	private val partitionSize = CountsPartitionedByTimeTable.partitionSize
+
+	/** api logs of an exploration of [durationMs], most apis are called repeatedly and a few timestamps are out of order */
+	private fun apiLogsByTime(nLogs: Int, durationMs: Int, nApis: Int = nLogs / 20, seed: Long = 42): Map<Long, Iterable<String>> {
+		val rnd = Random(seed)
+		val byTime = LinkedHashMap<Long, MutableList<String>>()
+		(0 until nLogs).map { i ->
+			val time = i.toLong() * durationMs / nLogs - (if (rnd.nextInt(50) == 0) rnd.nextInt(3000) else 0)
+			Pair(time, "api${rnd.nextInt(nApis)}")
+		}.forEach { (time, api) -> byTime.getOrPut(time) { mutableListOf() }.add(api) }
+		return byTime
+	}
+
+	/** the previous implementation of [countsPartitionedByTime] */
+	private fun Map<Long, Iterable<String>>.legacyCounts(partitionSize: Long, lastPartition: Int): Map<Long, Int> =
+			this.mapKeys { it.key + 100L }
+					.accumulate()
+					.mapValues { it.value.count() }
+					.legacyPartition(partitionSize)
+					.accumulateMaxes(extractMax = { it.max() ?: 0 })
+					.padPartitions(partitionSize, lastPartition.zeroLeastSignificantDigits(3))
+
+	private fun <T> Map<Long, T>.legacyPartition(partitionSize: Long): Map<Long, List<T>> {
+		tailrec fun <T> _partition(acc: Collection<Pair<Long, List<T>>>, remainder: Collection<Pair<Long, T>>,
+		                           currentPartitionValue: Long): Collection<Pair<Long, List<T>>> {
+			if (remainder.isEmpty()) return acc
+			val currentPartition = remainder.partition { it.first <= currentPartitionValue }
+			return _partition(acc.plus(Pair(currentPartitionValue, currentPartition.first.map { it.second })), currentPartition.second,
+					currentPartitionValue + partitionSize)
+		}
+		return _partition(mutableListOf(Pair(0L, emptyList<T>())), this.toList(), partitionSize).toMap()
+	}
+
+	@Test
+	fun `counts partitioned by time`() {
+		listOf(Pair(2000, 120000), Pair(20000, 1200000), Pair(50000, 3600000)).forEach { (nLogs, duration) ->
+			val logs = apiLogsByTime(nLogs, duration)
+			if (nLogs <= 20000)
+				Benchmark.measure("$nLogs logs over ${duration / 1000}s: legacy", warmup = 1, iterations = 3) { logs.legacyCounts(partitionSize, duration) }
+			Benchmark.measure("$nLogs logs over ${duration / 1000}s: single pass") { logs.countsPartitionedByTime(partitionSize, duration) }
+		}
+	}
+}
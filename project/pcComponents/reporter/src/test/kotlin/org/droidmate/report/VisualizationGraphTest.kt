@@ -0,0 +1,163 @@
+// DroidMate, an automated execution generator for Android apps.
+// Copyright (C) 2012-2018. Saarland University
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Current Maintainers:
+// Nataniel Borges Jr. <nataniel dot borges at cispa dot saarland>
+// Jenny Hotzkow <jenny dot hotzkow at cispa dot saarland>
+//
+// Former Maintainers:
+// Konrad Jamrozik <jamrozik at st dot cs dot uni-saarland dot de>
+//
+// web: www.droidmate.org
+
+package org.droidmate.report
+
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import com.natpryce.konfig.ConfigurationMap
+import kotlinx.coroutines.experimental.runBlocking
+import org.droidmate.deviceInterface.guimodel.EmptyAction
+import org.droidmate.exploration.statemodel.ActionResult
+import org.droidmate.exploration.statemodel.Model
+import org.droidmate.exploration.statemodel.ModelConfig
+import org.droidmate.exploration.statemodel.dumpString
+import org.droidmate.report.apk.VisualizationGraph
+import org.droidmate.test_tools.SyntheticGui
+import org.junit.Assume
+import org.junit.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.LocalDateTime
+import java.util.*
+import javax.script.ScriptEngineManager
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class VisualizationGraphTest {
+	private val chunkSize = 4
+
+	/** ten states of the same screen, each differing from the previous one in a few widgets */
+	private fun model(): Model {
+		val config = ModelConfig("JUnit-vis", false, ConfigurationMap("Output.outputDir" to "./out/test",
+				"ModelProperties.imgDump.widgets" to "false", "ModelProperties.imgDump.states" to "false"))
+		val model = Model.emptyModel(config)
+		val trace = model.initNewTrace(LinkedList())
+		var nodes = SyntheticGui.widgets(60)
+		for (step in 0 until 10) {
+			nodes = nodes.mapIndexed { i, w -> if (i % 10 == step) SyntheticGui.changed(w, "step $step") else w }
+			model.S_updateModel(ActionResult(EmptyAction, LocalDateTime.now(), LocalDateTime.now(),
+					guiSnapshot = SyntheticGui.response(nodes, ByteArray(0))), trace)
+		}
+		return model
+	}
+
+	/** the widget ids of each state, by state id */
+	private fun expectedWidgets(model: Model): Map<String, List<String>> =
+			runBlocking { model.getStates() }.associate { s -> s.stateId.dumpString() to s.widgets.map { it.id.dumpString() } }
+
+	private fun withVisualization(block: (Path, Model) -> Unit) {
+		val reportDir = Files.createTempDirectory("vis-graph")
+		try {
+			val model = model()
+			VisualizationGraph(chunkSize).createVisualizationGraph(model, reportDir, reportDir)
+			block(reportDir.resolve("vis"), model)
+		} finally {
+			reportDir.toFile().deleteRecursively()
+		}
+	}
+
+	private fun readData(visDir: Path): JsonObject =
+			JsonParser().parse(String(Files.readAllBytes(visDir.resolve("data.js"))).removePrefix("var data = ").trim().removeSuffix(";")).asJsonObject
+
+	/** the elements of all chunks of [kind] in chunk order, checking that each chunk is full except for the last one */
+	private fun reassemble(visDir: Path, kind: String, nChunks: Int): List<JsonObject> = (0 until nChunks).flatMap { nr ->
+		val content = String(Files.readAllBytes(visDir.resolve("data").resolve("${kind}_$nr.js"))).trim()
+		val prefix = "dmChunk(\"$kind\", $nr, "
+		assertTrue(content.startsWith(prefix) && content.endsWith(");"), "unexpected chunk file ${kind}_$nr.js")
+		val elements = JsonParser().parse(content.removePrefix(prefix).removeSuffix(");")).asJsonArray
+		assertTrue(elements.size() in 1..chunkSize)
+		if (nr < nChunks - 1) assertEquals(chunkSize, elements.size())
+		elements.map { it.asJsonObject }
+	}.also { assertTrue(Files.notExists(visDir.resolve("data").resolve("${kind}_$nChunks.js"))) }
+
+	private fun JsonObject.widgetIndices(): List<Int> = getAsJsonArray("widgets").map { it.asInt }
+
+	@Test
+	fun `chunks reassemble to the graph with each widget written once`() = withVisualization { visDir, model ->
+		val data = readData(visDir)
+		val chunks = data.getAsJsonObject("chunks")
+		assertEquals(chunkSize, data.get("chunkSize").asInt)
+
+		val nodes = reassemble(visDir, "nodes", chunks.get("nodes").asInt)
+		val edges = reassemble(visDir, "edges", chunks.get("edges").asInt)
+		val widgets = reassemble(visDir, "widgets", chunks.get("widgets").asInt)
+		assertTrue(chunks.get("nodes").asInt > 1 && chunks.get("widgets").asInt > 1)
+		assertEquals(data.get("numberOfStates").asInt, nodes.size)
+		assertEquals(edges.size, edges.map { it.get("id").asString }.toSet().size)
+
+		// the widget table contains each widget once and the states reference their widgets in their original order
+		val widgetIds = widgets.map { it.get("id").asString }
+		assertEquals(widgetIds.size, widgetIds.toSet().size)
+		val expected = expectedWidgets(model)
+		nodes.forEach { node ->
+			assertEquals(expected[node.get("stateId").asString], node.widgetIndices().map { widgetIds[it] })
+		}
+		assertEquals(nodes.flatMap { it.widgetIndices() }.toSet().size, widgetIds.size)
+		assertTrue(nodes.sumBy { it.widgetIndices().size } > 2 * widgetIds.size)
+	}
+
+	@Test
+	fun `the frontend loader reassembles the chunks`() = withVisualization { visDir, model ->
+		val engine = ScriptEngineManager().getEngineByName("nashorn")
+		Assume.assumeTrue("requires the Nashorn script engine", engine != null)
+
+		// script elements are loaded as soon as they are appended, as the browser would do it asynchronously
+		engine.put("visDir", visDir.toString())
+		engine.eval("""
+			var console = { error: function (msg) { throw msg; } };
+			var document = {
+				head: { appendChild: function (script) { load(visDir + "/" + script.src); } },
+				createElement: function () { return {}; }
+			};""")
+		engine.eval(Files.newBufferedReader(visDir.resolve("js").resolve("droidmate.js")))
+		engine.eval(Files.newBufferedReader(visDir.resolve("data.js")))
+
+		// a single widget only loads its own chunk
+		engine.eval("data.widgets = []; loadWidgets([${chunkSize + 1}, null], function () {});")
+		assertEquals("widgets_1", engine.eval("Object.keys(loadedChunks).join()"))
+
+		engine.eval("""
+			data.nodes = []; data.edges = [];
+			var loaded = false;
+			loadAllChunks("nodes", function () {
+				loadAllChunks("edges", function () {
+					loadAllChunks("widgets", function () { loaded = true; });
+				});
+			});""")
+		assertEquals(true, engine.eval("loaded"))
+
+		val graph = JsonParser().parse(engine.eval("JSON.stringify({nodes: data.nodes, edges: data.edges, widgets: data.widgets})") as String).asJsonObject
+		val widgetIds = graph.getAsJsonArray("widgets").map { it.asJsonObject.get("id").asString }
+		val nodes: JsonArray = graph.getAsJsonArray("nodes")
+		assertEquals(readData(visDir).get("numberOfStates").asInt, nodes.size())
+		assertEquals(reassemble(visDir, "edges", readData(visDir).getAsJsonObject("chunks").get("edges").asInt).size, graph.getAsJsonArray("edges").size())
+		val expected = expectedWidgets(model)
+		nodes.map { it.asJsonObject }.forEach { node ->
+			assertEquals(expected[node.get("stateId").asString], node.widgetIndices().map { widgetIds[it] })
+		}
+	}
+}
@@ -127,5 +127,54 @@ class extensions_time_seriesKtTest {
 
 		assertEquals(expected = partitionedAccumulatedAndExtendedTimeSeriesFixture, actual = accumulatedAndPadded)
 	}
-}
 
+	@Test
+	fun partitionUnorderedTest() {
+
+		val map: Map<Long, String> = linkedMapOf(Pair(25L, "c"), Pair(3L, "a"), Pair(-7L, "neg"), Pair(10L, "b"), Pair(41L, "d"))
+
+		// Act
+		val partitioned: Map<Long, List<String>> = map.partition(10)
+
+		assertEquals(expected = mapOf(Pair(0L, listOf()), Pair(10L, listOf("a", "neg", "b")), Pair(20L, listOf()),
+				Pair(30L, listOf("c")), Pair(40L, listOf()), Pair(50L, listOf("d"))), actual = partitioned)
+		assertEquals(expected = mapOf(Pair(0L, listOf<String>())), actual = emptyMap<Long, String>().partition(10))
+	}
+
+	@Test
+	fun countsPartitionedByTimeTest() {
+
+		// Act
+		val counts: Map<Long, Int> = itemsAtTimeFixture.countsPartitionedByTime(partitionSize = 10000L, lastPartition = 40500)
+
+		// Same as the accumulated unique strings counted, partitioned, maxed and padded, where all times are shifted by 100 ms
+		val expected = itemsAtTimeFixture
+				.mapKeys { it.key + 100L }
+				.accumulate()
+				.mapValues { it.value.count() }
+				.partition(10000L)
+				.accumulateMaxes(extractMax = { it.max() ?: 0 })
+				.padPartitions(partitionSize = 10000L, lastPartition = 40000L)
+
+		assertEquals(expected = mapOf(Pair(0L, 0), Pair(10000L, 4), Pair(20000L, 4), Pair(30000L, 5), Pair(40000L, -1)), actual = counts)
+		assertEquals(expected = expected, actual = counts)
+	}
+
+	@Test
+	fun countsPartitionedByTimeUnorderedTest() {
+
+		// the first log is before the exploration start and the last one belongs to an earlier partition than its predecessor
+		val itemsAtTime: Map<Long, List<String>> = linkedMapOf(
+				Pair(-25L, listOf("a")),
+				Pair(12000L, listOf("b")),
+				Pair(4000L, listOf("a", "c"))
+		)
+
+		// Act
+		val counts: Map<Long, Int> = itemsAtTime.countsPartitionedByTime(partitionSize = 10000L, lastPartition = 20000)
+
+		assertEquals(expected = mapOf(Pair(0L, 0), Pair(10000L, 3), Pair(20000L, 3)), actual = counts)
+		assertEquals(expected = mapOf(Pair(0L, 0), Pair(1000L, -1), Pair(2000L, -1)),
+				actual = emptyMap<Long, List<String>>().countsPartitionedByTime(partitionSize = 1000L, lastPartition = 2500))
+	}
+}